@@ -0,0 +1,291 @@
+package consultamedica;
+
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Registro de anotaciones de una historia clínica, sólo de añadir.
+ * Cada anotación se guarda como un trozo independiente (no se copia al añadir otra) junto
+ * con su fecha y la posición donde termina en el texto completo, que es la concatenación
+ * de las anotaciones separadas por saltos de línea. Añadir es O(1) amortizado.
+ */
+final class AnnotationLog {
+    static final char SEPARATOR = '\n';
+    private static final int INITIAL_CAPACITY = 8;
+
+    private CharSequence[] chunks; // String, o vistas sin copia (p. ej. sobre un fichero mapeado)
+    private long[] times;
+    private int[] ends; // posición (exclusiva) donde termina cada anotación en el texto completo
+    private int count;
+    private int length;
+
+    AnnotationLog() {
+        this.chunks = new CharSequence[INITIAL_CAPACITY];
+        this.times = new long[INITIAL_CAPACITY];
+        this.ends = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Copia: comparte los trozos (inmutables), no los arrays
+     */
+    AnnotationLog(AnnotationLog other) {
+        int capacity = Math.max(INITIAL_CAPACITY, other.count);
+        this.chunks = Arrays.copyOf(other.chunks, capacity);
+        this.times = Arrays.copyOf(other.times, capacity);
+        this.ends = Arrays.copyOf(other.ends, capacity);
+        this.count = other.count;
+        this.length = other.length;
+    }
+
+    void append(CharSequence text, long time) {
+        int start = count == 0 ? 0 : length + 1;
+        if (start + (long) text.length() > Integer.MAX_VALUE) {
+            throw new IllegalStateException("La historia clínica supera el tamaño máximo");
+        }
+        if (count == chunks.length) {
+            int capacity = chunks.length * 2;
+            chunks = Arrays.copyOf(chunks, capacity);
+            times = Arrays.copyOf(times, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        length = start + text.length();
+        chunks[count] = text;
+        times[count] = time;
+        ends[count] = length;
+        count++;
+    }
+
+    /**
+     * Añade anotaciones antiguas delante de las existentes (carga de páginas anteriores).
+     * Reconstruye los arrays: es O(n), pero sólo ocurre una vez por página
+     */
+    void prepend(CharSequence[] texts, long[] newTimes, int n) {
+        if (n == 0) {
+            return;
+        }
+        long prefix = 0;
+        for (int i = 0; i < n; i++) {
+            prefix += texts[i].length() + (i > 0 ? 1 : 0);
+        }
+        long total = count == 0 ? prefix : prefix + 1 + length;
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalStateException("La historia clínica supera el tamaño máximo");
+        }
+        int capacity = Math.max(INITIAL_CAPACITY, count + n);
+        CharSequence[] newChunks = new CharSequence[capacity];
+        long[] mergedTimes = new long[capacity];
+        int[] newEnds = new int[capacity];
+        int end = -1;
+        for (int i = 0; i < n; i++) {
+            end += 1 + texts[i].length();
+            newChunks[i] = texts[i];
+            mergedTimes[i] = newTimes[i];
+            newEnds[i] = end;
+        }
+        int shift = (int) prefix + 1;
+        for (int i = 0; i < count; i++) {
+            newChunks[n + i] = chunks[i];
+            mergedTimes[n + i] = times[i];
+            newEnds[n + i] = ends[i] + shift;
+        }
+        chunks = newChunks;
+        times = mergedTimes;
+        ends = newEnds;
+        count += n;
+        length = (int) total;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int length() {
+        return length;
+    }
+
+    CharSequence get(int index) {
+        checkIndex(index);
+        return chunks[index];
+    }
+
+    long timeAt(int index) {
+        checkIndex(index);
+        return times[index];
+    }
+
+    /**
+     * Construye el texto completo en una sola pasada
+     */
+    String materialize() {
+        return appendRange(new StringBuilder(length), 0, length).toString();
+    }
+
+    /**
+     * @return Vista de sólo lectura del texto actual; no cambia si después se añaden anotaciones
+     */
+    CharSequence view() {
+        return new View(this, count, 0, length);
+    }
+
+    /**
+     * @return Lector del texto actual trozo a trozo, sin construirlo entero
+     */
+    Reader reader() {
+        return new ChunkReader(this, count);
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Anotación fuera de rango: " + index);
+        }
+    }
+
+    private int startOf(int chunk) {
+        return chunk == 0 ? 0 : ends[chunk - 1] + 1;
+    }
+
+    /**
+     * @return Trozo que contiene la posición, o que termina justo antes si es un separador
+     */
+    private int chunkAt(int pos, int limit) {
+        int lo = 0;
+        int hi = limit - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ends[mid] < pos) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private char charAt(int pos, int limit) {
+        int chunk = chunkAt(pos, limit);
+        return pos == ends[chunk] ? SEPARATOR : chunks[chunk].charAt(pos - startOf(chunk));
+    }
+
+    private StringBuilder appendRange(StringBuilder sb, int from, int to) {
+        if (from >= to) {
+            return sb;
+        }
+        int chunk = chunkAt(from, count);
+        int pos = from;
+        while (pos < to) {
+            int end = ends[chunk];
+            if (pos == end) {
+                sb.append(SEPARATOR);
+                pos++;
+                chunk++;
+                continue;
+            }
+            int stop = Math.min(end, to);
+            int start = startOf(chunk);
+            sb.append(chunks[chunk], pos - start, stop - start);
+            pos = stop;
+        }
+        return sb;
+    }
+
+    /**
+     * Vista CharSequence sobre un rango del texto, sin copiarlo
+     */
+    private static final class View implements CharSequence {
+        private final AnnotationLog log;
+        private final int limit; // anotaciones visibles al crear la vista
+        private final int from;
+        private final int to;
+
+        View(AnnotationLog log, int limit, int from, int to) {
+            this.log = log;
+            this.limit = limit;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int length() {
+            return to - from;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Posición fuera de rango: " + index);
+            }
+            return log.charAt(from + index, limit);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > to - from || start > end) {
+                throw new IndexOutOfBoundsException("Rango inválido: " + start + ".." + end);
+            }
+            return new View(log, limit, from + start, from + end);
+        }
+
+        @Override
+        public String toString() {
+            return log.appendRange(new StringBuilder(to - from), from, to).toString();
+        }
+    }
+
+    /**
+     * Lector que recorre los trozos con sus separadores
+     */
+    private static final class ChunkReader extends Reader {
+        private final AnnotationLog log;
+        private final int limit;
+        private int chunk;
+        private int offset;      // posición dentro del trozo actual
+        private boolean pendingSeparator;
+
+        ChunkReader(AnnotationLog log, int limit) {
+            this.log = log;
+            this.limit = limit;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (off < 0 || len < 0 || off + len > cbuf.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int written = 0;
+            while (written < len && chunk < limit) {
+                if (pendingSeparator) {
+                    cbuf[off + written++] = SEPARATOR;
+                    pendingSeparator = false;
+                    continue;
+                }
+                CharSequence text = log.chunks[chunk];
+                int n = Math.min(len - written, text.length() - offset);
+                if (text instanceof String) {
+                    ((String) text).getChars(offset, offset + n, cbuf, off + written);
+                } else {
+                    for (int i = 0; i < n; i++) {
+                        cbuf[off + written + i] = text.charAt(offset + i);
+                    }
+                }
+                written += n;
+                offset += n;
+                if (offset == text.length()) {
+                    chunk++;
+                    offset = 0;
+                    pendingSeparator = chunk < limit;
+                }
+            }
+            return written == 0 ? -1 : written;
+        }
+
+        @Override
+        public void close() {
+            chunk = limit;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package consultamedica;
+
+import data.*;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import services.HealthNationalService;
+import services.DecisionMakingAI;
+import services.HealthCardIDException;
+import services.HistoryConflictException;
+import services.AnyCurrentPrescriptionException;
+import services.NotCompletedMedicalPrescription;
+import services.Suggestion;
+import services.BadPromptException;
+import services.AIException;
+import services.PrescriptionBatcher;
+import services.PrescriptionSubmission;
+
+/**
+ * Motor de sesiones de consulta concurrentes.
+ * Cada sesión es un estado aislado (un ConsultationTerminal) identificado por un id de sesión.
+ * Las sesiones se reparten en particiones (una por núcleo) para que las altas, bajas y
+ * búsquedas de sesiones distintas no compitan entre sí. Los eventos de una misma sesión
+ * se serializan sobre su propio estado; sesiones distintas avanzan en paralelo.
+ */
+public class ConsultationSessionEngine {
+    private final HealthNationalService hns;
+    private final DecisionMakingAI ai;
+
+    // Particiones de sesiones (potencia de 2 para seleccionar con una máscara)
+    private final List<Map<String, ConsultationTerminal>> shards;
+    private final AtomicInteger[] shardSizes;
+    private final int shardMask;
+
+    private PrescriptionBatcher batcher; // opcional: envíos agrupados entre sesiones
+    private int historyPageSize; // 0: las sesiones descargan la historia entera
+
+    /**
+     * Constructor con una partición por núcleo disponible
+     * @param hns Servicio del SNS compartido por todas las sesiones
+     * @param ai Servicio de IA compartido por todas las sesiones
+     */
+    public ConsultationSessionEngine(HealthNationalService hns, DecisionMakingAI ai) {
+        this(hns, ai, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor con número de particiones explícito
+     * @param hns Servicio del SNS compartido por todas las sesiones
+     * @param ai Servicio de IA compartido por todas las sesiones
+     * @param shardCount Número mínimo de particiones (se redondea a potencia de 2)
+     */
+    public ConsultationSessionEngine(HealthNationalService hns, DecisionMakingAI ai, int shardCount) {
+        if (hns == null) {
+            throw new IllegalArgumentException("HealthNationalService no puede ser null");
+        }
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException(
+                    "El número de particiones debe ser positivo: " + shardCount);
+        }
+
+        this.hns = hns;
+        this.ai = ai;
+
+        int size = Integer.highestOneBit(shardCount);
+        if (size < shardCount) {
+            size <<= 1;
+        }
+        List<Map<String, ConsultationTerminal>> shards = new ArrayList<>(size);
+        this.shardSizes = new AtomicInteger[size];
+        for (int i = 0; i < size; i++) {
+            shards.add(new ConcurrentHashMap<>());
+            shardSizes[i] = new AtomicInteger();
+        }
+        this.shards = List.copyOf(shards);
+        this.shardMask = size - 1;
+    }
+
+    public void setPrescriptionBatcher(PrescriptionBatcher batcher) {
+        this.batcher = batcher;
+    }
+
+    /**
+     * Tamaño de página de la historia en las sesiones que se abran a partir de ahora
+     * (ver ConsultationTerminal.setHistoryPageSize)
+     */
+    public void setHistoryPageSize(int pageSize) {
+        if (pageSize < 0) {
+            throw new IllegalArgumentException("El tamaño de página no puede ser negativo: " + pageSize);
+        }
+        this.historyPageSize = pageSize;
+    }
+
+    // ============= GESTIÓN DE SESIONES =============
+
+    /**
+     * Abre una nueva sesión con un identificador generado
+     * @return Identificador de la sesión
+     */
+    public String openSession() {
+        String sessionId = UUID.randomUUID().toString();
+        openSession(sessionId);
+        return sessionId;
+    }
+
+    /**
+     * Abre una nueva sesión con el identificador indicado
+     * @param sessionId Identificador de la sesión
+     * @throws IllegalArgumentException si el id es inválido o ya está en uso
+     */
+    public void openSession(String sessionId) {
+        if (sessionId == null || sessionId.trim().isEmpty()) {
+            throw new IllegalArgumentException("El id de sesión no puede ser null o vacío");
+        }
+
+        ConsultationTerminal terminal = new ConsultationTerminal();
+        terminal.setHealthNationalService(hns);
+        terminal.setDecisionMakingAI(ai);
+        terminal.setHistoryPageSize(historyPageSize);
+
+        int shard = shardOf(sessionId);
+        if (shards.get(shard).putIfAbsent(sessionId, terminal) != null) {
+            throw new IllegalArgumentException("La sesión ya existe: " + sessionId);
+        }
+        shardSizes[shard].incrementAndGet();
+    }
+
+    /**
+     * Cierra una sesión y descarta su estado
+     * @param sessionId Identificador de la sesión
+     * @return true si la sesión existía
+     */
+    public boolean closeSession(String sessionId) {
+        if (sessionId == null) {
+            return false;
+        }
+        int shard = shardOf(sessionId);
+        if (shards.get(shard).remove(sessionId) == null) {
+            return false;
+        }
+        shardSizes[shard].decrementAndGet();
+        return true;
+    }
+
+    public boolean hasSession(String sessionId) {
+        return sessionId != null && shards.get(shardOf(sessionId)).containsKey(sessionId);
+    }
+
+    public int getSessionCount() {
+        int count = 0;
+        for (AtomicInteger size : shardSizes) {
+            count += size.get();
+        }
+        return count;
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    // ============= EVENTOS DE ENTRADA POR SESIÓN =============
+
+    public void initRevision(String sessionId, HealthCardID cip, String illness)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, IncorrectParametersException, ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            t.initRevision(cip, illness);
+        }
+    }
+
+    public void enterMedicalAssessmentInHistory(String sessionId, String assess)
+            throws ProceduralException, IncorrectParametersException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            t.enterMedicalAssessmentInHistory(assess);
+        }
+    }
+
+    public void initMedicalPrescriptionEdition(String sessionId) throws ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            t.initMedicalPrescriptionEdition();
+        }
+    }
+
+    public void enterMedicineWithGuidelines(String sessionId, ProductID prodID, String[] instruc)
+            throws ProductAlreadyInPrescriptionException,
+            IncorrectTakingGuidelinesException, ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            t.enterMedicineWithGuidelines(prodID, instruc);
+        }
+    }
+
+    public void enterMedicinesWithGuidelines(String sessionId, ProductID[] prodIDs, String[][] instrucs)
+            throws IncorrectPrescriptionLinesException, ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            t.enterMedicinesWithGuidelines(prodIDs, instrucs);
+        }
+    }
+
+    public void modifyDoseInLine(String sessionId, ProductID prodID, float newDose)
+            throws ProductNotInPrescriptionException, ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            t.modifyDoseInLine(prodID, newDose);
+        }
+    }
+
+    public void removeLine(String sessionId, ProductID prodID)
+            throws ProductNotInPrescriptionException, ProceduralException,
+            InvalidProductIDException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            t.removeLine(prodID);
+        }
+    }
+
+    public boolean undoPrescriptionEdit(String sessionId) throws ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            return t.undoPrescriptionEdit();
+        }
+    }
+
+    public boolean redoPrescriptionEdit(String sessionId) throws ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            return t.redoPrescriptionEdit();
+        }
+    }
+
+    public void enterTreatmentEndingDate(String sessionId, Date date)
+            throws IncorrectEndingDateException, ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            t.enterTreatmentEndingDate(date);
+        }
+    }
+
+    public void finishMedicalPrescriptionEdition(String sessionId) throws ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            t.finishMedicalPrescriptionEdition();
+        }
+    }
+
+    public void stampeeSignature(String sessionId) throws eSignatureException, ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            t.stampeeSignature();
+        }
+    }
+
+    public MedicalPrescription sendHistoryAndPrescription(String sessionId)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, NotCompletedMedicalPrescription,
+            ProceduralException, InvalidePrescripCodeException, HistoryConflictException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            return t.sendHistoryAndPrescription();
+        }
+    }
+
+    /**
+     * Envía la historia y la prescripción firmada de la sesión a través del agrupador de envíos,
+     * junto con las de otras sesiones
+     * @return Future con la prescripción registrada, que pasa a ser la prescripción de la sesión
+     */
+    public CompletableFuture<MedicalPrescription> submitHistoryAndPrescription(String sessionId)
+            throws ProceduralException {
+        if (batcher == null) {
+            throw new IllegalStateException("No hay agrupador de envíos configurado");
+        }
+        ConsultationTerminal t = session(sessionId);
+        PrescriptionSubmission submission;
+        synchronized (t) {
+            submission = t.prepareSubmission();
+        }
+        return batcher.submit(submission).whenComplete((registered, error) -> {
+            synchronized (t) {
+                if (error == null) {
+                    t.completeSubmission(submission, registered);
+                } else {
+                    t.abandonSubmission(submission);
+                }
+            }
+        });
+    }
+
+    // ============= EVENTOS DE IA POR SESIÓN =============
+
+    public void callDecisionMakingAI(String sessionId) throws AIException, ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            t.callDecisionMakingAI();
+        }
+    }
+
+    public String askAIForSuggest(String sessionId, String prompt)
+            throws BadPromptException, ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            return t.askAIForSuggest(prompt);
+        }
+    }
+
+    public List<Suggestion> extractGuidelinesFromSugg(String sessionId)
+            throws ProceduralException, InvalidProductIDException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            return t.extractGuidelinesFromSugg();
+        }
+    }
+
+    // ============= CONSULTAS DE ESTADO =============
+
+    public MedicalHistory getCurrentHistory(String sessionId) throws ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            return t.getCurrentHistory();
+        }
+    }
+
+    public MedicalPrescription getCurrentPrescription(String sessionId) throws ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            return t.getCurrentPrescription();
+        }
+    }
+
+    public boolean isSignatureStamped(String sessionId) throws ProceduralException {
+        ConsultationTerminal t = session(sessionId);
+        synchronized (t) {
+            return t.isSignatureStamped();
+        }
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    private ConsultationTerminal session(String sessionId) throws ProceduralException {
+        ConsultationTerminal t = sessionId != null ? shards.get(shardOf(sessionId)).get(sessionId) : null;
+        if (t == null) {
+            throw new ProceduralException("La sesión no existe: " + sessionId);
+        }
+        return t;
+    }
+
+    private int shardOf(String sessionId) {
+        int h = sessionId.hashCode();
+        return (h ^ (h >>> 16)) & shardMask;
+    }
+}
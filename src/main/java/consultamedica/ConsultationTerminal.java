@@ -2,10 +2,17 @@ package consultamedica;
 
 import data.*;
 
+import java.io.IOException;
 import java.net.ConnectException;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import services.HealthNationalService;
 import services.DecisionMakingAI;
 import services.HealthCardIDException;
@@ -14,10 +21,29 @@ import services.NotCompletedMedicalPrescription;
 import services.Suggestion;
 import services.BadPromptException;
 import services.AIException;
+import services.OutboxReceipt;
+import services.HistoryConflictException;
+import services.HistoryDelta;
+import services.PagedHistoryLoader;
+import services.PrescriptionOutbox;
+import services.PrescriptionSubmission;
 
 public class ConsultationTerminal {
+    // Hilos compartidos para las descargas concurrentes del SNS
+    private static final ExecutorService DEFAULT_DOWNLOAD_EXECUTOR =
+            Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "sns-download");
+                t.setDaemon(true);
+                return t;
+            });
+    // Envíos del delta antes de rendirse si la historia del SNS sigue cambiando
+    private static final int MAX_DELTA_ATTEMPTS = 3;
+
     private HealthNationalService hns;
     private DecisionMakingAI ai;
+    private ExecutorService downloadExecutor = DEFAULT_DOWNLOAD_EXECUTOR;
+    private PrescriptionOutbox outbox; // opcional: envíos diferidos si el SNS no responde
+    private int historyPageSize; // 0: la historia se descarga entera
 
     // Estado del caso de uso
     private HealthCardID currentCip;
@@ -29,6 +55,8 @@ public class ConsultationTerminal {
     private boolean prescriptionEditionFinished;
     private boolean signatureStamped;
     private String lastAIResponse;
+    private OutboxReceipt lastOutboxReceipt;
+    private PrescriptionSubmission pendingSubmission; // envío agrupado aún sin respuesta
 
     public ConsultationTerminal() {
         this.revisionInitiated = false;
@@ -46,6 +74,29 @@ public class ConsultationTerminal {
         this.ai = ai;
     }
 
+    public void setDownloadExecutor(ExecutorService downloadExecutor) {
+        if (downloadExecutor == null) {
+            throw new IllegalArgumentException("El ejecutor de descargas no puede ser null");
+        }
+        this.downloadExecutor = downloadExecutor;
+    }
+
+    public void setOutbox(PrescriptionOutbox outbox) {
+        this.outbox = outbox;
+    }
+
+    /**
+     * Descarga la historia por páginas: al iniciar la revisión sólo las pageSize anotaciones
+     * más recientes, y las anteriores cuando se consulten
+     * @param pageSize Anotaciones por página, o 0 para descargar la historia entera
+     */
+    public void setHistoryPageSize(int pageSize) {
+        if (pageSize < 0) {
+            throw new IllegalArgumentException("El tamaño de página no puede ser negativo: " + pageSize);
+        }
+        this.historyPageSize = pageSize;
+    }
+
     // ============= EVENTOS DE ENTRADA =============
 
     public void initRevision(HealthCardID cip, String illness)
@@ -55,9 +106,8 @@ public class ConsultationTerminal {
             throw new IllegalArgumentException("Parámetros inválidos");
         }
 
-        // Descargar historia clínica y prescripción médica del SNS
-        currentHistory = hns.getMedicalHistory(cip);
-        currentPrescription = hns.getMedicalPrescription(cip, illness);
+        // Descargar historia clínica y prescripción médica del SNS en paralelo
+        downloadHistoryAndPrescription(cip, illness);
 
         currentCip = cip;
         currentIllness = illness;
@@ -65,12 +115,14 @@ public class ConsultationTerminal {
         prescriptionEditionStarted = false;
         prescriptionEditionFinished = false;
         signatureStamped = false;
+        lastOutboxReceipt = null;
+        pendingSubmission = null;
     }
 
     public void enterMedicalAssessmentInHistory(String assess)
             throws ProceduralException, IncorrectParametersException {
         if (!revisionInitiated) {
-            throw new ProceduralException("Debe iniciar la revisión primero");
+            throw ProceduralException.of("Debe iniciar la revisión primero");
         }
 
         currentHistory.addMedicalHistoryAnnotations(assess);
@@ -78,9 +130,15 @@ public class ConsultationTerminal {
 
     public void initMedicalPrescriptionEdition() throws ProceduralException {
         if (!revisionInitiated) {
-            throw new ProceduralException("Debe iniciar la revisión primero");
+            throw ProceduralException.of("Debe iniciar la revisión primero");
+        }
+        if (pendingSubmission != null) {
+            // La prescripción registrada sustituirá a la actual al llegar la respuesta
+            throw ProceduralException.of("No se puede editar la prescripción mientras se entrega el envío");
         }
 
+        // Sólo se deshacen las ediciones de esta consulta, no cómo se construyó la prescripción
+        currentPrescription.clearEditHistory();
         prescriptionEditionStarted = true;
         prescriptionEditionFinished = false;
     }
@@ -89,25 +147,44 @@ public class ConsultationTerminal {
             throws ProductAlreadyInPrescriptionException,
             IncorrectTakingGuidelinesException, ProceduralException {
         if (!prescriptionEditionStarted) {
-            throw new ProceduralException(
+            throw ProceduralException.of(
                     "Debe iniciar la edición de la prescripción primero");
         }
         if (prescriptionEditionFinished) {
-            throw new ProceduralException(
+            throw ProceduralException.of(
                     "La edición de la prescripción ya ha finalizado");
         }
 
         createMedPrescriptionLine(prodID, instruc);
     }
 
+    /**
+     * Introduce varios medicamentos a la vez (p. ej. un protocolo de tratamiento).
+     * Si alguna fila es incorrecta no se añade ninguna
+     * @see MedicalPrescription#addLines
+     */
+    public void enterMedicinesWithGuidelines(ProductID[] prodIDs, String[][] instrucs)
+            throws IncorrectPrescriptionLinesException, ProceduralException {
+        if (!prescriptionEditionStarted) {
+            throw ProceduralException.of(
+                    "Debe iniciar la edición de la prescripción primero");
+        }
+        if (prescriptionEditionFinished) {
+            throw ProceduralException.of(
+                    "La edición de la prescripción ya ha finalizado");
+        }
+
+        currentPrescription.addLines(prodIDs, instrucs);
+    }
+
     public void modifyDoseInLine(ProductID prodID, float newDose)
             throws ProductNotInPrescriptionException, ProceduralException {
         if (!prescriptionEditionStarted) {
-            throw new ProceduralException(
+            throw ProceduralException.of(
                     "Debe iniciar la edición de la prescripción primero");
         }
         if (prescriptionEditionFinished) {
-            throw new ProceduralException(
+            throw ProceduralException.of(
                     "La edición de la prescripción ya ha finalizado");
         }
 
@@ -118,11 +195,11 @@ public class ConsultationTerminal {
             throws ProductNotInPrescriptionException, ProceduralException,
             InvalidProductIDException {
         if (!prescriptionEditionStarted) {
-            throw new ProceduralException(
+            throw ProceduralException.of(
                     "Debe iniciar la edición de la prescripción primero");
         }
         if (prescriptionEditionFinished) {
-            throw new ProceduralException(
+            throw ProceduralException.of(
                     "La edición de la prescripción ya ha finalizado");
         }
 
@@ -130,14 +207,48 @@ public class ConsultationTerminal {
         currentPrescription.removeLine(prodID);
     }
 
+    /**
+     * Deshace la última edición de los medicamentos de la prescripción
+     * @return false si no había nada que deshacer
+     */
+    public boolean undoPrescriptionEdit() throws ProceduralException {
+        if (!prescriptionEditionStarted) {
+            throw ProceduralException.of(
+                    "Debe iniciar la edición de la prescripción primero");
+        }
+        if (prescriptionEditionFinished) {
+            throw ProceduralException.of(
+                    "La edición de la prescripción ya ha finalizado");
+        }
+
+        return currentPrescription.undo();
+    }
+
+    /**
+     * Rehace la última edición deshecha
+     * @return false si no había nada que rehacer
+     */
+    public boolean redoPrescriptionEdit() throws ProceduralException {
+        if (!prescriptionEditionStarted) {
+            throw ProceduralException.of(
+                    "Debe iniciar la edición de la prescripción primero");
+        }
+        if (prescriptionEditionFinished) {
+            throw ProceduralException.of(
+                    "La edición de la prescripción ya ha finalizado");
+        }
+
+        return currentPrescription.redo();
+    }
+
     public void enterTreatmentEndingDate(Date date)
             throws IncorrectEndingDateException, ProceduralException {
         if (!prescriptionEditionStarted) {
-            throw new ProceduralException(
+            throw ProceduralException.of(
                     "Debe iniciar la edición de la prescripción primero");
         }
         if (prescriptionEditionFinished) {
-            throw new ProceduralException(
+            throw ProceduralException.of(
                     "La edición de la prescripción ya ha finalizado");
         }
 
@@ -160,7 +271,7 @@ public class ConsultationTerminal {
 
     public void finishMedicalPrescriptionEdition() throws ProceduralException {
         if (!prescriptionEditionStarted) {
-            throw new ProceduralException(
+            throw ProceduralException.of(
                     "Debe iniciar la edición de la prescripción primero");
         }
 
@@ -169,11 +280,11 @@ public class ConsultationTerminal {
 
     public void stampeeSignature() throws eSignatureException, ProceduralException {
         if (!prescriptionEditionFinished) {
-            throw new ProceduralException(
+            throw ProceduralException.of(
                     "Debe finalizar la edición de la prescripción primero");
         }
         if (signatureStamped) {
-            throw new ProceduralException("La firma ya ha sido estampada");
+            throw ProceduralException.of("La firma ya ha sido estampada");
         }
 
         try {
@@ -191,17 +302,41 @@ public class ConsultationTerminal {
         }
     }
 
+    /**
+     * Envía las anotaciones nuevas de la historia y la prescripción firmada
+     * @throws HistoryConflictException si otras consultas siguen cambiando la historia en el SNS
+     * tras MAX_DELTA_ATTEMPTS intentos; las anotaciones nuevas quedan sobre la última versión
+     * descargada y se puede reintentar el envío
+     */
     public MedicalPrescription sendHistoryAndPrescription()
             throws ConnectException, HealthCardIDException,
-            AnyCurrentPrescriptionException,
-            NotCompletedMedicalPrescription, ProceduralException, InvalidePrescripCodeException {
+            AnyCurrentPrescriptionException, NotCompletedMedicalPrescription,
+            ProceduralException, InvalidePrescripCodeException, HistoryConflictException {
         if (!signatureStamped) {
-            throw new ProceduralException("Debe estampar la firma primero");
+            throw ProceduralException.of("Debe estampar la firma primero");
         }
+        checkNotQueued();
 
-        MedicalPrescription updatedPresc = hns.sendHistoryAndPrescription(
-                currentCip, currentHistory, currentIllness, currentPrescription);
+        MedicalPrescription updatedPresc;
+        try {
+            updatedPresc = sendHistoryDelta();
+        } catch (ConnectException e) {
+            if (outbox == null) {
+                throw e;
+            }
+            // SNS no disponible: se guarda el envío firmado para entregarlo más tarde
+            try {
+                lastOutboxReceipt = outbox.enqueue(
+                        currentCip, currentHistory, currentIllness, currentPrescription);
+            } catch (IOException ioe) {
+                e.addSuppressed(ioe);
+                throw e;
+            }
+            return currentPrescription;
+        }
 
+        lastOutboxReceipt = null;
+        currentHistory.markSynchronized();
         currentPrescription = updatedPresc;
         return updatedPresc;
     }
@@ -214,7 +349,7 @@ public class ConsultationTerminal {
 
     public void callDecisionMakingAI() throws AIException, ProceduralException {
         if (!revisionInitiated) {
-            throw new ProceduralException("Debe iniciar la revisión primero");
+            throw ProceduralException.of("Debe iniciar la revisión primero");
         }
 
         ai.initDecisionMakingAI();
@@ -223,7 +358,7 @@ public class ConsultationTerminal {
     public String askAIForSuggest(String prompt)
             throws BadPromptException, ProceduralException {
         if (!revisionInitiated) {
-            throw new ProceduralException("Debe iniciar la revisión primero");
+            throw ProceduralException.of("Debe iniciar la revisión primero");
         }
 
         try {
@@ -236,7 +371,7 @@ public class ConsultationTerminal {
 
     public List<Suggestion> extractGuidelinesFromSugg() throws ProceduralException, InvalidProductIDException {
         if (lastAIResponse == null) {
-            throw new ProceduralException(
+            throw ProceduralException.of(
                     "Debe obtener sugerencias de la IA primero");
         }
 
@@ -245,12 +380,173 @@ public class ConsultationTerminal {
 
     // ============= OPERACIONES INTERNAS =============
 
+    /**
+     * Envía sólo las anotaciones añadidas en la consulta. Si otra consulta ha cambiado la
+     * historia en el SNS desde la descarga, se vuelve a descargar, se le añaden las anotaciones
+     * nuevas y se reintenta. Nunca se envía la historia completa: podría borrar lo que otra
+     * consulta haya añadido entre la descarga y el envío.
+     */
+    private MedicalPrescription sendHistoryDelta()
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, InvalidePrescripCodeException, HistoryConflictException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return hns.sendHistoryDeltaAndPrescription(
+                        currentCip, currentHistory, currentIllness, currentPrescription);
+            } catch (HistoryConflictException e) {
+                rebaseHistory();
+                if (attempt == MAX_DELTA_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Pone las anotaciones pendientes de enviar sobre la versión actual de la historia del SNS
+     */
+    private void rebaseHistory() throws ConnectException, HealthCardIDException {
+        HistoryDelta delta = HistoryDelta.of(currentHistory);
+        MedicalHistory latest;
+        try {
+            latest = historyPageSize > 0
+                    ? PagedHistoryLoader.open(hns, currentCip, historyPageSize)
+                    : hns.getMedicalHistory(currentCip);
+        } catch (IncorrectParametersException e) {
+            throw new IllegalStateException("El SNS ha devuelto una historia inválida", e);
+        }
+        latest.markSynchronized();
+        delta.appendTo(latest);
+        currentHistory = latest;
+    }
+
+    /**
+     * Lanza las dos descargas del SNS a la vez, de modo que la latencia es la de la
+     * más lenta y no la suma de ambas. Si una falla, se cancela la otra y se relanza
+     * la excepción original.
+     */
+    private void downloadHistoryAndPrescription(HealthCardID cip, String illness)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, IncorrectParametersException {
+        CompletionService<Object> downloads = new ExecutorCompletionService<>(downloadExecutor);
+        int pageSize = historyPageSize;
+        Future<Object> history = downloads.submit(() -> pageSize > 0
+                ? PagedHistoryLoader.open(hns, cip, pageSize)
+                : hns.getMedicalHistory(cip));
+        Future<Object> prescription = downloads.submit(() -> hns.getMedicalPrescription(cip, illness));
+
+        try {
+            for (int pending = 2; pending > 0; pending--) {
+                Future<Object> done = downloads.take();
+                try {
+                    done.get();
+                } catch (ExecutionException e) {
+                    history.cancel(true);
+                    prescription.cancel(true);
+                    rethrowDownloadFailure(e.getCause());
+                }
+            }
+            currentHistory = (MedicalHistory) history.get();
+            currentHistory.markSynchronized();
+            currentPrescription = (MedicalPrescription) prescription.get();
+        } catch (InterruptedException e) {
+            history.cancel(true);
+            prescription.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ConnectException("Descarga del SNS interrumpida");
+        } catch (ExecutionException e) {
+            // No puede ocurrir: ambas tareas han terminado con éxito
+            rethrowDownloadFailure(e.getCause());
+        }
+    }
+
+    private static void rethrowDownloadFailure(Throwable cause)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, IncorrectParametersException {
+        if (cause instanceof ConnectException) {
+            throw (ConnectException) cause;
+        }
+        if (cause instanceof HealthCardIDException) {
+            throw (HealthCardIDException) cause;
+        }
+        if (cause instanceof AnyCurrentPrescriptionException) {
+            throw (AnyCurrentPrescriptionException) cause;
+        }
+        if (cause instanceof IncorrectParametersException) {
+            throw (IncorrectParametersException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new IllegalStateException("Error inesperado en la descarga del SNS", cause);
+    }
+
     private void createMedPrescriptionLine(ProductID prodID, String[] instruc)
             throws ProductAlreadyInPrescriptionException,
             IncorrectTakingGuidelinesException {
         currentPrescription.addLine(prodID, instruc);
     }
 
+    /**
+     * Prepara el envío firmado de la consulta para entregarlo agrupado con otros.
+     * El envío lleva copias de la historia y la prescripción: el hilo que lo entrega
+     * no comparte objetos con la consulta. Hasta que llegue la respuesta (completeSubmission
+     * o abandonSubmission) no se puede volver a enviar ni editar la prescripción; la historia
+     * sí admite anotaciones nuevas.
+     */
+    PrescriptionSubmission prepareSubmission() throws ProceduralException {
+        if (!signatureStamped) {
+            throw ProceduralException.of("Debe estampar la firma primero");
+        }
+        checkNotQueued();
+        pendingSubmission = new PrescriptionSubmission(currentCip, new MedicalHistory(currentHistory),
+                currentIllness, new MedicalPrescription(currentPrescription));
+        return pendingSubmission;
+    }
+
+    /**
+     * Recoge la prescripción registrada por el SNS tras un envío agrupado.
+     * Las anotaciones enviadas pasan a ser la versión base de la historia.
+     * Se ignora si la consulta ya no espera ese envío (p. ej. se ha iniciado otra revisión).
+     */
+    void completeSubmission(PrescriptionSubmission submitted, MedicalPrescription registered) {
+        if (pendingSubmission != submitted) {
+            return;
+        }
+        pendingSubmission = null;
+        // Las anotaciones añadidas mientras se entregaba el envío siguen pendientes
+        currentHistory.setBaseAnnotationCount(Math.min(
+                submitted.getHistory().getAnnotationCount(), currentHistory.getAnnotationCount()));
+        currentPrescription = registered;
+    }
+
+    /**
+     * El envío agrupado ha fallado: la prescripción firmada se puede volver a enviar
+     */
+    void abandonSubmission(PrescriptionSubmission submitted) {
+        if (pendingSubmission == submitted) {
+            pendingSubmission = null;
+        }
+    }
+
+    /**
+     * Un envío agrupado sin respuesta o guardado en la bandeja de salida se entregará solo:
+     * reenviarlo lo duplicaría
+     */
+    private void checkNotQueued() throws ProceduralException {
+        if (pendingSubmission != null) {
+            throw ProceduralException.of("El envío ya se está entregando agrupado con otros");
+        }
+        // Si la bandeja lo ha rechazado, la prescripción firmada se puede volver a enviar
+        if (lastOutboxReceipt != null && !lastOutboxReceipt.getDelivery().isCompletedExceptionally()) {
+            throw new ProceduralException("El envío ya está en la bandeja de salida: "
+                    + lastOutboxReceipt.getProvisionalId());
+        }
+    }
+
     private void setPrescDateAndEndDate(Date date) {
         currentPrescription.setPrescDate(new Date());
         if (date != null) {
@@ -283,4 +579,11 @@ public class ConsultationTerminal {
     public boolean isSignatureStamped() {
         return signatureStamped;
     }
+
+    /**
+     * @return Justificante provisional del último envío diferido, o null si se entregó directamente
+     */
+    public OutboxReceipt getLastOutboxReceipt() {
+        return lastOutboxReceipt;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,199 @@
+package consultamedica;
+
+import java.util.function.IntFunction;
+
+/**
+ * Lectura de los campos de las pautas de administración (ver MedicalPrescription.addLine)
+ * sobre rangos de CharSequence, sin crear subcadenas ni lanzar excepciones: un campo
+ * inválido se indica con el valor centinela de cada método (null o NaN).
+ * Los espacios en los extremos se ignoran, como hacía trim().
+ */
+public final class GuidelineParser {
+
+    private static final dayMoment[] MOMENTS = dayMoment.values();
+    private static final FqUnit[] UNITS = FqUnit.values();
+    // Candidatos por longitud del nombre: se compara sólo con los de la misma longitud
+    private static final dayMoment[][] MOMENTS_BY_LENGTH = groupByLength(MOMENTS, dayMoment[]::new, dayMoment[][]::new);
+    private static final FqUnit[][] UNITS_BY_LENGTH = groupByLength(UNITS, FqUnit[]::new, FqUnit[][]::new);
+
+    // Potencias de 10 exactas en float: con la mantisa también exacta el resultado se redondea una sola vez
+    private static final float[] FLOAT_POW10 = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+    private static final long MAX_EXACT_FLOAT_MANTISSA = 1L << 24;
+
+    private GuidelineParser() {
+    }
+
+    /**
+     * @return Momento del día con ese nombre exacto, o null si no existe
+     */
+    public static dayMoment parseDayMoment(CharSequence s) {
+        if (s == null) {
+            return null;
+        }
+        int from = trimStart(s, 0, s.length());
+        int to = trimEnd(s, from, s.length());
+        return lookup(MOMENTS_BY_LENGTH, s, from, to);
+    }
+
+    /**
+     * @return Unidad de frecuencia con ese nombre exacto, o null si no existe
+     */
+    public static FqUnit parseFqUnit(CharSequence s) {
+        if (s == null) {
+            return null;
+        }
+        int from = trimStart(s, 0, s.length());
+        int to = trimEnd(s, from, s.length());
+        return lookup(UNITS_BY_LENGTH, s, from, to);
+    }
+
+    /**
+     * Número decimal: [+-]dígitos[.dígitos][(e|E)[+-]dígitos]
+     * @return El número, o NaN si el texto no es un número
+     */
+    public static float parseFloat(CharSequence s) {
+        return s == null ? Float.NaN : parseFloat(s, 0, s.length());
+    }
+
+    /**
+     * Lee el número del rango [from, to) de s
+     * @return El número, o NaN si el rango no es un número
+     */
+    public static float parseFloat(CharSequence s, int from, int to) {
+        from = trimStart(s, from, to);
+        to = trimEnd(s, from, to);
+        int i = from;
+        boolean negative = false;
+        if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;      // dígitos significativos acumulados en mantissa
+        int exponent = 0;    // potencia de 10 que falta aplicar a mantissa
+        boolean anyDigit = false;
+        boolean truncated = false;
+        for (; i < to && isDigit(s.charAt(i)); i++) {
+            anyDigit = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (s.charAt(i) - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+                truncated = true;
+            }
+        }
+        if (i < to && s.charAt(i) == '.') {
+            i++;
+            for (; i < to && isDigit(s.charAt(i)); i++) {
+                anyDigit = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (s.charAt(i) - '0');
+                    exponent--;
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                } else {
+                    truncated = true;
+                }
+            }
+        }
+        if (!anyDigit) {
+            return Float.NaN;
+        }
+        if (i < to && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                negativeExp = s.charAt(i) == '-';
+                i++;
+            }
+            if (i == to) {
+                return Float.NaN;
+            }
+            int exp = 0;
+            for (; i < to && isDigit(s.charAt(i)); i++) {
+                if (exp < 10_000) {
+                    exp = exp * 10 + (s.charAt(i) - '0');
+                }
+            }
+            exponent += negativeExp ? -exp : exp;
+        }
+        if (i != to) {
+            return Float.NaN;
+        }
+
+        if (truncated || mantissa >= MAX_EXACT_FLOAT_MANTISSA || Math.abs(exponent) >= FLOAT_POW10.length) {
+            // Caso poco frecuente (muchos dígitos o exponentes grandes): redondeo exacto de la JDK
+            return Float.parseFloat(s.subSequence(from, to).toString());
+        }
+        float value = exponent >= 0 ? mantissa * FLOAT_POW10[exponent] : mantissa / FLOAT_POW10[-exponent];
+        return negative ? -value : value;
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    private static <E extends Enum<E>> E lookup(E[][] byLength, CharSequence s, int from, int to) {
+        int length = to - from;
+        if (length >= byLength.length) {
+            return null;
+        }
+        for (E candidate : byLength[length]) {
+            String name = candidate.name();
+            int j = 0;
+            while (j < length && name.charAt(j) == s.charAt(from + j)) {
+                j++;
+            }
+            if (j == length) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static <E extends Enum<E>> E[][] groupByLength(E[] values, IntFunction<E[]> newGroup,
+                                                           IntFunction<E[][]> newTable) {
+        int maxLength = 0;
+        for (E e : values) {
+            maxLength = Math.max(maxLength, e.name().length());
+        }
+        E[][] groups = newTable.apply(maxLength + 1);
+        for (int length = 0; length <= maxLength; length++) {
+            int count = 0;
+            for (E e : values) {
+                if (e.name().length() == length) {
+                    count++;
+                }
+            }
+            groups[length] = newGroup.apply(count);
+            count = 0;
+            for (E e : values) {
+                if (e.name().length() == length) {
+                    groups[length][count++] = e;
+                }
+            }
+        }
+        return groups;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int trimStart(CharSequence s, int from, int to) {
+        while (from < to && s.charAt(from) <= ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(CharSequence s, int from, int to) {
+        while (to > from && s.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        return to;
+    }
+}
@@ -0,0 +1,17 @@
+package consultamedica;
+
+import java.io.IOException;
+
+/**
+ * Carga bajo demanda las anotaciones antiguas de una historia clínica paginada
+ */
+@FunctionalInterface
+public interface HistoryPageLoader {
+
+    /**
+     * Obtiene un bloque de anotaciones anteriores a las ya cargadas y lo añade al
+     * principio de la historia con MedicalHistory.prependAnnotations
+     * @throws IOException si no se han podido obtener (p. ej. el SNS no responde)
+     */
+    void loadOlder(MedicalHistory hce) throws IOException;
+}
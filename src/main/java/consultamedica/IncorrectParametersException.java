@@ -1,5 +1,11 @@
 package consultamedica;
 
+import data.DomainErrorCode;
+import data.DomainException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Excepción lanzada cuando los parámetros proporcionados son incorrectos
  */
@@ -32,9 +38,23 @@ class eSignatureException extends Exception {
  * Excepción lanzada cuando se violan las precondiciones del flujo del caso de uso
  * (eventos llamados en orden incorrecto)
  */
-class ProceduralException extends Exception {
+class ProceduralException extends DomainException {
+    private static final Map<String, ProceduralException> SHARED = new ConcurrentHashMap<>();
+
     public ProceduralException(String message) {
-        super(message);
+        super(DomainErrorCode.PROCEDURE_ORDER, message);
+    }
+
+    private ProceduralException(String message, boolean enableSuppression, boolean writableStackTrace) {
+        super(DomainErrorCode.PROCEDURE_ORDER, message, enableSuppression, writableStackTrace);
+    }
+
+    /**
+     * @param message Mensaje fijo (ver DomainException.shared)
+     */
+    static ProceduralException of(String message) {
+        return shared(SHARED, message, ProceduralException::new,
+                m -> new ProceduralException(m, false, false));
     }
 }
 
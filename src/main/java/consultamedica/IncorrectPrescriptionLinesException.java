@@ -0,0 +1,34 @@
+package consultamedica;
+
+import data.DomainErrorCode;
+
+import java.util.List;
+
+/**
+ * Excepción lanzada cuando alguna fila de un alta de varias líneas es incorrecta.
+ * Reúne los errores de todas las filas; la prescripción no se ha modificado.
+ */
+public class IncorrectPrescriptionLinesException extends IncorrectTakingGuidelinesException {
+    private final List<PrescriptionLineError> errors;
+
+    public IncorrectPrescriptionLinesException(List<PrescriptionLineError> errors) {
+        super(DomainErrorCode.INCORRECT_PRESCRIPTION_LINES, describe(errors));
+        this.errors = List.copyOf(errors);
+    }
+
+    /**
+     * @return Errores por fila, en el orden de las filas
+     */
+    public List<PrescriptionLineError> getErrors() {
+        return errors;
+    }
+
+    private static String describe(List<PrescriptionLineError> errors) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(errors.size()).append(errors.size() == 1 ? " línea incorrecta" : " líneas incorrectas");
+        for (PrescriptionLineError error : errors) {
+            sb.append("; ").append(error);
+        }
+        return sb.toString();
+    }
+}
@@ -1,10 +1,17 @@
 package consultamedica;
 
+import data.DomainErrorCode;
+import data.DomainException;
+
 /**
  * Excepción lanzada cuando las pautas de medicación son incorrectas o incompletas
  */
-public class IncorrectTakingGuidelinesException extends Exception {
+public class IncorrectTakingGuidelinesException extends DomainException {
     public IncorrectTakingGuidelinesException(String message) {
-        super(message);
+        super(DomainErrorCode.INCORRECT_TAKING_GUIDELINES, message);
+    }
+
+    protected IncorrectTakingGuidelinesException(DomainErrorCode errorCode, String message) {
+        super(errorCode, message);
     }
-}
+}
\ No newline at end of file
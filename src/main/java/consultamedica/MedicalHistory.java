@@ -2,13 +2,31 @@ package consultamedica;
 
 import data.HealthCardID;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
 /**
- * Representa la historia clínica de un paciente
+ * Representa la historia clínica de un paciente.
+ * Las anotaciones se guardan por separado, con su fecha, y el texto completo
+ * sólo se construye cuando se pide con getHistory.
+ * Una historia paginada sólo tiene cargadas las anotaciones más recientes; las antiguas
+ * se piden a su HistoryPageLoader la primera vez que se consultan.
+ * La versión base es el número de anotaciones que ya tiene el SNS: las posteriores son
+ * las que hay que enviarle (delta).
  */
 public class MedicalHistory {
     private HealthCardID cip; // CIP del paciente
     private int membShipNumb; // Número de membresía del médico de familia
-    private String history; // Anotaciones en la historia clínica del paciente
+    private AnnotationLog annotations; // Anotaciones en la historia clínica del paciente
+    private String history; // Texto completo ya construido (null si hay anotaciones nuevas)
+    private List<MedicalHistoryListener> listeners; // se crea con el primer oyente
+    private int olderCount; // Anotaciones antiguas aún sin cargar (van antes de las cargadas)
+    private HistoryPageLoader pageLoader;
+    private int baseCount; // Anotaciones que ya tiene el SNS (versión base)
 
     /**
      * Constructor de MedicalHistory
@@ -28,23 +46,68 @@ public class MedicalHistory {
 
         this.cip = cip;
         this.membShipNumb = memberShipNum;
+        this.annotations = new AnnotationLog();
         this.history = "";
     }
 
+    /**
+     * Constructor de copia (los oyentes no se copian)
+     * @param other Historia clínica a copiar
+     */
+    public MedicalHistory(MedicalHistory other) {
+        this.cip = other.cip;
+        this.membShipNumb = other.membShipNumb;
+        this.annotations = new AnnotationLog(other.annotations);
+        this.history = other.history;
+        this.olderCount = other.olderCount;
+        this.pageLoader = other.pageLoader;
+        this.baseCount = other.baseCount;
+    }
+
     /**
      * Añade nuevas anotaciones a la historia del paciente
      * @param annot Anotaciones a añadir
      */
     public void addMedicalHistoryAnnotations(String annot) {
+        addMedicalHistoryAnnotations(annot, System.currentTimeMillis());
+    }
+
+    /**
+     * Añade una anotación con su fecha original (p. ej. al restaurar una historia guardada).
+     * La anotación se guarda tal cual, sin copiarla
+     * @param annot Anotación a añadir
+     * @param date Fecha de la anotación
+     */
+    public void addMedicalHistoryAnnotations(CharSequence annot, Date date) {
+        if (date == null) {
+            throw new IllegalArgumentException("La fecha de la anotación no puede ser null");
+        }
+        addMedicalHistoryAnnotations(annot, date.getTime());
+    }
+
+    private void addMedicalHistoryAnnotations(CharSequence annot, long time) {
         // Simplemente ignorar si es null o vacío
-        if (annot != null && !annot.trim().isEmpty()) {
-            if (!this.history.isEmpty()) {
-                this.history += "\n";
+        if (annot != null && !isBlank(annot)) {
+            annotations.append(annot, time);
+            this.history = null;
+            if (listeners != null) {
+                int index = getAnnotationCount() - 1;
+                for (MedicalHistoryListener l : listeners) {
+                    l.annotationAdded(this, index);
+                }
             }
-            this.history += annot;
         }
     }
 
+    private static boolean isBlank(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Modifica el médico de familia del paciente
      * @param mshN Nuevo número de membresía
@@ -55,6 +118,140 @@ public class MedicalHistory {
                     "El número de membresía debe ser positivo: " + mshN);
         }
         this.membShipNumb = mshN;
+        if (listeners != null) {
+            for (MedicalHistoryListener l : listeners) {
+                l.doctorChanged(this);
+            }
+        }
+    }
+
+    /**
+     * Registra un oyente que recibe cada anotación añadida y cada cambio de médico
+     */
+    public void addListener(MedicalHistoryListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("El oyente no puede ser null");
+        }
+        if (listeners == null) {
+            listeners = new ArrayList<>(2);
+        }
+        listeners.add(listener);
+    }
+
+    public void removeListener(MedicalHistoryListener listener) {
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    // ============= SINCRONIZACIÓN CON EL SNS =============
+
+    /**
+     * Marca todas las anotaciones actuales como conocidas por el SNS
+     * (tras descargar la historia o enviarla correctamente)
+     */
+    public void markSynchronized() {
+        this.baseCount = getAnnotationCount();
+    }
+
+    /**
+     * Fija la versión base: las anotaciones desde baseCount son las nuevas
+     * @param baseCount Anotaciones que ya tiene el SNS
+     */
+    public void setBaseAnnotationCount(int baseCount) {
+        if (baseCount < 0 || baseCount > getAnnotationCount()) {
+            throw new IllegalArgumentException("Versión base fuera de la historia: " + baseCount);
+        }
+        this.baseCount = baseCount;
+    }
+
+    /**
+     * @return Anotaciones que ya tiene el SNS (versión base de la historia)
+     */
+    public int getBaseAnnotationCount() {
+        return baseCount;
+    }
+
+    /**
+     * @return Anotaciones añadidas desde la última sincronización con el SNS
+     */
+    public int getNewAnnotationCount() {
+        return getAnnotationCount() - baseCount;
+    }
+
+    // ============= PAGINACIÓN =============
+
+    /**
+     * Declara que la historia tiene anotaciones anteriores a las cargadas, que se obtendrán
+     * del cargador cuando se consulten
+     * @param count Número de anotaciones antiguas sin cargar
+     * @param loader Cargador de páginas anteriores
+     */
+    public void setOlderAnnotations(int count, HistoryPageLoader loader) {
+        if (count < 0) {
+            throw new IllegalArgumentException("El número de anotaciones antiguas no puede ser negativo: " + count);
+        }
+        if (count > 0 && loader == null) {
+            throw new IllegalArgumentException("El cargador de páginas no puede ser null");
+        }
+        this.olderCount = count;
+        this.pageLoader = loader;
+        this.history = null;
+    }
+
+    /**
+     * Añade delante de las cargadas las anotaciones inmediatamente anteriores
+     * (uso de los cargadores de páginas; no se notifica a los oyentes)
+     * @param annots Anotaciones, de la más antigua a la más reciente
+     * @param times Fechas de las anotaciones en milisegundos
+     */
+    public void prependAnnotations(List<? extends CharSequence> annots, long[] times) {
+        if (annots == null || times == null || annots.size() != times.length) {
+            throw new IllegalArgumentException("Las anotaciones y sus fechas no coinciden");
+        }
+        if (annots.size() > olderCount) {
+            throw new IllegalArgumentException("Se han recibido más anotaciones antiguas de las que faltan: "
+                    + annots.size() + " > " + olderCount);
+        }
+        annotations.prepend(annots.toArray(new CharSequence[0]), times, annots.size());
+        olderCount -= annots.size();
+        history = null;
+    }
+
+    /**
+     * @return Anotaciones ya cargadas (las más recientes)
+     */
+    public int getLoadedAnnotationCount() {
+        return annotations.count();
+    }
+
+    public boolean isFullyLoaded() {
+        return olderCount == 0;
+    }
+
+    /**
+     * Carga todas las anotaciones antiguas que falten
+     * @throws UncheckedIOException si el cargador falla
+     */
+    public void loadAllAnnotations() {
+        ensureLoaded(0);
+    }
+
+    /**
+     * Carga páginas anteriores hasta tener la anotación index
+     */
+    private void ensureLoaded(int index) {
+        while (olderCount > index) {
+            int before = olderCount;
+            try {
+                pageLoader.loadOlder(this);
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se han podido cargar las anotaciones antiguas", e);
+            }
+            if (olderCount == before) {
+                throw new IllegalStateException("El cargador de páginas no ha añadido anotaciones");
+            }
+        }
     }
 
     // Getters
@@ -66,16 +263,79 @@ public class MedicalHistory {
         return membShipNumb;
     }
 
+    /**
+     * @return Texto completo de la historia (anotaciones separadas por saltos de línea)
+     */
     public String getHistory() {
+        ensureLoaded(0);
+        if (history == null) {
+            history = annotations.materialize();
+        }
         return history;
     }
 
+    /**
+     * @return Vista del texto actual sin construirlo; no refleja anotaciones posteriores
+     */
+    public CharSequence getHistoryView() {
+        ensureLoaded(0);
+        return history != null ? history : annotations.view();
+    }
+
+    /**
+     * @return Lector del texto actual, anotación a anotación
+     */
+    public Reader openHistoryReader() {
+        ensureLoaded(0);
+        return annotations.reader();
+    }
+
+    public int getHistoryLength() {
+        ensureLoaded(0);
+        return annotations.length();
+    }
+
+    /**
+     * @return Número total de anotaciones, incluidas las antiguas aún sin cargar
+     */
+    public int getAnnotationCount() {
+        return olderCount + annotations.count();
+    }
+
+    public String getAnnotation(int index) {
+        return getAnnotationView(index).toString();
+    }
+
+    /**
+     * @return La anotación tal como se guardó, sin copiarla
+     */
+    public CharSequence getAnnotationView(int index) {
+        return annotations.get(loaded(index));
+    }
+
+    public Date getAnnotationDate(int index) {
+        return new Date(annotations.timeAt(loaded(index)));
+    }
+
+    /**
+     * @return Posición en las anotaciones cargadas de la anotación index, cargándola si hace falta
+     */
+    private int loaded(int index) {
+        if (index < 0 || index >= getAnnotationCount()) {
+            throw new IndexOutOfBoundsException("Anotación fuera de rango: " + index);
+        }
+        ensureLoaded(index);
+        return index - olderCount;
+    }
+
     @Override
     public String toString() {
         return "MedicalHistory{" +
                 "cip=" + cip +
                 ", membShipNumb=" + membShipNumb +
-                ", historyLength=" + history.length() +
+                ", annotations=" + getAnnotationCount() +
+                ", loaded=" + annotations.count() +
+                ", historyLength=" + annotations.length() +
                 '}';
     }
 }
\ No newline at end of file
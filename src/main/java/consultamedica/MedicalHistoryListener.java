@@ -0,0 +1,18 @@
+package consultamedica;
+
+/**
+ * Oyente de los cambios de una historia clínica (p. ej. para persistirla o indexarla)
+ */
+public interface MedicalHistoryListener {
+
+    /**
+     * Se ha añadido la anotación de posición index
+     */
+    void annotationAdded(MedicalHistory hce, int index);
+
+    /**
+     * Ha cambiado el médico de familia del paciente
+     */
+    default void doctorChanged(MedicalHistory hce) {
+    }
+}
@@ -3,10 +3,15 @@ package consultamedica;
 import data.DigitalSignature;
 import data.HealthCardID;
 import data.ProductID;
+import data.PersistentProductIDMap;
+import data.ProductIDMap;
 import data.ePrescripCode;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Collection;
 
@@ -16,17 +21,65 @@ import java.util.Collection;
  */
 public class MedicalPrescription {
 
-    private HealthCardID cip; // the healthcard ID of the patient
-    private int membShipNumb; // the membership number of the family doctor
-    private String illness; // illness associated
-    private ePrescripCode prescCode; // the prescription code
-    private Date prescDate; // the current date
-    private Date endDate; // the date when the new treatment ends
-    private DigitalSignature eSign; // the eSignature of the doctor
+    private final HealthCardID cip; // the healthcard ID of the patient
+    private final String illness; // illness associated
+
+    // Médico, código, fechas y firma en un objeto inmutable que se sustituye entero en cada
+    // cambio: snapshot() lo lee de una vez y nunca ve una cabecera a medio actualizar
+    private volatile Header header;
 
     // Componentes: conjunto de líneas de prescripción médica
-    // Usamos HashMap para búsqueda eficiente O(1) por ProductID
-    private Map<ProductID, MedicalPrescriptionLine> prescriptionLines;
+    // Mapa persistente: cada edición crea una versión nueva que comparte el resto con la anterior,
+    // así snapshot() no copia nada. Las líneas publicadas no se modifican: se sustituyen por copias,
+    // y ningún getter las expone (devuelven copias), de modo que las comparten sin riesgo las
+    // versiones anteriores, los snapshots y el historial de deshacer
+    private volatile PersistentProductIDMap<MedicalPrescriptionLine> prescriptionLines;
+
+    // Historial de ediciones de líneas para deshacer/rehacer: la operación inversa de cada una
+    private final ArrayDeque<LineEdit> undoEdits = new ArrayDeque<>();
+    private final ArrayDeque<LineEdit> redoEdits = new ArrayDeque<>();
+
+    /**
+     * Campos de la prescripción que no son líneas. Las fechas no salen nunca de aquí sin copiar
+     */
+    private static final class Header {
+        final int membShipNumb; // the membership number of the family doctor
+        final ePrescripCode prescCode; // the prescription code
+        final Date prescDate; // the current date
+        final Date endDate; // the date when the new treatment ends
+        final DigitalSignature eSign; // the eSignature of the doctor
+
+        Header(int membShipNumb, ePrescripCode prescCode, Date prescDate, Date endDate, DigitalSignature eSign) {
+            this.membShipNumb = membShipNumb;
+            this.prescCode = prescCode;
+            this.prescDate = copy(prescDate);
+            this.endDate = copy(endDate);
+            this.eSign = eSign;
+        }
+
+        static Date copy(Date date) {
+            return date != null ? new Date(date.getTime()) : null;
+        }
+    }
+
+    /**
+     * Edición de una línea: la línea antes y después (null si no estaba o se eliminó).
+     * Como las líneas publicadas no se modifican, basta con guardar las referencias
+     */
+    private static final class LineEdit {
+        final ProductID product;
+        final MedicalPrescriptionLine before;
+        final MedicalPrescriptionLine after;
+        // true si se deshace junto con la edición anterior (filas de un mismo addLines)
+        final boolean grouped;
+
+        LineEdit(ProductID product, MedicalPrescriptionLine before, MedicalPrescriptionLine after, boolean grouped) {
+            this.product = product;
+            this.before = before;
+            this.after = after;
+            this.grouped = grouped;
+        }
+    }
 
     /**
      * Constructor principal de MedicalPrescription
@@ -53,15 +106,27 @@ public class MedicalPrescription {
 
         // Inicialización
         this.cip = cip;
-        this.membShipNumb = memberShipNum;
         this.illness = illness;
-        this.prescriptionLines = new HashMap<>();
+        this.prescriptionLines = PersistentProductIDMap.empty();
 
-        // Los siguientes atributos se establecerán posteriormente
-        this.prescCode = null;
-        this.prescDate = null;
-        this.endDate = null;
-        this.eSign = null;
+        // Código, fechas y firma se establecerán posteriormente
+        this.header = new Header(memberShipNum, null, null, null, null);
+    }
+
+    /**
+     * Constructor de copia: las líneas se copian en profundidad, de modo que editar
+     * la copia no afecta al original. El historial de ediciones no se copia
+     * @param other Prescripción a copiar
+     */
+    public MedicalPrescription(MedicalPrescription other) {
+        this.cip = other.cip;
+        this.illness = other.illness;
+        this.header = other.header;
+        PersistentProductIDMap<MedicalPrescriptionLine> lines = PersistentProductIDMap.empty();
+        for (MedicalPrescriptionLine line : other.prescriptionLines.values()) {
+            lines = lines.plus(line.getProductID(), new MedicalPrescriptionLine(line));
+        }
+        this.prescriptionLines = lines;
     }
 
     /**
@@ -83,72 +148,145 @@ public class MedicalPrescription {
             IncorrectTakingGuidelinesException {
 
         // Validar que el producto no existe ya
+        if (prodID == null) {
+            throw new IncorrectTakingGuidelinesException("ProductID no puede ser null");
+        }
         if (prescriptionLines.containsKey(prodID)) {
             throw new ProductAlreadyInPrescriptionException(
                     "El producto " + prodID.getCode() + " ya está en la prescripción");
         }
 
-        // Validar estructura del array de instrucciones
-        if (instruc == null) {
-            throw new IncorrectTakingGuidelinesException(
-                    "Las instrucciones no pueden ser null");
-        }
-        if (instruc.length != 7) {
-            throw new IncorrectTakingGuidelinesException(
-                    "Las instrucciones deben contener exactamente 7 elementos. Recibidos: "
-                            + instruc.length);
+        TakingGuideline[] guidelines = new TakingGuideline[1];
+        String error = parseGuidelines(instruc, guidelines, 0);
+        if (error != null) {
+            throw new IncorrectTakingGuidelinesException(error);
         }
 
-        // Validar y parsear las instrucciones
-        try {
-            // Parsear dayMoment
-            dayMoment dMoment = dayMoment.valueOf(instruc[0].trim());
+        // Crear y añadir la línea de prescripción
+        replaceLine(prodID, null, new MedicalPrescriptionLine(prodID, guidelines[0]));
+    }
 
-            // Parsear duration
-            float duration = Float.parseFloat(instruc[1].trim());
-            if (duration <= 0) {
-                throw new IncorrectTakingGuidelinesException(
-                        "La duración debe ser positiva: " + duration);
-            }
+    /**
+     * Añade varias líneas de una vez (p. ej. los medicamentos de un protocolo).
+     * Se validan todas las filas antes de modificar nada: si alguna es incorrecta no se
+     * añade ninguna y se informa de los errores de todas las filas juntos.
+     * @param prodIDs Productos, uno por fila
+     * @param instrucs Instrucciones de cada fila, con el formato de addLine
+     * @throws IncorrectPrescriptionLinesException si alguna fila es incorrecta, el producto
+     * ya está en la prescripción o se repite en otra fila
+     */
+    public void addLines(ProductID[] prodIDs, String[][] instrucs)
+            throws IncorrectPrescriptionLinesException {
+        if (prodIDs == null || instrucs == null) {
+            throw new IllegalArgumentException("Los productos y las instrucciones no pueden ser null");
+        }
+        if (prodIDs.length != instrucs.length) {
+            throw new IllegalArgumentException("Hay " + prodIDs.length + " productos y "
+                    + instrucs.length + " instrucciones");
+        }
 
-            // Parsear dose
-            float dose = Float.parseFloat(instruc[2].trim());
-            if (dose <= 0) {
-                throw new IncorrectTakingGuidelinesException(
-                        "La dosis debe ser positiva: " + dose);
+        // Validar todas las filas sin modificar la prescripción
+        TakingGuideline[] guidelines = new TakingGuideline[prodIDs.length];
+        ProductIDMap<Integer> rows = new ProductIDMap<>(prodIDs.length);
+        List<PrescriptionLineError> errors = null;
+        for (int i = 0; i < prodIDs.length; i++) {
+            ProductID prodID = prodIDs[i];
+            String error;
+            if (prodID == null) {
+                error = "ProductID no puede ser null";
+            } else if (prescriptionLines.containsKey(prodID)) {
+                error = "El producto " + prodID.getCode() + " ya está en la prescripción";
+            } else if (rows.containsKey(prodID)) {
+                error = "El producto " + prodID.getCode() + " ya está en la fila " + rows.get(prodID);
+            } else {
+                rows.put(prodID, i);
+                error = parseGuidelines(instrucs[i], guidelines, i);
             }
+            if (error != null) {
+                if (errors == null) {
+                    errors = new ArrayList<>();
+                }
+                errors.add(new PrescriptionLineError(i, prodID, error));
+            }
+        }
+        if (errors != null) {
+            throw new IncorrectPrescriptionLinesException(errors);
+        }
 
-            // Parsear frequency
-            float freq = Float.parseFloat(instruc[3].trim());
-            if (freq <= 0) {
-                throw new IncorrectTakingGuidelinesException(
-                        "La frecuencia debe ser positiva: " + freq);
+        // Todas son válidas: se publican juntas en una sola versión nueva y se deshacen juntas
+        PersistentProductIDMap<MedicalPrescriptionLine> lines = prescriptionLines;
+        for (int i = 0; i < prodIDs.length; i++) {
+            MedicalPrescriptionLine line = new MedicalPrescriptionLine(prodIDs[i], guidelines[i]);
+            lines = lines.plus(prodIDs[i], line);
+            record(new LineEdit(prodIDs[i], null, line, i > 0));
+        }
+        prescriptionLines = lines;
+    }
+
+    /**
+     * Valida y lee unas instrucciones con el formato de addLine, sin lanzar excepciones
+     * @param out Array donde se guardan las pautas leídas, en la posición index
+     * @return Mensaje de error, o null si las instrucciones son correctas
+     */
+    private static String parseGuidelines(String[] instruc, TakingGuideline[] out, int index) {
+        // Validar estructura del array de instrucciones
+        if (instruc == null) {
+            return "Las instrucciones no pueden ser null";
+        }
+        if (instruc.length != 7) {
+            return "Las instrucciones deben contener exactamente 7 elementos. Recibidos: " + instruc.length;
+        }
+        for (int i = 0; i < 5; i++) {
+            if (instruc[i] == null) {
+                return "Las instrucciones contienen valores null: posición " + i;
             }
+        }
 
-            // Parsear frequency unit
-            FqUnit freqUnit = FqUnit.valueOf(instruc[4].trim());
+        dayMoment dMoment = GuidelineParser.parseDayMoment(instruc[0]);
+        if (dMoment == null) {
+            return "Error al parsear las instrucciones: momento del día desconocido: " + instruc[0];
+        }
 
-            // Instrucciones adicionales (puede estar vacío)
-            String instructions = instruc[5] != null ? instruc[5] : "";
+        float duration = GuidelineParser.parseFloat(instruc[1]);
+        float dose = GuidelineParser.parseFloat(instruc[2]);
+        float freq = GuidelineParser.parseFloat(instruc[3]);
+        String error = checkPositive(duration, instruc[1], "La duración");
+        if (error == null) {
+            error = checkPositive(dose, instruc[2], "La dosis");
+        }
+        if (error == null) {
+            error = checkPositive(freq, instruc[3], "La frecuencia");
+        }
+        if (error != null) {
+            return error;
+        }
 
-            // Crear la posología
-            Posology posology = new Posology(dose, freq, freqUnit);
+        FqUnit freqUnit = GuidelineParser.parseFqUnit(instruc[4]);
+        if (freqUnit == null) {
+            return "Error al parsear las instrucciones: unidad de frecuencia desconocida: " + instruc[4];
+        }
 
-            // Crear las pautas de administración
-            TakingGuideline guidelines = new TakingGuideline(
-                    dMoment, duration, posology, instructions);
+        // Instrucciones adicionales (puede estar vacío)
+        String instructions = instruc[5] != null ? instruc[5] : "";
 
-            // Crear y añadir la línea de prescripción
-            MedicalPrescriptionLine line = new MedicalPrescriptionLine(prodID, guidelines);
-            prescriptionLines.put(prodID, line);
+        // Crear la posología y las pautas de administración (los valores ya son válidos)
+        Posology posology = new Posology(dose, freq, freqUnit);
+        out[index] = new TakingGuideline(dMoment, duration, posology, instructions);
+        return null;
+    }
 
-        } catch (IllegalArgumentException e) {
-            throw new IncorrectTakingGuidelinesException(
-                    "Error al parsear las instrucciones: " + e.getMessage());
-        } catch (NullPointerException e) {
-            throw new IncorrectTakingGuidelinesException(
-                    "Las instrucciones contienen valores null: " + e.getMessage());
+    /**
+     * @param field Nombre del campo para el mensaje de error
+     * @return Mensaje de error, o null si el valor es un número positivo
+     */
+    private static String checkPositive(float value, String text, String field) {
+        if (Float.isNaN(value)) {
+            return "Error al parsear las instrucciones: número inválido: " + text;
+        }
+        if (value <= 0) {
+            return field + " debe ser positiva: " + value;
         }
+        return null;
     }
 
     /**
@@ -161,7 +299,8 @@ public class MedicalPrescription {
             throws ProductNotInPrescriptionException {
 
         // Verificar que el producto existe
-        if (!prescriptionLines.containsKey(prodID)) {
+        MedicalPrescriptionLine line = prescriptionLines.get(prodID);
+        if (line == null) {
             throw new ProductNotInPrescriptionException(
                     "El producto " + prodID.getCode() + " no está en la prescripción");
         }
@@ -172,9 +311,10 @@ public class MedicalPrescription {
                     "La nueva dosis debe ser positiva: " + newDose);
         }
 
-        // Obtener la línea y modificar la dosis
-        MedicalPrescriptionLine line = prescriptionLines.get(prodID);
-        line.getGuidelines().getPosology().setDose(newDose);
+        // Modificar la dosis en una copia de la línea (los snapshots conservan la anterior)
+        MedicalPrescriptionLine updated = new MedicalPrescriptionLine(line);
+        updated.getGuidelines().getPosology().setDose(newDose);
+        replaceLine(prodID, line, updated);
     }
 
     /**
@@ -186,7 +326,8 @@ public class MedicalPrescription {
     public void modifyFrequencyInLine(ProductID prodID, float newFreq)
             throws ProductNotInPrescriptionException {
 
-        if (!prescriptionLines.containsKey(prodID)) {
+        MedicalPrescriptionLine line = prescriptionLines.get(prodID);
+        if (line == null) {
             throw new ProductNotInPrescriptionException(
                     "El producto " + prodID.getCode() + " no está en la prescripción");
         }
@@ -196,8 +337,9 @@ public class MedicalPrescription {
                     "La nueva frecuencia debe ser positiva: " + newFreq);
         }
 
-        MedicalPrescriptionLine line = prescriptionLines.get(prodID);
-        line.getGuidelines().getPosology().setFreq(newFreq);
+        MedicalPrescriptionLine updated = new MedicalPrescriptionLine(line);
+        updated.getGuidelines().getPosology().setFreq(newFreq);
+        replaceLine(prodID, line, updated);
     }
 
     /**
@@ -209,7 +351,8 @@ public class MedicalPrescription {
     public void modifyDurationInLine(ProductID prodID, float newDuration)
             throws ProductNotInPrescriptionException {
 
-        if (!prescriptionLines.containsKey(prodID)) {
+        MedicalPrescriptionLine line = prescriptionLines.get(prodID);
+        if (line == null) {
             throw new ProductNotInPrescriptionException(
                     "El producto " + prodID.getCode() + " no está en la prescripción");
         }
@@ -219,8 +362,9 @@ public class MedicalPrescription {
                     "La nueva duración debe ser positiva: " + newDuration);
         }
 
-        MedicalPrescriptionLine line = prescriptionLines.get(prodID);
-        line.getGuidelines().setDuration(newDuration);
+        MedicalPrescriptionLine updated = new MedicalPrescriptionLine(line);
+        updated.getGuidelines().setDuration(newDuration);
+        replaceLine(prodID, line, updated);
     }
 
     /**
@@ -231,14 +375,85 @@ public class MedicalPrescription {
     public void removeLine(ProductID prodID)
             throws ProductNotInPrescriptionException {
 
-        // Verificar que el producto existe
-        if (!prescriptionLines.containsKey(prodID)) {
+        // Eliminar la línea, verificando que el producto existía
+        MedicalPrescriptionLine line = prescriptionLines.get(prodID);
+        if (line == null) {
             throw new ProductNotInPrescriptionException(
                     "El producto " + prodID + " no está en la prescripción");
         }
+        replaceLine(prodID, line, null);
+    }
+
+    // ============= DESHACER / REHACER =============
+
+    /**
+     * Deshace la última edición de líneas (alta, alta múltiple, cambio o eliminación)
+     * @return false si no había nada que deshacer
+     */
+    public boolean undo() {
+        if (undoEdits.isEmpty()) {
+            return false;
+        }
+        PersistentProductIDMap<MedicalPrescriptionLine> lines = prescriptionLines;
+        LineEdit edit;
+        do {
+            edit = undoEdits.pop();
+            lines = edit.before == null ? lines.minus(edit.product) : lines.plus(edit.product, edit.before);
+            redoEdits.push(edit);
+        } while (edit.grouped);
+        prescriptionLines = lines;
+        return true;
+    }
+
+    /**
+     * Rehace la última edición deshecha
+     * @return false si no había nada que rehacer
+     */
+    public boolean redo() {
+        if (redoEdits.isEmpty()) {
+            return false;
+        }
+        PersistentProductIDMap<MedicalPrescriptionLine> lines = prescriptionLines;
+        do {
+            LineEdit edit = redoEdits.pop();
+            lines = edit.after == null ? lines.minus(edit.product) : lines.plus(edit.product, edit.after);
+            undoEdits.push(edit);
+        } while (!redoEdits.isEmpty() && redoEdits.peek().grouped);
+        prescriptionLines = lines;
+        return true;
+    }
+
+    /**
+     * Olvida el historial de ediciones: lo anterior pasa a ser el punto de partida
+     * (p. ej. las líneas de una prescripción descargada del SNS)
+     */
+    public void clearEditHistory() {
+        undoEdits.clear();
+        redoEdits.clear();
+    }
+
+    public boolean canUndo() {
+        return !undoEdits.isEmpty();
+    }
 
-        // Eliminar la línea
-        prescriptionLines.remove(prodID);
+    public boolean canRedo() {
+        return !redoEdits.isEmpty();
+    }
+
+    /**
+     * Sustituye la línea del producto (after null: la elimina) y lo anota en el historial
+     */
+    private void replaceLine(ProductID prodID, MedicalPrescriptionLine before, MedicalPrescriptionLine after) {
+        prescriptionLines = after == null ? prescriptionLines.minus(prodID) : prescriptionLines.plus(prodID, after);
+        record(new LineEdit(prodID, before, after, false));
+    }
+
+    /**
+     * Una edición nueva descarta lo que se había deshecho
+     */
+    private void record(LineEdit edit) {
+        undoEdits.push(edit);
+        redoEdits.clear();
     }
 
     /**
@@ -246,10 +461,11 @@ public class MedicalPrescription {
      * @return true si todos los campos obligatorios están completos
      */
     public boolean isComplete() {
-        return prescCode != null &&
-                prescDate != null &&
-                endDate != null &&
-                eSign != null &&
+        Header h = header;
+        return h.prescCode != null &&
+                h.prescDate != null &&
+                h.endDate != null &&
+                h.eSign != null &&
                 !prescriptionLines.isEmpty();
     }
 
@@ -272,16 +488,16 @@ public class MedicalPrescription {
 
     /**
      * Obtiene todas las líneas de prescripción
-     * @return Colección de líneas (copia defensiva)
+     * @return Colección de copias de las líneas
      */
     public Collection<MedicalPrescriptionLine> getAllLines() {
-        return prescriptionLines.values();
+        return copyLines(prescriptionLines);
     }
 
     /**
      * Obtiene una línea de prescripción específica
      * @param prodID Identificador del producto
-     * @return La línea de prescripción o null si no existe
+     * @return Copia de la línea de prescripción (para cambiarla, usar modify...InLine)
      */
     public MedicalPrescriptionLine getLine(ProductID prodID) throws ProductNotInPrescriptionException  {
         MedicalPrescriptionLine line = prescriptionLines.get(prodID);
@@ -289,7 +505,16 @@ public class MedicalPrescription {
             throw  new consultamedica.ProductNotInPrescriptionException(
                     "Product " +  prodID.getCode() + " no encontrado");
         }
-        return line;
+        return new MedicalPrescriptionLine(line);
+    }
+
+    /**
+     * Copia cada línea: las publicadas se comparten entre versiones y no deben modificarse
+     */
+    static List<MedicalPrescriptionLine> copyLines(PersistentProductIDMap<MedicalPrescriptionLine> lines) {
+        List<MedicalPrescriptionLine> copies = new ArrayList<>(lines.size());
+        lines.forEach((prodID, line) -> copies.add(new MedicalPrescriptionLine(line)));
+        return copies;
     }
 
     // ============= GETTERS =============
@@ -299,7 +524,7 @@ public class MedicalPrescription {
     }
 
     public int getMembShipNumb() {
-        return membShipNumb;
+        return header.membShipNumb;
     }
 
     public String getIllness() {
@@ -307,39 +532,54 @@ public class MedicalPrescription {
     }
 
     public ePrescripCode getPrescCode() {
-        return prescCode;
+        return header.prescCode;
     }
 
     public Date getPrescDate() {
         // Copia defensiva para evitar modificaciones externas
-        return prescDate != null ? new Date(prescDate.getTime()) : null;
+        return Header.copy(header.prescDate);
     }
 
     public Date getEndDate() {
         // Copia defensiva para evitar modificaciones externas
-        return endDate != null ? new Date(endDate.getTime()) : null;
+        return Header.copy(header.endDate);
     }
 
     public DigitalSignature geteSign() {
-        return eSign;
+        return header.eSign;
+    }
+
+    /**
+     * Versión inmutable de la prescripción tal como está ahora, en O(1): no copia las líneas.
+     * Pensada para lectores (interfaz, IA, serialización, farmacia) que necesitan una vista
+     * coherente mientras se sigue editando
+     */
+    public PrescriptionSnapshot snapshot() {
+        Header h = header;
+        return new PrescriptionSnapshot(cip, h.membShipNumb, illness, h.prescCode, h.prescDate, h.endDate,
+                h.eSign, prescriptionLines);
     }
 
     /**
      * Obtiene una copia del mapa de líneas de prescripción
-     * @return Copia defensiva del mapa de líneas
+     * @return Copia defensiva del mapa de líneas, con copias de las líneas
      */
     public Map<ProductID, MedicalPrescriptionLine> getLines() {
-        return new HashMap<>(prescriptionLines);
+        Map<ProductID, MedicalPrescriptionLine> lines = new HashMap<>();
+        prescriptionLines.forEach((prodID, line) -> lines.put(prodID, new MedicalPrescriptionLine(line)));
+        return lines;
     }
 
     // ============= SETTERS =============
+    // Cada setter publica una cabecera nueva; como el resto de ediciones, se llaman desde un solo hilo
 
     /**
      * Establece el código de prescripción (asignado por el SNS)
      * @param prescCode Código de prescripción
      */
     public void setPrescCode(ePrescripCode prescCode) {
-        this.prescCode = prescCode;
+        Header h = header;
+        header = new Header(h.membShipNumb, prescCode, h.prescDate, h.endDate, h.eSign);
     }
 
     /**
@@ -347,8 +587,9 @@ public class MedicalPrescription {
      * @param prescDate Fecha de prescripción
      */
     public void setPrescDate(Date prescDate) {
-        // Copia defensiva para evitar modificaciones externas
-        this.prescDate = prescDate != null ? new Date(prescDate.getTime()) : null;
+        // La cabecera guarda una copia para evitar modificaciones externas
+        Header h = header;
+        header = new Header(h.membShipNumb, h.prescCode, prescDate, h.endDate, h.eSign);
     }
 
     /**
@@ -356,8 +597,9 @@ public class MedicalPrescription {
      * @param endDate Fecha de finalización
      */
     public void setEndDate(Date endDate) {
-        // Copia defensiva para evitar modificaciones externas
-        this.endDate = endDate != null ? new Date(endDate.getTime()) : null;
+        // La cabecera guarda una copia para evitar modificaciones externas
+        Header h = header;
+        header = new Header(h.membShipNumb, h.prescCode, h.prescDate, endDate, h.eSign);
     }
 
     /**
@@ -365,7 +607,8 @@ public class MedicalPrescription {
      * @param eSign Firma digital
      */
     public void seteSign(DigitalSignature eSign) {
-        this.eSign = eSign;
+        Header h = header;
+        header = new Header(h.membShipNumb, h.prescCode, h.prescDate, h.endDate, eSign);
     }
 
     /**
@@ -377,20 +620,22 @@ public class MedicalPrescription {
             throw new IllegalArgumentException(
                     "El número de membresía debe ser positivo");
         }
-        this.membShipNumb = membShipNumb;
+        Header h = header;
+        header = new Header(membShipNumb, h.prescCode, h.prescDate, h.endDate, h.eSign);
     }
 
     // ============= MÉTODOS AUXILIARES =============
 
     @Override
     public String toString() {
+        Header h = header;
         return "MedicalPrescription{" +
                 "cip=" + cip +
-                ", membShipNumb=" + membShipNumb +
+                ", membShipNumb=" + h.membShipNumb +
                 ", illness='" + illness + '\'' +
-                ", prescCode=" + prescCode +
-                ", prescDate=" + prescDate +
-                ", endDate=" + endDate +
+                ", prescCode=" + h.prescCode +
+                ", prescDate=" + h.prescDate +
+                ", endDate=" + h.endDate +
                 ", lineCount=" + prescriptionLines.size() +
                 ", isComplete=" + isComplete() +
                 '}';
@@ -27,6 +27,15 @@ public class MedicalPrescriptionLine {
         this.guidelines = guidelines;
     }
 
+    /**
+     * Constructor de copia (copia también las pautas)
+     * @param other Línea a copiar
+     */
+    public MedicalPrescriptionLine(MedicalPrescriptionLine other) {
+        this.productID = other.productID;
+        this.guidelines = new TakingGuideline(other.guidelines);
+    }
+
     public ProductID getProductID() {
         return productID;
     }
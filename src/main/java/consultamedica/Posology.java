@@ -30,6 +30,16 @@ public class Posology {
         this.freqUnit = u;
     }
 
+    /**
+     * Constructor de copia
+     * @param other Posología a copiar
+     */
+    public Posology(Posology other) {
+        this.dose = other.dose;
+        this.freq = other.freq;
+        this.freqUnit = other.freqUnit;
+    }
+
     // Getters
     public float getDose() {
         return dose;
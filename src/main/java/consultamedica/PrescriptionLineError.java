@@ -0,0 +1,47 @@
+package consultamedica;
+
+import data.ProductID;
+
+/**
+ * Error de una fila al añadir varias líneas a la vez (ver MedicalPrescription.addLines)
+ */
+public final class PrescriptionLineError {
+    private final int row;
+    private final ProductID product;
+    private final String message;
+
+    public PrescriptionLineError(int row, ProductID product, String message) {
+        if (row < 0) {
+            throw new IllegalArgumentException("La fila no puede ser negativa: " + row);
+        }
+        if (message == null) {
+            throw new IllegalArgumentException("El mensaje no puede ser null");
+        }
+        this.row = row;
+        this.product = product;
+        this.message = message;
+    }
+
+    /**
+     * @return Posición de la fila en la petición
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * @return Producto de la fila, o null si no se indicó
+     */
+    public ProductID getProduct() {
+        return product;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "fila " + row + (product != null ? " (" + product.getCode() + ")" : "") + ": " + message;
+    }
+}
@@ -0,0 +1,122 @@
+package consultamedica;
+
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.PersistentProductIDMap;
+import data.ProductID;
+import data.ePrescripCode;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Versión inmutable de una MedicalPrescription en un momento dado (ver MedicalPrescription.snapshot).
+ *
+ * Comparte las líneas con la prescripción: ésta nunca modifica una línea ya añadida, sino
+ * que la sustituye por una copia, así que el snapshot no cambia aunque se siga editando.
+ * Las líneas compartidas no salen del snapshot: se devuelven copias.
+ * Se puede leer desde varios hilos.
+ */
+public final class PrescriptionSnapshot {
+    private final HealthCardID cip;
+    private final int membShipNumb;
+    private final String illness;
+    private final ePrescripCode prescCode;
+    private final Date prescDate;
+    private final Date endDate;
+    private final DigitalSignature eSign;
+    private final PersistentProductIDMap<MedicalPrescriptionLine> lines;
+
+    PrescriptionSnapshot(HealthCardID cip, int membShipNumb, String illness, ePrescripCode prescCode,
+                         Date prescDate, Date endDate, DigitalSignature eSign,
+                         PersistentProductIDMap<MedicalPrescriptionLine> lines) {
+        this.cip = cip;
+        this.membShipNumb = membShipNumb;
+        this.illness = illness;
+        this.prescCode = prescCode;
+        this.prescDate = prescDate != null ? new Date(prescDate.getTime()) : null;
+        this.endDate = endDate != null ? new Date(endDate.getTime()) : null;
+        this.eSign = eSign;
+        this.lines = lines;
+    }
+
+    // ============= LÍNEAS =============
+
+    /**
+     * @return Copia de la línea del producto, o null si no está en la prescripción
+     */
+    public MedicalPrescriptionLine getLine(ProductID prodID) {
+        MedicalPrescriptionLine line = lines.get(prodID);
+        return line != null ? new MedicalPrescriptionLine(line) : null;
+    }
+
+    public boolean containsProduct(ProductID prodID) {
+        return lines.containsKey(prodID);
+    }
+
+    public int getLineCount() {
+        return lines.size();
+    }
+
+    /**
+     * @return Lista nueva con copias de las líneas
+     */
+    public List<MedicalPrescriptionLine> getAllLines() {
+        return MedicalPrescription.copyLines(lines);
+    }
+
+    /**
+     * Recorre las líneas sin crear la lista; cada línea recibida es una copia
+     */
+    public void forEachLine(BiConsumer<? super ProductID, ? super MedicalPrescriptionLine> action) {
+        lines.forEach((prodID, line) -> action.accept(prodID, new MedicalPrescriptionLine(line)));
+    }
+
+    // ============= GETTERS =============
+
+    public HealthCardID getCip() {
+        return cip;
+    }
+
+    public int getMembShipNumb() {
+        return membShipNumb;
+    }
+
+    public String getIllness() {
+        return illness;
+    }
+
+    public ePrescripCode getPrescCode() {
+        return prescCode;
+    }
+
+    public Date getPrescDate() {
+        return prescDate != null ? new Date(prescDate.getTime()) : null;
+    }
+
+    public Date getEndDate() {
+        return endDate != null ? new Date(endDate.getTime()) : null;
+    }
+
+    public DigitalSignature geteSign() {
+        return eSign;
+    }
+
+    /**
+     * @return true si la versión estaba completa (ver MedicalPrescription.isComplete)
+     */
+    public boolean isComplete() {
+        return prescCode != null && prescDate != null && endDate != null && eSign != null && !lines.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "PrescriptionSnapshot{" +
+                "cip=" + cip +
+                ", illness='" + illness + '\'' +
+                ", prescCode=" + prescCode +
+                ", lineCount=" + lines.size() +
+                '}';
+    }
+}
@@ -1,10 +1,13 @@
 package consultamedica;
 
+import data.DomainErrorCode;
+import data.DomainException;
+
 /**
  * Excepción lanzada cuando se intenta añadir un producto que ya existe en la prescripción
  */
-public class ProductAlreadyInPrescriptionException extends Exception {
+public class ProductAlreadyInPrescriptionException extends DomainException {
     public ProductAlreadyInPrescriptionException(String message) {
-        super(message);
+        super(DomainErrorCode.PRODUCT_ALREADY_IN_PRESCRIPTION, message);
     }
-}
+}
\ No newline at end of file
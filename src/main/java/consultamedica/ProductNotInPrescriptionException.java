@@ -1,10 +1,13 @@
 package consultamedica;
 
+import data.DomainErrorCode;
+import data.DomainException;
+
 /**
  * Excepción lanzada cuando se intenta modificar/eliminar un producto que no existe
  */
-public class ProductNotInPrescriptionException extends Exception {
+public class ProductNotInPrescriptionException extends DomainException {
     public ProductNotInPrescriptionException(String message) {
-        super(message);
+        super(DomainErrorCode.PRODUCT_NOT_IN_PRESCRIPTION, message);
     }
-}
+}
\ No newline at end of file
@@ -48,6 +48,18 @@ public class TakingGuideline {
         this(dM, du, new Posology(d, f, fu), i);
     }
 
+    /**
+     * Constructor de copia (copia también la posología)
+     *
+     * @param other Pautas a copiar
+     */
+    public TakingGuideline(TakingGuideline other) {
+        this.dMoment = other.dMoment;
+        this.duration = other.duration;
+        this.posology = new Posology(other.posology);
+        this.instructions = other.instructions;
+    }
+
     // Getters
     public dayMoment getdMoment() {
         return dMoment;
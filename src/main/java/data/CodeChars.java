@@ -0,0 +1,64 @@
+package data;
+
+import java.util.BitSet;
+
+/**
+ * Tablas de clases de caracteres para validar los códigos (CIP, UPC, código de prescripción)
+ * en una sola pasada, sin expresiones regulares ni objetos intermedios.
+ */
+final class CodeChars {
+    static final int DIGIT = 1;        // [0-9]
+    static final int ALPHANUMERIC = 2; // [a-zA-Z0-9]
+    static final int PRESCRIPTION = 4; // [a-zA-Z0-9-]
+
+    private static final byte[] CLASSES = new byte[128];
+
+    static {
+        for (char c = '0'; c <= '9'; c++) {
+            CLASSES[c] = DIGIT | ALPHANUMERIC | PRESCRIPTION;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            CLASSES[c] = ALPHANUMERIC | PRESCRIPTION;
+            CLASSES[c - 'a' + 'A'] = ALPHANUMERIC | PRESCRIPTION;
+        }
+        CLASSES['-'] = PRESCRIPTION;
+    }
+
+    private CodeChars() {
+    }
+
+    /**
+     * @return true si todos los caracteres pertenecen a la clase (sólo ASCII)
+     */
+    static boolean all(CharSequence s, int charClass) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 128 || (CLASSES[c] & charClass) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isDigit(char c) {
+        return c < 128 && (CLASSES[c] & DIGIT) != 0;
+    }
+
+    /**
+     * @return Posiciones de los códigos válidos
+     */
+    static BitSet validateAll(CharSequence[] codes, int minLength, int maxLength, int charClass) {
+        if (codes == null) {
+            throw new IllegalArgumentException("La lista de códigos no puede ser null");
+        }
+        BitSet valid = new BitSet(codes.length);
+        for (int i = 0; i < codes.length; i++) {
+            CharSequence code = codes[i];
+            if (code != null && code.length() >= minLength && code.length() <= maxLength
+                    && all(code, charClass)) {
+                valid.set(i);
+            }
+        }
+        return valid;
+    }
+}
@@ -5,10 +5,10 @@ final public class DigitalSignature {
 
     public DigitalSignature(byte[] signature) throws InvalidDigitalSignatureException {
         if (signature == null) {
-            throw new InvalidDigitalSignatureException("La firma digital no puede ser null");
+            throw InvalidDigitalSignatureException.of("La firma digital no puede ser null");
         }
         if (signature.length == 0) {
-            throw new InvalidDigitalSignatureException("La firma digital no puede estar vacía");
+            throw InvalidDigitalSignatureException.of("La firma digital no puede estar vacía");
         }
         this.signature = signature.clone();
     }
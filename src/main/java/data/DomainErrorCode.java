@@ -0,0 +1,17 @@
+package data;
+
+/**
+ * Códigos de error de las excepciones de dominio (ver DomainException), para que quien
+ * las capture pueda distinguirlas sin comparar mensajes
+ */
+public enum DomainErrorCode {
+    INVALID_HEALTH_CARD_ID,
+    INVALID_PRODUCT_ID,
+    INVALID_PRESCRIP_CODE,
+    INVALID_DIGITAL_SIGNATURE,
+    PROCEDURE_ORDER,
+    INCORRECT_TAKING_GUIDELINES,
+    INCORRECT_PRESCRIPTION_LINES,
+    PRODUCT_ALREADY_IN_PRESCRIPTION,
+    PRODUCT_NOT_IN_PRESCRIPTION
+}
@@ -0,0 +1,92 @@
+package data;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Base de las excepciones de dominio: errores esperados de validación y de orden del
+ * caso de uso, que se lanzan ante equivocaciones normales del médico o sugerencias
+ * incorrectas de la IA.
+ *
+ * Rellenar la traza de pila es la mayor parte del coste de crear una excepción. Con
+ * setStackTracesEnabled(false) las excepciones nuevas no guardan traza y las de mensaje
+ * fijo pueden reutilizarse (ver shared). Quien las captura no nota diferencia salvo en
+ * getStackTrace, que queda vacío. Por defecto se guardan las trazas.
+ */
+public abstract class DomainException extends Exception {
+
+    private static volatile boolean stackTracesEnabled = true;
+
+    private final DomainErrorCode errorCode;
+
+    protected DomainException(DomainErrorCode errorCode, String message) {
+        // Constructor de un solo argumento: la causa queda sin fijar y initCause sigue disponible
+        super(message);
+        if (errorCode == null) {
+            throw new IllegalArgumentException("El código de error no puede ser null");
+        }
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * Constructor de instancias compartidas: como en Throwable, fija la causa (a ninguna)
+     * y permite desactivar la traza y las excepciones suprimidas, de modo que la instancia
+     * no acumula estado entre usos
+     */
+    protected DomainException(DomainErrorCode errorCode, String message,
+                              boolean enableSuppression, boolean writableStackTrace) {
+        super(message, null, enableSuppression, writableStackTrace);
+        if (errorCode == null) {
+            throw new IllegalArgumentException("El código de error no puede ser null");
+        }
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * @return Código del error, estable frente a cambios en el texto del mensaje
+     */
+    public DomainErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    // ============= CONFIGURACIÓN =============
+
+    /**
+     * Activa o desactiva la traza de pila de las excepciones de dominio que se creen a partir de ahora
+     */
+    public static void setStackTracesEnabled(boolean enabled) {
+        stackTracesEnabled = enabled;
+    }
+
+    public static boolean isStackTracesEnabled() {
+        return stackTracesEnabled;
+    }
+
+    /**
+     * Sin trazas activadas no se recorre la pila al crear la excepción
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return stackTracesEnabled ? super.fillInStackTrace() : this;
+    }
+
+    /**
+     * Excepción para un mensaje fijo: sin trazas, una instancia compartida por mensaje;
+     * con trazas, una nueva en cada llamada para no perder dónde se lanzó
+     * @param cache Instancias compartidas de la clase, por mensaje
+     * @param create Crea una excepción normal
+     * @param createShared Crea la instancia compartida (sin traza ni excepciones suprimidas)
+     */
+    protected static <E extends DomainException> E shared(Map<String, E> cache, String message,
+                                                         Function<String, E> create,
+                                                         Function<String, E> createShared) {
+        if (stackTracesEnabled) {
+            return create.apply(message);
+        }
+        E e = cache.get(message);
+        if (e == null) {
+            e = cache.computeIfAbsent(message, createShared);
+        }
+        return e;
+    }
+}
@@ -3,23 +3,56 @@ package data;
 
 import consultamedica.IncorrectParametersException;
 
+import java.util.BitSet;
+
 /**
  * The personal identifying code in the National Health Service.
  */
 final public class HealthCardID {
+    private static final WeakInterner<HealthCardID> POOL = new WeakInterner<>();
+
     private final String personalID;
     public HealthCardID(String code) throws InvalidHealthCardIDException {
         if (code == null) {
-            throw new InvalidHealthCardIDException("La personalID no puede ser nula");
+            throw InvalidHealthCardIDException.of("La personalID no puede ser nula");
         }
         if (code.length() != 16) {
-            throw new InvalidHealthCardIDException("El código debe tener 16 caracteres");
+            throw InvalidHealthCardIDException.of("El código debe tener 16 caracteres");
         }
-        if (!code.matches("[a-zA-Z0-9]{16}")) {
-            throw new InvalidHealthCardIDException("El código debe ser alfanumérico");
+        if (!CodeChars.all(code, CodeChars.ALPHANUMERIC)) {
+            throw InvalidHealthCardIDException.of("El código debe ser alfanumérico");
         }
         this.personalID = code;
     }
+    /**
+     * Instancia compartida del código: los mismos pacientes aparecen en muchas sesiones,
+     * cachés y envíos, y así todos usan el mismo objeto (equals acaba en la comparación
+     * de identidad). Valida igual que el constructor.
+     */
+    public static HealthCardID of(String code) throws InvalidHealthCardIDException {
+        HealthCardID pooled = code == null ? null : POOL.get(code);
+        if (pooled != null) {
+            return pooled;
+        }
+        HealthCardID created = new HealthCardID(code);
+        return POOL.intern(created.personalID, created);
+    }
+
+    /**
+     * @return true si el constructor aceptaría el código (16 caracteres alfanuméricos)
+     */
+    public static boolean isValid(CharSequence code) {
+        return code != null && code.length() == 16 && CodeChars.all(code, CodeChars.ALPHANUMERIC);
+    }
+
+    /**
+     * Valida un lote de códigos (p. ej. al importar pacientes) sin crear excepciones
+     * @return Posiciones de los códigos válidos
+     */
+    public static BitSet validateAll(CharSequence[] codes) {
+        return CodeChars.validateAll(codes, 16, 16, CodeChars.ALPHANUMERIC);
+    }
+
     public String getPersonalID() {
         return personalID;
     }
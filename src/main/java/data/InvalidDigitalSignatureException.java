@@ -1,7 +1,24 @@
 package data;
 
-public class InvalidDigitalSignatureException extends Exception {
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InvalidDigitalSignatureException extends DomainException {
+    private static final Map<String, InvalidDigitalSignatureException> SHARED = new ConcurrentHashMap<>();
+
     public InvalidDigitalSignatureException(String message) {
-        super(message);
+        super(DomainErrorCode.INVALID_DIGITAL_SIGNATURE, message);
+    }
+
+    private InvalidDigitalSignatureException(String message, boolean enableSuppression, boolean writableStackTrace) {
+        super(DomainErrorCode.INVALID_DIGITAL_SIGNATURE, message, enableSuppression, writableStackTrace);
+    }
+
+    /**
+     * @param message Mensaje fijo (ver DomainException.shared)
+     */
+    static InvalidDigitalSignatureException of(String message) {
+        return shared(SHARED, message, InvalidDigitalSignatureException::new,
+                m -> new InvalidDigitalSignatureException(m, false, false));
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,24 @@
 package data;
 
-public class InvalidHealthCardIDException extends Exception {
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InvalidHealthCardIDException extends DomainException {
+    private static final Map<String, InvalidHealthCardIDException> SHARED = new ConcurrentHashMap<>();
+
     public InvalidHealthCardIDException(String message) {
-        super(message);
+        super(DomainErrorCode.INVALID_HEALTH_CARD_ID, message);
+    }
+
+    private InvalidHealthCardIDException(String message, boolean enableSuppression, boolean writableStackTrace) {
+        super(DomainErrorCode.INVALID_HEALTH_CARD_ID, message, enableSuppression, writableStackTrace);
+    }
+
+    /**
+     * @param message Mensaje fijo (ver DomainException.shared)
+     */
+    static InvalidHealthCardIDException of(String message) {
+        return shared(SHARED, message, InvalidHealthCardIDException::new,
+                m -> new InvalidHealthCardIDException(m, false, false));
     }
 }
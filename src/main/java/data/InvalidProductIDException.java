@@ -1,7 +1,24 @@
 package data;
 
-public class InvalidProductIDException extends Exception {
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InvalidProductIDException extends DomainException {
+    private static final Map<String, InvalidProductIDException> SHARED = new ConcurrentHashMap<>();
+
     public InvalidProductIDException(String message) {
-        super(message);
+        super(DomainErrorCode.INVALID_PRODUCT_ID, message);
+    }
+
+    private InvalidProductIDException(String message, boolean enableSuppression, boolean writableStackTrace) {
+        super(DomainErrorCode.INVALID_PRODUCT_ID, message, enableSuppression, writableStackTrace);
+    }
+
+    /**
+     * @param message Mensaje fijo (ver DomainException.shared)
+     */
+    static InvalidProductIDException of(String message) {
+        return shared(SHARED, message, InvalidProductIDException::new,
+                m -> new InvalidProductIDException(m, false, false));
     }
 }
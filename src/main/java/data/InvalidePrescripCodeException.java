@@ -1,7 +1,24 @@
 package data;
 
-public class InvalidePrescripCodeException extends Exception {
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InvalidePrescripCodeException extends DomainException {
+    private static final Map<String, InvalidePrescripCodeException> SHARED = new ConcurrentHashMap<>();
+
     public InvalidePrescripCodeException(String message) {
-        super(message);
+        super(DomainErrorCode.INVALID_PRESCRIP_CODE, message);
+    }
+
+    private InvalidePrescripCodeException(String message, boolean enableSuppression, boolean writableStackTrace) {
+        super(DomainErrorCode.INVALID_PRESCRIP_CODE, message, enableSuppression, writableStackTrace);
+    }
+
+    /**
+     * @param message Mensaje fijo (ver DomainException.shared)
+     */
+    static InvalidePrescripCodeException of(String message) {
+        return shared(SHARED, message, InvalidePrescripCodeException::new,
+                m -> new InvalidePrescripCodeException(m, false, false));
     }
 }
@@ -0,0 +1,333 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Mapa inmutable indexado por ProductID, con estructura compartida entre versiones.
+ *
+ * Es un trie de hash (HAMT) sobre el código empaquetado del producto: cada nivel consume
+ * 5 bits del hash y los nodos guardan sólo las ramas ocupadas, señaladas en un mapa de bits.
+ * plus y minus devuelven un mapa nuevo que copia únicamente el camino hasta la entrada
+ * (O(log32 n) nodos) y comparte el resto con la versión anterior, que no cambia. Por eso
+ * cualquier versión se puede leer desde varios hilos sin sincronizar.
+ *
+ * El hash del código es una biyección sobre 64 bits, así que dos productos distintos nunca
+ * comparten hash completo y no hacen falta nodos de colisión.
+ */
+public final class PersistentProductIDMap<V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentProductIDMap<?> EMPTY = new PersistentProductIDMap<>(Node.EMPTY, 0);
+
+    /**
+     * Nodo del trie: entradas en línea (dataMap) y subnodos (nodeMap), en orden de bit
+     */
+    private static final class Node {
+        static final Node EMPTY = new Node(0, 0, new long[0], new ProductID[0], new Object[0], new Node[0]);
+
+        final int dataMap;
+        final int nodeMap;
+        final long[] keys;
+        final ProductID[] ids;
+        final Object[] values;
+        final Node[] children;
+
+        Node(int dataMap, int nodeMap, long[] keys, ProductID[] ids, Object[] values, Node[] children) {
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.keys = keys;
+            this.ids = ids;
+            this.values = values;
+            this.children = children;
+        }
+
+        static Node single(long key, ProductID id, Object value, long hash, int shift) {
+            return new Node(1 << fragment(hash, shift), 0,
+                    new long[]{key}, new ProductID[]{id}, new Object[]{value}, new Node[0]);
+        }
+
+        /**
+         * Nodo con dos entradas cuyos hashes coinciden hasta shift (sin incluir)
+         */
+        static Node pair(long key1, ProductID id1, Object value1, long hash1,
+                         long key2, ProductID id2, Object value2, long hash2, int shift) {
+            int f1 = fragment(hash1, shift);
+            int f2 = fragment(hash2, shift);
+            if (f1 == f2) {
+                Node child = pair(key1, id1, value1, hash1, key2, id2, value2, hash2, shift + BITS);
+                return new Node(0, 1 << f1, new long[0], new ProductID[0], new Object[0], new Node[]{child});
+            }
+            if (f1 < f2) {
+                return new Node((1 << f1) | (1 << f2), 0, new long[]{key1, key2},
+                        new ProductID[]{id1, id2}, new Object[]{value1, value2}, new Node[0]);
+            }
+            return new Node((1 << f1) | (1 << f2), 0, new long[]{key2, key1},
+                    new ProductID[]{id2, id1}, new Object[]{value2, value1}, new Node[0]);
+        }
+
+        int entryCount() {
+            return keys.length;
+        }
+
+        int childCount() {
+            return children.length;
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private PersistentProductIDMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentProductIDMap<V> empty() {
+        return (PersistentProductIDMap<V>) EMPTY;
+    }
+
+    // ============= CONSULTAS =============
+
+    public V get(ProductID id) {
+        return get(id.getPackedCode());
+    }
+
+    /**
+     * @param packedCode Código empaquetado del producto (ProductID.getPackedCode)
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long packedCode) {
+        long hash = hash(packedCode);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            int bit = 1 << fragment(hash, shift);
+            if ((node.dataMap & bit) != 0) {
+                int index = index(node.dataMap, bit);
+                return node.keys[index] == packedCode ? (V) node.values[index] : null;
+            }
+            if ((node.nodeMap & bit) == 0) {
+                return null;
+            }
+            node = node.children[index(node.nodeMap, bit)];
+        }
+    }
+
+    public boolean containsKey(ProductID id) {
+        return get(id.getPackedCode()) != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // ============= VERSIONES NUEVAS =============
+
+    /**
+     * @return Mapa con el producto asociado a value (no admite valores null); este no cambia
+     */
+    public PersistentProductIDMap<V> plus(ProductID id, V value) {
+        if (id == null) {
+            throw new IllegalArgumentException("El ProductID no puede ser null");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("El valor no puede ser null");
+        }
+        long key = id.getPackedCode();
+        boolean[] added = new boolean[1];
+        Node newRoot = plus(root, key, id, value, hash(key), 0, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentProductIDMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @return Mapa sin el producto, o este mismo si no estaba
+     */
+    public PersistentProductIDMap<V> minus(ProductID id) {
+        long key = id.getPackedCode();
+        Node newRoot = minus(root, key, hash(key), 0);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentProductIDMap<>(newRoot, size - 1);
+    }
+
+    // ============= RECORRIDOS =============
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super ProductID, ? super V> action) {
+        forEach(root, (BiConsumer<ProductID, Object>) action);
+    }
+
+    /**
+     * @return Lista nueva con los valores
+     */
+    public List<V> values() {
+        List<V> list = new ArrayList<>(size);
+        forEach((id, value) -> list.add(value));
+        return list;
+    }
+
+    /**
+     * @return Lista nueva con los productos
+     */
+    public List<ProductID> keys() {
+        List<ProductID> list = new ArrayList<>(size);
+        forEach((id, value) -> list.add(id));
+        return list;
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    private static Node plus(Node node, long key, ProductID id, Object value, long hash, int shift,
+                             boolean[] added) {
+        int bit = 1 << fragment(hash, shift);
+        if ((node.dataMap & bit) != 0) {
+            int index = index(node.dataMap, bit);
+            if (node.keys[index] == key) {
+                if (node.values[index] == value) {
+                    return node;
+                }
+                Object[] values = node.values.clone();
+                values[index] = value;
+                return new Node(node.dataMap, node.nodeMap, node.keys, node.ids, values, node.children);
+            }
+            // Otra entrada en la misma rama: ambas bajan a un subnodo
+            long otherKey = node.keys[index];
+            Node child = Node.pair(otherKey, node.ids[index], node.values[index], hash(otherKey),
+                    key, id, value, hash, shift + BITS);
+            added[0] = true;
+            return moveEntryToChild(node, bit, index, child);
+        }
+        if ((node.nodeMap & bit) != 0) {
+            int index = index(node.nodeMap, bit);
+            Node child = node.children[index];
+            Node newChild = plus(child, key, id, value, hash, shift + BITS, added);
+            if (newChild == child) {
+                return node;
+            }
+            Node[] children = node.children.clone();
+            children[index] = newChild;
+            return new Node(node.dataMap, node.nodeMap, node.keys, node.ids, node.values, children);
+        }
+        added[0] = true;
+        int index = index(node.dataMap, bit);
+        return new Node(node.dataMap | bit, node.nodeMap,
+                insert(node.keys, index, key), insert(node.ids, index, id, new ProductID[node.ids.length + 1]),
+                insert(node.values, index, value, new Object[node.values.length + 1]), node.children);
+    }
+
+    private static Node minus(Node node, long key, long hash, int shift) {
+        int bit = 1 << fragment(hash, shift);
+        if ((node.dataMap & bit) != 0) {
+            int index = index(node.dataMap, bit);
+            if (node.keys[index] != key) {
+                return node;
+            }
+            return new Node(node.dataMap ^ bit, node.nodeMap,
+                    remove(node.keys, index), remove(node.ids, index, new ProductID[node.ids.length - 1]),
+                    remove(node.values, index, new Object[node.values.length - 1]), node.children);
+        }
+        if ((node.nodeMap & bit) == 0) {
+            return node;
+        }
+        int index = index(node.nodeMap, bit);
+        Node child = node.children[index];
+        Node newChild = minus(child, key, hash, shift + BITS);
+        if (newChild == child) {
+            return node;
+        }
+        if (newChild.childCount() == 0 && newChild.entryCount() == 1) {
+            // Un subnodo con una sola entrada vuelve al padre: el trie no crece al borrar
+            return moveChildToEntry(node, bit, index, newChild);
+        }
+        Node[] children = node.children.clone();
+        children[index] = newChild;
+        return new Node(node.dataMap, node.nodeMap, node.keys, node.ids, node.values, children);
+    }
+
+    private static Node moveEntryToChild(Node node, int bit, int dataIndex, Node child) {
+        int childIndex = index(node.nodeMap, bit);
+        Node[] children = new Node[node.children.length + 1];
+        System.arraycopy(node.children, 0, children, 0, childIndex);
+        children[childIndex] = child;
+        System.arraycopy(node.children, childIndex, children, childIndex + 1, node.children.length - childIndex);
+        return new Node(node.dataMap ^ bit, node.nodeMap | bit,
+                remove(node.keys, dataIndex), remove(node.ids, dataIndex, new ProductID[node.ids.length - 1]),
+                remove(node.values, dataIndex, new Object[node.values.length - 1]), children);
+    }
+
+    private static Node moveChildToEntry(Node node, int bit, int childIndex, Node child) {
+        Node[] children = new Node[node.children.length - 1];
+        System.arraycopy(node.children, 0, children, 0, childIndex);
+        System.arraycopy(node.children, childIndex + 1, children, childIndex, children.length - childIndex);
+        int dataIndex = index(node.dataMap, bit);
+        return new Node(node.dataMap | bit, node.nodeMap ^ bit,
+                insert(node.keys, dataIndex, child.keys[0]),
+                insert(node.ids, dataIndex, child.ids[0], new ProductID[node.ids.length + 1]),
+                insert(node.values, dataIndex, child.values[0], new Object[node.values.length + 1]), children);
+    }
+
+    private static void forEach(Node node, BiConsumer<ProductID, Object> action) {
+        for (int i = 0; i < node.keys.length; i++) {
+            action.accept(node.ids[i], node.values[i]);
+        }
+        for (Node child : node.children) {
+            forEach(child, action);
+        }
+    }
+
+    /**
+     * Mezcla los bits del código (los códigos UPC consecutivos son frecuentes).
+     * Multiplicar por un impar y el xor-desplazamiento son invertibles: no hay colisiones
+     */
+    private static long hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private static int fragment(long hash, int shift) {
+        return (int) (hash >>> shift) & MASK;
+    }
+
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    private static long[] insert(long[] array, int index, long value) {
+        long[] result = new long[array.length + 1];
+        System.arraycopy(array, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        return result;
+    }
+
+    private static <T> T[] insert(T[] array, int index, T value, T[] result) {
+        System.arraycopy(array, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        return result;
+    }
+
+    private static long[] remove(long[] array, int index) {
+        long[] result = new long[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    private static <T> T[] remove(T[] array, int index, T[] result) {
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, result.length - index);
+        return result;
+    }
+}
@@ -1,41 +1,118 @@
 package data;
 
+import java.util.BitSet;
+
+/**
+ * Código UPC de un producto: 12 dígitos decimales. Como caben en un long, el código
+ * se guarda también empaquetado (getPackedCode) para compararlo y usarlo como clave
+ * sin tocar el String (ver ProductIDMap).
+ */
 final public class ProductID {
+    /**
+     * Mayor código posible: 999999999999
+     */
+    public static final long MAX_PACKED_CODE = 999_999_999_999L;
+    private static final WeakInterner<ProductID> POOL = new WeakInterner<>();
+
     private final String code;
+    private final long packed;
 
     public ProductID(String code) throws InvalidProductIDException {
         if (code == null) {
-            throw new InvalidProductIDException("El código de producto no puede ser null");
+            throw InvalidProductIDException.of("El código de producto no puede ser null");
         }
         if (code.length() != 12) {
-            throw new InvalidProductIDException("El código UPC debe tener 12 dígitos");
+            throw InvalidProductIDException.of("El código UPC debe tener 12 dígitos");
         }
-        if (!code.matches("\\d{12}")) {
-            throw new InvalidProductIDException("El código UPC debe ser numérico");
+        long value = 0;
+        for (int i = 0; i < 12; i++) {
+            char c = code.charAt(i);
+            if (!CodeChars.isDigit(c)) {
+                throw InvalidProductIDException.of("El código UPC debe ser numérico");
+            }
+            value = value * 10 + (c - '0');
         }
         this.code = code;
+        this.packed = value;
+    }
+
+    private ProductID(String code, long packed) {
+        this.code = code;
+        this.packed = packed;
+    }
+
+    /**
+     * Instancia compartida del código: los medicamentos más recetados se repiten en todas
+     * las prescripciones y sugerencias de la IA. Valida igual que el constructor.
+     */
+    public static ProductID of(String code) throws InvalidProductIDException {
+        ProductID pooled = code == null ? null : POOL.get(code);
+        if (pooled != null) {
+            return pooled;
+        }
+        ProductID created = new ProductID(code);
+        return POOL.intern(created.code, created);
+    }
+
+    /**
+     * Reconstruye un ProductID a partir de su código empaquetado
+     * @param packed Código entre 0 y MAX_PACKED_CODE
+     */
+    public static ProductID fromPackedCode(long packed) throws InvalidProductIDException {
+        if (packed < 0 || packed > MAX_PACKED_CODE) {
+            throw InvalidProductIDException.of("El código UPC debe tener 12 dígitos");
+        }
+        char[] digits = new char[12];
+        long value = packed;
+        for (int i = 11; i >= 0; i--) {
+            digits[i] = (char) ('0' + (int) (value % 10));
+            value /= 10;
+        }
+        return new ProductID(new String(digits), packed);
+    }
+
+    /**
+     * @return true si el constructor aceptaría el código (12 dígitos)
+     */
+    public static boolean isValid(CharSequence code) {
+        return code != null && code.length() == 12 && CodeChars.all(code, CodeChars.DIGIT);
+    }
+
+    /**
+     * Valida un lote de códigos (p. ej. al importar el catálogo) sin crear excepciones
+     * @return Posiciones de los códigos válidos
+     */
+    public static BitSet validateAll(CharSequence[] codes) {
+        return CodeChars.validateAll(codes, 12, 12, CodeChars.DIGIT);
     }
 
     public String getCode() {
         return code;
     }
 
+    /**
+     * @return Los 12 dígitos del código como número
+     */
+    public long getPackedCode() {
+        return packed;
+    }
+
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ProductID productID = (ProductID) o;
-        return code.equals(productID.code);
+        return packed == productID.packed;
     }
 
     @Override
     public int hashCode() {
-        return code.hashCode();
+        return Long.hashCode(packed);
     }
 
     @Override
     public String toString() {
         return "ProductID{" + "code='" + code + '\'' + '}';
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,246 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Mapa indexado por ProductID sobre el código empaquetado (long) del producto.
+ *
+ * Direccionamiento abierto con sondeo lineal en arrays paralelos: buscar no crea
+ * objetos ni calcula el hash del String del código. Al borrar se desplazan hacia atrás
+ * las entradas siguientes del grupo, así que no quedan marcas de borrado.
+ * No es seguro para varios hilos.
+ */
+public final class ProductIDMap<V> {
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private ProductID[] ids; // null: hueco libre
+    private Object[] values;
+    private int size;
+
+    public ProductIDMap() {
+        this(0);
+    }
+
+    /**
+     * @param expectedSize Entradas que se espera guardar sin redimensionar
+     */
+    public ProductIDMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Tamaño esperado negativo: " + expectedSize);
+        }
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Copia superficial: los valores se comparten
+     */
+    public ProductIDMap(ProductIDMap<? extends V> other) {
+        this.keys = other.keys.clone();
+        this.ids = other.ids.clone();
+        this.values = other.values.clone();
+        this.size = other.size;
+    }
+
+    // ============= CONSULTAS =============
+
+    public V get(ProductID id) {
+        int slot = find(id.getPackedCode());
+        return slot < 0 ? null : value(slot);
+    }
+
+    /**
+     * @param packedCode Código empaquetado del producto (ProductID.getPackedCode)
+     */
+    public V get(long packedCode) {
+        int slot = find(packedCode);
+        return slot < 0 ? null : value(slot);
+    }
+
+    public boolean containsKey(ProductID id) {
+        return find(id.getPackedCode()) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // ============= MODIFICACIONES =============
+
+    /**
+     * @return Valor anterior del producto, o null si no estaba
+     */
+    public V put(ProductID id, V value) {
+        if (id == null) {
+            throw new IllegalArgumentException("El ProductID no puede ser null");
+        }
+        long key = id.getPackedCode();
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (ids[slot] != null) {
+            if (keys[slot] == key) {
+                V previous = value(slot);
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        ids[slot] = id;
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > keys.length * 3 / 4) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @return Valor eliminado, o null si el producto no estaba
+     */
+    public V remove(ProductID id) {
+        int slot = find(id.getPackedCode());
+        if (slot < 0) {
+            return null;
+        }
+        V removed = value(slot);
+        size--;
+
+        // Desplazar hacia atrás las entradas del grupo que ya no serían alcanzables
+        int mask = keys.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (ids[next] != null) {
+            int home = slot(keys[next], mask);
+            // La entrada puede ocupar el hueco si su posición ideal no está entre hueco y next
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                ids[hole] = ids[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        ids[hole] = null;
+        values[hole] = null;
+        return removed;
+    }
+
+    /**
+     * Reserva espacio para que quepan expectedSize entradas sin redimensionar
+     */
+    public void ensureCapacity(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        if (capacity > keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(ids, null);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // ============= RECORRIDOS =============
+
+    public void forEach(BiConsumer<? super ProductID, ? super V> action) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != null) {
+                action.accept(ids[i], value(i));
+            }
+        }
+    }
+
+    /**
+     * @return Lista nueva con los valores
+     */
+    public List<V> values() {
+        List<V> list = new ArrayList<>(size);
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != null) {
+                list.add(value(i));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return Lista nueva con los productos
+     */
+    public List<ProductID> keys() {
+        List<ProductID> list = new ArrayList<>(size);
+        for (ProductID id : ids) {
+            if (id != null) {
+                list.add(id);
+            }
+        }
+        return list;
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (ids[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Mezcla los bits del código (los códigos UPC consecutivos son frecuentes)
+     */
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        ids = new ProductID[capacity];
+        values = new Object[capacity];
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        ProductID[] oldIds = ids;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != null) {
+                int slot = slot(oldKeys[i], mask);
+                while (ids[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                ids[slot] = oldIds[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int slot) {
+        return (V) values[slot];
+    }
+}
@@ -0,0 +1,71 @@
+package data;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Conjunto concurrente de instancias canónicas por código (HealthCardID.of, ProductID.of).
+ * Las instancias se guardan con referencias débiles: en cuanto nadie más usa una, el
+ * recolector la libera y su entrada se purga en la siguiente operación.
+ */
+final class WeakInterner<T> {
+
+    private static final class Ref<T> extends WeakReference<T> {
+        final String code;
+
+        Ref(String code, T value, ReferenceQueue<? super T> queue) {
+            super(value, queue);
+            this.code = code;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Ref<T>> entries = new ConcurrentHashMap<>();
+    private final ReferenceQueue<T> collected = new ReferenceQueue<>();
+
+    /**
+     * @return Instancia canónica del código, o null si no hay ninguna viva
+     */
+    T get(String code) {
+        Ref<T> ref = entries.get(code);
+        return ref == null ? null : ref.get();
+    }
+
+    /**
+     * Registra la instancia si no hay otra viva para el código
+     * @param code Código de la instancia (se guarda como clave)
+     * @return La instancia canónica: la ya registrada o candidate
+     */
+    T intern(String code, T candidate) {
+        expunge();
+        while (true) {
+            Ref<T> ref = entries.putIfAbsent(code, new Ref<>(code, candidate, collected));
+            if (ref == null) {
+                return candidate;
+            }
+            T existing = ref.get();
+            if (existing != null) {
+                return existing;
+            }
+            // La anterior ya se ha liberado: se sustituye si nadie se ha adelantado
+            if (entries.replace(code, ref, new Ref<>(code, candidate, collected))) {
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * @return Entradas registradas (incluidas las liberadas aún no purgadas)
+     */
+    int size() {
+        expunge();
+        return entries.size();
+    }
+
+    private void expunge() {
+        Ref<?> ref;
+        while ((ref = (Ref<?>) collected.poll()) != null) {
+            entries.remove(ref.code, ref);
+        }
+    }
+}
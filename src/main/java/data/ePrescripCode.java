@@ -1,21 +1,39 @@
 package data;
 
+import java.util.BitSet;
+
 final public class ePrescripCode {
     private final String code;
 
     public ePrescripCode(String code) throws InvalidePrescripCodeException {
         if (code == null) {
-            throw new InvalidePrescripCodeException("El código de prescripción no puede ser null");
+            throw InvalidePrescripCodeException.of("El código de prescripción no puede ser null");
         }
         if (code.length() < 8 || code.length() > 20) {
-            throw new InvalidePrescripCodeException("El código debe tener entre 8 y 20 caracteres");
+            throw InvalidePrescripCodeException.of("El código debe tener entre 8 y 20 caracteres");
         }
-        if (!code.matches("[a-zA-Z0-9-]{8,20}")) {
-            throw new InvalidePrescripCodeException("El código debe ser alfanumérico y puede contener guiones");
+        if (!CodeChars.all(code, CodeChars.PRESCRIPTION)) {
+            throw InvalidePrescripCodeException.of("El código debe ser alfanumérico y puede contener guiones");
         }
         this.code = code;
     }
 
+    /**
+     * @return true si el constructor aceptaría el código (8 a 20 caracteres alfanuméricos o guiones)
+     */
+    public static boolean isValid(CharSequence code) {
+        return code != null && code.length() >= 8 && code.length() <= 20
+                && CodeChars.all(code, CodeChars.PRESCRIPTION);
+    }
+
+    /**
+     * Valida un lote de códigos sin crear excepciones
+     * @return Posiciones de los códigos válidos
+     */
+    public static BitSet validateAll(CharSequence[] codes) {
+        return CodeChars.validateAll(codes, 8, 20, CodeChars.PRESCRIPTION);
+    }
+
     public String getCode() {
         return code;
     }
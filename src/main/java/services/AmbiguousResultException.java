@@ -0,0 +1,13 @@
+package services;
+
+/**
+ * Excepción lanzada cuando una petición que modifica el SNS ha podido llegar a procesarse
+ * pero no se conoce el resultado (respuesta perdida, cortada o ilegible, o tiempo agotado
+ * tras enviarla). No equivale a un SNS no disponible: reenviarla podría registrar dos veces
+ * la misma prescripción, así que no se reintenta ni se guarda para más tarde.
+ */
+public class AmbiguousResultException extends IllegalStateException {
+    public AmbiguousResultException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
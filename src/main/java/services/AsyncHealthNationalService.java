@@ -0,0 +1,22 @@
+package services;
+
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Versión asíncrona de HealthNationalService.
+ * Cada operación devuelve un CompletableFuture que se completa con el resultado o,
+ * en caso de error, excepcionalmente con la misma excepción que lanzaría la versión
+ * bloqueante (ConnectException, HealthCardIDException, ...).
+ */
+public interface AsyncHealthNationalService {
+    CompletableFuture<MedicalHistory> getMedicalHistory(HealthCardID cip);
+    CompletableFuture<MedicalPrescription> getMedicalPrescription(HealthCardID cip, String illness);
+    CompletableFuture<MedicalPrescription> sendHistoryAndPrescription(HealthCardID cip,
+                                                                      MedicalHistory hce, String illness, MedicalPrescription mPresc);
+    // Internal operation
+    CompletableFuture<MedicalPrescription> generateTreatmCodeAndRegister(MedicalPrescription ePresc);
+}
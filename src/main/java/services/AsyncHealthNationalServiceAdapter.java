@@ -0,0 +1,136 @@
+package services;
+
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+
+import java.net.ConnectException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptador que expone cualquier HealthNationalService bloqueante como
+ * AsyncHealthNationalService.
+ * Las llamadas se ejecutan en un ejecutor acotado: como mucho maxConcurrentCalls llamadas
+ * ocupan un hilo a la vez y el resto espera en cola sin ocupar ninguno, de modo que se
+ * pueden tener miles de peticiones pendientes con un número fijo de hilos. También se
+ * puede inyectar un ejecutor propio (por ejemplo, uno de hilos virtuales en Java 21).
+ */
+public class AsyncHealthNationalServiceAdapter implements AsyncHealthNationalService, AutoCloseable {
+
+    private final HealthNationalService hns;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+
+    /**
+     * Constructor con ejecutor propio acotado
+     * @param hns Servicio bloqueante a adaptar
+     * @param maxConcurrentCalls Número máximo de llamadas ejecutándose a la vez
+     */
+    public AsyncHealthNationalServiceAdapter(HealthNationalService hns, int maxConcurrentCalls) {
+        this(hns, newBoundedExecutor(maxConcurrentCalls), true);
+    }
+
+    /**
+     * Constructor con ejecutor inyectado (no se cierra al cerrar el adaptador)
+     * @param hns Servicio bloqueante a adaptar
+     * @param executor Ejecutor en el que se realizan las llamadas
+     */
+    public AsyncHealthNationalServiceAdapter(HealthNationalService hns, ExecutorService executor) {
+        this(hns, executor, false);
+    }
+
+    private AsyncHealthNationalServiceAdapter(HealthNationalService hns, ExecutorService executor,
+                                              boolean ownsExecutor) {
+        if (hns == null) {
+            throw new IllegalArgumentException("HealthNationalService no puede ser null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("El ejecutor no puede ser null");
+        }
+        this.hns = hns;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    @Override
+    public CompletableFuture<MedicalHistory> getMedicalHistory(HealthCardID cip) {
+        return submit(() -> hns.getMedicalHistory(cip));
+    }
+
+    @Override
+    public CompletableFuture<MedicalPrescription> getMedicalPrescription(HealthCardID cip, String illness) {
+        return submit(() -> hns.getMedicalPrescription(cip, illness));
+    }
+
+    @Override
+    public CompletableFuture<MedicalPrescription> sendHistoryAndPrescription(
+            HealthCardID cip, MedicalHistory hce, String illness, MedicalPrescription mPresc) {
+        return submit(() -> hns.sendHistoryAndPrescription(cip, hce, illness, mPresc));
+    }
+
+    @Override
+    public CompletableFuture<MedicalPrescription> generateTreatmCodeAndRegister(MedicalPrescription ePresc) {
+        return submit(() -> hns.generateTreatmCodeAndRegister(ePresc));
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    /**
+     * Llamada bloqueante al SNS que puede lanzar las excepciones comprobadas del servicio
+     */
+    private interface BlockingCall<T> {
+        T call() throws Exception;
+    }
+
+    private <T> CompletableFuture<T> submit(BlockingCall<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                // Si el llamante ya canceló el future no se hace la llamada
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    result.complete(call.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(
+                    new ConnectException("El adaptador asíncrono del SNS está cerrado"));
+        }
+        return result;
+    }
+
+    private static ExecutorService newBoundedExecutor(int maxConcurrentCalls) {
+        if (maxConcurrentCalls <= 0) {
+            throw new IllegalArgumentException(
+                    "El número máximo de llamadas concurrentes debe ser positivo: " + maxConcurrentCalls);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                maxConcurrentCalls, maxConcurrentCalls, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "sns-async-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
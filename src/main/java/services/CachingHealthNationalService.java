@@ -0,0 +1,225 @@
+package services;
+
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+import data.InvalidePrescripCodeException;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Decorador de HealthNationalService que cachea las lecturas de historia clínica
+ * (por CIP) y de prescripción (por CIP + enfermedad) en cachés LRU con caducidad.
+ * Se guardan y devuelven copias, así las ediciones de una consulta no alteran la caché.
+ * Un envío correcto de historia y prescripción invalida las entradas de ese paciente, y
+ * también las descargas suyas que estuvieran en curso, que ya no se guardan.
+ * Con setHistoryCompressor las historias se guardan comprimidas con un diccionario
+ * compartido: caben más en la misma memoria a cambio de descomprimir en cada acierto.
+ */
+public class CachingHealthNationalService implements HealthNationalService {
+
+    private final HealthNationalService hns;
+    private final ExpiringLruCache<PatientKey, HealthCardID, CachedHistory> histories;
+    private final ExpiringLruCache<PatientKey, HealthCardID, MedicalPrescription> prescriptions;
+    private volatile HistoryCompressor compressor;
+
+    /**
+     * Historia cacheada: una copia o, si hay compresor, su versión comprimida
+     */
+    private static final class CachedHistory {
+        private final MedicalHistory plain;
+        private final CompressedHistory compressed;
+        private final HistoryCompressor compressor;
+
+        CachedHistory(MedicalHistory hce, HistoryCompressor compressor) {
+            this.compressor = compressor;
+            this.compressed = compressor == null ? null : compressor.compress(hce);
+            this.plain = compressor == null ? new MedicalHistory(hce) : null;
+        }
+
+        /**
+         * @return Historia nueva, que se puede editar sin alterar la caché
+         */
+        MedicalHistory restore() {
+            return plain != null ? new MedicalHistory(plain) : compressor.decompress(compressed);
+        }
+
+        /**
+         * @return Historia sólo para leer: la copia cacheada si no está comprimida
+         */
+        MedicalHistory view() {
+            return plain != null ? plain : compressor.decompress(compressed);
+        }
+    }
+
+    /**
+     * Constructor del decorador
+     * @param hns Servicio del SNS decorado
+     * @param maxEntries Número máximo de entradas de cada caché (historias y prescripciones)
+     * @param ttl Tiempo de vida de cada entrada
+     */
+    public CachingHealthNationalService(HealthNationalService hns, int maxEntries, Duration ttl) {
+        this(hns, maxEntries, ttl, System::nanoTime);
+    }
+
+    CachingHealthNationalService(HealthNationalService hns, int maxEntries, Duration ttl,
+                                 LongSupplier clock) {
+        if (hns == null) {
+            throw new IllegalArgumentException("HealthNationalService no puede ser null");
+        }
+        if (ttl == null) {
+            throw new IllegalArgumentException("El TTL no puede ser null");
+        }
+        this.hns = hns;
+        this.histories = new ExpiringLruCache<>(maxEntries, ttl.toNanos(), clock, PatientKey::getCip);
+        this.prescriptions = new ExpiringLruCache<>(maxEntries, ttl.toNanos(), clock, PatientKey::getCip);
+    }
+
+    /**
+     * Guarda comprimidas las historias que se cacheen a partir de ahora
+     * @param compressor Compresor de historias, o null para guardar copias sin comprimir
+     */
+    public void setHistoryCompressor(HistoryCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    @Override
+    public MedicalHistory getMedicalHistory(HealthCardID cip)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        PatientKey key = PatientKey.history(cip);
+        CachedHistory cached = histories.get(key);
+        if (cached != null) {
+            return cached.restore();
+        }
+
+        long ticket = histories.beginLoad(key);
+        CachedHistory loaded = null;
+        try {
+            MedicalHistory downloaded = hns.getMedicalHistory(cip);
+            // Si falla la copia para la caché, la carga se cierra igualmente sin valor
+            loaded = new CachedHistory(downloaded, compressor);
+            return downloaded;
+        } finally {
+            histories.finishLoad(key, loaded, ticket);
+        }
+    }
+
+    /**
+     * Si la historia completa está en la caché, la página se recorta de ella sin llamar al SNS
+     */
+    @Override
+    public HistoryPage getMedicalHistoryPage(HealthCardID cip, int before, int pageSize)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        CachedHistory cached = histories.get(PatientKey.history(cip));
+        if (cached != null) {
+            return HistoryPage.of(cached.view(), before, pageSize);
+        }
+        return hns.getMedicalHistoryPage(cip, before, pageSize);
+    }
+
+    @Override
+    public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, IncorrectParametersException {
+        PatientKey key = PatientKey.prescription(cip, illness);
+        MedicalPrescription cached = prescriptions.get(key);
+        if (cached != null) {
+            return new MedicalPrescription(cached);
+        }
+
+        long ticket = prescriptions.beginLoad(key);
+        MedicalPrescription loaded = null;
+        try {
+            MedicalPrescription downloaded = hns.getMedicalPrescription(cip, illness);
+            loaded = new MedicalPrescription(downloaded);
+            return downloaded;
+        } finally {
+            prescriptions.finishLoad(key, loaded, ticket);
+        }
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                          String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, NotCompletedMedicalPrescription, InvalidePrescripCodeException {
+        MedicalPrescription sent = hns.sendHistoryAndPrescription(cip, hce, illness, mPresc);
+        invalidate(cip);
+        return sent;
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryDeltaAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                                String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, InvalidePrescripCodeException, HistoryConflictException {
+        MedicalPrescription sent = hns.sendHistoryDeltaAndPrescription(cip, hce, illness, mPresc);
+        invalidate(cip);
+        return sent;
+    }
+
+    @Override
+    public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
+            throws ConnectException, InvalidePrescripCodeException {
+        return hns.generateTreatmCodeAndRegister(ePresc);
+    }
+
+    @Override
+    public PrescripCodeLease leasePrescripCodes(int count) throws ConnectException {
+        return hns.leasePrescripCodes(count);
+    }
+
+    @Override
+    public List<SubmissionResult> sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch)
+            throws ConnectException {
+        List<SubmissionResult> results = hns.sendHistoriesAndPrescriptions(batch);
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).isRegistered()) {
+                invalidate(batch.get(i).getCip());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Descarta todas las entradas cacheadas de un paciente y las descargas suyas en curso.
+     * No recorre la caché: el coste depende sólo de las entradas del paciente.
+     * @param cip CIP del paciente
+     */
+    public void invalidate(HealthCardID cip) {
+        histories.invalidateGroup(cip);
+        prescriptions.invalidateGroup(cip);
+    }
+
+    // ============= ESTADÍSTICAS =============
+
+    public long getHitCount() {
+        return histories.getHitCount() + prescriptions.getHitCount();
+    }
+
+    public long getMissCount() {
+        return histories.getMissCount() + prescriptions.getMissCount();
+    }
+
+    /**
+     * @return Entradas expulsadas por falta de espacio
+     */
+    public long getEvictionCount() {
+        return histories.getEvictionCount() + prescriptions.getEvictionCount();
+    }
+
+    /**
+     * @return Entradas descartadas por haber caducado
+     */
+    public long getExpirationCount() {
+        return histories.getExpirationCount() + prescriptions.getExpirationCount();
+    }
+
+    public int getSize() {
+        return histories.size() + prescriptions.size();
+    }
+}
@@ -0,0 +1,89 @@
+package services;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Cortocircuito para las llamadas al SNS.
+ * CLOSED: las llamadas pasan; tras failureThreshold fallos de conexión seguidos pasa a OPEN.
+ * OPEN: las llamadas se rechazan sin intentarlas hasta que pasa openNanos.
+ * HALF_OPEN: se deja pasar una única llamada de prueba; si va bien se cierra, si falla se reabre.
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    CircuitBreaker(int failureThreshold, long openNanos, LongSupplier clock) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException(
+                    "El umbral de fallos debe ser positivo: " + failureThreshold);
+        }
+        if (openNanos <= 0) {
+            throw new IllegalArgumentException("El tiempo en abierto debe ser positivo");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * @return true si la llamada puede intentarse
+     */
+    synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.getAsLong() - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            case HALF_OPEN:
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+        }
+        trialInFlight = false;
+    }
+
+    /**
+     * La llamada no ha llegado a tener respuesta (p. ej. se ha interrumpido el hilo): no cuenta
+     * como éxito ni como fallo, pero libera la llamada de prueba
+     */
+    synchronized void onAbandoned() {
+        trialInFlight = false;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+}
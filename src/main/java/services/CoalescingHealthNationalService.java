@@ -0,0 +1,182 @@
+package services;
+
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+import data.InvalidePrescripCodeException;
+
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Decorador de HealthNationalService que agrupa lecturas idénticas simultáneas
+ * (single-flight): si llega una petición de historia clínica para un CIP (o de
+ * prescripción para un CIP + enfermedad) mientras otra igual está en curso, espera a
+ * esa y comparte su resultado o su excepción en lugar de llamar de nuevo al SNS.
+ * Cada llamante recibe su propia copia del resultado.
+ * Los envíos no se agrupan.
+ */
+public class CoalescingHealthNationalService implements HealthNationalService {
+
+    private final HealthNationalService hns;
+    private final ConcurrentHashMap<PatientKey, CompletableFuture<MedicalHistory>> historyCalls =
+            new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<PatientKey, CompletableFuture<MedicalPrescription>> prescriptionCalls =
+            new ConcurrentHashMap<>();
+
+    public CoalescingHealthNationalService(HealthNationalService hns) {
+        if (hns == null) {
+            throw new IllegalArgumentException("HealthNationalService no puede ser null");
+        }
+        this.hns = hns;
+    }
+
+    @Override
+    public MedicalHistory getMedicalHistory(HealthCardID cip)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        PatientKey key = PatientKey.history(cip);
+        CompletableFuture<MedicalHistory> call = new CompletableFuture<>();
+        CompletableFuture<MedicalHistory> inFlight = historyCalls.putIfAbsent(key, call);
+        if (inFlight != null) {
+            return new MedicalHistory(awaitHistory(inFlight));
+        }
+
+        try {
+            MedicalHistory history = hns.getMedicalHistory(cip);
+            // Los que esperan copian de una instancia que nadie más modifica
+            call.complete(new MedicalHistory(history));
+            return history;
+        } catch (Throwable e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            historyCalls.remove(key, call);
+        }
+    }
+
+    @Override
+    public HistoryPage getMedicalHistoryPage(HealthCardID cip, int before, int pageSize)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        return hns.getMedicalHistoryPage(cip, before, pageSize);
+    }
+
+    @Override
+    public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, IncorrectParametersException {
+        PatientKey key = PatientKey.prescription(cip, illness);
+        CompletableFuture<MedicalPrescription> call = new CompletableFuture<>();
+        CompletableFuture<MedicalPrescription> inFlight = prescriptionCalls.putIfAbsent(key, call);
+        if (inFlight != null) {
+            return new MedicalPrescription(awaitPrescription(inFlight));
+        }
+
+        try {
+            MedicalPrescription prescription = hns.getMedicalPrescription(cip, illness);
+            call.complete(new MedicalPrescription(prescription));
+            return prescription;
+        } catch (Throwable e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            prescriptionCalls.remove(key, call);
+        }
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                          String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, NotCompletedMedicalPrescription, InvalidePrescripCodeException {
+        return hns.sendHistoryAndPrescription(cip, hce, illness, mPresc);
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryDeltaAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                                String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, InvalidePrescripCodeException, HistoryConflictException {
+        return hns.sendHistoryDeltaAndPrescription(cip, hce, illness, mPresc);
+    }
+
+    @Override
+    public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
+            throws ConnectException, InvalidePrescripCodeException {
+        return hns.generateTreatmCodeAndRegister(ePresc);
+    }
+
+    @Override
+    public PrescripCodeLease leasePrescripCodes(int count) throws ConnectException {
+        return hns.leasePrescripCodes(count);
+    }
+
+    @Override
+    public List<SubmissionResult> sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch)
+            throws ConnectException {
+        return hns.sendHistoriesAndPrescriptions(batch);
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    private static MedicalHistory awaitHistory(CompletableFuture<MedicalHistory> inFlight)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        try {
+            return inFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectException("Espera de la historia clínica interrumpida");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ConnectException) {
+                throw (ConnectException) cause;
+            }
+            if (cause instanceof HealthCardIDException) {
+                throw (HealthCardIDException) cause;
+            }
+            if (cause instanceof IncorrectParametersException) {
+                throw (IncorrectParametersException) cause;
+            }
+            throw propagate(cause);
+        }
+    }
+
+    private static MedicalPrescription awaitPrescription(CompletableFuture<MedicalPrescription> inFlight)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, IncorrectParametersException {
+        try {
+            return inFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectException("Espera de la prescripción interrumpida");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ConnectException) {
+                throw (ConnectException) cause;
+            }
+            if (cause instanceof HealthCardIDException) {
+                throw (HealthCardIDException) cause;
+            }
+            if (cause instanceof AnyCurrentPrescriptionException) {
+                throw (AnyCurrentPrescriptionException) cause;
+            }
+            if (cause instanceof IncorrectParametersException) {
+                throw (IncorrectParametersException) cause;
+            }
+            throw propagate(cause);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException("Error inesperado en la llamada al SNS", cause);
+    }
+}
@@ -0,0 +1,134 @@
+package services;
+
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+import data.InvalidePrescripCodeException;
+import data.ePrescripCode;
+
+import java.net.ConnectException;
+import java.util.List;
+
+/**
+ * Decorador de HealthNationalService que genera los códigos de tratamiento localmente
+ * a partir de bloques reservados en el SNS, en lugar de pedir cada código por separado.
+ * Cada prescripción se envía (o se registra) con un código del bloque y el SNS lo conserva.
+ * Una prescripción que ya lleva un código de un bloque de este decorador lo mantiene, de modo
+ * que los reintentos y reenvíos (conflictos de historia, bandeja de salida) llevan el mismo
+ * código y no gastan otro: el terminal conoce el código aunque se pierda la respuesta.
+ * Si el SNS no concede bloques, los códigos los sigue generando el SNS.
+ * El resto de operaciones se delegan sin cambios.
+ */
+public class CodeLeasingHealthNationalService implements HealthNationalService {
+
+    private final HealthNationalService hns;
+    private final PrescripCodeAllocator allocator;
+    private volatile boolean leasingUnsupported;
+
+    /**
+     * @param hns Servicio del SNS decorado
+     * @param leaseSize Número de códigos reservados en cada bloque
+     */
+    public CodeLeasingHealthNationalService(HealthNationalService hns, int leaseSize) {
+        this(hns, new PrescripCodeAllocator(hns, leaseSize));
+    }
+
+    public CodeLeasingHealthNationalService(HealthNationalService hns, PrescripCodeAllocator allocator) {
+        if (hns == null) {
+            throw new IllegalArgumentException("HealthNationalService no puede ser null");
+        }
+        if (allocator == null) {
+            throw new IllegalArgumentException("PrescripCodeAllocator no puede ser null");
+        }
+        this.hns = hns;
+        this.allocator = allocator;
+    }
+
+    @Override
+    public MedicalHistory getMedicalHistory(HealthCardID cip)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        return hns.getMedicalHistory(cip);
+    }
+
+    @Override
+    public HistoryPage getMedicalHistoryPage(HealthCardID cip, int before, int pageSize)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        return hns.getMedicalHistoryPage(cip, before, pageSize);
+    }
+
+    @Override
+    public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, IncorrectParametersException {
+        return hns.getMedicalPrescription(cip, illness);
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                          String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, NotCompletedMedicalPrescription, InvalidePrescripCodeException {
+        assignLeasedCode(mPresc);
+        return hns.sendHistoryAndPrescription(cip, hce, illness, mPresc);
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryDeltaAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                                String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, InvalidePrescripCodeException, HistoryConflictException {
+        assignLeasedCode(mPresc);
+        return hns.sendHistoryDeltaAndPrescription(cip, hce, illness, mPresc);
+    }
+
+    /**
+     * Asigna a la prescripción el siguiente código del bloque reservado (salvo que ya tenga uno)
+     * y la registra en el SNS con ese código. Sólo se pide un bloque nuevo cuando se agota sin
+     * que el siguiente haya llegado.
+     */
+    @Override
+    public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
+            throws ConnectException, InvalidePrescripCodeException {
+        assignLeasedCode(ePresc);
+        return hns.generateTreatmCodeAndRegister(ePresc);
+    }
+
+    @Override
+    public PrescripCodeLease leasePrescripCodes(int count) throws ConnectException {
+        return hns.leasePrescripCodes(count);
+    }
+
+    @Override
+    public List<SubmissionResult> sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch)
+            throws ConnectException {
+        for (PrescriptionSubmission s : batch) {
+            try {
+                assignLeasedCode(s.getPrescription());
+            } catch (InvalidePrescripCodeException e) {
+                throw new IllegalStateException("Código de un bloque del SNS inválido", e);
+            }
+        }
+        return hns.sendHistoriesAndPrescriptions(batch);
+    }
+
+    public PrescripCodeAllocator getAllocator() {
+        return allocator;
+    }
+
+    private void assignLeasedCode(MedicalPrescription presc) throws ConnectException, InvalidePrescripCodeException {
+        if (presc == null) {
+            throw new IllegalArgumentException("La prescripción no puede ser null");
+        }
+        ePrescripCode code = presc.getPrescCode();
+        if (code != null && allocator.isLeased(code) || leasingUnsupported) {
+            return;
+        }
+        try {
+            presc.setPrescCode(allocator.nextCode());
+        } catch (UnsupportedOperationException e) {
+            // El SNS no concede bloques: asigna el código al registrar, como sin decorador
+            leasingUnsupported = true;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package services;
+
+import data.HealthCardID;
+
+/**
+ * Copia comprimida e inmutable de una historia clínica (ver HistoryCompressor).
+ * El texto de todas las anotaciones va seguido y comprimido con deflate sobre un
+ * diccionario compartido; las fechas y longitudes de las anotaciones se guardan aparte.
+ */
+public final class CompressedHistory {
+    private final HistoryDictionary dictionary;
+    private final HealthCardID cip;
+    private final int membShipNumb;
+    private final int baseCount;
+    private final long[] times;
+    private final int[] lengths; // caracteres de cada anotación
+    private final int rawBytes;  // bytes UTF-8 del texto sin comprimir
+    private final byte[] data;
+
+    CompressedHistory(HistoryDictionary dictionary, HealthCardID cip, int membShipNumb, int baseCount,
+                      long[] times, int[] lengths, int rawBytes, byte[] data) {
+        this.dictionary = dictionary;
+        this.cip = cip;
+        this.membShipNumb = membShipNumb;
+        this.baseCount = baseCount;
+        this.times = times;
+        this.lengths = lengths;
+        this.rawBytes = rawBytes;
+        this.data = data;
+    }
+
+    HistoryDictionary dictionary() {
+        return dictionary;
+    }
+
+    long[] times() {
+        return times;
+    }
+
+    int[] lengths() {
+        return lengths;
+    }
+
+    int rawBytes() {
+        return rawBytes;
+    }
+
+    byte[] data() {
+        return data;
+    }
+
+    public HealthCardID getCip() {
+        return cip;
+    }
+
+    public int getMembShipNumb() {
+        return membShipNumb;
+    }
+
+    public int getBaseAnnotationCount() {
+        return baseCount;
+    }
+
+    public int getAnnotationCount() {
+        return times.length;
+    }
+
+    /**
+     * @return Identificador del diccionario con que se comprimió
+     */
+    public int getDictionaryId() {
+        return dictionary.getId();
+    }
+
+    /**
+     * @return Bytes UTF-8 del texto de las anotaciones
+     */
+    public int getRawSize() {
+        return rawBytes;
+    }
+
+    /**
+     * @return Bytes del texto comprimido
+     */
+    public int getCompressedSize() {
+        return data.length;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedHistory{" + "cip=" + cip + ", annotations=" + times.length
+                + ", raw=" + rawBytes + ", compressed=" + data.length + '}';
+    }
+}
@@ -0,0 +1,80 @@
+package services;
+
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+import data.InvalidePrescripCodeException;
+
+import java.net.ConnectException;
+
+/**
+ * Envío de deltas de historia para quien no tiene la historia completa a mano (la bandeja
+ * de salida y el agrupador de envíos). Si el SNS rechaza el delta por conflicto, se
+ * descarga la última página de su historia, se ponen encima las anotaciones nuevas y se
+ * reintenta, igual que hace el terminal con la historia completa.
+ */
+final class DeltaRebaser {
+    // Envíos del delta antes de rendirse si la historia del SNS sigue cambiando
+    static final int MAX_DELTA_ATTEMPTS = 3;
+
+    private DeltaRebaser() {
+    }
+
+    /**
+     * Envía el delta de la historia, poniéndolo sobre la versión actual del SNS si hay conflicto
+     * @throws HistoryConflictException si la historia del SNS ha cambiado en todos los intentos
+     */
+    static MedicalPrescription send(HealthNationalService hns, HealthCardID cip, MedicalHistory hce,
+                                    String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, InvalidePrescripCodeException, HistoryConflictException {
+        return send(hns, cip, hce, illness, mPresc, 1);
+    }
+
+    /**
+     * Reenvía un delta que el SNS ya ha rechazado por conflicto: se pone sobre la versión
+     * actual antes del primer reenvío, y ese primer rechazo cuenta como un intento
+     */
+    static MedicalPrescription resend(HealthNationalService hns, HealthCardID cip, MedicalHistory hce,
+                                      String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, InvalidePrescripCodeException, HistoryConflictException {
+        return send(hns, cip, rebase(hns, cip, hce), illness, mPresc, 2);
+    }
+
+    /**
+     * Pone las anotaciones pendientes de enviar sobre la última página de la historia del SNS
+     * @return Historia cuya versión base es la actual del SNS; las páginas anteriores se
+     * descargan sólo si alguien las pide
+     */
+    static MedicalHistory rebase(HealthNationalService hns, HealthCardID cip, MedicalHistory hce)
+            throws ConnectException, HealthCardIDException {
+        HistoryDelta delta = HistoryDelta.of(hce);
+        MedicalHistory latest;
+        try {
+            latest = PagedHistoryLoader.open(hns, cip, 1);
+        } catch (IncorrectParametersException e) {
+            throw new IllegalStateException("El SNS ha devuelto una historia inválida", e);
+        }
+        delta.appendTo(latest);
+        return latest;
+    }
+
+    private static MedicalPrescription send(HealthNationalService hns, HealthCardID cip, MedicalHistory hce,
+                                            String illness, MedicalPrescription mPresc, int firstAttempt)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, InvalidePrescripCodeException, HistoryConflictException {
+        MedicalHistory current = hce;
+        for (int attempt = firstAttempt; ; attempt++) {
+            try {
+                return hns.sendHistoryDeltaAndPrescription(cip, current, illness, mPresc);
+            } catch (HistoryConflictException e) {
+                if (attempt >= MAX_DELTA_ATTEMPTS) {
+                    throw e;
+                }
+                current = rebase(hns, cip, current);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package services;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Caché LRU acotada en tamaño con caducidad (TTL) por entrada.
+ * Cuenta aciertos, fallos, expulsiones por tamaño y caducidades.
+ *
+ * Las claves se agrupan (p. ej. por paciente) y un grupo se invalida entero sin recorrer
+ * la caché. Las cargas se hacen con beginLoad/finishLoad: si el grupo se invalida mientras
+ * la carga está en curso, su resultado (ya obsoleto) no se guarda.
+ */
+final class ExpiringLruCache<K, G, V> {
+
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final Function<? super K, ? extends G> groupOf;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    // Claves cacheadas de cada grupo
+    private final Map<G, Set<K>> groups = new HashMap<>();
+    // Grupos con cargas en curso: {cargas en curso, generación}
+    private final Map<G, long[]> loads = new HashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    ExpiringLruCache(int maxEntries, long ttlNanos, LongSupplier clock, Function<? super K, ? extends G> groupOf) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("El tamaño máximo debe ser positivo: " + maxEntries);
+        }
+        if (ttlNanos <= 0) {
+            throw new IllegalArgumentException("El TTL debe ser positivo");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+        this.groupOf = groupOf;
+        // Orden de acceso: la entrada más antigua es la menos usada recientemente
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > ExpiringLruCache.this.maxEntries) {
+                    evictions.increment();
+                    unindex(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return El valor cacheado o null si no está o ha caducado
+     */
+    synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (clock.getAsLong() - entry.expiresAt >= 0) {
+            remove(key);
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    synchronized void put(K key, V value) {
+        if (entries.put(key, new Entry<>(value, clock.getAsLong() + ttlNanos)) == null) {
+            groups.computeIfAbsent(groupOf.apply(key), g -> new HashSet<>()).add(key);
+        }
+    }
+
+    /**
+     * Anota el comienzo de la carga de una clave desde su origen
+     * @return Marca que hay que pasar a finishLoad
+     */
+    synchronized long beginLoad(K key) {
+        long[] load = loads.computeIfAbsent(groupOf.apply(key), g -> new long[2]);
+        load[0]++;
+        return load[1];
+    }
+
+    /**
+     * Termina una carga empezada con beginLoad y guarda el valor si su grupo no se ha
+     * invalidado entretanto
+     * @param value Valor cargado, o null si la carga ha fallado
+     * @return true si el valor se ha guardado
+     */
+    synchronized boolean finishLoad(K key, V value, long ticket) {
+        G group = groupOf.apply(key);
+        long[] load = loads.get(group);
+        boolean current = load[1] == ticket;
+        if (--load[0] == 0) {
+            loads.remove(group);
+        }
+        if (value == null || !current) {
+            return false;
+        }
+        put(key, value);
+        return true;
+    }
+
+    /**
+     * Descarta las entradas del grupo y los resultados de sus cargas en curso
+     */
+    synchronized void invalidateGroup(G group) {
+        Set<K> keys = groups.remove(group);
+        if (keys != null) {
+            for (K key : keys) {
+                entries.remove(key);
+            }
+        }
+        long[] load = loads.get(group);
+        if (load != null) {
+            load[1]++;
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void remove(K key) {
+        entries.remove(key);
+        unindex(key);
+    }
+
+    private void unindex(K key) {
+        G group = groupOf.apply(key);
+        Set<K> keys = groups.get(group);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            groups.remove(group);
+        }
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    long getExpirationCount() {
+        return expirations.sum();
+    }
+}
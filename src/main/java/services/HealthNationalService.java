@@ -6,6 +6,8 @@ import consultamedica.MedicalPrescription;
 import data.HealthCardID;
 
 import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
 
 import data.InvalidePrescripCodeException;
 import services.NotCompletedMedicalPrescription;
@@ -20,6 +22,64 @@ public interface HealthNationalService {
                                                    MedicalHistory hce, String illness, MedicalPrescription mPresc)
             throws ConnectException, HealthCardIDException,
             AnyCurrentPrescriptionException, NotCompletedMedicalPrescription, InvalidePrescripCodeException;
+
+    /**
+     * Devuelve una página de la historia clínica: como mucho pageSize anotaciones, las más
+     * recientes de las anteriores a la posición before (Integer.MAX_VALUE para las últimas).
+     * Por defecto descarga la historia entera y la recorta; las implementaciones remotas lo
+     * redefinen para transferir sólo la página.
+     */
+    default HistoryPage getMedicalHistoryPage(HealthCardID cip, int before, int pageSize)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        HistoryPage.checkRange(before, pageSize);
+        return HistoryPage.of(getMedicalHistory(cip), before, pageSize);
+    }
+
+    /**
+     * Envía sólo las anotaciones añadidas desde la versión base de la historia
+     * (HistoryDelta.of(hce)) junto con la prescripción firmada.
+     * El SNS rechaza el delta con HistoryConflictException si su historia ya no tiene
+     * getBaseAnnotationCount() anotaciones. No hay versión por defecto: mandar la historia
+     * entera sobrescribiría las anotaciones que otra consulta haya añadido entretanto.
+     */
+    MedicalPrescription sendHistoryDeltaAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                        String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, InvalidePrescripCodeException, HistoryConflictException;
+
     // Internal operation
     MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc) throws ConnectException, InvalidePrescripCodeException;
+
+    /**
+     * Reserva un bloque de códigos de prescripción para generarlos localmente.
+     * El SNS no vuelve a conceder ninguno de los códigos del bloque, y al registrar una
+     * prescripción que ya lleva uno de ellos lo conserva en lugar de generar otro.
+     * Por defecto el SNS no concede bloques.
+     * @param count Número de códigos pedidos (el SNS puede conceder menos)
+     */
+    default PrescripCodeLease leasePrescripCodes(int count) throws ConnectException {
+        throw new UnsupportedOperationException("El SNS no concede bloques de códigos");
+    }
+
+    /**
+     * Envía varias historias y prescripciones en una sola petición.
+     * Devuelve un resultado por envío, en el mismo orden; el fallo de un envío no afecta a los demás.
+     * Cada historia se envía como delta (ver sendHistoryDeltaAndPrescription), así que un envío
+     * cuya versión base ya no coincide con el SNS falla con HistoryConflictException.
+     * Por defecto se envían de uno en uno; las implementaciones remotas lo redefinen con un único viaje.
+     * @throws ConnectException si no se ha podido enviar el lote completo
+     */
+    default List<SubmissionResult> sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch)
+            throws ConnectException {
+        List<SubmissionResult> results = new ArrayList<>(batch.size());
+        for (PrescriptionSubmission s : batch) {
+            try {
+                results.add(SubmissionResult.registered(sendHistoryDeltaAndPrescription(
+                        s.getCip(), s.getHistory(), s.getIllness(), s.getPrescription())));
+            } catch (Exception e) {
+                results.add(SubmissionResult.failed(e));
+            }
+        }
+        return results;
+    }
 }
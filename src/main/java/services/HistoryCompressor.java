@@ -0,0 +1,144 @@
+package services;
+
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Comprime y descomprime el texto de las historias clínicas con deflate y un diccionario
+ * compartido entrenado con anotaciones reales (HistoryDictionary).
+ *
+ * Cada copia comprimida guarda el diccionario con que se hizo, así que reentrenar
+ * (retrain) sólo afecta a las historias que se compriman después. Los Deflater e
+ * Inflater se reutilizan por hilo: descomprimir no reserva más que el resultado.
+ */
+public class HistoryCompressor {
+
+    private static final ThreadLocal<Deflater> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> INFLATERS =
+            ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private volatile HistoryDictionary dictionary;
+
+    /**
+     * @param dictionary Diccionario inicial
+     */
+    public HistoryCompressor(HistoryDictionary dictionary) {
+        if (dictionary == null) {
+            throw new IllegalArgumentException("El diccionario no puede ser null");
+        }
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Entrena un diccionario nuevo con el corpus y lo usa para las próximas compresiones
+     * @return Diccionario nuevo
+     */
+    public HistoryDictionary retrain(Iterable<? extends CharSequence> corpus, int maxBytes) {
+        HistoryDictionary trained = HistoryDictionary.train(corpus, maxBytes);
+        this.dictionary = trained;
+        return trained;
+    }
+
+    public HistoryDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Comprime la historia completa (carga antes las páginas antiguas si las hay)
+     */
+    public CompressedHistory compress(MedicalHistory hce) {
+        if (hce == null) {
+            throw new IllegalArgumentException("La historia clínica no puede ser null");
+        }
+        HistoryDictionary dict = dictionary;
+        int count = hce.getAnnotationCount();
+        long[] times = new long[count];
+        int[] lengths = new int[count];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            CharSequence annotation = hce.getAnnotationView(i);
+            times[i] = hce.getAnnotationDate(i).getTime();
+            lengths[i] = annotation.length();
+            text.append(annotation);
+        }
+        byte[] raw = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        if (dict.size() > 0) {
+            deflater.setDictionary(dict.bytes());
+        }
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] out = new byte[64 + raw.length + raw.length / 1000];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            length += deflater.deflate(out, length, out.length - length);
+        }
+        return new CompressedHistory(dict, hce.getCip(), hce.getMembShipNumb(),
+                hce.getBaseAnnotationCount(), times, lengths, raw.length, Arrays.copyOf(out, length));
+    }
+
+    /**
+     * @return Historia nueva con las anotaciones, fechas, médico y versión base de la copia
+     */
+    public MedicalHistory decompress(CompressedHistory compressed) {
+        if (compressed == null) {
+            throw new IllegalArgumentException("La historia comprimida no puede ser null");
+        }
+        String text = inflate(compressed);
+        MedicalHistory hce;
+        try {
+            hce = new MedicalHistory(compressed.getCip(), compressed.getMembShipNumb());
+        } catch (IncorrectParametersException e) {
+            throw new IllegalStateException("Historia comprimida inválida", e);
+        }
+        long[] times = compressed.times();
+        int[] lengths = compressed.lengths();
+        int start = 0;
+        for (int i = 0; i < times.length; i++) {
+            hce.addMedicalHistoryAnnotations(text.substring(start, start + lengths[i]), new Date(times[i]));
+            start += lengths[i];
+        }
+        hce.setBaseAnnotationCount(compressed.getBaseAnnotationCount());
+        return hce;
+    }
+
+    /**
+     * @return Texto de todas las anotaciones, seguido
+     */
+    String inflate(CompressedHistory compressed) {
+        byte[] raw = new byte[compressed.rawBytes()];
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        HistoryDictionary dict = compressed.dictionary();
+        if (dict.size() > 0) {
+            inflater.setDictionary(dict.bytes());
+        }
+        inflater.setInput(compressed.data());
+        try {
+            int length = 0;
+            while (length < raw.length) {
+                int n = inflater.inflate(raw, length, raw.length - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("Historia comprimida truncada");
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Historia comprimida corrupta", e);
+        }
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+}
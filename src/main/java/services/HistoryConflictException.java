@@ -0,0 +1,11 @@
+package services;
+
+/**
+ * Excepción lanzada cuando se envía un delta de historia clínica sobre una versión base
+ * que ya no es la del SNS (otro terminal ha añadido anotaciones entre tanto)
+ */
+public class HistoryConflictException extends Exception {
+    public HistoryConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,116 @@
+package services;
+
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import data.HealthCardID;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Cambios de una historia clínica desde su versión base: las anotaciones añadidas después
+ * de la última sincronización con el SNS y el médico de familia actual
+ */
+public final class HistoryDelta {
+    private final HealthCardID cip;
+    private final int baseCount;
+    private final int membShipNumb;
+    private final List<String> annotations;
+    private final long[] times;
+
+    /**
+     * @param baseCount Anotaciones que debe tener el SNS para aplicar el delta
+     * @param annotations Anotaciones nuevas, de la más antigua a la más reciente
+     * @param times Fechas de las anotaciones en milisegundos
+     */
+    public HistoryDelta(HealthCardID cip, int baseCount, int membShipNumb,
+                        List<String> annotations, long[] times) {
+        if (cip == null || annotations == null || times == null) {
+            throw new IllegalArgumentException("Parámetros inválidos");
+        }
+        if (annotations.size() != times.length) {
+            throw new IllegalArgumentException("Las anotaciones y sus fechas no coinciden");
+        }
+        if (baseCount < 0) {
+            throw new IllegalArgumentException("La versión base no puede ser negativa: " + baseCount);
+        }
+        this.cip = cip;
+        this.baseCount = baseCount;
+        this.membShipNumb = membShipNumb;
+        this.annotations = Collections.unmodifiableList(new ArrayList<>(annotations));
+        this.times = times.clone();
+    }
+
+    /**
+     * Extrae las anotaciones nuevas de una historia (no carga las páginas antiguas)
+     */
+    public static HistoryDelta of(MedicalHistory hce) {
+        int base = hce.getBaseAnnotationCount();
+        int count = hce.getAnnotationCount();
+        List<String> annots = new ArrayList<>(count - base);
+        long[] times = new long[count - base];
+        for (int i = base; i < count; i++) {
+            annots.add(hce.getAnnotation(i));
+            times[i - base] = hce.getAnnotationDate(i).getTime();
+        }
+        return new HistoryDelta(hce.getCip(), base, hce.getMembShipNumb(), annots, times);
+    }
+
+    /**
+     * Añade el delta al final de otra historia y le pone el médico del delta
+     */
+    public void appendTo(MedicalHistory target) {
+        if (!target.getCip().equals(cip)) {
+            throw new IllegalArgumentException("El delta es de otro paciente: " + cip);
+        }
+        for (int i = 0; i < annotations.size(); i++) {
+            target.addMedicalHistoryAnnotations(annotations.get(i), new Date(times[i]));
+        }
+        if (target.getMembShipNumb() != membShipNumb) {
+            target.setNewDoctor(membShipNumb);
+        }
+    }
+
+    /**
+     * Historia que sólo contiene el delta: las baseCount anotaciones anteriores no están
+     * disponibles (para quien recibe el delta y lo reenvía al SNS)
+     */
+    public MedicalHistory toHistory() throws IncorrectParametersException {
+        MedicalHistory hce = new MedicalHistory(cip, membShipNumb);
+        hce.setOlderAnnotations(baseCount, h -> {
+            throw new IOException("Sólo se dispone de las anotaciones nuevas de la historia");
+        });
+        hce.setBaseAnnotationCount(baseCount);
+        appendTo(hce);
+        return hce;
+    }
+
+    public HealthCardID getCip() {
+        return cip;
+    }
+
+    public int getBaseCount() {
+        return baseCount;
+    }
+
+    public int getMembShipNumb() {
+        return membShipNumb;
+    }
+
+    public List<String> getAnnotations() {
+        return annotations;
+    }
+
+    public long[] getTimes() {
+        return times.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryDelta{" + "cip=" + cip + ", base=" + baseCount
+                + ", annotations=" + annotations.size() + '}';
+    }
+}
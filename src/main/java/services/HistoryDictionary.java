@@ -0,0 +1,197 @@
+package services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Diccionario compartido para comprimir el texto de las historias clínicas con deflate.
+ *
+ * Las anotaciones de pacientes distintos repiten las mismas frases ("paciente refiere",
+ * "control de tensión arterial"...). Con el diccionario como ventana inicial, deflate
+ * codifica esas frases como referencias desde la primera aparición en cada historia.
+ * Es inmutable; su identificador es el CRC32 de los bytes.
+ */
+public final class HistoryDictionary {
+
+    /**
+     * Ventana de deflate: lo que exceda no se puede referenciar
+     */
+    public static final int MAX_SIZE = 32 * 1024;
+    private static final int MAX_PHRASE_WORDS = 4;
+
+    private final byte[] bytes;
+    private final int id;
+
+    /**
+     * @param bytes Diccionario en UTF-8 (p. ej. leído de disco); las frases más útiles al final
+     */
+    public HistoryDictionary(byte[] bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("El diccionario no puede ser null");
+        }
+        if (bytes.length > MAX_SIZE) {
+            throw new IllegalArgumentException("El diccionario supera " + MAX_SIZE + " bytes: " + bytes.length);
+        }
+        this.bytes = bytes.clone();
+        CRC32 crc = new CRC32();
+        crc.update(this.bytes);
+        this.id = (int) crc.getValue();
+    }
+
+    /**
+     * Entrena un diccionario con las frases de 1 a 4 palabras que más bytes ahorrarían
+     * en el corpus (apariciones repetidas por longitud)
+     * @param corpus Anotaciones de muestra
+     * @param maxBytes Tamaño máximo del diccionario (como mucho MAX_SIZE)
+     */
+    public static HistoryDictionary train(Iterable<? extends CharSequence> corpus, int maxBytes) {
+        if (corpus == null) {
+            throw new IllegalArgumentException("El corpus no puede ser null");
+        }
+        if (maxBytes <= 0 || maxBytes > MAX_SIZE) {
+            throw new IllegalArgumentException("Tamaño de diccionario inválido: " + maxBytes);
+        }
+
+        Map<String, int[]> counts = new HashMap<>();
+        List<String> words = new ArrayList<>();
+        for (CharSequence text : corpus) {
+            splitWords(text, words);
+            for (int i = 0; i < words.size(); i++) {
+                StringBuilder phrase = new StringBuilder();
+                for (int n = 0; n < MAX_PHRASE_WORDS && i + n < words.size(); n++) {
+                    if (n > 0) {
+                        phrase.append(' ');
+                    }
+                    phrase.append(words.get(i + n));
+                    if (phrase.length() >= 3) {
+                        counts.computeIfAbsent(phrase.toString(), k -> new int[1])[0]++;
+                    }
+                }
+            }
+        }
+
+        // Ahorro estimado: cada aparición tras la primera se queda en una referencia
+        List<Map.Entry<String, int[]>> candidates = new ArrayList<>();
+        for (Map.Entry<String, int[]> e : counts.entrySet()) {
+            if (e.getValue()[0] > 1) {
+                candidates.add(e);
+            }
+        }
+        candidates.sort((a, b) -> {
+            long sa = (long) (a.getValue()[0] - 1) * utf8Length(a.getKey());
+            long sb = (long) (b.getValue()[0] - 1) * utf8Length(b.getKey());
+            return sa != sb ? Long.compare(sb, sa) : a.getKey().compareTo(b.getKey());
+        });
+
+        List<String> selected = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, int[]> e : candidates) {
+            if (size + 4 > maxBytes) {
+                break;
+            }
+            String phrase = e.getKey();
+            int length = utf8Length(phrase) + 1;
+            if (size + length > maxBytes) {
+                continue;
+            }
+            // Una frase contenida en otra ya elegida no aporta nada
+            boolean covered = false;
+            for (String s : selected) {
+                if (s.contains(phrase)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                selected.add(phrase);
+                size += length;
+            }
+        }
+
+        // Las más útiles al final: quedan más cerca del texto y sus referencias son más cortas
+        StringBuilder text = new StringBuilder(size);
+        for (int i = selected.size() - 1; i >= 0; i--) {
+            text.append(selected.get(i)).append(' ');
+        }
+        return new HistoryDictionary(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
+    /**
+     * @return Identificador del diccionario (CRC32), para comprobar que un texto guardado
+     * se descomprime con el mismo diccionario con que se comprimió
+     */
+    public int getId() {
+        return id;
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(bytes, ((HistoryDictionary) o).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryDictionary{" + "id=" + Integer.toHexString(id) + ", size=" + bytes.length + '}';
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    private static void splitWords(CharSequence text, List<String> words) {
+        words.clear();
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            while (i < n && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < n && !Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            // Sin la puntuación pegada: "arterial," cuenta como "arterial"
+            int end = i;
+            while (start < end && !Character.isLetterOrDigit(text.charAt(start))) {
+                start++;
+            }
+            while (end > start && !Character.isLetterOrDigit(text.charAt(end - 1))) {
+                end--;
+            }
+            if (end > start) {
+                words.add(text.subSequence(start, end).toString());
+            }
+        }
+    }
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            length += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,51 @@
+package services;
+
+import data.HealthCardID;
+
+/**
+ * Resultado de una búsqueda en las historias clínicas: una anotación de un paciente
+ */
+public final class HistoryHit {
+    private final HealthCardID cip;
+    private final int annotationIndex;
+
+    public HistoryHit(HealthCardID cip, int annotationIndex) {
+        if (cip == null) {
+            throw new IllegalArgumentException("El CIP no puede ser null");
+        }
+        if (annotationIndex < 0) {
+            throw new IllegalArgumentException("Índice de anotación inválido: " + annotationIndex);
+        }
+        this.cip = cip;
+        this.annotationIndex = annotationIndex;
+    }
+
+    public HealthCardID getCip() {
+        return cip;
+    }
+
+    /**
+     * @return Posición de la anotación en la historia del paciente
+     */
+    public int getAnnotationIndex() {
+        return annotationIndex;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        HistoryHit that = (HistoryHit) o;
+        return annotationIndex == that.annotationIndex && cip.equals(that.cip);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * cip.hashCode() + annotationIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryHit{" + "cip=" + cip + ", annotation=" + annotationIndex + '}';
+    }
+}
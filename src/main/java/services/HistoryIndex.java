@@ -0,0 +1,407 @@
+package services;
+
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalHistoryListener;
+import data.HealthCardID;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Índice invertido de texto completo sobre las anotaciones de las historias clínicas.
+ *
+ * Cada anotación es un documento con un identificador creciente. Por cada término se guarda
+ * una lista de apariciones comprimida: por documento, [salto desde el documento anterior]
+ * [número de apariciones][salto desde la posición anterior]..., todo en varint. Como los
+ * documentos sólo se añaden al final, las listas crecen sin reescribirse.
+ *
+ * Se mantiene al día registrándolo como oyente de las historias (addListener): cada
+ * anotación añadida se indexa en el momento. Por paciente se guarda cuántas anotaciones
+ * de su historia hay indexadas, así que volver a indexar una historia (addHistory tras
+ * escuchar sus cambios, o dos descargas del SNS) sólo añade las anotaciones que faltan.
+ * Los términos se comparan en minúsculas y sin tildes; una frase es una secuencia de
+ * términos consecutivos en la misma anotación.
+ */
+public class HistoryIndex implements MedicalHistoryListener {
+
+    /**
+     * Lista de apariciones de un término
+     */
+    private static final class Postings {
+        byte[] bytes = new byte[8];
+        int length;
+        int lastDoc = -1;
+        int docCount;
+
+        /**
+         * @param positions [número de apariciones, pos1, pos2, ...]
+         */
+        void addDoc(int doc, int[] positions) {
+            int count = positions[0];
+            writeVarint(lastDoc < 0 ? doc : doc - lastDoc);
+            writeVarint(count);
+            int last = 0;
+            for (int i = 1; i <= count; i++) {
+                writeVarint(positions[i] - last);
+                last = positions[i];
+            }
+            lastDoc = doc;
+            docCount++;
+        }
+
+        private void writeVarint(int value) {
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+    }
+
+    /**
+     * Recorrido de una lista de apariciones, documento a documento
+     */
+    private static final class Cursor {
+        private final byte[] bytes;
+        private final int length;
+        private int offset;
+        int doc = -1;
+        int freq;
+        private int positionsOffset;
+
+        Cursor(Postings p) {
+            this.bytes = p.bytes;
+            this.length = p.length;
+        }
+
+        /**
+         * @return false si no quedan documentos
+         */
+        boolean next() {
+            // Saltar las posiciones no leídas del documento actual
+            if (doc >= 0) {
+                offset = positionsOffset;
+                for (int i = 0; i < freq; i++) {
+                    readVarint();
+                }
+            }
+            if (offset >= length) {
+                return false;
+            }
+            int delta = readVarint();
+            doc = doc < 0 ? delta : doc + delta;
+            freq = readVarint();
+            positionsOffset = offset;
+            return true;
+        }
+
+        /**
+         * Avanza hasta el primer documento mayor o igual que target
+         */
+        boolean advance(int target) {
+            while (doc < target) {
+                if (!next()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Decodifica las posiciones del documento actual
+         */
+        int[] positions(int[] into) {
+            int[] out = into.length >= freq ? into : new int[freq];
+            int p = positionsOffset;
+            int saved = offset;
+            offset = p;
+            int last = 0;
+            for (int i = 0; i < freq; i++) {
+                last += readVarint();
+                out[i] = last;
+            }
+            offset = saved;
+            return out;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    private final Map<String, Postings> terms = new HashMap<>();
+    private final Map<HealthCardID, Integer> patientIds = new HashMap<>();
+    private final List<HealthCardID> patients = new ArrayList<>();
+    private int[] patientIndexed = new int[16]; // anotaciones indexadas de cada paciente
+    private int[] docPatient = new int[1024];
+    private int[] docAnnotation = new int[1024];
+    private int docCount;
+
+    // Buffers reutilizados al indexar (protegidos por el monitor)
+    private final StringBuilder token = new StringBuilder();
+    private final Map<String, int[]> docTerms = new HashMap<>();
+
+    // ============= INDEXACIÓN =============
+
+    @Override
+    public void annotationAdded(MedicalHistory hce, int index) {
+        add(hce.getCip(), index, hce.getAnnotationView(index));
+    }
+
+    /**
+     * Indexa las anotaciones de una historia que aún no estén indexadas (p. ej. al descargarla del SNS)
+     */
+    public synchronized void addHistory(MedicalHistory hce) {
+        if (hce == null) {
+            throw new IllegalArgumentException("La historia clínica no puede ser null");
+        }
+        Integer patient = patientIds.get(hce.getCip());
+        int first = patient == null ? 0 : patientIndexed[patient];
+        for (int i = first; i < hce.getAnnotationCount(); i++) {
+            add(hce.getCip(), i, hce.getAnnotationView(i));
+        }
+    }
+
+    /**
+     * Indexa una anotación; no hace nada si esa posición de la historia ya está indexada
+     * @param cip Paciente de la historia
+     * @param annotationIndex Posición de la anotación en su historia
+     * @param text Texto de la anotación
+     */
+    public synchronized void add(HealthCardID cip, int annotationIndex, CharSequence text) {
+        if (cip == null || text == null) {
+            throw new IllegalArgumentException("El CIP y el texto no pueden ser null");
+        }
+        if (annotationIndex < 0) {
+            throw new IllegalArgumentException("Índice de anotación inválido: " + annotationIndex);
+        }
+        Integer patient = patientIds.get(cip);
+        if (patient == null) {
+            patient = patients.size();
+            patients.add(cip);
+            patientIds.put(cip, patient);
+            if (patient == patientIndexed.length) {
+                patientIndexed = Arrays.copyOf(patientIndexed, patient * 2);
+            }
+        }
+        if (annotationIndex < patientIndexed[patient]) {
+            return;
+        }
+        patientIndexed[patient] = annotationIndex + 1;
+        if (docCount == docPatient.length) {
+            docPatient = Arrays.copyOf(docPatient, docCount * 2);
+            docAnnotation = Arrays.copyOf(docAnnotation, docCount * 2);
+        }
+        int doc = docCount++;
+        docPatient[doc] = patient;
+        docAnnotation[doc] = annotationIndex;
+
+        // Posiciones de cada término en la anotación: [cuántas, pos1, pos2, ...]
+        docTerms.clear();
+        int position = 0;
+        int i = 0;
+        while ((i = nextToken(text, i)) >= 0) {
+            String term = token.toString();
+            int[] positions = docTerms.get(term);
+            if (positions == null) {
+                positions = new int[4];
+            } else if (positions[0] + 1 == positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            positions[++positions[0]] = position++;
+            docTerms.put(term, positions);
+        }
+        for (Map.Entry<String, int[]> e : docTerms.entrySet()) {
+            terms.computeIfAbsent(e.getKey(), k -> new Postings()).addDoc(doc, e.getValue());
+        }
+    }
+
+    // ============= BÚSQUEDA =============
+
+    /**
+     * @return Anotaciones de todas las historias que contienen el término
+     */
+    public List<HistoryHit> searchTerm(String term) {
+        return searchPhrase(term, -1);
+    }
+
+    /**
+     * @return Anotaciones de la historia del paciente que contienen el término
+     */
+    public List<HistoryHit> searchTerm(HealthCardID cip, String term) {
+        return searchPhrase(cip, term);
+    }
+
+    /**
+     * @return Anotaciones de todas las historias que contienen la frase
+     */
+    public List<HistoryHit> searchPhrase(String phrase) {
+        return searchPhrase(phrase, -1);
+    }
+
+    /**
+     * @return Anotaciones de la historia del paciente que contienen la frase
+     */
+    public List<HistoryHit> searchPhrase(HealthCardID cip, String phrase) {
+        Integer patient;
+        synchronized (this) {
+            patient = patientIds.get(cip);
+        }
+        return patient == null ? new ArrayList<>() : searchPhrase(phrase, patient);
+    }
+
+    private synchronized List<HistoryHit> searchPhrase(String phrase, int patient) {
+        if (phrase == null) {
+            throw new IllegalArgumentException("La búsqueda no puede ser null");
+        }
+        List<String> queryTerms = new ArrayList<>();
+        int i = 0;
+        while ((i = nextToken(phrase, i)) >= 0) {
+            queryTerms.add(token.toString());
+        }
+        List<HistoryHit> hits = new ArrayList<>();
+        if (queryTerms.isEmpty()) {
+            return hits;
+        }
+
+        Cursor[] cursors = new Cursor[queryTerms.size()];
+        Cursor lead = null;
+        int leadDocs = Integer.MAX_VALUE;
+        for (int t = 0; t < cursors.length; t++) {
+            Postings p = terms.get(queryTerms.get(t));
+            if (p == null) {
+                return hits;
+            }
+            cursors[t] = new Cursor(p);
+            if (p.docCount < leadDocs) {
+                lead = cursors[t];
+                leadDocs = p.docCount;
+            }
+        }
+
+        // Intersección guiada por el término menos frecuente
+        int[][] positions = new int[cursors.length][8];
+        while (lead.next()) {
+            int doc = lead.doc;
+            if (patient >= 0 && docPatient[doc] != patient) {
+                continue;
+            }
+            boolean all = true;
+            for (Cursor c : cursors) {
+                if (c != lead && (!c.advance(doc) || c.doc != doc)) {
+                    all = false;
+                    if (c.doc < doc) {
+                        return hits; // la lista de ese término se ha agotado
+                    }
+                    break;
+                }
+            }
+            if (all && (cursors.length == 1 || containsPhrase(cursors, positions))) {
+                hits.add(new HistoryHit(patients.get(docPatient[doc]), docAnnotation[doc]));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Comprueba si los términos aparecen seguidos en el documento actual de todos los cursores
+     */
+    private static boolean containsPhrase(Cursor[] cursors, int[][] positions) {
+        for (int t = 0; t < cursors.length; t++) {
+            positions[t] = cursors[t].positions(positions[t]);
+        }
+        int[] first = positions[0];
+        for (int k = 0; k < cursors[0].freq; k++) {
+            int start = first[k];
+            boolean match = true;
+            for (int t = 1; t < cursors.length && match; t++) {
+                match = Arrays.binarySearch(positions[t], 0, cursors[t].freq, start + t) >= 0;
+            }
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ============= ESTADÍSTICAS =============
+
+    /**
+     * @return Anotaciones indexadas
+     */
+    public synchronized int getDocumentCount() {
+        return docCount;
+    }
+
+    public synchronized int getTermCount() {
+        return terms.size();
+    }
+
+    public synchronized int getPatientCount() {
+        return patients.size();
+    }
+
+    /**
+     * @return Bytes ocupados por las listas de apariciones comprimidas
+     */
+    public synchronized long getPostingBytes() {
+        long bytes = 0;
+        for (Postings p : terms.values()) {
+            bytes += p.length;
+        }
+        return bytes;
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    /**
+     * Lee el siguiente término del texto en el buffer token (en minúsculas y sin tildes)
+     * @return Posición tras el término, o -1 si no quedan términos
+     */
+    private int nextToken(CharSequence text, int from) {
+        int n = text.length();
+        int i = from;
+        while (i < n && !Character.isLetterOrDigit(text.charAt(i))) {
+            i++;
+        }
+        if (i == n) {
+            return -1;
+        }
+        token.setLength(0);
+        while (i < n) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                break;
+            }
+            token.append(fold(c));
+            i++;
+        }
+        return i;
+    }
+
+    private static char fold(char c) {
+        c = Character.toLowerCase(c);
+        switch (c) {
+            case 'á': case 'à': case 'ä': return 'a';
+            case 'é': case 'è': case 'ë': return 'e';
+            case 'í': case 'ì': case 'ï': return 'i';
+            case 'ó': case 'ò': case 'ö': return 'o';
+            case 'ú': case 'ù': case 'ü': return 'u';
+            default: return c;
+        }
+    }
+}
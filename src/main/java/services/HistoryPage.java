@@ -0,0 +1,113 @@
+package services;
+
+import consultamedica.MedicalHistory;
+import data.HealthCardID;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Página de una historia clínica: un tramo de anotaciones consecutivas, con el número
+ * total de anotaciones de la historia para saber cuántas quedan antes
+ */
+public final class HistoryPage {
+    private final HealthCardID cip;
+    private final int membShipNumb;
+    private final int totalCount;
+    private final int firstIndex;
+    private final List<String> annotations;
+    private final long[] times;
+
+    /**
+     * @param firstIndex Posición en la historia de la primera anotación de la página
+     * @param annotations Anotaciones, de la más antigua a la más reciente
+     * @param times Fechas de las anotaciones en milisegundos
+     */
+    public HistoryPage(HealthCardID cip, int membShipNumb, int totalCount, int firstIndex,
+                       List<String> annotations, long[] times) {
+        if (cip == null || annotations == null || times == null) {
+            throw new IllegalArgumentException("Parámetros inválidos");
+        }
+        if (annotations.size() != times.length) {
+            throw new IllegalArgumentException("Las anotaciones y sus fechas no coinciden");
+        }
+        if (firstIndex < 0 || firstIndex + annotations.size() > totalCount) {
+            throw new IllegalArgumentException("Página fuera de la historia: " + firstIndex
+                    + "+" + annotations.size() + " de " + totalCount);
+        }
+        this.cip = cip;
+        this.membShipNumb = membShipNumb;
+        this.totalCount = totalCount;
+        this.firstIndex = firstIndex;
+        this.annotations = Collections.unmodifiableList(new ArrayList<>(annotations));
+        this.times = times.clone();
+    }
+
+    /**
+     * Recorta una historia completa: como mucho pageSize anotaciones, las más recientes
+     * de las anteriores a la posición before
+     */
+    public static HistoryPage of(MedicalHistory hce, int before, int pageSize) {
+        checkRange(before, pageSize);
+        int end = Math.min(before, hce.getAnnotationCount());
+        int start = Math.max(0, end - pageSize);
+        List<String> annots = new ArrayList<>(end - start);
+        long[] times = new long[end - start];
+        for (int i = start; i < end; i++) {
+            annots.add(hce.getAnnotation(i));
+            times[i - start] = hce.getAnnotationDate(i).getTime();
+        }
+        return new HistoryPage(hce.getCip(), hce.getMembShipNumb(), hce.getAnnotationCount(),
+                start, annots, times);
+    }
+
+    static void checkRange(int before, int pageSize) {
+        if (before < 0) {
+            throw new IllegalArgumentException("La posición de la página no puede ser negativa: " + before);
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser positivo: " + pageSize);
+        }
+    }
+
+    public HealthCardID getCip() {
+        return cip;
+    }
+
+    public int getMembShipNumb() {
+        return membShipNumb;
+    }
+
+    /**
+     * @return Número de anotaciones de la historia completa
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    /**
+     * @return Posición (exclusiva) tras la última anotación de la página
+     */
+    public int getEndIndex() {
+        return firstIndex + annotations.size();
+    }
+
+    public List<String> getAnnotations() {
+        return annotations;
+    }
+
+    public long[] getTimes() {
+        return times.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryPage{" + "cip=" + cip + ", annotations=" + firstIndex + ".." + getEndIndex()
+                + " de " + totalCount + '}';
+    }
+}
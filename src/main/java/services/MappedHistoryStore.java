@@ -0,0 +1,456 @@
+package services;
+
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalHistoryListener;
+import data.HealthCardID;
+import data.InvalidHealthCardIDException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Almacén local de historias clínicas sobre ficheros de segmento mapeados en memoria.
+ *
+ * Las anotaciones se guardan en segmentos de tamaño fijo (history-NNNNN.seg) como registros
+ * de solo escritura al final, con el texto en UTF-16. En el heap sólo queda un índice por CIP
+ * con la posición de cada anotación; las historias cargadas usan vistas CharBuffer sobre el
+ * fichero mapeado, sin copiar el texto. El índice se reconstruye al abrir el almacén,
+ * así que tras un reinicio las historias se sirven sin volver a descargarlas del SNS.
+ *
+ * Formato de cada registro (alineado a 8 bytes):
+ * [longitud cuerpo:int][crc32:int][tipo:byte][reservado:3][cip:16][membresía:int][fecha:long][texto]
+ * El CRC cubre el cuerpo; la recuperación se detiene en el primer registro inválido de cada
+ * segmento (escritura cortada) y lo borra. Los registros de una historia reemplazada no se
+ * compactan: siguen ocupando sitio en su segmento.
+ */
+public class MappedHistoryStore implements AutoCloseable {
+
+    static final String SEGMENT_PREFIX = "history-";
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final int HEADER_BYTES = 8;
+    private static final int FIXED_BODY_BYTES = 32;
+    private static final int CIP_LENGTH = 16;
+
+    // Tipos de registro
+    private static final byte RESET = 1;      // empieza una historia vacía (sustituye a la anterior)
+    private static final byte ANNOTATION = 2; // añade una anotación
+    private static final byte DOCTOR = 3;     // cambia el médico de familia
+
+    /**
+     * Posiciones de las anotaciones de un paciente: segmento en los 32 bits altos
+     * y desplazamiento del registro en los bajos
+     */
+    private static final class PatientEntry {
+        int membShipNumb;
+        long[] records = new long[4];
+        int count;
+
+        PatientEntry(int membShipNumb) {
+            this.membShipNumb = membShipNumb;
+        }
+
+        void add(long record) {
+            if (count == records.length) {
+                records = Arrays.copyOf(records, count * 2);
+            }
+            records[count++] = record;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final Map<HealthCardID, PatientEntry> index = new HashMap<>();
+    private int writeOffset; // en el último segmento
+    private boolean closed;
+
+    /**
+     * Abre (o crea) el almacén con segmentos de 16 MB
+     * @param directory Directorio de los ficheros de segmento
+     * @throws IOException si no se pueden abrir o recuperar los segmentos
+     */
+    public MappedHistoryStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Abre (o crea) el almacén y reconstruye el índice a partir de los segmentos existentes
+     * @param directory Directorio de los ficheros de segmento
+     * @param segmentSize Tamaño de cada segmento nuevo en bytes (limita la anotación más larga)
+     * @throws IOException si no se pueden abrir o recuperar los segmentos
+     */
+    public MappedHistoryStore(Path directory, int segmentSize) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("El directorio no puede ser null");
+        }
+        if (segmentSize < 4096 || segmentSize % 8 != 0) {
+            throw new IllegalArgumentException(
+                    "El tamaño de segmento debe ser múltiplo de 8 y de al menos 4096 bytes: " + segmentSize);
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        recover();
+    }
+
+    // ============= CONSULTA =============
+
+    public synchronized boolean contains(HealthCardID cip) {
+        return index.containsKey(cip);
+    }
+
+    /**
+     * Carga la historia guardada de un paciente. Las anotaciones son vistas sobre el fichero
+     * mapeado (no se copian al heap); la historia devuelta no escribe en el almacén
+     * @return La historia, o null si el paciente no está en el almacén
+     */
+    public synchronized MedicalHistory load(HealthCardID cip) {
+        checkOpen();
+        PatientEntry entry = index.get(cip);
+        if (entry == null) {
+            return null;
+        }
+        MedicalHistory hce = newHistory(cip, entry.membShipNumb);
+        for (int i = 0; i < entry.count; i++) {
+            long record = entry.records[i];
+            ByteBuffer segment = segments.get(segmentOf(record));
+            int offset = offsetOf(record);
+            hce.addMedicalHistoryAnnotations(textView(segment, offset),
+                    new Date(segment.getLong(offset + HEADER_BYTES + 24)));
+        }
+        return hce;
+    }
+
+    /**
+     * Abre la historia de un paciente para escribir en ella: cada anotación añadida y cada
+     * cambio de médico se guardan en el almacén en el momento (write-through).
+     * Si el paciente no estaba, se crea con una historia vacía
+     * @throws IOException si no se puede escribir la historia nueva
+     */
+    public synchronized MedicalHistory open(HealthCardID cip, int membShipNumb) throws IOException {
+        checkOpen();
+        MedicalHistory hce = load(cip);
+        if (hce == null) {
+            hce = newHistory(cip, membShipNumb);
+            reset(cip, membShipNumb);
+        }
+        hce.addListener(new WriteThrough());
+        return hce;
+    }
+
+    /**
+     * Guarda una historia (p. ej. la descargada del SNS). Si la guardada es un prefijo de ésta,
+     * sólo se escriben las anotaciones nuevas; si no, la historia se guarda de nuevo entera
+     * @throws IOException si no se puede escribir en el almacén
+     */
+    public synchronized void save(MedicalHistory hce) throws IOException {
+        checkOpen();
+        if (hce == null) {
+            throw new IllegalArgumentException("La historia clínica no puede ser null");
+        }
+        HealthCardID cip = hce.getCip();
+        PatientEntry entry = index.get(cip);
+        int from = 0;
+        if (!isPrefixOf(entry, hce)) {
+            reset(cip, hce.getMembShipNumb());
+        } else if (entry.membShipNumb != hce.getMembShipNumb()) {
+            changeDoctor(cip, hce.getMembShipNumb());
+        }
+        if (entry != null && index.get(cip) == entry) {
+            from = entry.count;
+        }
+        for (int i = from; i < hce.getAnnotationCount(); i++) {
+            append(cip, hce.getMembShipNumb(), hce.getAnnotationView(i),
+                    hce.getAnnotationDate(i).getTime());
+        }
+    }
+
+    public synchronized int getAnnotationCount(HealthCardID cip) {
+        PatientEntry entry = index.get(cip);
+        return entry == null ? 0 : entry.count;
+    }
+
+    public synchronized int getPatientCount() {
+        return index.size();
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return Bytes ocupados en los segmentos (incluye las historias reemplazadas)
+     */
+    public synchronized long getUsedBytes() {
+        return segments.isEmpty() ? 0 : (long) (segments.size() - 1) * segmentSize + writeOffset;
+    }
+
+    /**
+     * Fuerza la escritura en disco de los segmentos
+     */
+    public synchronized void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        force();
+        closed = true;
+        segments.clear();
+        index.clear();
+    }
+
+    // ============= ESCRITURA =============
+
+    /**
+     * Guarda en el almacén lo que se añade a una historia abierta con open
+     */
+    private final class WriteThrough implements MedicalHistoryListener {
+        @Override
+        public void annotationAdded(MedicalHistory hce, int i) {
+            synchronized (MappedHistoryStore.this) {
+                checkOpen();
+                try {
+                    append(hce.getCip(), hce.getMembShipNumb(), hce.getAnnotationView(i),
+                            hce.getAnnotationDate(i).getTime());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        @Override
+        public void doctorChanged(MedicalHistory hce) {
+            synchronized (MappedHistoryStore.this) {
+                checkOpen();
+                try {
+                    changeDoctor(hce.getCip(), hce.getMembShipNumb());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    private void reset(HealthCardID cip, int membShipNumb) throws IOException {
+        write(RESET, cip, membShipNumb, 0, "");
+        index.put(cip, new PatientEntry(membShipNumb));
+    }
+
+    private void changeDoctor(HealthCardID cip, int membShipNumb) throws IOException {
+        write(DOCTOR, cip, membShipNumb, 0, "");
+        index.get(cip).membShipNumb = membShipNumb;
+    }
+
+    private void append(HealthCardID cip, int membShipNumb, CharSequence text, long time)
+            throws IOException {
+        long record = write(ANNOTATION, cip, membShipNumb, time, text);
+        PatientEntry entry = index.computeIfAbsent(cip, k -> new PatientEntry(membShipNumb));
+        entry.membShipNumb = membShipNumb;
+        entry.add(record);
+    }
+
+    /**
+     * Escribe un registro al final del último segmento (o de uno nuevo si no cabe)
+     * @return Posición del registro
+     */
+    private long write(byte type, HealthCardID cip, int membShipNumb, long time, CharSequence text)
+            throws IOException {
+        int bodyLength = FIXED_BODY_BYTES + text.length() * 2;
+        int recordLength = align(HEADER_BYTES + bodyLength);
+        if (recordLength > segmentSize) {
+            throw new IllegalArgumentException(
+                    "La anotación no cabe en un segmento: " + text.length() + " caracteres");
+        }
+        if (segments.isEmpty() || writeOffset + recordLength > segmentSize) {
+            addSegment();
+        }
+        int segmentIndex = segments.size() - 1;
+        MappedByteBuffer segment = segments.get(segmentIndex);
+        int offset = writeOffset;
+
+        int body = offset + HEADER_BYTES;
+        segment.put(body, type);
+        segment.put(body + 4, cip.getPersonalID().getBytes(StandardCharsets.US_ASCII));
+        segment.putInt(body + 4 + CIP_LENGTH, membShipNumb);
+        segment.putLong(body + 24, time);
+        segment.slice(body + FIXED_BODY_BYTES, text.length() * 2).asCharBuffer().append(text);
+
+        segment.putInt(offset + 4, crcOf(segment, body, bodyLength));
+        segment.putInt(offset, bodyLength); // la longitud se escribe la última
+
+        writeOffset += recordLength;
+        return ((long) segmentIndex << 32) | offset;
+    }
+
+    private void addSegment() throws IOException {
+        Path file = directory.resolve(String.format("%s%05d%s",
+                SEGMENT_PREFIX, segments.size(), SEGMENT_SUFFIX));
+        segments.add(map(file));
+        writeOffset = 0;
+    }
+
+    // ============= RECUPERACIÓN =============
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(null);
+
+        for (Path file : files) {
+            MappedByteBuffer segment = map(file);
+            segments.add(segment);
+            writeOffset = scan(segments.size() - 1, segment);
+        }
+    }
+
+    /**
+     * Recorre los registros válidos de un segmento, actualizando el índice
+     * @return Final del último registro válido
+     */
+    private int scan(int segmentIndex, MappedByteBuffer segment) throws IOException {
+        int offset = 0;
+        while (offset + HEADER_BYTES + FIXED_BODY_BYTES <= segment.capacity()) {
+            int bodyLength = segment.getInt(offset);
+            if (bodyLength == 0) {
+                break;
+            }
+            int body = offset + HEADER_BYTES;
+            if (bodyLength < FIXED_BODY_BYTES || bodyLength % 2 != 0
+                    || bodyLength > segment.capacity() - body
+                    || segment.getInt(offset + 4) != crcOf(segment, body, bodyLength)) {
+                // Escritura cortada: se borra para que no se confunda con un registro posterior
+                for (int i = offset; i < segment.capacity(); i++) {
+                    segment.put(i, (byte) 0);
+                }
+                break;
+            }
+            apply(segment.get(body), readCip(segment, body + 4), segment.getInt(body + 4 + CIP_LENGTH),
+                    ((long) segmentIndex << 32) | offset);
+            offset += align(HEADER_BYTES + bodyLength);
+        }
+        return offset;
+    }
+
+    private void apply(byte type, HealthCardID cip, int membShipNumb, long record) throws IOException {
+        switch (type) {
+            case RESET:
+                index.put(cip, new PatientEntry(membShipNumb));
+                break;
+            case DOCTOR:
+                index.computeIfAbsent(cip, k -> new PatientEntry(membShipNumb)).membShipNumb = membShipNumb;
+                break;
+            case ANNOTATION:
+                PatientEntry entry = index.computeIfAbsent(cip, k -> new PatientEntry(membShipNumb));
+                entry.membShipNumb = membShipNumb;
+                entry.add(record);
+                break;
+            default:
+                throw new IOException("Tipo de registro desconocido en el almacén de historias: " + type);
+        }
+    }
+
+    private static HealthCardID readCip(ByteBuffer segment, int offset) throws IOException {
+        byte[] bytes = new byte[CIP_LENGTH];
+        segment.get(offset, bytes);
+        try {
+            return HealthCardID.of(new String(bytes, StandardCharsets.US_ASCII));
+        } catch (InvalidHealthCardIDException e) {
+            throw new IOException("CIP inválido en el almacén de historias", e);
+        }
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // El mapeo sigue siendo válido después de cerrar el canal
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private static CharBuffer textView(ByteBuffer segment, int offset) {
+        int bodyLength = segment.getInt(offset);
+        int text = offset + HEADER_BYTES + FIXED_BODY_BYTES;
+        return segment.slice(text, bodyLength - FIXED_BODY_BYTES).asCharBuffer().asReadOnlyBuffer();
+    }
+
+    private static int crcOf(ByteBuffer segment, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(segment.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private boolean isPrefixOf(PatientEntry entry, MedicalHistory hce) {
+        if (entry == null || entry.count > hce.getAnnotationCount()) {
+            return false;
+        }
+        if (entry.count == 0) {
+            return true;
+        }
+        // Basta con comparar la última anotación guardada: las historias sólo crecen al final
+        long record = entry.records[entry.count - 1];
+        ByteBuffer segment = segments.get(segmentOf(record));
+        int offset = offsetOf(record);
+        int last = entry.count - 1;
+        return segment.getLong(offset + HEADER_BYTES + 24) == hce.getAnnotationDate(last).getTime()
+                && CharSequence.compare(textView(segment, offset), hce.getAnnotationView(last)) == 0;
+    }
+
+    private static MedicalHistory newHistory(HealthCardID cip, int membShipNumb) {
+        try {
+            return new MedicalHistory(cip, membShipNumb);
+        } catch (IncorrectParametersException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    private static int align(int length) {
+        return (length + 7) & ~7;
+    }
+
+    private static int segmentOf(long record) {
+        return (int) (record >>> 32);
+    }
+
+    private static int offsetOf(long record) {
+        return (int) record;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("El almacén de historias está cerrado");
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package services;
+
+import consultamedica.FqUnit;
+import consultamedica.IncorrectParametersException;
+import consultamedica.IncorrectTakingGuidelinesException;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import consultamedica.MedicalPrescriptionLine;
+import consultamedica.ProductAlreadyInPrescriptionException;
+import consultamedica.TakingGuideline;
+import consultamedica.dayMoment;
+import data.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Codificación binaria compacta de historias clínicas y prescripciones.
+ * Se usa para persistir envíos pendientes y como cuerpo de las peticiones al SNS.
+ * Las cadenas se escriben como longitud + UTF-8 (sin el límite de 64 KB de writeUTF)
+ * y los campos opcionales llevan un byte de presencia delante.
+ * La historia clínica se escribe anotación a anotación, con su fecha.
+ */
+public final class MedicalRecordCodec {
+
+    // Marca de historia escrita sin sus anotaciones antiguas (ver writeLoadedHistory)
+    private static final int LOADED_HISTORY = -2;
+    // Marca de historia escrita por anotaciones con su versión base (ver writeHistory)
+    private static final int BASED_HISTORY = -3;
+
+    private MedicalRecordCodec() {
+    }
+
+    // ============= HISTORIA CLÍNICA =============
+
+    /**
+     * Escribe la historia completa (carga las páginas que falten) y su versión base
+     */
+    public static void writeHistory(DataOutput out, MedicalHistory hce) throws IOException {
+        writeString(out, hce.getCip().getPersonalID());
+        out.writeInt(hce.getMembShipNumb());
+        out.writeInt(BASED_HISTORY);
+        int count = hce.getAnnotationCount();
+        out.writeInt(count);
+        out.writeInt(hce.getBaseAnnotationCount());
+        for (int i = 0; i < count; i++) {
+            out.writeLong(hce.getAnnotationDate(i).getTime());
+            writeString(out, hce.getAnnotation(i));
+        }
+    }
+
+    /**
+     * Escribe sólo las anotaciones ya cargadas de la historia, el número de anotaciones
+     * antiguas sin cargar y la versión base: nunca descarga páginas, así que sirve con el SNS
+     * caído. La historia leída no tiene las anotaciones antiguas y sólo puede enviarse como
+     * delta (ver HistoryDelta.of), por lo que la versión base no puede ser anterior a ellas.
+     */
+    public static void writeLoadedHistory(DataOutput out, MedicalHistory hce) throws IOException {
+        int count = hce.getAnnotationCount();
+        int older = count - hce.getLoadedAnnotationCount();
+        if (hce.getBaseAnnotationCount() < older) {
+            throw new IllegalArgumentException("Las anotaciones nuevas de la historia no están cargadas");
+        }
+        writeString(out, hce.getCip().getPersonalID());
+        out.writeInt(hce.getMembShipNumb());
+        out.writeInt(LOADED_HISTORY);
+        out.writeInt(older);
+        out.writeInt(hce.getBaseAnnotationCount());
+        out.writeInt(count - older);
+        for (int i = older; i < count; i++) {
+            out.writeLong(hce.getAnnotationDate(i).getTime());
+            writeString(out, hce.getAnnotation(i));
+        }
+    }
+
+    public static MedicalHistory readHistory(DataInput in) throws IOException {
+        HealthCardID cip = readHealthCardID(in);
+        int membShipNumb = in.readInt();
+        try {
+            MedicalHistory hce = new MedicalHistory(cip, membShipNumb);
+            int marker = in.readInt();
+            if (marker == LOADED_HISTORY) {
+                return readLoadedHistory(in, hce);
+            }
+            if (marker != BASED_HISTORY) {
+                throw new IOException("Formato de historia desconocido: " + marker);
+            }
+            int count = checkedLength(in.readInt());
+            int base = in.readInt();
+            if (base < 0 || base > count) {
+                throw new IOException("Versión base fuera de la historia: " + base);
+            }
+            for (int i = 0; i < count; i++) {
+                Date date = new Date(in.readLong());
+                hce.addMedicalHistoryAnnotations(readString(in), date);
+            }
+            hce.setBaseAnnotationCount(base);
+            return hce;
+        } catch (IncorrectParametersException e) {
+            throw new IOException("Historia clínica corrupta: " + e.getMessage(), e);
+        }
+    }
+
+    private static MedicalHistory readLoadedHistory(DataInput in, MedicalHistory hce) throws IOException {
+        int older = checkedLength(in.readInt());
+        int base = in.readInt();
+        int loaded = checkedLength(in.readInt());
+        if (base < older || base > older + loaded) {
+            throw new IOException("Versión base fuera de la historia: " + base);
+        }
+        hce.setOlderAnnotations(older, h -> {
+            throw new IOException("Las anotaciones antiguas no se guardan con la historia");
+        });
+        for (int i = 0; i < loaded; i++) {
+            Date date = new Date(in.readLong());
+            hce.addMedicalHistoryAnnotations(readString(in), date);
+        }
+        hce.setBaseAnnotationCount(base);
+        return hce;
+    }
+
+    // ============= PRESCRIPCIÓN =============
+
+    public static void writePrescription(DataOutput out, MedicalPrescription presc) throws IOException {
+        writeString(out, presc.getCip().getPersonalID());
+        out.writeInt(presc.getMembShipNumb());
+        writeString(out, presc.getIllness());
+        writeOptionalString(out, presc.getPrescCode() != null ? presc.getPrescCode().getCode() : null);
+        writeOptionalDate(out, presc.getPrescDate());
+        writeOptionalDate(out, presc.getEndDate());
+        if (presc.geteSign() != null) {
+            byte[] signature = presc.geteSign().getSignature();
+            out.writeBoolean(true);
+            out.writeInt(signature.length);
+            out.write(signature);
+        } else {
+            out.writeBoolean(false);
+        }
+
+        out.writeInt(presc.getLineCount());
+        for (MedicalPrescriptionLine line : presc.getAllLines()) {
+            TakingGuideline g = line.getGuidelines();
+            writeString(out, line.getProductID().getCode());
+            out.writeByte(g.getdMoment().ordinal());
+            out.writeFloat(g.getDuration());
+            out.writeFloat(g.getPosology().getDose());
+            out.writeFloat(g.getPosology().getFreq());
+            out.writeByte(g.getPosology().getFreqUnit().ordinal());
+            writeString(out, g.getInstructions());
+        }
+    }
+
+    public static MedicalPrescription readPrescription(DataInput in) throws IOException {
+        HealthCardID cip = readHealthCardID(in);
+        int membShipNumb = in.readInt();
+        String illness = readString(in);
+        try {
+            MedicalPrescription presc = new MedicalPrescription(cip, membShipNumb, illness);
+            String code = readOptionalString(in);
+            if (code != null) {
+                presc.setPrescCode(new ePrescripCode(code));
+            }
+            presc.setPrescDate(readOptionalDate(in));
+            presc.setEndDate(readOptionalDate(in));
+            if (in.readBoolean()) {
+                byte[] signature = new byte[checkedLength(in.readInt())];
+                in.readFully(signature);
+                presc.seteSign(new DigitalSignature(signature));
+            }
+
+            int lines = checkedLength(in.readInt());
+            for (int i = 0; i < lines; i++) {
+                ProductID prodID = ProductID.of(readString(in));
+                dayMoment moment = dayMoment.values()[in.readUnsignedByte()];
+                float duration = in.readFloat();
+                float dose = in.readFloat();
+                float freq = in.readFloat();
+                FqUnit unit = FqUnit.values()[in.readUnsignedByte()];
+                String instructions = readString(in);
+                presc.addLine(prodID, new String[]{
+                        moment.name(), Float.toString(duration), Float.toString(dose),
+                        Float.toString(freq), unit.name(), instructions, ""});
+            }
+            return presc;
+        } catch (IncorrectParametersException | InvalidePrescripCodeException | InvalidDigitalSignatureException
+                 | InvalidProductIDException | ProductAlreadyInPrescriptionException
+                 | IncorrectTakingGuidelinesException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Prescripción corrupta: " + e.getMessage(), e);
+        }
+    }
+
+    // ============= TIPOS BÁSICOS =============
+
+    public static HealthCardID readHealthCardID(DataInput in) throws IOException {
+        try {
+            return HealthCardID.of(readString(in));
+        } catch (InvalidHealthCardIDException e) {
+            throw new IOException("CIP corrupto: " + e.getMessage(), e);
+        }
+    }
+
+    public static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[checkedLength(in.readInt())];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeOptionalString(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            writeString(out, s);
+        }
+    }
+
+    public static String readOptionalString(DataInput in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+
+    private static void writeOptionalDate(DataOutput out, Date date) throws IOException {
+        out.writeBoolean(date != null);
+        if (date != null) {
+            out.writeLong(date.getTime());
+        }
+    }
+
+    private static Date readOptionalDate(DataInput in) throws IOException {
+        return in.readBoolean() ? new Date(in.readLong()) : null;
+    }
+
+    private static int checkedLength(int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Longitud negativa en el registro: " + length);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,69 @@
+package services;
+
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Justificante provisional de un envío guardado en la bandeja de salida.
+ * Se entrega en cuanto el envío es duradero en disco; el future se completa con la
+ * prescripción registrada (con su código definitivo) cuando el SNS la acepta.
+ */
+public class OutboxReceipt {
+    private final long sequence;
+    private final HealthCardID cip;
+    private final String illness;
+    private final CompletableFuture<MedicalPrescription> delivery;
+
+    OutboxReceipt(long sequence, HealthCardID cip, String illness) {
+        this.sequence = sequence;
+        this.cip = cip;
+        this.illness = illness;
+        this.delivery = new CompletableFuture<>();
+    }
+
+    /**
+     * @return Posición del envío en la bandeja (los envíos se entregan en este orden)
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return Identificador provisional que se puede mostrar al paciente hasta tener el código definitivo
+     */
+    public String getProvisionalId() {
+        return String.format("PROV-%012d", sequence);
+    }
+
+    public HealthCardID getCip() {
+        return cip;
+    }
+
+    public String getIllness() {
+        return illness;
+    }
+
+    /**
+     * @return Future con la prescripción registrada por el SNS, o con la excepción de negocio
+     *         si el SNS la rechaza
+     */
+    public CompletableFuture<MedicalPrescription> getDelivery() {
+        return delivery;
+    }
+
+    public boolean isDelivered() {
+        return delivery.isDone();
+    }
+
+    @Override
+    public String toString() {
+        return "OutboxReceipt{" +
+                "provisionalId=" + getProvisionalId() +
+                ", cip=" + cip +
+                ", illness='" + illness + '\'' +
+                ", delivered=" + isDelivered() +
+                '}';
+    }
+}
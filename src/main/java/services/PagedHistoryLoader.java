@@ -0,0 +1,78 @@
+package services;
+
+import consultamedica.HistoryPageLoader;
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import data.HealthCardID;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Carga de historias clínicas por páginas desde el SNS, empezando por las anotaciones
+ * más recientes. Las páginas anteriores se descargan cuando la historia las necesita,
+ * así que abrir la historia cuesta lo mismo sea cual sea su longitud.
+ */
+public class PagedHistoryLoader implements HistoryPageLoader {
+
+    private final HealthNationalService hns;
+    private final int pageSize;
+
+    public PagedHistoryLoader(HealthNationalService hns, int pageSize) {
+        if (hns == null) {
+            throw new IllegalArgumentException("HealthNationalService no puede ser null");
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser positivo: " + pageSize);
+        }
+        this.hns = hns;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Descarga la última página de la historia de un paciente
+     * @return Historia con las pageSize anotaciones más recientes cargadas y las anteriores pendientes
+     */
+    public static MedicalHistory open(HealthNationalService hns, HealthCardID cip, int pageSize)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        return new PagedHistoryLoader(hns, pageSize).open(cip);
+    }
+
+    public MedicalHistory open(HealthCardID cip)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        HistoryPage page = hns.getMedicalHistoryPage(cip, Integer.MAX_VALUE, pageSize);
+        if (page.getEndIndex() != page.getTotalCount()) {
+            throw new ConnectException("El SNS no ha devuelto la última página de la historia");
+        }
+        MedicalHistory hce = new MedicalHistory(cip, page.getMembShipNumb());
+        List<String> annots = page.getAnnotations();
+        long[] times = page.getTimes();
+        for (int i = 0; i < annots.size(); i++) {
+            hce.addMedicalHistoryAnnotations(annots.get(i), new Date(times[i]));
+        }
+        hce.setOlderAnnotations(page.getFirstIndex(), this);
+        hce.markSynchronized();
+        return hce;
+    }
+
+    @Override
+    public void loadOlder(MedicalHistory hce) throws IOException {
+        int before = hce.getAnnotationCount() - hce.getLoadedAnnotationCount();
+        HistoryPage page;
+        try {
+            page = hns.getMedicalHistoryPage(hce.getCip(), before, pageSize);
+        } catch (HealthCardIDException | IncorrectParametersException e) {
+            throw new IOException("No se ha podido descargar la página de la historia", e);
+        }
+        if (page.getEndIndex() != before || page.getAnnotations().isEmpty()) {
+            throw new IOException("La página recibida no continúa la historia: " + page);
+        }
+        hce.prependAnnotations(page.getAnnotations(), page.getTimes());
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+}
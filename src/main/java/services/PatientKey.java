@@ -0,0 +1,52 @@
+package services;
+
+import data.HealthCardID;
+
+/**
+ * Clave de las lecturas del SNS por paciente: solo el CIP para la historia clínica,
+ * o CIP + enfermedad para la prescripción
+ */
+final class PatientKey {
+    private final HealthCardID cip;
+    private final String illness; // null para la historia clínica
+
+    private PatientKey(HealthCardID cip, String illness) {
+        this.cip = cip;
+        this.illness = illness;
+    }
+
+    static PatientKey history(HealthCardID cip) {
+        return new PatientKey(cip, null);
+    }
+
+    static PatientKey prescription(HealthCardID cip, String illness) {
+        return new PatientKey(cip, illness);
+    }
+
+    HealthCardID getCip() {
+        return cip;
+    }
+
+    String getIllness() {
+        return illness;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PatientKey that = (PatientKey) o;
+        return java.util.Objects.equals(cip, that.cip)
+                && java.util.Objects.equals(illness, that.illness);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * java.util.Objects.hashCode(cip) + java.util.Objects.hashCode(illness);
+    }
+
+    @Override
+    public String toString() {
+        return "PatientKey{" + "cip=" + cip + ", illness='" + illness + '\'' + '}';
+    }
+}
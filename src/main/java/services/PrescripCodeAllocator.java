@@ -0,0 +1,189 @@
+package services;
+
+import data.InvalidePrescripCodeException;
+import data.ePrescripCode;
+
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reparte códigos de prescripción localmente a partir de bloques reservados en el SNS.
+ * Cada código se obtiene con un incremento atómico sobre el bloque actual, sin bloqueos ni
+ * viajes al SNS. Cuando quedan refillAhead códigos en el bloque se pide el siguiente en
+ * segundo plano, de modo que normalmente ya está disponible al agotarse el actual.
+ * Los códigos no se repiten entre hilos (cada posición se entrega una sola vez) ni entre
+ * reinicios (el SNS no vuelve a conceder un bloque; los códigos no usados de un bloque
+ * se pierden al reiniciar).
+ */
+public class PrescripCodeAllocator {
+
+    // Ejecutor por defecto de las reservas anticipadas (hilos demonio)
+    private static final ExecutorService DEFAULT_LEASE_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "sns-code-lease");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Bloque en uso y siguiente posición a entregar
+     */
+    private static final class Block {
+        final PrescripCodeLease lease;
+        final long refillIndex;
+        final AtomicLong next = new AtomicLong();
+
+        Block(PrescripCodeLease lease, int refillAhead) {
+            this.lease = lease;
+            this.refillIndex = Math.max(0, lease.getCount() - refillAhead);
+        }
+    }
+
+    private final HealthNationalService hns;
+    private final int leaseSize;
+    private final int refillAhead;
+    private Executor leaseExecutor = DEFAULT_LEASE_EXECUTOR;
+
+    private volatile Block current;
+    private CompletableFuture<PrescripCodeLease> prefetch; // protegido por this
+
+    // Bloques concedidos hasta ahora (uno por cada leaseSize códigos), para reconocer sus códigos
+    private final List<PrescripCodeLease> granted = new CopyOnWriteArrayList<>();
+
+    private final LongAdder leases = new LongAdder();
+    private final LongAdder issued = new LongAdder();
+
+    /**
+     * Constructor que pide el siguiente bloque cuando queda una cuarta parte del actual
+     * @param hns Servicio del SNS que concede los bloques
+     * @param leaseSize Número de códigos pedidos en cada bloque
+     */
+    public PrescripCodeAllocator(HealthNationalService hns, int leaseSize) {
+        this(hns, leaseSize, Math.max(1, leaseSize / 4));
+    }
+
+    /**
+     * @param hns Servicio del SNS que concede los bloques
+     * @param leaseSize Número de códigos pedidos en cada bloque
+     * @param refillAhead Códigos restantes en el bloque actual al pedir el siguiente
+     */
+    public PrescripCodeAllocator(HealthNationalService hns, int leaseSize, int refillAhead) {
+        if (hns == null) {
+            throw new IllegalArgumentException("HealthNationalService no puede ser null");
+        }
+        if (leaseSize <= 0) {
+            throw new IllegalArgumentException("El tamaño del bloque debe ser positivo: " + leaseSize);
+        }
+        if (refillAhead < 0 || refillAhead > leaseSize) {
+            throw new IllegalArgumentException("La reserva anticipada debe estar entre 0 y " + leaseSize);
+        }
+        this.hns = hns;
+        this.leaseSize = leaseSize;
+        this.refillAhead = refillAhead;
+    }
+
+    public void setLeaseExecutor(Executor leaseExecutor) {
+        this.leaseExecutor = leaseExecutor != null ? leaseExecutor : DEFAULT_LEASE_EXECUTOR;
+    }
+
+    /**
+     * Entrega el siguiente código libre
+     * @throws ConnectException si se ha agotado el bloque y el SNS no concede otro
+     */
+    public ePrescripCode nextCode() throws ConnectException, InvalidePrescripCodeException {
+        while (true) {
+            Block block = current;
+            if (block != null) {
+                long index = block.next.getAndIncrement();
+                if (index < block.lease.getCount()) {
+                    if (index == block.refillIndex) {
+                        prefetchNext();
+                    }
+                    issued.increment();
+                    return block.lease.codeAt((int) index);
+                }
+            }
+            advance(block);
+        }
+    }
+
+    /**
+     * @return true si el código es de un bloque concedido a este repartidor
+     */
+    public boolean isLeased(ePrescripCode code) {
+        for (PrescripCodeLease lease : granted) {
+            if (lease.contains(code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getLeaseCount() {
+        return leases.sum();
+    }
+
+    public long getIssuedCount() {
+        return issued.sum();
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    /**
+     * Sustituye el bloque agotado por el reservado de antemano (o por uno nuevo si no lo hay)
+     */
+    private synchronized void advance(Block exhausted) throws ConnectException {
+        if (current != exhausted) {
+            return; // otro hilo ya lo ha sustituido
+        }
+        CompletableFuture<PrescripCodeLease> pending = prefetch;
+        prefetch = null;
+
+        PrescripCodeLease lease = null;
+        if (pending != null) {
+            try {
+                lease = pending.get();
+            } catch (ExecutionException e) {
+                // La reserva anticipada falló: se reintenta ahora de forma síncrona
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConnectException("Reserva de códigos interrumpida");
+            }
+        }
+        if (lease == null) {
+            lease = lease();
+        }
+        current = new Block(lease, refillAhead);
+    }
+
+    private synchronized void prefetchNext() {
+        if (prefetch != null) {
+            return;
+        }
+        prefetch = CompletableFuture.supplyAsync(() -> {
+            try {
+                return lease();
+            } catch (ConnectException e) {
+                throw new CompletionException(e);
+            }
+        }, leaseExecutor);
+    }
+
+    private PrescripCodeLease lease() throws ConnectException {
+        PrescripCodeLease lease = hns.leasePrescripCodes(leaseSize);
+        if (lease == null) {
+            throw new IllegalStateException("El SNS no ha concedido ningún bloque de códigos");
+        }
+        granted.add(lease);
+        leases.increment();
+        return lease;
+    }
+}
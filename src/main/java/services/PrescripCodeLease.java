@@ -0,0 +1,108 @@
+package services;
+
+import data.InvalidePrescripCodeException;
+import data.ePrescripCode;
+
+/**
+ * Bloque de códigos de prescripción reservado por el SNS para un terminal.
+ * Los códigos del bloque son prefijo + "-" + número de 10 dígitos, desde first
+ * hasta first + count - 1. El SNS no vuelve a conceder un número ya concedido,
+ * así que los códigos de bloques distintos nunca coinciden.
+ */
+public final class PrescripCodeLease {
+    public static final int NUMBER_DIGITS = 10;
+    public static final long MAX_NUMBER = 9_999_999_999L;
+    public static final int MAX_PREFIX_LENGTH = 20 - NUMBER_DIGITS - 1;
+
+    private final String prefix;
+    private final long first;
+    private final int count;
+
+    /**
+     * @param prefix Prefijo alfanumérico de 1 a 9 caracteres
+     * @param first Primer número del bloque
+     * @param count Número de códigos del bloque
+     */
+    public PrescripCodeLease(String prefix, long first, int count) {
+        if (prefix == null || prefix.isEmpty() || prefix.length() > MAX_PREFIX_LENGTH) {
+            throw new IllegalArgumentException(
+                    "El prefijo debe tener entre 1 y " + MAX_PREFIX_LENGTH + " caracteres");
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) {
+                throw new IllegalArgumentException("El prefijo debe ser alfanumérico: " + prefix);
+            }
+        }
+        if (count <= 0) {
+            throw new IllegalArgumentException("El tamaño del bloque debe ser positivo: " + count);
+        }
+        if (first < 0 || first > MAX_NUMBER - count + 1) {
+            throw new IllegalArgumentException("Bloque fuera de rango: " + first + " + " + count);
+        }
+        this.prefix = prefix;
+        this.first = first;
+        this.count = count;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public long getFirst() {
+        return first;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param index Posición dentro del bloque (0 .. count - 1)
+     * @return Código de esa posición
+     */
+    public ePrescripCode codeAt(int index) throws InvalidePrescripCodeException {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Posición fuera del bloque: " + index);
+        }
+        int len = prefix.length();
+        char[] chars = new char[len + 1 + NUMBER_DIGITS];
+        prefix.getChars(0, len, chars, 0);
+        chars[len] = '-';
+        long n = first + index;
+        for (int i = chars.length - 1; i > len; i--) {
+            chars[i] = (char) ('0' + (int) (n % 10));
+            n /= 10;
+        }
+        return new ePrescripCode(new String(chars));
+    }
+
+    /**
+     * @return true si el código es uno de los del bloque
+     */
+    public boolean contains(ePrescripCode code) {
+        String s = code.getCode();
+        int len = prefix.length();
+        if (s.length() != len + 1 + NUMBER_DIGITS || !s.startsWith(prefix) || s.charAt(len) != '-') {
+            return false;
+        }
+        long n = 0;
+        for (int i = len + 1; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            n = n * 10 + (c - '0');
+        }
+        return n >= first && n < first + count;
+    }
+
+    @Override
+    public String toString() {
+        return "PrescripCodeLease{" +
+                "prefix='" + prefix + '\'' +
+                ", first=" + first +
+                ", count=" + count +
+                '}';
+    }
+}
@@ -0,0 +1,242 @@
+package services;
+
+import consultamedica.MedicalPrescription;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Agrupa los envíos de historia y prescripción de muchas sesiones y los entrega al SNS
+ * en lotes mediante sendHistoriesAndPrescriptions.
+ * Un lote se cierra al llegar a maxBatchSize envíos o cuando han pasado maxDelay desde
+ * que llegó su primer envío. Cada llamante recibe un future con su propia prescripción
+ * registrada (o su propio error). Los envíos que el SNS rechaza porque otra consulta ha
+ * cambiado la historia se ponen sobre la versión actual y se reenvían por separado.
+ * Pueden viajar varios lotes a la vez; mientras todos los envíos en vuelo están ocupados,
+ * los nuevos envíos se acumulan en la cola y forman lotes más grandes.
+ */
+public class PrescriptionBatcher implements AutoCloseable {
+
+    /**
+     * Envío a la espera de lote junto con el future de su llamante
+     */
+    private static final class Pending {
+        final PrescriptionSubmission submission;
+        final CompletableFuture<MedicalPrescription> result = new CompletableFuture<>();
+
+        Pending(PrescriptionSubmission submission) {
+            this.submission = submission;
+        }
+    }
+
+    // Marca de cierre en la cola
+    private static final Pending SHUTDOWN = new Pending(null);
+
+    private final HealthNationalService hns;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+    private final ExecutorService senders;
+    private final Semaphore inFlight;
+    private boolean closed; // protegido por queue
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder submissions = new LongAdder();
+
+    /**
+     * Constructor con hasta 4 lotes en vuelo
+     * @param hns Servicio del SNS al que se envían los lotes
+     * @param maxBatchSize Número máximo de envíos por lote
+     * @param maxDelay Tiempo máximo que un envío espera a que se llene su lote
+     */
+    public PrescriptionBatcher(HealthNationalService hns, int maxBatchSize, Duration maxDelay) {
+        this(hns, maxBatchSize, maxDelay, 4);
+    }
+
+    /**
+     * @param hns Servicio del SNS al que se envían los lotes
+     * @param maxBatchSize Número máximo de envíos por lote
+     * @param maxDelay Tiempo máximo que un envío espera a que se llene su lote
+     * @param maxInFlight Número máximo de lotes enviados a la vez
+     */
+    public PrescriptionBatcher(HealthNationalService hns, int maxBatchSize, Duration maxDelay,
+                               int maxInFlight) {
+        if (hns == null) {
+            throw new IllegalArgumentException("HealthNationalService no puede ser null");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser positivo: " + maxBatchSize);
+        }
+        if (maxDelay == null || maxDelay.isNegative()) {
+            throw new IllegalArgumentException("La espera máxima no puede ser null ni negativa");
+        }
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("El número de lotes en vuelo debe ser positivo: " + maxInFlight);
+        }
+        this.hns = hns;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.inFlight = new Semaphore(maxInFlight);
+        AtomicInteger senderCount = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(maxInFlight, r -> {
+            Thread t = new Thread(r, "prescription-batcher-send-" + senderCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.dispatcher = new Thread(this::dispatchLoop, "prescription-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Encola un envío para el próximo lote
+     * @return Future con la prescripción registrada por el SNS o con la excepción del envío
+     */
+    public CompletableFuture<MedicalPrescription> submit(PrescriptionSubmission submission) {
+        if (submission == null) {
+            throw new IllegalArgumentException("El envío no puede ser null");
+        }
+        Pending pending = new Pending(submission);
+        synchronized (queue) {
+            if (closed) {
+                pending.result.completeExceptionally(new ConnectException("El agrupador de envíos está cerrado"));
+                return pending.result;
+            }
+            queue.add(pending);
+        }
+        return pending.result;
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getSubmissionCount() {
+        return submissions.sum();
+    }
+
+    /**
+     * Cierra el agrupador después de enviar lo que ya estaba encolado
+     */
+    @Override
+    public void close() {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            // Todo lo aceptado queda en la cola antes de la marca de cierre
+            closed = true;
+            queue.add(SHUTDOWN);
+        }
+        try {
+            dispatcher.join();
+            senders.shutdown();
+            senders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    private void dispatchLoop() {
+        boolean shutdown = false;
+        while (!shutdown) {
+            List<Pending> batch = new ArrayList<>(maxBatchSize);
+            try {
+                Pending first = queue.take();
+                if (first == SHUTDOWN) {
+                    shutdown = true;
+                } else {
+                    batch.add(first);
+                    long deadline = System.nanoTime() + maxDelayNanos;
+                    while (batch.size() < maxBatchSize) {
+                        Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        if (next == SHUTDOWN) {
+                            shutdown = true;
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                shutdown = true;
+            }
+            if (!batch.isEmpty()) {
+                dispatch(batch);
+            }
+        }
+    }
+
+    private void dispatch(List<Pending> batch) {
+        // Se espera a que haya hueco; mientras tanto la cola sigue llenándose
+        inFlight.acquireUninterruptibly();
+        senders.execute(() -> {
+            try {
+                send(batch);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private void send(List<Pending> batch) {
+        List<PrescriptionSubmission> request = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            request.add(p.submission);
+        }
+
+        batches.increment();
+        submissions.add(batch.size());
+        try {
+            List<SubmissionResult> results = hns.sendHistoriesAndPrescriptions(request);
+            if (results.size() != batch.size()) {
+                throw new IllegalStateException("El SNS ha devuelto " + results.size()
+                        + " resultados para un lote de " + batch.size());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                SubmissionResult r = results.get(i);
+                if (r.isRegistered()) {
+                    batch.get(i).result.complete(r.getPrescription());
+                } else if (r.getError() instanceof HistoryConflictException) {
+                    resend(batch.get(i));
+                } else {
+                    batch.get(i).result.completeExceptionally(r.getError());
+                }
+            }
+        } catch (Exception e) {
+            for (Pending p : batch) {
+                p.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Otra consulta ha cambiado la historia desde que se preparó el envío: se pone el delta
+     * sobre la versión actual del SNS y se reenvía por separado
+     */
+    private void resend(Pending p) {
+        PrescriptionSubmission s = p.submission;
+        try {
+            p.result.complete(DeltaRebaser.resend(
+                    hns, s.getCip(), s.getHistory(), s.getIllness(), s.getPrescription()));
+        } catch (Exception e) {
+            p.result.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,565 @@
+package services;
+
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Bandeja de salida duradera para los envíos de historia clínica y prescripción firmada
+ * que no se han podido entregar al SNS.
+ *
+ * Los envíos se añaden a un registro en disco (write-ahead log) de solo escritura al final.
+ * Un hilo escritor agrupa los envíos que llegan a la vez y los confirma con un único fsync
+ * (group commit); enqueue vuelve cuando el envío es duradero y devuelve un justificante
+ * provisional. Un hilo de entrega los reenvía al SNS en orden, reintentando mientras el SNS
+ * no responde, y anota en un fichero de confirmación la secuencia del último entregado.
+ * Tras un reinicio se recuperan los envíos pendientes. La entrega es "al menos una vez":
+ * si el proceso cae entre el envío y su confirmación, ese envío se repite.
+ *
+ * Formato de cada registro: [longitud cuerpo:int][crc32:int][secuencia:long][cuerpo]
+ * El CRC cubre secuencia y cuerpo, y un registro incompleto al final (escritura cortada)
+ * se descarta en la recuperación.
+ */
+public class PrescriptionOutbox implements AutoCloseable {
+
+    static final String LOG_FILE = "outbox.log";
+    static final String ACK_FILE = "outbox.ack";
+    private static final int HEADER_BYTES = 16;
+    private static final long COMPACT_THRESHOLD = 4L * 1024 * 1024;
+
+    /**
+     * Envío codificado pendiente de escribir en disco
+     */
+    private static final class PendingWrite {
+        final long sequence;
+        final byte[] body;
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        PendingWrite(long sequence, byte[] body) {
+            this.sequence = sequence;
+            this.body = body;
+        }
+    }
+
+    private final HealthNationalService hns;
+    private final FileChannel log;
+    private final FileChannel ack;
+    private final long retryIntervalMillis;
+
+    // Estado protegido por lock
+    private final Object lock = new Object();
+    private final List<PendingWrite> pendingWrites = new ArrayList<>();
+    private boolean writing;
+    private boolean closed;
+    private IOException writeFailure;
+    private long nextSequence;
+    private long writeOffset;      // final de lo escrito en el registro
+    private long committedOffset;  // final de lo que ya es duradero
+    private long deliveredOffset;  // inicio del primer envío sin entregar
+
+    // Secuencia entregada cuya confirmación no se ha podido escribir (sólo hilo de entrega)
+    private long unackedSequence = -1;
+
+    private final Map<Long, OutboxReceipt> receipts = new ConcurrentSkipListMap<>();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private final Thread writer;
+    private final Thread drainer;
+
+    /**
+     * Abre (o crea) la bandeja en un directorio y recupera los envíos pendientes
+     * @param directory Directorio donde se guardan el registro y la confirmación
+     * @param hns Servicio del SNS al que se entregan los envíos
+     * @param retryIntervalMillis Espera entre intentos de entrega mientras el SNS no responde
+     * @throws IOException si no se puede abrir o recuperar el registro
+     */
+    public PrescriptionOutbox(Path directory, HealthNationalService hns, long retryIntervalMillis)
+            throws IOException {
+        if (directory == null || hns == null) {
+            throw new IllegalArgumentException("El directorio y el servicio del SNS no pueden ser null");
+        }
+        if (retryIntervalMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "El intervalo de reintento debe ser positivo: " + retryIntervalMillis);
+        }
+        Files.createDirectories(directory);
+        this.hns = hns;
+        this.retryIntervalMillis = retryIntervalMillis;
+        this.log = FileChannel.open(directory.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.ack = FileChannel.open(directory.resolve(ACK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        recover();
+
+        this.writer = new Thread(this::writeLoop, "outbox-writer");
+        this.writer.setDaemon(true);
+        this.drainer = new Thread(this::drainLoop, "outbox-drainer");
+        this.drainer.setDaemon(true);
+        this.writer.start();
+        this.drainer.start();
+    }
+
+    /**
+     * Guarda un envío de forma duradera para entregarlo al SNS en cuanto sea posible
+     * @return Justificante provisional del envío
+     * @throws IOException si no se ha podido guardar en disco
+     */
+    public OutboxReceipt enqueue(HealthCardID cip, MedicalHistory hce, String illness,
+                                 MedicalPrescription mPresc) throws IOException {
+        if (cip == null || hce == null || illness == null || mPresc == null) {
+            throw new IllegalArgumentException("Parámetros inválidos");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        MedicalRecordCodec.writeString(out, cip.getPersonalID());
+        MedicalRecordCodec.writeString(out, illness);
+        // Sin descargar las páginas antiguas: el SNS puede estar caído
+        MedicalRecordCodec.writeLoadedHistory(out, hce);
+        MedicalRecordCodec.writePrescription(out, mPresc);
+        out.flush();
+
+        PendingWrite write;
+        OutboxReceipt receipt;
+        synchronized (lock) {
+            if (closed) {
+                throw new IOException("La bandeja de salida está cerrada");
+            }
+            if (writeFailure != null) {
+                throw new IOException("La bandeja de salida no puede escribir en disco", writeFailure);
+            }
+            write = new PendingWrite(nextSequence++, bytes.toByteArray());
+            receipt = new OutboxReceipt(write.sequence, cip, illness);
+            receipts.put(write.sequence, receipt);
+            pendingWrites.add(write);
+            lock.notifyAll();
+        }
+
+        awaitDurable(write);
+        return receipt;
+    }
+
+    /**
+     * @return Justificantes de los envíos aún no entregados, en orden de entrega
+     */
+    public Collection<OutboxReceipt> getPendingReceipts() {
+        return new ArrayList<>(receipts.values());
+    }
+
+    public int getPendingCount() {
+        return receipts.size();
+    }
+
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    /**
+     * @return Envíos que el SNS ha rechazado con un error de negocio (no se reintentan)
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+            drainer.interrupt();
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            log.close();
+            ack.close();
+        }
+    }
+
+    // ============= ESCRITURA (GROUP COMMIT) =============
+
+    private void writeLoop() {
+        while (true) {
+            List<PendingWrite> batch;
+            long offset;
+            synchronized (lock) {
+                while (pendingWrites.isEmpty() && !closed) {
+                    waitOnLock(0);
+                }
+                if (pendingWrites.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(pendingWrites);
+                pendingWrites.clear();
+                writing = true;
+                offset = writeOffset;
+            }
+
+            IOException failure = null;
+            long end = offset;
+            try {
+                ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = encodeRecord(batch.get(i));
+                    end += buffers[i].remaining();
+                }
+                log.position(offset);
+                long remaining = end - offset;
+                while (remaining > 0) {
+                    remaining -= log.write(buffers);
+                }
+                log.force(false);
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            synchronized (lock) {
+                writing = false;
+                if (failure == null) {
+                    writeOffset = end;
+                    committedOffset = end;
+                } else {
+                    writeFailure = failure;
+                    for (PendingWrite w : batch) {
+                        receipts.remove(w.sequence);
+                    }
+                }
+                lock.notifyAll();
+            }
+            for (PendingWrite w : batch) {
+                if (failure == null) {
+                    w.durable.complete(null);
+                } else {
+                    w.durable.completeExceptionally(failure);
+                }
+            }
+            if (failure != null) {
+                failPending(failure);
+                return;
+            }
+        }
+    }
+
+    private static ByteBuffer encodeRecord(PendingWrite w) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + w.body.length);
+        record.putInt(w.body.length);
+        record.putInt(0); // CRC, se rellena abajo
+        record.putLong(w.sequence);
+        record.put(w.body);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, 8 + w.body.length);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private void failPending(IOException failure) {
+        List<PendingWrite> stranded;
+        synchronized (lock) {
+            stranded = new ArrayList<>(pendingWrites);
+            pendingWrites.clear();
+            for (PendingWrite w : stranded) {
+                receipts.remove(w.sequence);
+            }
+        }
+        for (PendingWrite w : stranded) {
+            w.durable.completeExceptionally(failure);
+        }
+    }
+
+    private static void awaitDurable(PendingWrite write) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    write.durable.get();
+                    return;
+                } catch (InterruptedException e) {
+                    // El envío ya está en cola: hay que esperar a saber si es duradero
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IOException("No se ha podido guardar el envío en disco", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // ============= ENTREGA AL SNS =============
+
+    private void drainLoop() {
+        while (true) {
+            if (unackedSequence >= 0) {
+                // Antes de entregar otro: una confirmación posterior no debe quedar por detrás
+                try {
+                    writeAck(unackedSequence);
+                    unackedSequence = -1;
+                } catch (IOException e) {
+                    synchronized (lock) {
+                        if (closed) {
+                            return;
+                        }
+                        waitOnLock(retryIntervalMillis);
+                    }
+                    continue;
+                }
+            }
+
+            long offset;
+            synchronized (lock) {
+                while (deliveredOffset == committedOffset && !closed) {
+                    waitOnLock(0);
+                }
+                if (closed) {
+                    return;
+                }
+                offset = deliveredOffset;
+            }
+
+            int bodyLength;
+            long sequence;
+            ByteBuffer body;
+            try {
+                ByteBuffer header = readFully(offset, HEADER_BYTES);
+                bodyLength = header.getInt(0);
+                sequence = header.getLong(8);
+                body = readFully(offset + HEADER_BYTES, bodyLength);
+            } catch (IOException e) {
+                // El registro no es accesible: se reintenta más tarde
+                synchronized (lock) {
+                    if (closed) {
+                        return;
+                    }
+                    waitOnLock(retryIntervalMillis);
+                }
+                continue;
+            }
+
+            Runnable completion = deliver(sequence, body.array());
+            if (completion == null) {
+                return; // cerrada durante los reintentos
+            }
+            // Entregado: pase lo que pase con la confirmación, no se vuelve a entregar en este proceso
+            advance(offset + HEADER_BYTES + bodyLength);
+            // Se confirma antes de avisar: quien espera el resguardo puede cerrar la bandeja.
+            // Si falla, se reintenta antes del siguiente envío (o lo repite la recuperación)
+            try {
+                writeAck(sequence);
+            } catch (IOException e) {
+                unackedSequence = sequence;
+            }
+            completion.run();
+        }
+    }
+
+    /**
+     * Entrega un envío, reintentando mientras el SNS no responda
+     * @return Aviso al resguardo, a ejecutar tras confirmar la entrega, o null si la
+     * bandeja se ha cerrado antes de poder entregarlo
+     */
+    private Runnable deliver(long sequence, byte[] body) {
+        OutboxReceipt receipt = receipts.get(sequence);
+        HealthCardID cip;
+        String illness;
+        MedicalHistory hce;
+        MedicalPrescription mPresc;
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            cip = MedicalRecordCodec.readHealthCardID(in);
+            illness = MedicalRecordCodec.readString(in);
+            hce = MedicalRecordCodec.readHistory(in);
+            mPresc = MedicalRecordCodec.readPrescription(in);
+        } catch (IOException e) {
+            rejected.increment();
+            return () -> completeReceipt(sequence, receipt, null, e);
+        }
+
+        while (true) {
+            try {
+                // Siempre como delta: la historia completa podría borrar lo que otras consultas
+                // hayan añadido mientras el envío esperaba. Si han añadido algo, se pone encima
+                MedicalPrescription result = DeltaRebaser.send(hns, cip, hce, illness, mPresc);
+                delivered.increment();
+                return () -> completeReceipt(sequence, receipt, result, null);
+            } catch (ConnectException e) {
+                synchronized (lock) {
+                    if (closed) {
+                        return null;
+                    }
+                    waitOnLock(retryIntervalMillis);
+                    if (closed) {
+                        return null;
+                    }
+                }
+            } catch (Exception e) {
+                // Error de negocio: reintentar no cambiaría la respuesta. Resultado incierto
+                // (AmbiguousResultException): reintentar podría registrarlo dos veces
+                rejected.increment();
+                return () -> completeReceipt(sequence, receipt, null, e);
+            }
+        }
+    }
+
+    private void completeReceipt(long sequence, OutboxReceipt receipt,
+                                 MedicalPrescription result, Exception error) {
+        if (receipt == null) {
+            return;
+        }
+        receipts.remove(sequence);
+        if (error == null) {
+            receipt.getDelivery().complete(result);
+        } else {
+            receipt.getDelivery().completeExceptionally(error);
+        }
+    }
+
+    private void advance(long nextOffset) {
+        synchronized (lock) {
+            deliveredOffset = nextOffset;
+            // Con todo entregado y nada escribiéndose, el registro se puede vaciar
+            if (deliveredOffset == committedOffset && pendingWrites.isEmpty() && !writing
+                    && committedOffset >= COMPACT_THRESHOLD) {
+                try {
+                    log.truncate(0);
+                    writeOffset = 0;
+                    committedOffset = 0;
+                    deliveredOffset = 0;
+                    log.force(false);
+                } catch (IOException e) {
+                    // Se vuelve a intentar tras la siguiente entrega
+                }
+            }
+        }
+    }
+
+    /**
+     * Anota la secuencia del último envío entregado (redefinible en las pruebas)
+     */
+    void writeAck(long sequence) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8).putLong(0, sequence);
+        while (buf.hasRemaining()) {
+            ack.write(buf, buf.position());
+        }
+        ack.force(false);
+    }
+
+    // ============= RECUPERACIÓN =============
+
+    /**
+     * Recorre el registro desde el principio: salta lo ya entregado, crea justificantes para
+     * lo pendiente y descarta un posible registro incompleto al final
+     */
+    private void recover() throws IOException {
+        long ackedSequence = -1;
+        if (ack.size() >= 8) {
+            ackedSequence = readFromAck();
+        }
+
+        long size = log.size();
+        long offset = 0;
+        long firstPending = -1;
+        long lastSequence = ackedSequence;
+        while (offset + HEADER_BYTES <= size) {
+            ByteBuffer header = readFully(offset, HEADER_BYTES);
+            int bodyLength = header.getInt(0);
+            int storedCrc = header.getInt(4);
+            long sequence = header.getLong(8);
+            if (bodyLength < 0 || offset + HEADER_BYTES + bodyLength > size) {
+                break;
+            }
+            ByteBuffer body = readFully(offset + HEADER_BYTES, bodyLength);
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), 8, 8);
+            crc.update(body.array(), 0, bodyLength);
+            if ((int) crc.getValue() != storedCrc) {
+                break;
+            }
+
+            if (sequence > ackedSequence) {
+                if (firstPending < 0) {
+                    firstPending = offset;
+                }
+                receipts.put(sequence, recoveredReceipt(sequence, body.array()));
+            }
+            lastSequence = Math.max(lastSequence, sequence);
+            offset += HEADER_BYTES + bodyLength;
+        }
+
+        if (offset < size) {
+            log.truncate(offset);
+            log.force(false);
+        }
+        writeOffset = offset;
+        committedOffset = offset;
+        deliveredOffset = firstPending >= 0 ? firstPending : offset;
+        nextSequence = lastSequence + 1;
+    }
+
+    private static OutboxReceipt recoveredReceipt(long sequence, byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        HealthCardID cip = MedicalRecordCodec.readHealthCardID(in);
+        String illness = MedicalRecordCodec.readString(in);
+        return new OutboxReceipt(sequence, cip, illness);
+    }
+
+    private long readFromAck() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        while (buf.hasRemaining()) {
+            if (ack.read(buf, buf.position()) < 0) {
+                throw new IOException("Fichero de confirmación incompleto");
+            }
+        }
+        return buf.getLong(0);
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (log.read(buf, position + buf.position()) < 0) {
+                throw new IOException("Registro de la bandeja de salida truncado");
+            }
+        }
+        return buf;
+    }
+
+    private void waitOnLock(long millis) {
+        try {
+            lock.wait(millis);
+        } catch (InterruptedException e) {
+            // Solo se interrumpe al cerrar; el bucle comprueba "closed"
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package services;
+
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+
+/**
+ * Un envío de historia clínica y prescripción firmada al SNS (parámetros de
+ * sendHistoryAndPrescription), para poder agruparlo con otros
+ */
+public class PrescriptionSubmission {
+    private final HealthCardID cip;
+    private final MedicalHistory hce;
+    private final String illness;
+    private final MedicalPrescription mPresc;
+
+    public PrescriptionSubmission(HealthCardID cip, MedicalHistory hce, String illness,
+                                  MedicalPrescription mPresc) {
+        if (cip == null || hce == null || illness == null || mPresc == null) {
+            throw new IllegalArgumentException("Parámetros inválidos");
+        }
+        this.cip = cip;
+        this.hce = hce;
+        this.illness = illness;
+        this.mPresc = mPresc;
+    }
+
+    public HealthCardID getCip() {
+        return cip;
+    }
+
+    public MedicalHistory getHistory() {
+        return hce;
+    }
+
+    public String getIllness() {
+        return illness;
+    }
+
+    public MedicalPrescription getPrescription() {
+        return mPresc;
+    }
+
+    @Override
+    public String toString() {
+        return "PrescriptionSubmission{" +
+                "cip=" + cip +
+                ", illness='" + illness + '\'' +
+                '}';
+    }
+}
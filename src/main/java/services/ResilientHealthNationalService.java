@@ -0,0 +1,379 @@
+package services;
+
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+import data.InvalidePrescripCodeException;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Decorador de HealthNationalService tolerante a caídas del SNS.
+ * - Las lecturas (idempotentes) se reintentan ante ConnectException con espera
+ *   exponencial con jitter.
+ * - Un cortocircuito rechaza todas las llamadas sin intentarlas mientras el SNS está caído.
+ * - Opcionalmente, getMedicalHistory lanza una segunda petición si la primera tarda más
+ *   de hedgeDelay y se queda con la primera respuesta correcta.
+ * Los envíos no se reintentan, porque no son idempotentes.
+ * Solo ConnectException cuenta como fallo: los errores de negocio indican que el SNS responde.
+ */
+public class ResilientHealthNationalService implements HealthNationalService {
+
+    // Hilos compartidos para las peticiones duplicadas (hedging)
+    private static final ExecutorService HEDGE_EXECUTOR =
+            Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "sns-hedge");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final HealthNationalService hns;
+    private final AsyncHealthNationalService asyncHns;
+    private final LongSupplier clock;
+
+    private int maxAttempts = 3;
+    private long baseBackoffNanos = TimeUnit.MILLISECONDS.toNanos(50);
+    private long maxBackoffNanos = TimeUnit.SECONDS.toNanos(2);
+    private Duration hedgeDelay; // null: sin hedging
+    private CircuitBreaker breaker;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder hedgedRequests = new LongAdder();
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    public ResilientHealthNationalService(HealthNationalService hns) {
+        this(hns, System::nanoTime);
+    }
+
+    ResilientHealthNationalService(HealthNationalService hns, LongSupplier clock) {
+        if (hns == null) {
+            throw new IllegalArgumentException("HealthNationalService no puede ser null");
+        }
+        this.hns = hns;
+        this.asyncHns = new AsyncHealthNationalServiceAdapter(hns, HEDGE_EXECUTOR);
+        this.clock = clock;
+        this.breaker = new CircuitBreaker(5, TimeUnit.SECONDS.toNanos(30), clock);
+    }
+
+    // ============= CONFIGURACIÓN =============
+
+    /**
+     * @param maxAttempts Número máximo de intentos de cada lectura (1 = sin reintentos)
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("El número de intentos debe ser positivo: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param base Espera antes del primer reintento (se duplica en cada intento)
+     * @param max Espera máxima entre reintentos
+     */
+    public void setBackoff(Duration base, Duration max) {
+        if (base == null || max == null || base.isNegative() || max.compareTo(base) < 0) {
+            throw new IllegalArgumentException("Esperas de reintento inválidas");
+        }
+        this.baseBackoffNanos = base.toNanos();
+        this.maxBackoffNanos = max.toNanos();
+    }
+
+    /**
+     * @param failureThreshold Fallos de conexión seguidos que abren el circuito
+     * @param openDuration Tiempo que el circuito permanece abierto antes de probar de nuevo
+     */
+    public void setCircuitBreaker(int failureThreshold, Duration openDuration) {
+        if (openDuration == null) {
+            throw new IllegalArgumentException("El tiempo en abierto no puede ser null");
+        }
+        this.breaker = new CircuitBreaker(failureThreshold, openDuration.toNanos(), clock);
+    }
+
+    /**
+     * @param hedgeDelay Tiempo tras el cual se duplica una lectura de historia clínica lenta,
+     *                   o null para desactivarlo
+     */
+    public void setHedgeDelay(Duration hedgeDelay) {
+        if (hedgeDelay != null && hedgeDelay.isNegative()) {
+            throw new IllegalArgumentException("El retardo de hedging no puede ser negativo");
+        }
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    // ============= OPERACIONES DEL SNS =============
+
+    @Override
+    public MedicalHistory getMedicalHistory(HealthCardID cip)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        Duration hedge = hedgeDelay;
+        try {
+            return execute(() -> hedge != null ? hedgedHistory(cip, hedge) : hns.getMedicalHistory(cip),
+                    maxAttempts);
+        } catch (ConnectException | HealthCardIDException | IncorrectParametersException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error inesperado en la llamada al SNS", e);
+        }
+    }
+
+    @Override
+    public HistoryPage getMedicalHistoryPage(HealthCardID cip, int before, int pageSize)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        try {
+            return execute(() -> hns.getMedicalHistoryPage(cip, before, pageSize), maxAttempts);
+        } catch (ConnectException | HealthCardIDException | IncorrectParametersException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error inesperado en la llamada al SNS", e);
+        }
+    }
+
+    @Override
+    public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, IncorrectParametersException {
+        try {
+            return execute(() -> hns.getMedicalPrescription(cip, illness), maxAttempts);
+        } catch (ConnectException | HealthCardIDException | AnyCurrentPrescriptionException
+                 | IncorrectParametersException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error inesperado en la llamada al SNS", e);
+        }
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                          String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, NotCompletedMedicalPrescription, InvalidePrescripCodeException {
+        try {
+            return execute(() -> hns.sendHistoryAndPrescription(cip, hce, illness, mPresc), 1);
+        } catch (ConnectException | HealthCardIDException | AnyCurrentPrescriptionException
+                 | NotCompletedMedicalPrescription | InvalidePrescripCodeException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error inesperado en la llamada al SNS", e);
+        }
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryDeltaAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                                String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, InvalidePrescripCodeException, HistoryConflictException {
+        try {
+            return execute(() -> hns.sendHistoryDeltaAndPrescription(cip, hce, illness, mPresc), 1);
+        } catch (ConnectException | HealthCardIDException | AnyCurrentPrescriptionException
+                 | NotCompletedMedicalPrescription | InvalidePrescripCodeException
+                 | HistoryConflictException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error inesperado en la llamada al SNS", e);
+        }
+    }
+
+    @Override
+    public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
+            throws ConnectException, InvalidePrescripCodeException {
+        try {
+            return execute(() -> hns.generateTreatmCodeAndRegister(ePresc), 1);
+        } catch (ConnectException | InvalidePrescripCodeException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error inesperado en la llamada al SNS", e);
+        }
+    }
+
+    @Override
+    public PrescripCodeLease leasePrescripCodes(int count) throws ConnectException {
+        // Reintentar es seguro: un bloque perdido sólo deja códigos sin usar, nunca repetidos
+        try {
+            return execute(() -> hns.leasePrescripCodes(count), maxAttempts);
+        } catch (ConnectException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error inesperado en la llamada al SNS", e);
+        }
+    }
+
+    @Override
+    public List<SubmissionResult> sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch)
+            throws ConnectException {
+        try {
+            return execute(() -> hns.sendHistoriesAndPrescriptions(batch), 1);
+        } catch (ConnectException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error inesperado en la llamada al SNS", e);
+        }
+    }
+
+    // ============= ESTADÍSTICAS =============
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    public long getHedgedRequestCount() {
+        return hedgedRequests.sum();
+    }
+
+    /**
+     * @return Llamadas rechazadas sin intentarse por estar el circuito abierto
+     */
+    public long getRejectedCallCount() {
+        return rejectedCalls.sum();
+    }
+
+    public boolean isCircuitOpen() {
+        return breaker.getState() == CircuitBreaker.State.OPEN;
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    /**
+     * Llamada al SNS que puede lanzar las excepciones comprobadas del servicio
+     */
+    private interface Call<T> {
+        T call() throws Exception;
+    }
+
+    private <T> T execute(Call<T> call, int attempts) throws Exception {
+        CircuitBreaker cb = breaker;
+        for (int attempt = 1; ; attempt++) {
+            if (!cb.tryAcquire()) {
+                rejectedCalls.increment();
+                throw new ConnectException("Circuito abierto: el SNS no está disponible");
+            }
+            boolean settled = false;
+            try {
+                T result = call.call();
+                cb.onSuccess();
+                settled = true;
+                return result;
+            } catch (ConnectException e) {
+                cb.onFailure();
+                settled = true;
+                if (attempt >= attempts) {
+                    throw e;
+                }
+            } catch (InterruptedException e) {
+                // Se ha dejado de esperar al SNS: no dice nada de su estado ni se reintenta
+                Thread.currentThread().interrupt();
+                cb.onAbandoned();
+                settled = true;
+                throw new ConnectException("Llamada al SNS interrumpida");
+            } catch (IllegalArgumentException e) {
+                // El SNS ha respondido, aunque sea con un error de negocio
+                cb.onSuccess();
+                settled = true;
+                throw e;
+            } catch (RuntimeException e) {
+                // Fallo inesperado (E/S, respuesta corrupta...): no prueba que el SNS funcione
+                cb.onFailure();
+                settled = true;
+                throw e;
+            } catch (Exception e) {
+                // Excepción comprobada del servicio: también es una respuesta del SNS
+                cb.onSuccess();
+                settled = true;
+                throw e;
+            } finally {
+                if (!settled) {
+                    // Un Error no puede dejar la llamada de prueba ocupada para siempre
+                    cb.onFailure();
+                }
+            }
+            retries.increment();
+            backoff(attempt);
+        }
+    }
+
+    /**
+     * Espera "full jitter": un tiempo aleatorio entre 0 y base * 2^(intento-1), acotado
+     */
+    private void backoff(int attempt) throws ConnectException {
+        long ceiling = baseBackoffNanos << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffNanos) {
+            ceiling = maxBackoffNanos;
+        }
+        long sleepNanos = ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+        try {
+            TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectException("Reintento al SNS interrumpido");
+        }
+    }
+
+    /**
+     * Si la primera lectura no responde en delay se lanza otra y gana la primera que termine;
+     * la otra se cancela. Una interrupción cancela las dos y se propaga a execute
+     */
+    private MedicalHistory hedgedHistory(HealthCardID cip, Duration delay) throws Exception {
+        CompletableFuture<MedicalHistory> primary = asyncHns.getMedicalHistory(cip);
+        try {
+            return primary.get(delay.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // La primera petición va lenta: se lanza una segunda
+        } catch (InterruptedException e) {
+            primary.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+
+        hedgedRequests.increment();
+        CompletableFuture<MedicalHistory> hedge = asyncHns.getMedicalHistory(cip);
+        CompletableFuture<MedicalHistory> firstSuccess = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        primary.whenComplete((history, error) -> onHedgedResult(firstSuccess, failures, history, error));
+        hedge.whenComplete((history, error) -> onHedgedResult(firstSuccess, failures, history, error));
+
+        try {
+            return firstSuccess.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            // La más lenta ya no hace falta (o nadie espera ya a ninguna)
+            primary.cancel(true);
+            hedge.cancel(true);
+        }
+    }
+
+    private static void onHedgedResult(CompletableFuture<MedicalHistory> firstSuccess, AtomicInteger failures,
+                                       MedicalHistory history, Throwable error) {
+        if (error == null) {
+            firstSuccess.complete(history);
+        } else if (failures.incrementAndGet() == 2) {
+            // Solo se propaga el error si fallan las dos peticiones
+            firstSuccess.completeExceptionally(error);
+        }
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Exception) {
+            return (Exception) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return e;
+    }
+}
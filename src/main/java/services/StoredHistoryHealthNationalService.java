@@ -0,0 +1,220 @@
+package services;
+
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+import data.InvalidePrescripCodeException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorador de HealthNationalService que sirve las historias clínicas desde un
+ * MappedHistoryStore local y sólo las descarga enteras del SNS la primera vez.
+ * Antes de servir una historia guardada se pide al SNS su última página: si otro terminal
+ * ha añadido anotaciones, se añaden a la copia local; si son más de una página o la historia
+ * del SNS ya no continúa la guardada, se descarga entera. Sin conexión con el SNS se sirve
+ * la copia guardada tal cual (un envío posterior de un delta detectaría el conflicto).
+ * Tras cada envío correcto al SNS se guardan en el almacén las anotaciones nuevas.
+ * El almacén es una copia local: si falla al escribir, la llamada al SNS no falla
+ * y el fallo se cuenta en getStoreFailureCount.
+ */
+public class StoredHistoryHealthNationalService implements HealthNationalService {
+    public static final int DEFAULT_REFRESH_PAGE_SIZE = 32;
+
+    private final HealthNationalService hns;
+    private final MappedHistoryStore store;
+    private final LongAdder storeHits = new LongAdder();
+    private final LongAdder storeFailures = new LongAdder();
+    private final LongAdder offlineHits = new LongAdder();
+    private volatile int refreshPageSize = DEFAULT_REFRESH_PAGE_SIZE;
+
+    /**
+     * Constructor del decorador
+     * @param hns Servicio del SNS decorado
+     * @param store Almacén local de historias
+     */
+    public StoredHistoryHealthNationalService(HealthNationalService hns, MappedHistoryStore store) {
+        if (hns == null) {
+            throw new IllegalArgumentException("HealthNationalService no puede ser null");
+        }
+        if (store == null) {
+            throw new IllegalArgumentException("El almacén de historias no puede ser null");
+        }
+        this.hns = hns;
+        this.store = store;
+    }
+
+    @Override
+    public MedicalHistory getMedicalHistory(HealthCardID cip)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        MedicalHistory stored = store.load(cip);
+        if (stored != null) {
+            MedicalHistory current = refresh(stored);
+            if (current != null) {
+                return current;
+            }
+        }
+
+        MedicalHistory downloaded = hns.getMedicalHistory(cip);
+        save(downloaded);
+        return downloaded;
+    }
+
+    /**
+     * Las páginas anteriores a la parte guardada se recortan del almacén sin llamar al SNS
+     * (las anotaciones ya escritas no cambian); las demás, de la historia actualizada
+     */
+    @Override
+    public HistoryPage getMedicalHistoryPage(HealthCardID cip, int before, int pageSize)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        HistoryPage.checkRange(before, pageSize);
+        MedicalHistory stored = store.load(cip);
+        if (stored == null) {
+            return hns.getMedicalHistoryPage(cip, before, pageSize);
+        }
+        if (before < stored.getAnnotationCount()) {
+            storeHits.increment();
+            return HistoryPage.of(stored, before, pageSize);
+        }
+        return HistoryPage.of(getMedicalHistory(cip), before, pageSize);
+    }
+
+    @Override
+    public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, IncorrectParametersException {
+        return hns.getMedicalPrescription(cip, illness);
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                          String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, NotCompletedMedicalPrescription, InvalidePrescripCodeException {
+        MedicalPrescription sent = hns.sendHistoryAndPrescription(cip, hce, illness, mPresc);
+        save(hce);
+        return sent;
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryDeltaAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                                String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, InvalidePrescripCodeException, HistoryConflictException {
+        MedicalPrescription sent = hns.sendHistoryDeltaAndPrescription(cip, hce, illness, mPresc);
+        save(hce);
+        return sent;
+    }
+
+    @Override
+    public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
+            throws ConnectException, InvalidePrescripCodeException {
+        return hns.generateTreatmCodeAndRegister(ePresc);
+    }
+
+    @Override
+    public PrescripCodeLease leasePrescripCodes(int count) throws ConnectException {
+        return hns.leasePrescripCodes(count);
+    }
+
+    @Override
+    public List<SubmissionResult> sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch)
+            throws ConnectException {
+        List<SubmissionResult> results = hns.sendHistoriesAndPrescriptions(batch);
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).isRegistered()) {
+                save(batch.get(i).getHistory());
+            }
+        }
+        return results;
+    }
+
+    // ============= ESTADÍSTICAS =============
+
+    /**
+     * @return Historias servidas desde el almacén sin llamar al SNS
+     */
+    public long getStoreHitCount() {
+        return storeHits.sum();
+    }
+
+    /**
+     * @return Historias guardadas servidas sin poder comprobarlas porque el SNS no respondía
+     */
+    public long getOfflineHitCount() {
+        return offlineHits.sum();
+    }
+
+    /**
+     * @param pageSize Anotaciones pedidas al SNS para comprobar una historia guardada;
+     * si hay más nuevas, la historia se descarga entera
+     */
+    public void setRefreshPageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser positivo: " + pageSize);
+        }
+        this.refreshPageSize = pageSize;
+    }
+
+    /**
+     * @return Historias que no se han podido guardar en el almacén
+     */
+    public long getStoreFailureCount() {
+        return storeFailures.sum();
+    }
+
+    /**
+     * Completa la historia guardada con las anotaciones que el SNS tenga de más
+     * @return La historia al día, o null si hay que descargarla entera
+     */
+    private MedicalHistory refresh(MedicalHistory stored)
+            throws HealthCardIDException, IncorrectParametersException {
+        HistoryPage tail;
+        try {
+            tail = hns.getMedicalHistoryPage(stored.getCip(), Integer.MAX_VALUE, refreshPageSize);
+        } catch (ConnectException e) {
+            offlineHits.increment();
+            stored.markSynchronized();
+            return stored;
+        }
+        int known = stored.getAnnotationCount();
+        int first = tail.getFirstIndex();
+        if (tail.getTotalCount() < known || first > known || tail.getEndIndex() != tail.getTotalCount()) {
+            return null;
+        }
+        List<String> annots = tail.getAnnotations();
+        if (known > first && !annots.get(known - 1 - first).equals(stored.getAnnotation(known - 1))) {
+            // La historia del SNS ya no continúa la guardada
+            return null;
+        }
+
+        boolean changed = tail.getTotalCount() > known;
+        if (tail.getMembShipNumb() != stored.getMembShipNumb()) {
+            stored.setNewDoctor(tail.getMembShipNumb());
+            changed = true;
+        }
+        long[] times = tail.getTimes();
+        for (int i = known - first; i < annots.size(); i++) {
+            stored.addMedicalHistoryAnnotations(annots.get(i), new Date(times[i]));
+        }
+        stored.markSynchronized();
+        if (changed) {
+            save(stored);
+        }
+        storeHits.increment();
+        return stored;
+    }
+
+    private void save(MedicalHistory hce) {
+        try {
+            store.save(hce);
+        } catch (IOException | RuntimeException e) {
+            storeFailures.increment();
+        }
+    }
+}
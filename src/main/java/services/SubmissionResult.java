@@ -0,0 +1,56 @@
+package services;
+
+import consultamedica.MedicalPrescription;
+
+/**
+ * Resultado de un envío dentro de un lote: la prescripción registrada por el SNS
+ * o la excepción con la que se rechazó ese envío concreto
+ */
+public class SubmissionResult {
+    private final MedicalPrescription prescription;
+    private final Exception error;
+
+    private SubmissionResult(MedicalPrescription prescription, Exception error) {
+        this.prescription = prescription;
+        this.error = error;
+    }
+
+    public static SubmissionResult registered(MedicalPrescription prescription) {
+        if (prescription == null) {
+            throw new IllegalArgumentException("La prescripción registrada no puede ser null");
+        }
+        return new SubmissionResult(prescription, null);
+    }
+
+    public static SubmissionResult failed(Exception error) {
+        if (error == null) {
+            throw new IllegalArgumentException("La excepción no puede ser null");
+        }
+        return new SubmissionResult(null, error);
+    }
+
+    public boolean isRegistered() {
+        return error == null;
+    }
+
+    /**
+     * @return La prescripción registrada, o null si el envío falló
+     */
+    public MedicalPrescription getPrescription() {
+        return prescription;
+    }
+
+    /**
+     * @return La excepción del envío, o null si se registró correctamente
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return isRegistered()
+                ? "SubmissionResult{registered=" + prescription.getPrescCode() + '}'
+                : "SubmissionResult{error=" + error + '}';
+    }
+}
@@ -91,7 +91,7 @@ public class Suggestion {
         this.operation = OperationType.fromCode(operation);
 
         // Crear ProductID (puede lanzar InvalidProductIDException)
-        this.productID = new ProductID(productID);
+        this.productID = ProductID.of(productID);
 
         // Almacenar los demás campos (pueden estar vacíos)
         this.dayMoment = (dayMoment != null) ? dayMoment.trim() : "";
@@ -0,0 +1,384 @@
+package services.http;
+
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+import data.InvalidePrescripCodeException;
+import data.ePrescripCode;
+import services.AmbiguousResultException;
+import services.AnyCurrentPrescriptionException;
+import services.HealthCardIDException;
+import services.HealthNationalService;
+import services.HistoryConflictException;
+import services.HistoryDelta;
+import services.HistoryPage;
+import services.MedicalRecordCodec;
+import services.NotCompletedMedicalPrescription;
+import services.PrescripCodeLease;
+import services.PrescriptionSubmission;
+import services.SubmissionResult;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cliente HTTP del SNS sobre java.net.http.HttpClient.
+ * Prefiere HTTP/2 (varias peticiones multiplexadas por conexión) y, si el SNS sólo habla
+ * HTTP/1.1, reutiliza conexiones keep-alive del pool del cliente. Los cuerpos viajan en el
+ * formato binario de MedicalRecordCodec y las respuestas se decodifican a medida que llegan,
+ * sin copiarlas antes a un array.
+ * Para que el establecimiento de conexiones no caiga en mitad de una consulta, warmUp abre
+ * las conexiones al arrancar el terminal.
+ */
+public class HttpHealthNationalService implements HealthNationalService {
+
+    /**
+     * Escritura del cuerpo de una petición
+     */
+    private interface Encoder {
+        void encode(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Lectura del cuerpo de una respuesta correcta
+     */
+    private interface Decoder<T> {
+        T decode(DataInputStream in) throws IOException;
+    }
+
+    private final URI baseUri;
+    private final HttpClient client;
+    private final Duration requestTimeout;
+
+    /**
+     * Constructor con 2 s para conectar y 5 s por petición
+     * @param baseUri Dirección base del SNS (p. ej. http://sns.example:8080/sns)
+     */
+    public HttpHealthNationalService(URI baseUri) {
+        this(baseUri, Duration.ofSeconds(2), Duration.ofSeconds(5));
+    }
+
+    /**
+     * @param baseUri Dirección base del SNS
+     * @param connectTimeout Tiempo máximo para abrir una conexión
+     * @param requestTimeout Tiempo máximo de cada petición
+     */
+    public HttpHealthNationalService(URI baseUri, Duration connectTimeout, Duration requestTimeout) {
+        this(baseUri, HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build(), requestTimeout);
+    }
+
+    /**
+     * @param baseUri Dirección base del SNS
+     * @param client Cliente HTTP configurado (pool, versión, proxy, TLS)
+     * @param requestTimeout Tiempo máximo de cada petición
+     */
+    public HttpHealthNationalService(URI baseUri, HttpClient client, Duration requestTimeout) {
+        if (baseUri == null || client == null) {
+            throw new IllegalArgumentException("La dirección del SNS y el cliente HTTP no pueden ser null");
+        }
+        if (requestTimeout == null || requestTimeout.isNegative() || requestTimeout.isZero()) {
+            throw new IllegalArgumentException("El tiempo máximo de petición debe ser positivo");
+        }
+        String base = baseUri.toString();
+        this.baseUri = URI.create(base.endsWith("/") ? base.substring(0, base.length() - 1) : base);
+        this.client = client;
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Abre por adelantado hasta connections conexiones con el SNS lanzando peticiones
+     * ligeras en paralelo
+     * @return Future con el número de peticiones de calentamiento que han tenido éxito
+     */
+    public CompletableFuture<Integer> warmUp(int connections) {
+        if (connections <= 0) {
+            throw new IllegalArgumentException("El número de conexiones debe ser positivo: " + connections);
+        }
+        List<CompletableFuture<Boolean>> pings = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            pings.add(client.sendAsync(get(SnsProtocol.PING), HttpResponse.BodyHandlers.discarding())
+                    .handle((response, error) -> error == null && response.statusCode() == SnsProtocol.OK));
+        }
+        return CompletableFuture.allOf(pings.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            int ok = 0;
+            for (CompletableFuture<Boolean> ping : pings) {
+                if (ping.join()) {
+                    ok++;
+                }
+            }
+            return ok;
+        });
+    }
+
+    public URI getBaseUri() {
+        return baseUri;
+    }
+
+    // ============= SERVICIOS DEL SNS =============
+
+    @Override
+    public MedicalHistory getMedicalHistory(HealthCardID cip)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        try {
+            return exchange(get(SnsProtocol.HISTORY + "/" + cipPath(cip)), MedicalRecordCodec::readHistory);
+        } catch (ConnectException | HealthCardIDException | IncorrectParametersException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Respuesta inesperada del SNS", e);
+        }
+    }
+
+    /**
+     * Sólo se transfiere la página pedida
+     */
+    @Override
+    public HistoryPage getMedicalHistoryPage(HealthCardID cip, int before, int pageSize)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        if (before < 0 || pageSize <= 0) {
+            throw new IllegalArgumentException("Página inválida: " + before + ", " + pageSize);
+        }
+        String path = SnsProtocol.HISTORY_PAGE + "/" + cipPath(cip) + "?before=" + before + "&size=" + pageSize;
+        try {
+            return exchange(get(path), SnsProtocol::readPage);
+        } catch (ConnectException | HealthCardIDException | IncorrectParametersException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Respuesta inesperada del SNS", e);
+        }
+    }
+
+    @Override
+    public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, IncorrectParametersException {
+        if (illness == null) {
+            throw new IllegalArgumentException("La enfermedad no puede ser null");
+        }
+        String path = SnsProtocol.PRESCRIPTION + "/" + cipPath(cip)
+                + "?illness=" + URLEncoder.encode(illness, StandardCharsets.UTF_8);
+        try {
+            return exchange(get(path), MedicalRecordCodec::readPrescription);
+        } catch (ConnectException | HealthCardIDException | AnyCurrentPrescriptionException
+                 | IncorrectParametersException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Respuesta inesperada del SNS", e);
+        }
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                          String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, NotCompletedMedicalPrescription, InvalidePrescripCodeException {
+        PrescriptionSubmission submission = new PrescriptionSubmission(cip, hce, illness, mPresc);
+        try {
+            return exchange(post(SnsProtocol.SEND, out -> SnsProtocol.writeSubmission(out, submission)),
+                    MedicalRecordCodec::readPrescription);
+        } catch (ConnectException | HealthCardIDException | AnyCurrentPrescriptionException
+                 | NotCompletedMedicalPrescription | InvalidePrescripCodeException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Respuesta inesperada del SNS", e);
+        }
+    }
+
+    /**
+     * Sólo viajan las anotaciones nuevas y la versión base de la historia
+     */
+    @Override
+    public MedicalPrescription sendHistoryDeltaAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                                String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, InvalidePrescripCodeException, HistoryConflictException {
+        if (cip == null || hce == null || illness == null || mPresc == null) {
+            throw new IllegalArgumentException("Parámetros inválidos");
+        }
+        HistoryDelta delta = HistoryDelta.of(hce);
+        try {
+            return exchange(post(SnsProtocol.SEND_DELTA,
+                            out -> SnsProtocol.writeDeltaSubmission(out, cip, delta, illness, mPresc)),
+                    MedicalRecordCodec::readPrescription);
+        } catch (ConnectException | HealthCardIDException | AnyCurrentPrescriptionException
+                 | NotCompletedMedicalPrescription | InvalidePrescripCodeException
+                 | HistoryConflictException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Respuesta inesperada del SNS", e);
+        }
+    }
+
+    @Override
+    public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
+            throws ConnectException, InvalidePrescripCodeException {
+        if (ePresc == null) {
+            throw new IllegalArgumentException("La prescripción no puede ser null");
+        }
+        try {
+            // El SNS sólo devuelve el código asignado
+            String code = exchange(post(SnsProtocol.GENERATE_CODE,
+                    out -> MedicalRecordCodec.writePrescription(out, ePresc)), MedicalRecordCodec::readString);
+            ePresc.setPrescCode(new ePrescripCode(code));
+            return ePresc;
+        } catch (ConnectException | InvalidePrescripCodeException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Respuesta inesperada del SNS", e);
+        }
+    }
+
+    @Override
+    public PrescripCodeLease leasePrescripCodes(int count) throws ConnectException {
+        try {
+            return exchange(post(SnsProtocol.LEASE, out -> out.writeInt(count)), SnsProtocol::readLease);
+        } catch (ConnectException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Respuesta inesperada del SNS", e);
+        }
+    }
+
+    /**
+     * Lote nativo: todos los envíos en una sola petición, cada historia como delta
+     */
+    @Override
+    public List<SubmissionResult> sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch)
+            throws ConnectException {
+        Encoder body = out -> {
+            out.writeInt(batch.size());
+            for (PrescriptionSubmission s : batch) {
+                SnsProtocol.writeDeltaSubmission(out, s);
+            }
+        };
+        Decoder<List<SubmissionResult>> results = in -> {
+            int n = in.readInt();
+            if (n != batch.size()) {
+                throw new IOException("El SNS ha devuelto " + n + " resultados para un lote de " + batch.size());
+            }
+            List<SubmissionResult> list = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                list.add(in.readBoolean()
+                        ? SubmissionResult.registered(MedicalRecordCodec.readPrescription(in))
+                        : SubmissionResult.failed(SnsProtocol.readError(in)));
+            }
+            return list;
+        };
+        try {
+            return exchange(post(SnsProtocol.SEND_BATCH, body), results);
+        } catch (ConnectException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Respuesta inesperada del SNS", e);
+        }
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUri + path))
+                .timeout(requestTimeout)
+                .header("Accept", SnsProtocol.CONTENT_TYPE)
+                .GET()
+                .build();
+    }
+
+    private HttpRequest post(String path, Encoder encoder) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        encoder.encode(out);
+        out.flush();
+        return HttpRequest.newBuilder(URI.create(baseUri + path))
+                .timeout(requestTimeout)
+                .header("Content-Type", SnsProtocol.CONTENT_TYPE)
+                .header("Accept", SnsProtocol.CONTENT_TYPE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(bytes.toByteArray()))
+                .build();
+    }
+
+    /**
+     * Envía la petición y decodifica la respuesta mientras se recibe.
+     * Las respuestas 422 se convierten en la excepción de negocio correspondiente y las 503
+     * en ConnectException. En las lecturas, cualquier fallo de red o tiempo agotado también es
+     * ConnectException. En los POST sólo lo es si la conexión se rechazó: en otro caso la petición
+     * puede haber llegado al SNS y haberse procesado, y se lanza AmbiguousResultException.
+     */
+    private <T> T exchange(HttpRequest request, Decoder<T> decoder) throws Exception {
+        boolean idempotent = request.method().equals("GET");
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            // Sólo el rechazo de la conexión garantiza que la petición no salió. Un tiempo agotado no:
+            // en HTTP/2 sin TLS el cliente del JDK informa como HttpConnectTimeoutException también
+            // el tiempo agotado esperando la respuesta a la primera petición de la conexión
+            if (idempotent || e instanceof ConnectException) {
+                throw connectionFailure("No se ha podido contactar con el SNS", e);
+            }
+            throw new AmbiguousResultException("Petición enviada al SNS sin respuesta: " + e, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (idempotent) {
+                throw new ConnectException("Petición al SNS interrumpida");
+            }
+            throw new AmbiguousResultException("Petición al SNS interrumpida tras enviarla", e);
+        }
+
+        int status = response.statusCode();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(response.body()))) {
+            if (status == SnsProtocol.OK) {
+                return decoder.decode(in);
+            }
+            if (status == SnsProtocol.BUSINESS_ERROR) {
+                throw SnsProtocol.readError(in);
+            }
+            if (status == SnsProtocol.UNAVAILABLE || idempotent && status >= SnsProtocol.SERVER_ERROR) {
+                throw new ConnectException("El SNS no está disponible (HTTP " + status + ")");
+            }
+            if (status >= SnsProtocol.SERVER_ERROR) {
+                throw new AmbiguousResultException("El SNS ha fallado al procesar la petición (HTTP "
+                        + status + ")", null);
+            }
+            throw new IllegalStateException("Respuesta inesperada del SNS: HTTP " + status);
+        } catch (ConnectException e) {
+            throw e;
+        } catch (IOException e) {
+            if (idempotent) {
+                throw connectionFailure("Respuesta del SNS incompleta o corrupta", e);
+            }
+            throw new AmbiguousResultException("Respuesta del SNS incompleta o corrupta: " + e, e);
+        }
+    }
+
+    private static ConnectException connectionFailure(String message, IOException cause) {
+        ConnectException e = new ConnectException(message + ": " + cause);
+        e.initCause(cause);
+        return e;
+    }
+
+    private static String cipPath(HealthCardID cip) {
+        if (cip == null) {
+            throw new IllegalArgumentException("El CIP no puede ser null");
+        }
+        return cip.getPersonalID(); // alfanumérico: no necesita escaparse
+    }
+}
@@ -0,0 +1,227 @@
+package services.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import consultamedica.MedicalPrescription;
+import services.HealthNationalService;
+import services.MedicalRecordCodec;
+import services.PrescriptionSubmission;
+import services.SubmissionResult;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Servidor HTTP local (en 127.0.0.1, puerto libre) que expone cualquier HealthNationalService
+ * con el protocolo de HttpHealthNationalService. Junto con SimulatedHealthNationalService
+ * permite probar el cliente HTTP de extremo a extremo sin red.
+ * Atiende HTTP/1.1 con conexiones keep-alive.
+ *
+ * Configuración necesaria: el servidor del JDK escribe cabeceras y cuerpo por separado y, sin
+ * TCP_NODELAY, Nagle y el ACK retardado del cliente añaden ~40 ms a cada respuesta keep-alive.
+ * El constructor fija sun.net.httpserver.nodelay=true si no está definida, pero el JDK sólo la
+ * lee al crear el primer HttpServer de la JVM: si otro se crea antes, hay que pasarla con -D.
+ */
+public class LoopbackSnsServer implements AutoCloseable {
+
+    /**
+     * Atención de una petición: lee el cuerpo y escribe la respuesta correcta
+     */
+    private interface Handler {
+        void handle(DataInputStream in, DataOutputStream out) throws Exception;
+    }
+
+    private final HealthNationalService backend;
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * Arranca el servidor
+     * @param backend Servicio del SNS que atiende las peticiones
+     */
+    public LoopbackSnsServer(HealthNationalService backend) throws IOException {
+        if (backend == null) {
+            throw new IllegalArgumentException("HealthNationalService no puede ser null");
+        }
+        this.backend = backend;
+        System.getProperties().putIfAbsent("sun.net.httpserver.nodelay", "true");
+        AtomicInteger workerCount = new AtomicInteger();
+        this.workers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "loopback-sns-" + workerCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        this.server.setExecutor(workers);
+        this.server.createContext("/", this::dispatch);
+        this.server.start();
+    }
+
+    /**
+     * @return Dirección base para HttpHealthNationalService
+     */
+    public URI getBaseUri() {
+        InetSocketAddress address = server.getAddress();
+        return URI.create("http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + "/sns");
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if (!path.startsWith("/sns/")) {
+                respondEmpty(exchange, SnsProtocol.NOT_FOUND);
+                return;
+            }
+            String resource = path.substring("/sns".length());
+            String method = exchange.getRequestMethod();
+
+            Handler handler = null;
+            if (method.equals("GET") && resource.equals(SnsProtocol.PING)) {
+                handler = (in, out) -> { };
+            } else if (method.equals("GET") && resource.startsWith(SnsProtocol.HISTORY + "/")) {
+                String cip = resource.substring(SnsProtocol.HISTORY.length() + 1);
+                handler = (in, out) -> MedicalRecordCodec.writeHistory(out,
+                        backend.getMedicalHistory(SnsProtocol.parseCip(cip)));
+            } else if (method.equals("GET") && resource.startsWith(SnsProtocol.HISTORY_PAGE + "/")) {
+                String cip = resource.substring(SnsProtocol.HISTORY_PAGE.length() + 1);
+                String query = exchange.getRequestURI().getRawQuery();
+                handler = (in, out) -> SnsProtocol.writePage(out, backend.getMedicalHistoryPage(
+                        SnsProtocol.parseCip(cip),
+                        Integer.parseInt(queryParameter(query, "before")),
+                        Integer.parseInt(queryParameter(query, "size"))));
+            } else if (method.equals("GET") && resource.startsWith(SnsProtocol.PRESCRIPTION + "/")) {
+                String cip = resource.substring(SnsProtocol.PRESCRIPTION.length() + 1);
+                String illness = queryParameter(exchange.getRequestURI().getRawQuery(), "illness");
+                handler = (in, out) -> MedicalRecordCodec.writePrescription(out,
+                        backend.getMedicalPrescription(SnsProtocol.parseCip(cip), illness));
+            } else if (method.equals("POST") && resource.equals(SnsProtocol.SEND)) {
+                handler = (in, out) -> {
+                    PrescriptionSubmission s = SnsProtocol.readSubmission(in);
+                    MedicalRecordCodec.writePrescription(out, backend.sendHistoryAndPrescription(
+                            s.getCip(), s.getHistory(), s.getIllness(), s.getPrescription()));
+                };
+            } else if (method.equals("POST") && resource.equals(SnsProtocol.SEND_DELTA)) {
+                handler = (in, out) -> {
+                    PrescriptionSubmission s = SnsProtocol.readDeltaSubmission(in);
+                    MedicalRecordCodec.writePrescription(out, backend.sendHistoryDeltaAndPrescription(
+                            s.getCip(), s.getHistory(), s.getIllness(), s.getPrescription()));
+                };
+            } else if (method.equals("POST") && resource.equals(SnsProtocol.SEND_BATCH)) {
+                handler = this::sendBatch;
+            } else if (method.equals("POST") && resource.equals(SnsProtocol.GENERATE_CODE)) {
+                handler = (in, out) -> {
+                    MedicalPrescription presc = backend.generateTreatmCodeAndRegister(
+                            MedicalRecordCodec.readPrescription(in));
+                    MedicalRecordCodec.writeString(out, presc.getPrescCode().getCode());
+                };
+            } else if (method.equals("POST") && resource.equals(SnsProtocol.LEASE)) {
+                handler = (in, out) -> SnsProtocol.writeLease(out, backend.leasePrescripCodes(in.readInt()));
+            }
+
+            if (handler == null) {
+                respondEmpty(exchange, SnsProtocol.NOT_FOUND);
+            } else {
+                handle(exchange, handler);
+            }
+        }
+    }
+
+    private void sendBatch(DataInputStream in, DataOutputStream out) throws Exception {
+        int n = in.readInt();
+        if (n < 0) {
+            throw new IOException("Tamaño de lote negativo: " + n);
+        }
+        List<PrescriptionSubmission> batch = new ArrayList<>(Math.min(n, 1024));
+        for (int i = 0; i < n; i++) {
+            batch.add(SnsProtocol.readDeltaSubmission(in));
+        }
+        List<SubmissionResult> results = backend.sendHistoriesAndPrescriptions(batch);
+        out.writeInt(results.size());
+        for (SubmissionResult r : results) {
+            out.writeBoolean(r.isRegistered());
+            if (r.isRegistered()) {
+                MedicalRecordCodec.writePrescription(out, r.getPrescription());
+            } else {
+                SnsProtocol.writeError(out, r.getError());
+            }
+        }
+    }
+
+    /**
+     * Ejecuta la petición contra el backend y traduce sus excepciones a códigos HTTP:
+     * fallo de conexión del backend → 503, cuerpo ilegible → 400, error de negocio → 422
+     */
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        int status;
+        try (InputStream body = exchange.getRequestBody()) {
+            handler.handle(new DataInputStream(new BufferedInputStream(body)), out);
+            status = SnsProtocol.OK;
+        } catch (ConnectException e) {
+            respondEmpty(exchange, SnsProtocol.UNAVAILABLE);
+            return;
+        } catch (IOException e) {
+            respondEmpty(exchange, SnsProtocol.BAD_REQUEST);
+            return;
+        } catch (Exception e) {
+            bytes.reset();
+            SnsProtocol.writeError(out, e);
+            status = SnsProtocol.BUSINESS_ERROR;
+        }
+        out.flush();
+        exchange.getResponseHeaders().set("Content-Type", SnsProtocol.CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, bytes.size() == 0 ? -1 : bytes.size());
+        if (bytes.size() > 0) {
+            try (OutputStream response = exchange.getResponseBody()) {
+                bytes.writeTo(response);
+            }
+        }
+    }
+
+    private static void respondEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private static String queryParameter(String rawQuery, String name) {
+        if (rawQuery != null) {
+            for (String param : rawQuery.split("&")) {
+                if (param.startsWith(name + "=")) {
+                    return URLDecoder.decode(param.substring(name.length() + 1), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,241 @@
+package services.http;
+
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+import data.InvalidHealthCardIDException;
+import data.InvalidePrescripCodeException;
+import services.AnyCurrentPrescriptionException;
+import services.HealthCardIDException;
+import services.HistoryConflictException;
+import services.HistoryDelta;
+import services.HistoryPage;
+import services.MedicalRecordCodec;
+import services.NotCompletedMedicalPrescription;
+import services.PrescripCodeLease;
+import services.PrescriptionSubmission;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Protocolo HTTP entre HttpHealthNationalService y el SNS (o LoopbackSnsServer).
+ * Los cuerpos van en el formato binario de MedicalRecordCodec.
+ * Un error de negocio se responde con 422 y un cuerpo tipo + mensaje; 503 indica
+ * que el SNS no puede atender la petición (se trata como fallo de conexión).
+ */
+final class SnsProtocol {
+
+    static final String CONTENT_TYPE = "application/x-sns-record";
+
+    static final String PING = "/ping";
+    static final String HISTORY = "/history";
+    static final String HISTORY_PAGE = "/history-page";
+    static final String PRESCRIPTION = "/prescription";
+    static final String SEND = "/send";
+    static final String SEND_BATCH = "/send-batch";
+    static final String SEND_DELTA = "/send-delta";
+    static final String GENERATE_CODE = "/code";
+    static final String LEASE = "/lease";
+
+    static final int OK = 200;
+    static final int BAD_REQUEST = 400;
+    static final int NOT_FOUND = 404;
+    static final int BUSINESS_ERROR = 422;
+    static final int SERVER_ERROR = 500;
+    static final int UNAVAILABLE = 503;
+
+    /**
+     * Tipos de error de negocio que viajan en las respuestas 422
+     */
+    enum ErrorKind {
+        HEALTH_CARD, NO_PRESCRIPTION, NOT_COMPLETED, INVALID_CODE, INCORRECT_PARAMETERS, INVALID_ARGUMENT,
+        HISTORY_CONFLICT;
+
+        static ErrorKind of(Exception e) {
+            if (e instanceof HealthCardIDException) {
+                return HEALTH_CARD;
+            } else if (e instanceof AnyCurrentPrescriptionException) {
+                return NO_PRESCRIPTION;
+            } else if (e instanceof NotCompletedMedicalPrescription) {
+                return NOT_COMPLETED;
+            } else if (e instanceof InvalidePrescripCodeException) {
+                return INVALID_CODE;
+            } else if (e instanceof IncorrectParametersException) {
+                return INCORRECT_PARAMETERS;
+            } else if (e instanceof HistoryConflictException) {
+                return HISTORY_CONFLICT;
+            }
+            return INVALID_ARGUMENT;
+        }
+
+        Exception toException(String message) {
+            switch (this) {
+                case HEALTH_CARD:
+                    return new HealthCardIDException(message);
+                case NO_PRESCRIPTION:
+                    return new AnyCurrentPrescriptionException(message);
+                case NOT_COMPLETED:
+                    return new NotCompletedMedicalPrescription(message);
+                case INVALID_CODE:
+                    return new InvalidePrescripCodeException(message);
+                case INCORRECT_PARAMETERS:
+                    return new IncorrectParametersException(message);
+                case HISTORY_CONFLICT:
+                    return new HistoryConflictException(message);
+                default:
+                    return new IllegalArgumentException(message);
+            }
+        }
+    }
+
+    private SnsProtocol() {
+    }
+
+    static void writeError(DataOutput out, Exception e) throws IOException {
+        out.writeByte(ErrorKind.of(e).ordinal());
+        MedicalRecordCodec.writeString(out, e.getMessage() != null ? e.getMessage() : e.toString());
+    }
+
+    static Exception readError(DataInput in) throws IOException {
+        int kind = in.readUnsignedByte();
+        String message = MedicalRecordCodec.readString(in);
+        if (kind >= ErrorKind.values().length) {
+            throw new IOException("Tipo de error desconocido: " + kind);
+        }
+        return ErrorKind.values()[kind].toException(message);
+    }
+
+    static HealthCardID parseCip(String code) throws IncorrectParametersException {
+        try {
+            return HealthCardID.of(code);
+        } catch (InvalidHealthCardIDException e) {
+            throw new IncorrectParametersException(e.getMessage());
+        }
+    }
+
+    static void writeSubmission(DataOutput out, PrescriptionSubmission s) throws IOException {
+        MedicalRecordCodec.writeString(out, s.getCip().getPersonalID());
+        MedicalRecordCodec.writeString(out, s.getIllness());
+        MedicalRecordCodec.writeHistory(out, s.getHistory());
+        MedicalRecordCodec.writePrescription(out, s.getPrescription());
+    }
+
+    static PrescriptionSubmission readSubmission(DataInput in) throws IOException {
+        HealthCardID cip = MedicalRecordCodec.readHealthCardID(in);
+        String illness = MedicalRecordCodec.readString(in);
+        MedicalHistory hce = MedicalRecordCodec.readHistory(in);
+        MedicalPrescription mPresc = MedicalRecordCodec.readPrescription(in);
+        return new PrescriptionSubmission(cip, hce, illness, mPresc);
+    }
+
+    /**
+     * Envío de un lote: la historia viaja como delta
+     */
+    static void writeDeltaSubmission(DataOutput out, PrescriptionSubmission s) throws IOException {
+        writeDeltaSubmission(out, s.getCip(), HistoryDelta.of(s.getHistory()), s.getIllness(), s.getPrescription());
+    }
+
+    /**
+     * Envío con sólo el delta de la historia: [cip][enfermedad][delta][prescripción]
+     */
+    static void writeDeltaSubmission(DataOutput out, HealthCardID cip, HistoryDelta delta, String illness,
+                                     MedicalPrescription mPresc) throws IOException {
+        MedicalRecordCodec.writeString(out, cip.getPersonalID());
+        MedicalRecordCodec.writeString(out, illness);
+        out.writeInt(delta.getBaseCount());
+        out.writeInt(delta.getMembShipNumb());
+        List<String> annots = delta.getAnnotations();
+        long[] times = delta.getTimes();
+        out.writeInt(annots.size());
+        for (int i = 0; i < annots.size(); i++) {
+            out.writeLong(times[i]);
+            MedicalRecordCodec.writeString(out, annots.get(i));
+        }
+        MedicalRecordCodec.writePrescription(out, mPresc);
+    }
+
+    /**
+     * @return Envío cuya historia sólo contiene el delta (ver HistoryDelta.toHistory)
+     */
+    static PrescriptionSubmission readDeltaSubmission(DataInput in) throws IOException {
+        HealthCardID cip = MedicalRecordCodec.readHealthCardID(in);
+        String illness = MedicalRecordCodec.readString(in);
+        int base = in.readInt();
+        int membShipNumb = in.readInt();
+        int n = in.readInt();
+        if (n < 0) {
+            throw new IOException("Número de anotaciones negativo: " + n);
+        }
+        List<String> annots = new ArrayList<>(Math.min(n, 1024));
+        long[] times = new long[n];
+        for (int i = 0; i < n; i++) {
+            times[i] = in.readLong();
+            annots.add(MedicalRecordCodec.readString(in));
+        }
+        MedicalPrescription mPresc = MedicalRecordCodec.readPrescription(in);
+        try {
+            MedicalHistory hce = new HistoryDelta(cip, base, membShipNumb, annots, times).toHistory();
+            return new PrescriptionSubmission(cip, hce, illness, mPresc);
+        } catch (IncorrectParametersException | IllegalArgumentException e) {
+            throw new IOException("Delta de historia corrupto: " + e.getMessage(), e);
+        }
+    }
+
+    static void writePage(DataOutput out, HistoryPage page) throws IOException {
+        MedicalRecordCodec.writeString(out, page.getCip().getPersonalID());
+        out.writeInt(page.getMembShipNumb());
+        out.writeInt(page.getTotalCount());
+        out.writeInt(page.getFirstIndex());
+        List<String> annots = page.getAnnotations();
+        long[] times = page.getTimes();
+        out.writeInt(annots.size());
+        for (int i = 0; i < annots.size(); i++) {
+            out.writeLong(times[i]);
+            MedicalRecordCodec.writeString(out, annots.get(i));
+        }
+    }
+
+    static HistoryPage readPage(DataInput in) throws IOException {
+        HealthCardID cip = MedicalRecordCodec.readHealthCardID(in);
+        int membShipNumb = in.readInt();
+        int total = in.readInt();
+        int first = in.readInt();
+        int n = in.readInt();
+        if (n < 0) {
+            throw new IOException("Número de anotaciones negativo: " + n);
+        }
+        List<String> annots = new ArrayList<>(Math.min(n, 1024));
+        long[] times = new long[n];
+        for (int i = 0; i < n; i++) {
+            times[i] = in.readLong();
+            annots.add(MedicalRecordCodec.readString(in));
+        }
+        try {
+            return new HistoryPage(cip, membShipNumb, total, first, annots, times);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Página de historia corrupta: " + e.getMessage(), e);
+        }
+    }
+
+    static void writeLease(DataOutput out, PrescripCodeLease lease) throws IOException {
+        MedicalRecordCodec.writeString(out, lease.getPrefix());
+        out.writeLong(lease.getFirst());
+        out.writeInt(lease.getCount());
+    }
+
+    static PrescripCodeLease readLease(DataInput in) throws IOException {
+        String prefix = MedicalRecordCodec.readString(in);
+        long first = in.readLong();
+        int count = in.readInt();
+        try {
+            return new PrescripCodeLease(prefix, first, count);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bloque de códigos corrupto: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package services.simulation;
+
+import java.time.Duration;
+import java.util.random.RandomGenerator;
+
+/**
+ * Distribución de la latencia simulada de una operación del SNS
+ */
+public final class LatencyDistribution {
+    // Cuantil 0,99 de la normal estándar
+    private static final double Z_99 = 2.3263478740408408;
+
+    private enum Kind { NONE, FIXED, UNIFORM, LOG_NORMAL }
+
+    private final Kind kind;
+    private final long a; // fija: latencia; uniforme: mínimo
+    private final long b; // uniforme: máximo
+    private final double mu;
+    private final double sigma;
+
+    private LatencyDistribution(Kind kind, long a, long b, double mu, double sigma) {
+        this.kind = kind;
+        this.a = a;
+        this.b = b;
+        this.mu = mu;
+        this.sigma = sigma;
+    }
+
+    /**
+     * Sin latencia
+     */
+    public static LatencyDistribution none() {
+        return new LatencyDistribution(Kind.NONE, 0, 0, 0, 0);
+    }
+
+    /**
+     * Siempre la misma latencia
+     */
+    public static LatencyDistribution fixed(Duration latency) {
+        long nanos = toNanos(latency);
+        return new LatencyDistribution(Kind.FIXED, nanos, nanos, 0, 0);
+    }
+
+    /**
+     * Latencia uniforme entre min y max
+     */
+    public static LatencyDistribution uniform(Duration min, Duration max) {
+        long lo = toNanos(min);
+        long hi = toNanos(max);
+        if (hi < lo) {
+            throw new IllegalArgumentException("El máximo no puede ser menor que el mínimo");
+        }
+        return new LatencyDistribution(Kind.UNIFORM, lo, hi, 0, 0);
+    }
+
+    /**
+     * Latencia log-normal dada por su mediana y su percentil 99, la forma habitual
+     * de la latencia de un servicio remoto (cola larga a la derecha)
+     */
+    public static LatencyDistribution logNormal(Duration median, Duration p99) {
+        long m = toNanos(median);
+        long p = toNanos(p99);
+        if (m <= 0 || p < m) {
+            throw new IllegalArgumentException("Se requiere 0 < mediana <= percentil 99");
+        }
+        double mu = Math.log(m);
+        double sigma = (Math.log(p) - mu) / Z_99;
+        return new LatencyDistribution(Kind.LOG_NORMAL, 0, 0, mu, sigma);
+    }
+
+    /**
+     * @return Latencia de una llamada, en nanosegundos
+     */
+    public long sampleNanos(RandomGenerator random) {
+        switch (kind) {
+            case FIXED:
+                return a;
+            case UNIFORM:
+                return a == b ? a : random.nextLong(a, b + 1);
+            case LOG_NORMAL:
+                return (long) Math.exp(mu + sigma * random.nextGaussian());
+            default:
+                return 0;
+        }
+    }
+
+    private static long toNanos(Duration d) {
+        if (d == null || d.isNegative()) {
+            throw new IllegalArgumentException("La latencia no puede ser null ni negativa");
+        }
+        return d.toNanos();
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case FIXED:
+                return "LatencyDistribution{fixed=" + a + "ns}";
+            case UNIFORM:
+                return "LatencyDistribution{uniform=" + a + ".." + b + "ns}";
+            case LOG_NORMAL:
+                return "LatencyDistribution{logNormal median=" + (long) Math.exp(mu) + "ns, sigma=" + sigma + '}';
+            default:
+                return "LatencyDistribution{none}";
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package services.simulation;
+
+/**
+ * Comportamiento simulado de una operación del SNS: latencia, tasa de fallos de
+ * conexión y límite de peticiones por segundo que el SNS es capaz de atender
+ */
+public final class OperationProfile {
+    private final LatencyDistribution latency;
+    private final double errorRate;
+    private final int maxPerSecond;
+
+    /**
+     * @param latency Distribución de la latencia de cada llamada
+     * @param errorRate Probabilidad (0..1) de que una llamada falle con ConnectException
+     * @param maxPerSecond Llamadas por segundo atendidas; las que exceden esperan turno (0 = sin límite)
+     */
+    public OperationProfile(LatencyDistribution latency, double errorRate, int maxPerSecond) {
+        if (latency == null) {
+            throw new IllegalArgumentException("La distribución de latencia no puede ser null");
+        }
+        if (!(errorRate >= 0 && errorRate <= 1)) {
+            throw new IllegalArgumentException("La tasa de fallos debe estar entre 0 y 1: " + errorRate);
+        }
+        if (maxPerSecond < 0) {
+            throw new IllegalArgumentException("El límite de peticiones no puede ser negativo: " + maxPerSecond);
+        }
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    /**
+     * Operación inmediata, sin fallos ni límite
+     */
+    public static OperationProfile instant() {
+        return new OperationProfile(LatencyDistribution.none(), 0, 0);
+    }
+
+    public LatencyDistribution getLatency() {
+        return latency;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public int getMaxPerSecond() {
+        return maxPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "OperationProfile{" +
+                "latency=" + latency +
+                ", errorRate=" + errorRate +
+                ", maxPerSecond=" + maxPerSecond +
+                '}';
+    }
+}
@@ -0,0 +1,475 @@
+package services.simulation;
+
+import consultamedica.FqUnit;
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import consultamedica.dayMoment;
+import data.HealthCardID;
+import data.InvalidHealthCardIDException;
+import data.InvalidProductIDException;
+import data.InvalidePrescripCodeException;
+import data.ProductID;
+import data.ePrescripCode;
+import services.AnyCurrentPrescriptionException;
+import services.HealthCardIDException;
+import services.HealthNationalService;
+import services.HistoryConflictException;
+import services.HistoryDelta;
+import services.HistoryPage;
+import services.NotCompletedMedicalPrescription;
+import services.PrescripCodeLease;
+import services.PrescriptionSubmission;
+import services.SubmissionResult;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SNS simulado en proceso, para pruebas de carga sin red.
+ * Dispone de una población sintética de pacientes generada a partir de una semilla: el
+ * paciente i tiene siempre el mismo CIP, historia clínica y prescripciones activas, que se
+ * generan la primera vez que se consultan. Los envíos se guardan, de modo que las lecturas
+ * posteriores devuelven lo último enviado.
+ * Cada operación tiene su propio perfil (latencia, tasa de fallos de conexión y límite de
+ * peticiones por segundo); por defecto todas son inmediatas y sin fallos.
+ */
+public class SimulatedHealthNationalService implements HealthNationalService {
+
+    private static final String CIP_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final String[] ILLNESSES = {
+            "Hipertensión", "Diabetes", "Asma", "Artrosis", "Migraña", "Hipotiroidismo"
+    };
+    private static final String[] ANNOTATIONS = {
+            "Paciente estable, sin cambios relevantes",
+            "Refiere cefalea ocasional",
+            "Tensión arterial dentro de rango",
+            "Se solicita analítica de control",
+            "Buena adherencia al tratamiento",
+            "Se ajusta la dosis por efectos secundarios leves",
+            "Revisión en tres meses",
+            "Sin alergias medicamentosas conocidas"
+    };
+    private static final String CODE_PREFIX = "SIM";
+
+    /**
+     * Datos de un paciente en el SNS simulado (acceso sincronizado sobre el propio registro)
+     */
+    private static final class PatientRecord {
+        MedicalHistory history;
+        final Map<String, MedicalPrescription> prescriptions = new LinkedHashMap<>();
+    }
+
+    private final long seed;
+    private final int patientCount;
+    private final ConcurrentHashMap<HealthCardID, PatientRecord> records = new ConcurrentHashMap<>();
+
+    private final OperationProfile[] profiles = new OperationProfile[SnsOperation.values().length];
+    private final ThroughputLimiter[] limiters = new ThroughputLimiter[SnsOperation.values().length];
+    private final LongAdder[] calls = new LongAdder[SnsOperation.values().length];
+    private final LongAdder[] injectedFailures = new LongAdder[SnsOperation.values().length];
+
+    private final AtomicLong nextCodeNumber = new AtomicLong();
+    // Códigos ya registrados: un código concedido en un bloque sólo se acepta una vez
+    private final Set<ePrescripCode> usedCodes = ConcurrentHashMap.newKeySet();
+    private final SplittableRandom randomSource;
+    private final ThreadLocal<SplittableRandom> random;
+
+    /**
+     * @param seed Semilla de la población sintética y de la latencia y fallos simulados
+     * @param patientCount Número de pacientes de la población
+     */
+    public SimulatedHealthNationalService(long seed, int patientCount) {
+        if (patientCount <= 0 || patientCount > 100_000_000) {
+            throw new IllegalArgumentException("El número de pacientes debe estar entre 1 y 100.000.000");
+        }
+        this.seed = seed;
+        this.patientCount = patientCount;
+        for (SnsOperation op : SnsOperation.values()) {
+            profiles[op.ordinal()] = OperationProfile.instant();
+            calls[op.ordinal()] = new LongAdder();
+            injectedFailures[op.ordinal()] = new LongAdder();
+        }
+        this.randomSource = new SplittableRandom(seed);
+        this.random = ThreadLocal.withInitial(() -> {
+            synchronized (randomSource) {
+                return randomSource.split();
+            }
+        });
+    }
+
+    // ============= CONFIGURACIÓN =============
+
+    public void setProfile(SnsOperation operation, OperationProfile profile) {
+        if (operation == null || profile == null) {
+            throw new IllegalArgumentException("La operación y el perfil no pueden ser null");
+        }
+        limiters[operation.ordinal()] =
+                profile.getMaxPerSecond() > 0 ? new ThroughputLimiter(profile.getMaxPerSecond()) : null;
+        profiles[operation.ordinal()] = profile;
+    }
+
+    public OperationProfile getProfile(SnsOperation operation) {
+        return profiles[operation.ordinal()];
+    }
+
+    // ============= POBLACIÓN SINTÉTICA =============
+
+    public int getPatientCount() {
+        return patientCount;
+    }
+
+    /**
+     * @param index Posición del paciente en la población (0 .. patientCount - 1)
+     * @return CIP del paciente; siempre el mismo para la misma semilla
+     */
+    public HealthCardID getPatient(int index) {
+        if (index < 0 || index >= patientCount) {
+            throw new IndexOutOfBoundsException("Paciente fuera de la población: " + index);
+        }
+        SplittableRandom r = patientRandom(index);
+        char[] code = new char[16];
+        for (int i = 0; i < 8; i++) {
+            code[i] = CIP_ALPHABET.charAt(r.nextInt(CIP_ALPHABET.length()));
+        }
+        // Los 8 últimos caracteres son el índice: CIPs únicos y fáciles de validar
+        for (int i = 15, n = index; i >= 8; i--, n /= 10) {
+            code[i] = (char) ('0' + n % 10);
+        }
+        try {
+            return HealthCardID.of(new String(code));
+        } catch (InvalidHealthCardIDException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return Enfermedades con prescripción activa del paciente, en su estado actual
+     */
+    public List<String> getIllnesses(HealthCardID cip) throws HealthCardIDException {
+        PatientRecord record = record(cip);
+        synchronized (record) {
+            return new ArrayList<>(record.prescriptions.keySet());
+        }
+    }
+
+    // ============= SERVICIOS DEL SNS =============
+
+    @Override
+    public MedicalHistory getMedicalHistory(HealthCardID cip)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        simulate(SnsOperation.GET_HISTORY);
+        PatientRecord record = record(cip);
+        synchronized (record) {
+            return new MedicalHistory(record.history);
+        }
+    }
+
+    @Override
+    public HistoryPage getMedicalHistoryPage(HealthCardID cip, int before, int pageSize)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        if (before < 0 || pageSize <= 0) {
+            throw new IllegalArgumentException("Página inválida: " + before + ", " + pageSize);
+        }
+        simulate(SnsOperation.GET_HISTORY);
+        PatientRecord record = record(cip);
+        synchronized (record) {
+            return HistoryPage.of(record.history, before, pageSize);
+        }
+    }
+
+    @Override
+    public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, IncorrectParametersException {
+        simulate(SnsOperation.GET_PRESCRIPTION);
+        PatientRecord record = record(cip);
+        synchronized (record) {
+            MedicalPrescription presc = record.prescriptions.get(illness);
+            if (presc == null) {
+                throw new AnyCurrentPrescriptionException(
+                        "El paciente no tiene una prescripción activa para: " + illness);
+            }
+            return new MedicalPrescription(presc);
+        }
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                          String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException,
+            AnyCurrentPrescriptionException, NotCompletedMedicalPrescription, InvalidePrescripCodeException {
+        simulate(SnsOperation.SEND);
+        return register(cip, hce, illness, mPresc);
+    }
+
+    /**
+     * Aplica el delta sobre la historia guardada si su versión base coincide
+     */
+    @Override
+    public MedicalPrescription sendHistoryDeltaAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                                String illness, MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, InvalidePrescripCodeException, HistoryConflictException {
+        simulate(SnsOperation.SEND);
+        return registerDelta(cip, hce, illness, mPresc);
+    }
+
+    private MedicalPrescription registerDelta(HealthCardID cip, MedicalHistory hce,
+                                              String illness, MedicalPrescription mPresc)
+            throws HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, InvalidePrescripCodeException, HistoryConflictException {
+        if (hce == null) {
+            throw new IllegalArgumentException("La historia y la prescripción no pueden ser null");
+        }
+        HistoryDelta delta = HistoryDelta.of(hce);
+        PatientRecord record = record(cip);
+        synchronized (record) {
+            if (record.history.getAnnotationCount() != delta.getBaseCount()) {
+                throw new HistoryConflictException("La historia del SNS tiene "
+                        + record.history.getAnnotationCount() + " anotaciones y el delta parte de "
+                        + delta.getBaseCount());
+            }
+            MedicalHistory merged = new MedicalHistory(record.history);
+            delta.appendTo(merged);
+            return register(cip, merged, illness, mPresc);
+        }
+    }
+
+    @Override
+    public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
+            throws ConnectException, InvalidePrescripCodeException {
+        simulate(SnsOperation.GENERATE_CODE);
+        if (ePresc == null) {
+            throw new IllegalArgumentException("La prescripción no puede ser null");
+        }
+        assignCode(ePresc);
+        return ePresc;
+    }
+
+    @Override
+    public PrescripCodeLease leasePrescripCodes(int count) throws ConnectException {
+        simulate(SnsOperation.LEASE_CODES);
+        if (count <= 0) {
+            throw new IllegalArgumentException("El tamaño del bloque debe ser positivo: " + count);
+        }
+        return new PrescripCodeLease(CODE_PREFIX, nextCodeNumber.getAndAdd(count), count);
+    }
+
+    /**
+     * Lote nativo: un único viaje simulado (perfil SEND_BATCH) para todos los envíos
+     */
+    @Override
+    public List<SubmissionResult> sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch)
+            throws ConnectException {
+        simulate(SnsOperation.SEND_BATCH);
+        List<SubmissionResult> results = new ArrayList<>(batch.size());
+        for (PrescriptionSubmission s : batch) {
+            try {
+                results.add(SubmissionResult.registered(
+                        registerDelta(s.getCip(), s.getHistory(), s.getIllness(), s.getPrescription())));
+            } catch (Exception e) {
+                results.add(SubmissionResult.failed(e));
+            }
+        }
+        return results;
+    }
+
+    // ============= ESTADÍSTICAS =============
+
+    public long getCallCount(SnsOperation operation) {
+        return calls[operation.ordinal()].sum();
+    }
+
+    public long getInjectedFailureCount(SnsOperation operation) {
+        return injectedFailures[operation.ordinal()].sum();
+    }
+
+    /**
+     * @return Llamadas recibidas por operación
+     */
+    public Map<SnsOperation, Long> getCallCounts() {
+        Map<SnsOperation, Long> counts = new EnumMap<>(SnsOperation.class);
+        for (SnsOperation op : SnsOperation.values()) {
+            counts.put(op, calls[op.ordinal()].sum());
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    // ============= OPERACIONES INTERNAS =============
+
+    /**
+     * Aplica el perfil de la operación: espera de turno, latencia y fallo de conexión
+     */
+    private void simulate(SnsOperation operation) throws ConnectException {
+        int op = operation.ordinal();
+        calls[op].increment();
+        OperationProfile profile = profiles[op];
+        SplittableRandom r = random.get();
+
+        long now = System.nanoTime();
+        long delay = profile.getLatency().sampleNanos(r);
+        ThroughputLimiter limiter = limiters[op];
+        if (limiter != null) {
+            delay += limiter.reserve(now);
+        }
+        pause(now + delay);
+
+        if (profile.getErrorRate() > 0 && r.nextDouble() < profile.getErrorRate()) {
+            injectedFailures[op].increment();
+            throw new ConnectException("Fallo de conexión simulado en " + operation);
+        }
+    }
+
+    private static void pause(long deadline) throws ConnectException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new ConnectException("Llamada interrumpida");
+            }
+        }
+    }
+
+    private MedicalPrescription register(HealthCardID cip, MedicalHistory hce, String illness,
+                                         MedicalPrescription mPresc)
+            throws HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, InvalidePrescripCodeException {
+        if (hce == null || mPresc == null) {
+            throw new IllegalArgumentException("La historia y la prescripción no pueden ser null");
+        }
+        if (mPresc.getLineCount() == 0 || mPresc.getEndDate() == null || mPresc.geteSign() == null) {
+            throw new NotCompletedMedicalPrescription("La prescripción no está completa");
+        }
+        PatientRecord record = record(cip);
+        synchronized (record) {
+            if (!record.prescriptions.containsKey(illness)) {
+                throw new AnyCurrentPrescriptionException(
+                        "El paciente no tiene una prescripción activa para: " + illness);
+            }
+            assignCode(mPresc);
+            record.history = new MedicalHistory(hce);
+            record.prescriptions.put(illness, new MedicalPrescription(mPresc));
+        }
+        return mPresc;
+    }
+
+    /**
+     * Conserva el código de la prescripción si es uno concedido en un bloque y aún no usado;
+     * si no, le asigna uno nuevo
+     */
+    private void assignCode(MedicalPrescription presc) throws InvalidePrescripCodeException {
+        ePrescripCode code = presc.getPrescCode();
+        if (code == null || !isLeased(code) || !usedCodes.add(code)) {
+            code = new PrescripCodeLease(CODE_PREFIX, nextCodeNumber.getAndIncrement(), 1).codeAt(0);
+            usedCodes.add(code);
+            presc.setPrescCode(code);
+        }
+    }
+
+    private boolean isLeased(ePrescripCode code) {
+        String value = code.getCode();
+        int digitsStart = CODE_PREFIX.length() + 1;
+        if (value.length() != digitsStart + PrescripCodeLease.NUMBER_DIGITS
+                || !value.startsWith(CODE_PREFIX + "-")) {
+            return false;
+        }
+        long number = 0;
+        for (int i = digitsStart; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number < nextCodeNumber.get();
+    }
+
+    private PatientRecord record(HealthCardID cip) throws HealthCardIDException {
+        int index = indexOf(cip);
+        if (index < 0) {
+            throw new HealthCardIDException("CIP no registrado en el SNS: " + cip);
+        }
+        return records.computeIfAbsent(cip, c -> generate(c, index));
+    }
+
+    private int indexOf(HealthCardID cip) {
+        if (cip == null) {
+            return -1;
+        }
+        String code = cip.getPersonalID();
+        int index = 0;
+        for (int i = 8; i < 16; i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            index = index * 10 + (c - '0');
+        }
+        return index < patientCount && getPatient(index).equals(cip) ? index : -1;
+    }
+
+    private PatientRecord generate(HealthCardID cip, int index) {
+        SplittableRandom r = patientRandom(index).split();
+        try {
+            PatientRecord record = new PatientRecord();
+            int doctor = 1 + r.nextInt(99_999);
+            record.history = new MedicalHistory(cip, doctor);
+            int annotations = 5 + r.nextInt(36);
+            for (int i = 0; i < annotations; i++) {
+                record.history.addMedicalHistoryAnnotations(ANNOTATIONS[r.nextInt(ANNOTATIONS.length)]);
+            }
+
+            int illnesses = 1 + r.nextInt(3);
+            int first = r.nextInt(ILLNESSES.length);
+            for (int i = 0; i < illnesses; i++) {
+                String illness = ILLNESSES[(first + i) % ILLNESSES.length];
+                MedicalPrescription presc = new MedicalPrescription(cip, doctor, illness);
+                int lines = 1 + r.nextInt(4);
+                for (int l = 0; l < lines; l++) {
+                    presc.addLine(product(r, l), guidelines(r));
+                }
+                record.prescriptions.put(illness, presc);
+            }
+            return record;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error al generar el paciente sintético " + index, e);
+        }
+    }
+
+    private static ProductID product(SplittableRandom r, int line) throws InvalidProductIDException {
+        // El último dígito es la posición de la línea: productos distintos dentro de la prescripción
+        long code = r.nextLong(10_000_000_000L) * 10 + line;
+        return ProductID.of(String.format("%012d", code));
+    }
+
+    private static String[] guidelines(SplittableRandom r) {
+        dayMoment[] moments = dayMoment.values();
+        FqUnit[] units = FqUnit.values();
+        return new String[]{
+                moments[r.nextInt(moments.length)].name(),
+                Integer.toString(1 + r.nextInt(90)),
+                Integer.toString(1 + r.nextInt(3)),
+                Integer.toString(1 + r.nextInt(3)),
+                units[r.nextInt(units.length)].name(),
+                ANNOTATIONS[r.nextInt(ANNOTATIONS.length)],
+                ""
+        };
+    }
+
+    private SplittableRandom patientRandom(int index) {
+        return new SplittableRandom(seed ^ (index * 0x9E3779B97F4A7C15L));
+    }
+}
@@ -0,0 +1,8 @@
+package services.simulation;
+
+/**
+ * Operaciones del SNS que se pueden perfilar por separado en la simulación
+ */
+public enum SnsOperation {
+    GET_HISTORY, GET_PRESCRIPTION, SEND, SEND_BATCH, GENERATE_CODE, LEASE_CODES;
+}
@@ -0,0 +1,25 @@
+package services.simulation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limita las llamadas por segundo repartiendo turnos equiespaciados.
+ * Cada llamada reserva el siguiente turno libre sin bloqueos y devuelve cuánto debe esperar;
+ * cuando se supera el límite, la espera crece como la cola de un servidor saturado.
+ */
+final class ThroughputLimiter {
+    private final long intervalNanos;
+    private final AtomicLong nextSlot = new AtomicLong(Long.MIN_VALUE);
+
+    ThroughputLimiter(int maxPerSecond) {
+        this.intervalNanos = 1_000_000_000L / maxPerSecond;
+    }
+
+    /**
+     * @return Nanosegundos que debe esperar la llamada hasta su turno
+     */
+    long reserve(long now) {
+        long slot = Math.max(nextSlot.getAndUpdate(n -> Math.max(n, now) + intervalNanos), now);
+        return slot - now;
+    }
+}
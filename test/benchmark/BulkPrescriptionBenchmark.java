@@ -0,0 +1,90 @@
+package benchmark;
+
+import consultamedica.IncorrectPrescriptionLinesException;
+import consultamedica.IncorrectTakingGuidelinesException;
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+import data.ProductID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Alta de los medicamentos de un protocolo (30 filas) con addLines, frente a llamar a
+ * addLine fila a fila, con protocolos válidos y con una de cada tres filas inválida.
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("Bulk Prescription Benchmark")
+public class BulkPrescriptionBenchmark {
+
+    private static final int ROWS = 30;
+    private static final int PRESCRIPTIONS = 2_000;
+    private static final int RUNS = 10;
+
+    @Test
+    @DisplayName("addLines versus one addLine per row")
+    void benchmarkBulkAdd() throws Exception {
+        HealthCardID cip = new HealthCardID("1234567890ABCDEF");
+        ProductID[] products = new ProductID[ROWS];
+        String[][] valid = new String[ROWS][];
+        String[][] invalid = new String[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            products[i] = new ProductID(String.format("%012d", 1000 + i));
+            valid[i] = new String[]{"AFTERMEALS", "30", "1", "8", "HOUR", "", ""};
+            invalid[i] = i % 3 == 0 ? new String[]{"AFTERMEALS", "30", "-1", "8", "HOUR", "", ""} : valid[i];
+        }
+
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        int lines = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (int p = 0; p < PRESCRIPTIONS; p++) {
+                MedicalPrescription presc = new MedicalPrescription(cip, 1, "Protocolo");
+                presc.addLines(products, valid);
+                lines += presc.getLineCount();
+            }
+            best[0] = Math.min(best[0], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int p = 0; p < PRESCRIPTIONS; p++) {
+                MedicalPrescription presc = new MedicalPrescription(cip, 1, "Protocolo");
+                for (int i = 0; i < ROWS; i++) {
+                    presc.addLine(products[i], valid[i]);
+                }
+                lines += presc.getLineCount();
+            }
+            best[1] = Math.min(best[1], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int p = 0; p < PRESCRIPTIONS; p++) {
+                MedicalPrescription presc = new MedicalPrescription(cip, 1, "Protocolo");
+                try {
+                    presc.addLines(products, invalid);
+                } catch (IncorrectPrescriptionLinesException e) {
+                    lines += e.getErrors().size();
+                }
+            }
+            best[2] = Math.min(best[2], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int p = 0; p < PRESCRIPTIONS; p++) {
+                MedicalPrescription presc = new MedicalPrescription(cip, 1, "Protocolo");
+                for (int i = 0; i < ROWS; i++) {
+                    try {
+                        presc.addLine(products[i], invalid[i]);
+                    } catch (IncorrectTakingGuidelinesException e) {
+                        lines++;
+                    }
+                }
+            }
+            best[3] = Math.min(best[3], System.nanoTime() - start);
+        }
+
+        System.out.printf("[benchmark] protocolo válido de %d filas: addLines %.1f us, addLine por fila %.1f us%n",
+                ROWS, best[0] / 1e3 / PRESCRIPTIONS, best[1] / 1e3 / PRESCRIPTIONS);
+        System.out.printf("[benchmark] protocolo con %d filas inválidas: addLines %.1f us, addLine por fila %.1f us%n",
+                ROWS / 3, best[2] / 1e3 / PRESCRIPTIONS, best[3] / 1e3 / PRESCRIPTIONS);
+        assertEquals(RUNS * PRESCRIPTIONS * (2 * ROWS + 2 * ROWS / 3), lines);
+    }
+}
@@ -0,0 +1,103 @@
+package benchmark;
+
+import data.HealthCardID;
+import data.ProductID;
+import data.ePrescripCode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Construcción de los códigos validados con tablas de clases de caracteres frente a la
+ * validación con String.matches que se usaba antes (compila el patrón en cada llamada).
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("CodeValidation Benchmark")
+public class CodeValidationBenchmark {
+
+    private static final int CODES = 1_000;
+    private static final int ROUNDS = 500;
+    private static final String ALPHANUMERIC = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    @Test
+    @DisplayName("Constructors and validateAll against String.matches")
+    void benchmarkValidation() throws Exception {
+        Random random = new Random(42);
+        String[] cips = new String[CODES];
+        String[] products = new String[CODES];
+        String[] prescriptions = new String[CODES];
+        for (int i = 0; i < CODES; i++) {
+            cips[i] = randomCode(random, ALPHANUMERIC, 16);
+            products[i] = randomCode(random, "0123456789", 12);
+            prescriptions[i] = "SNS-" + randomCode(random, ALPHANUMERIC, 12);
+        }
+
+        for (int warm = 0; warm < 2; warm++) {
+            regex(cips, products, prescriptions, ROUNDS / 5);
+            tables(cips, products, prescriptions, ROUNDS / 5);
+            bulk(cips, products, prescriptions, ROUNDS / 5);
+        }
+        long start = System.nanoTime();
+        int regexValid = regex(cips, products, prescriptions, ROUNDS);
+        long regexNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int tableValid = tables(cips, products, prescriptions, ROUNDS);
+        long tableNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int bulkValid = bulk(cips, products, prescriptions, ROUNDS);
+        long bulkNanos = System.nanoTime() - start;
+
+        double perCode = 3.0 * CODES * ROUNDS;
+        System.out.printf("[benchmark] %,d códigos: String.matches %.1f ns/código, constructores %.1f ns/código, validateAll %.1f ns/código%n",
+                (int) perCode, regexNanos / perCode, tableNanos / perCode, bulkNanos / perCode);
+        assertEquals(regexValid, tableValid);
+        assertEquals(regexValid, bulkValid);
+    }
+
+    private static int regex(String[] cips, String[] products, String[] prescriptions, int rounds) {
+        int valid = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < CODES; i++) {
+                valid += (cips[i].matches("[a-zA-Z0-9]{16}") ? 1 : 0)
+                        + (products[i].matches("\\d{12}") ? 1 : 0)
+                        + (prescriptions[i].matches("[a-zA-Z0-9-]{8,20}") ? 1 : 0);
+            }
+        }
+        return valid;
+    }
+
+    private static int tables(String[] cips, String[] products, String[] prescriptions, int rounds)
+            throws Exception {
+        int valid = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < CODES; i++) {
+                valid += (new HealthCardID(cips[i]).getPersonalID().length() == 16 ? 1 : 0)
+                        + (new ProductID(products[i]).getPackedCode() >= 0 ? 1 : 0)
+                        + (new ePrescripCode(prescriptions[i]).getCode().isEmpty() ? 0 : 1);
+            }
+        }
+        return valid;
+    }
+
+    private static int bulk(String[] cips, String[] products, String[] prescriptions, int rounds) {
+        int valid = 0;
+        for (int r = 0; r < rounds; r++) {
+            valid += HealthCardID.validateAll(cips).cardinality()
+                    + ProductID.validateAll(products).cardinality()
+                    + ePrescripCode.validateAll(prescriptions).cardinality();
+        }
+        return valid;
+    }
+
+    private static String randomCode(Random random, String alphabet, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(chars);
+    }
+}
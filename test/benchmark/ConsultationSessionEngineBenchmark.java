@@ -0,0 +1,72 @@
+package benchmark;
+
+import consultamedica.ConsultationSessionEngine;
+import data.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import services.doubles.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Rendimiento del motor de sesiones con 1k, 10k y 50k sesiones vivas.
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("ConsultationSessionEngine Benchmark")
+public class ConsultationSessionEngineBenchmark {
+
+    @ParameterizedTest(name = "{0} sesiones vivas")
+    @ValueSource(ints = {1_000, 10_000, 50_000})
+    @DisplayName("Throughput of complete consultation flows")
+    void benchmarkSessionThroughput(int liveSessions) throws Exception {
+        ConsultationSessionEngine engine = new ConsultationSessionEngine(
+                new HealthNationalServiceStub(), new DecisionMakingAIStub());
+        HealthCardID cip = new HealthCardID("1234567890ABCDEF");
+        ProductID medicine = new ProductID("123456789012");
+        String[] guidelines = {"BEFORELUNCH", "15", "1", "1", "DAY", "Con agua", ""};
+        Date endDate = new Date(System.currentTimeMillis() + (long) 15 * 24 * 60 * 60 * 1000);
+
+        List<String> ids = new ArrayList<>(liveSessions);
+        for (int i = 0; i < liveSessions; i++) {
+            ids.add(engine.openSession());
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> pending = new ArrayList<>(liveSessions);
+            for (String id : ids) {
+                pending.add(pool.submit(() -> {
+                    engine.initRevision(id, cip, "Hipertensión");
+                    engine.enterMedicalAssessmentInHistory(id, "Paciente estable");
+                    engine.initMedicalPrescriptionEdition(id);
+                    engine.enterMedicineWithGuidelines(id, medicine, guidelines);
+                    engine.modifyDoseInLine(id, medicine, 2.0f);
+                    engine.enterTreatmentEndingDate(id, endDate);
+                    engine.finishMedicalPrescriptionEdition(id);
+                    engine.stampeeSignature(id);
+                    return engine.sendHistoryAndPrescription(id);
+                }));
+            }
+            for (Future<?> f : pending) {
+                f.get();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            double flowsPerSecond = liveSessions / (elapsed / 1e9);
+            System.out.printf("[benchmark] %,d sesiones, %d hilos, %d particiones: %,.0f consultas/s (%,.0f eventos/s)%n",
+                    liveSessions, threads, engine.getShardCount(), flowsPerSecond, flowsPerSecond * 9);
+            assertEquals(liveSessions, engine.getSessionCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
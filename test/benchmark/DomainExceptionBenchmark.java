@@ -0,0 +1,103 @@
+package benchmark;
+
+import consultamedica.ConsultationTerminal;
+import consultamedica.IncorrectTakingGuidelinesException;
+import consultamedica.MedicalPrescription;
+import consultamedica.ProductNotInPrescriptionException;
+import data.DomainException;
+import data.HealthCardID;
+import data.InvalidProductIDException;
+import data.ProductID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Flujos con muchos errores esperados (códigos de producto mal escritos, pautas inválidas,
+ * productos que no están en la prescripción y eventos fuera de orden), con y sin traza de
+ * pila en las excepciones de dominio.
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("DomainException Benchmark")
+public class DomainExceptionBenchmark {
+
+    private static final int ITERATIONS = 20_000;
+    private static final int RUNS = 8;
+    private static final String[] BAD_GUIDELINES = {"BEFORELUNCH", "15", "-1", "1", "DAY", "", ""};
+
+    @AfterEach
+    void restoreStackTraces() {
+        DomainException.setStackTracesEnabled(true);
+    }
+
+    @Test
+    @DisplayName("Error-heavy flows with and without stack traces")
+    void benchmarkErrorFlows() throws Exception {
+        MedicalPrescription presc = new MedicalPrescription(new HealthCardID("1234567890ABCDEF"), 1, "Asma");
+        ProductID product = new ProductID("123456789012");
+        ConsultationTerminal terminal = new ConsultationTerminal();
+
+        long[] withTraces = run(presc, product, terminal, true);
+        long[] without = run(presc, product, terminal, false);
+
+        String[] flows = {"ProductID inválido", "pautas inválidas", "producto ausente", "evento fuera de orden"};
+        for (int f = 0; f < flows.length; f++) {
+            System.out.printf("[benchmark] %s: con traza %.0f ns/error, sin traza %.0f ns/error%n",
+                    flows[f], withTraces[f] / (double) ITERATIONS, without[f] / (double) ITERATIONS);
+        }
+    }
+
+    private static long[] run(MedicalPrescription presc, ProductID product, ConsultationTerminal terminal,
+                              boolean stackTraces) {
+        DomainException.setStackTracesEnabled(stackTraces);
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int run = 0; run < RUNS; run++) {
+            int errors = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                try {
+                    new ProductID("12345678901X");
+                } catch (InvalidProductIDException e) {
+                    errors++;
+                }
+            }
+            best[0] = Math.min(best[0], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                try {
+                    presc.addLine(product, BAD_GUIDELINES);
+                } catch (IncorrectTakingGuidelinesException e) {
+                    errors++;
+                } catch (Exception e) {
+                    fail(e);
+                }
+            }
+            best[1] = Math.min(best[1], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                try {
+                    presc.modifyDoseInLine(product, 2f);
+                } catch (ProductNotInPrescriptionException e) {
+                    errors++;
+                }
+            }
+            best[2] = Math.min(best[2], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                try {
+                    terminal.enterMedicineWithGuidelines(product, BAD_GUIDELINES);
+                } catch (Exception e) {
+                    errors++;
+                }
+            }
+            best[3] = Math.min(best[3], System.nanoTime() - start);
+            assertEquals(4 * ITERATIONS, errors);
+        }
+        return best;
+    }
+}
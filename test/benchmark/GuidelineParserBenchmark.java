@@ -0,0 +1,108 @@
+package benchmark;
+
+import consultamedica.FqUnit;
+import consultamedica.IncorrectTakingGuidelinesException;
+import consultamedica.MedicalPrescription;
+import consultamedica.dayMoment;
+import data.HealthCardID;
+import data.ProductID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Lectura de las pautas en MedicalPrescription.addLine, frente a la lectura anterior con
+ * trim(), Float.parseFloat y Enum.valueOf capturando IllegalArgumentException, con líneas
+ * válidas e inválidas.
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("GuidelineParser Benchmark")
+public class GuidelineParserBenchmark {
+
+    private static final int LINES = 1_000;
+    private static final int RUNS = 15;
+
+    private static final String[][] VALID = {
+            {"BEFORELUNCH", "15", "1", "8", "HOUR", "Tomar con agua", ""},
+            {" AFTERMEALS ", "7.5", "0.5", "1", "DAY", "", ""},
+            {"DURINGDINNER", "30", "2", "12", "HOUR", null, ""}
+    };
+    private static final String[][] INVALID = {
+            {"SOMETIMES", "15", "1", "8", "HOUR", "", ""},
+            {"BEFORELUNCH", "quince", "1", "8", "HOUR", "", ""},
+            {"BEFORELUNCH", "15", "1", "8", "FORTNIGHT", "", ""}
+    };
+
+    @Test
+    @DisplayName("addLine with valid and invalid guidelines")
+    void benchmarkAddLine() throws Exception {
+        ProductID[] products = new ProductID[LINES];
+        for (int i = 0; i < LINES; i++) {
+            products[i] = new ProductID(String.format("%012d", i));
+        }
+
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        int accepted = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            accepted += addAll(products, VALID);
+            best[0] = Math.min(best[0], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            accepted += addAll(products, INVALID);
+            best[1] = Math.min(best[1], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            accepted += parseAllLegacy(VALID);
+            best[2] = Math.min(best[2], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            accepted += parseAllLegacy(INVALID);
+            best[3] = Math.min(best[3], System.nanoTime() - start);
+        }
+
+        System.out.printf("[benchmark] líneas válidas: addLine %.0f ns/línea, lectura anterior %.0f ns/línea%n",
+                best[0] / (double) LINES, best[2] / (double) LINES);
+        System.out.printf("[benchmark] líneas inválidas: addLine %.0f ns/línea, lectura anterior %.0f ns/línea%n",
+                best[1] / (double) LINES, best[3] / (double) LINES);
+        assertEquals(2 * RUNS * LINES, accepted);
+    }
+
+    private static int addAll(ProductID[] products, String[][] lines) throws Exception {
+        MedicalPrescription presc = new MedicalPrescription(new HealthCardID("1234567890ABCDEF"), 1, "Asma");
+        int accepted = 0;
+        for (int i = 0; i < products.length; i++) {
+            try {
+                presc.addLine(products[i], lines[i % lines.length]);
+                accepted++;
+            } catch (IncorrectTakingGuidelinesException e) {
+                // Línea rechazada
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Lectura anterior de los campos, sin crear la línea
+     */
+    private static int parseAllLegacy(String[][] lines) {
+        int accepted = 0;
+        for (int i = 0; i < LINES; i++) {
+            String[] instruc = lines[i % lines.length];
+            try {
+                dayMoment dMoment = dayMoment.valueOf(instruc[0].trim());
+                float duration = Float.parseFloat(instruc[1].trim());
+                float dose = Float.parseFloat(instruc[2].trim());
+                float freq = Float.parseFloat(instruc[3].trim());
+                FqUnit unit = FqUnit.valueOf(instruc[4].trim());
+                if (dMoment != null && unit != null && duration > 0 && dose > 0 && freq > 0) {
+                    accepted++;
+                }
+            } catch (IllegalArgumentException e) {
+                // Línea rechazada
+            }
+        }
+        return accepted;
+    }
+}
@@ -0,0 +1,107 @@
+package benchmark;
+
+import consultamedica.MedicalHistory;
+import data.HealthCardID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import services.CompressedHistory;
+import services.HistoryCompressor;
+import services.HistoryDictionary;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tasa de compresión y velocidad de descompresión de historias sintéticas con deflate
+ * sin diccionario frente a deflate con un diccionario entrenado con otra muestra del corpus.
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("HistoryCompression Benchmark")
+public class HistoryCompressionBenchmark {
+
+    private static final String[] PHRASES = {
+            "Paciente refiere dolor de cabeza", "control de tensión arterial", "sin cambios en el tratamiento",
+            "analítica dentro de la normalidad", "se mantiene la dosis actual", "refiere mejoría clínica",
+            "cita de revisión en dos semanas", "no refiere alergias medicamentosas conocidas",
+            "exploración física sin hallazgos relevantes", "se solicita radiografía de tórax",
+            "fiebre de 38 grados desde hace", "tos productiva", "buena adherencia al tratamiento"
+    };
+    private static final String[] DRUGS = {
+            "paracetamol", "ibuprofeno", "omeprazol", "metformina", "enalapril", "simvastatina",
+            "amoxicilina", "salbutamol", "levotiroxina", "atorvastatina", "insulina glargina"
+    };
+    private static final int HISTORIES = 5_000;
+    private static final int DECODE_ROUNDS = 5;
+
+    @ParameterizedTest(name = "{0} anotaciones por historia")
+    @ValueSource(ints = {3, 20})
+    @DisplayName("Compression ratio and decode throughput with and without a trained dictionary")
+    void benchmarkCompression(int annotationsPerHistory) throws Exception {
+        Random random = new Random(42);
+        List<String> sample = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            sample.add(annotation(random));
+        }
+        MedicalHistory[] histories = new MedicalHistory[HISTORIES];
+        for (int h = 0; h < HISTORIES; h++) {
+            histories[h] = new MedicalHistory(new HealthCardID(String.format("BENCH%011d", h)), 100);
+            for (int a = 0; a < annotationsPerHistory; a++) {
+                histories[h].addMedicalHistoryAnnotations(annotation(random), new Date(a * 86_400_000L));
+            }
+        }
+
+        long start = System.nanoTime();
+        HistoryDictionary dictionary = HistoryDictionary.train(sample, 16 * 1024);
+        long trainNanos = System.nanoTime() - start;
+
+        HistoryCompressor plain = new HistoryCompressor(new HistoryDictionary(new byte[0]));
+        HistoryCompressor trained = new HistoryCompressor(dictionary);
+        report("sin diccionario", plain, histories);
+        report("con diccionario", trained, histories);
+        System.out.printf("[benchmark]   diccionario de %,d bytes entrenado en %.0f ms%n",
+                dictionary.size(), trainNanos / 1e6);
+    }
+
+    private static void report(String name, HistoryCompressor compressor, MedicalHistory[] histories) {
+        CompressedHistory[] compressed = new CompressedHistory[histories.length];
+        long raw = 0;
+        long packed = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < histories.length; i++) {
+            compressed[i] = compressor.compress(histories[i]);
+            raw += compressed[i].getRawSize();
+            packed += compressed[i].getCompressedSize();
+        }
+        long compressNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int round = 0; round < DECODE_ROUNDS; round++) {
+            for (CompressedHistory c : compressed) {
+                compressor.decompress(c);
+            }
+        }
+        long decodeNanos = (System.nanoTime() - start) / DECODE_ROUNDS;
+
+        System.out.printf("[benchmark] %s: %,d -> %,d bytes (ratio %.2f), compresión %.0f MB/s, descompresión %.0f MB/s (%.1f µs por historia)%n",
+                name, raw, packed, (double) raw / packed, raw / (compressNanos / 1e3),
+                raw / (decodeNanos / 1e3), decodeNanos / 1e3 / histories.length);
+        assertEquals(histories[0].getHistory(), compressor.decompress(compressed[0]).getHistory());
+    }
+
+    private static String annotation(Random random) {
+        StringBuilder sb = new StringBuilder(PHRASES[random.nextInt(PHRASES.length)]);
+        int extra = random.nextInt(3);
+        for (int i = 0; i < extra; i++) {
+            sb.append(random.nextBoolean() ? ", " : "; ").append(PHRASES[random.nextInt(PHRASES.length)]);
+        }
+        if (random.nextInt(3) == 0) {
+            sb.append(", se pauta ").append(DRUGS[random.nextInt(DRUGS.length)])
+                    .append(' ').append(1 + random.nextInt(3) * 500).append(" mg");
+        }
+        return sb.toString();
+    }
+}
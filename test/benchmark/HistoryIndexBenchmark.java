@@ -0,0 +1,105 @@
+package benchmark;
+
+import data.HealthCardID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import services.HistoryHit;
+import services.HistoryIndex;
+
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Indexación y búsqueda sobre un corpus sintético de anotaciones, frente a recorrer el texto
+ * de todas las anotaciones buscando la palabra.
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("HistoryIndex Benchmark")
+public class HistoryIndexBenchmark {
+
+    private static final String[] COMMON = {
+            "paciente", "refiere", "dolor", "control", "tensión", "arterial", "estable", "sin",
+            "cambios", "revisión", "analítica", "normal", "tratamiento", "dosis", "mantiene",
+            "mejoría", "leve", "cefalea", "fiebre", "tos", "días", "semana", "cita", "de", "en"
+    };
+    private static final String[] DRUGS = {
+            "paracetamol", "ibuprofeno", "omeprazol", "metformina", "enalapril", "simvastatina",
+            "amoxicilina", "penicilina", "salbutamol", "levotiroxina", "atorvastatina", "insulina"
+    };
+    private static final int PATIENTS = 50_000;
+    private static final int QUERIES = 100;
+
+    @ParameterizedTest(name = "{0} anotaciones")
+    @ValueSource(ints = {100_000, 1_000_000})
+    @DisplayName("Term and phrase queries over a synthetic corpus")
+    void benchmarkQueries(int annotations) throws Exception {
+        Random random = new Random(42);
+        HealthCardID[] cips = new HealthCardID[PATIENTS];
+        for (int i = 0; i < PATIENTS; i++) {
+            cips[i] = new HealthCardID(String.format("BENCH%011d", i));
+        }
+        String[] corpus = new String[annotations];
+        for (int i = 0; i < annotations; i++) {
+            StringBuilder sb = new StringBuilder();
+            int words = 6 + random.nextInt(10);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    sb.append(' ');
+                }
+                sb.append(random.nextInt(8) == 0
+                        ? DRUGS[random.nextInt(DRUGS.length)]
+                        : COMMON[random.nextInt(COMMON.length)]);
+            }
+            if (i % 5_000 == 0) {
+                sb.append(" alergia a penicilina confirmada");
+            }
+            corpus[i] = sb.toString();
+        }
+
+        HistoryIndex index = new HistoryIndex();
+        long start = System.nanoTime();
+        for (int i = 0; i < annotations; i++) {
+            index.add(cips[i % PATIENTS], i / PATIENTS, corpus[i]);
+        }
+        long indexNanos = System.nanoTime() - start;
+
+        List<HistoryHit> rare = null;
+        start = System.nanoTime();
+        for (int q = 0; q < QUERIES; q++) {
+            rare = index.searchPhrase("alergia a penicilina");
+        }
+        long phraseNanos = (System.nanoTime() - start) / QUERIES;
+
+        List<HistoryHit> drug = null;
+        start = System.nanoTime();
+        for (int q = 0; q < QUERIES; q++) {
+            drug = index.searchTerm("metformina");
+        }
+        long termNanos = (System.nanoTime() - start) / QUERIES;
+
+        start = System.nanoTime();
+        for (int q = 0; q < QUERIES; q++) {
+            index.searchTerm(cips[q], "metformina");
+        }
+        long patientNanos = (System.nanoTime() - start) / QUERIES;
+
+        start = System.nanoTime();
+        int scanned = 0;
+        for (String text : corpus) {
+            if (text.contains("alergia a penicilina")) {
+                scanned++;
+            }
+        }
+        long scanNanos = System.nanoTime() - start;
+
+        System.out.printf("[benchmark] %,d anotaciones: indexación %.0f ms (%,.0f anotaciones/s), %,d términos, %,.1f MB de apariciones%n",
+                annotations, indexNanos / 1e6, annotations / (indexNanos / 1e9),
+                index.getTermCount(), index.getPostingBytes() / 1e6);
+        System.out.printf("[benchmark]   frase rara %.2f ms (%d), término frecuente %.2f ms (%,d), término de un paciente %.2f ms, recorrido del texto %.2f ms%n",
+                phraseNanos / 1e6, rare.size(), termNanos / 1e6, drug.size(),
+                patientNanos / 1e6, scanNanos / 1e6);
+        assertEquals(scanned, rare.size());
+    }
+}
@@ -0,0 +1,98 @@
+package benchmark;
+
+import data.HealthCardID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import services.http.HttpHealthNationalService;
+import services.http.LoopbackSnsServer;
+import services.simulation.SimulatedHealthNationalService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Latencia p50/p99 de getMedicalHistory por HTTP contra un SNS local (LoopbackSnsServer
+ * sobre SimulatedHealthNationalService sin latencia propia), con 1 a 1000 terminales
+ * concurrentes. Las conexiones se abren con warmUp antes de medir.
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("HttpHealthNationalService Benchmark")
+public class HttpHealthNationalServiceBenchmark {
+
+    private static final int TOTAL_CALLS = 20_000;
+
+    @ParameterizedTest(name = "{0} terminales")
+    @ValueSource(ints = {1, 10, 100, 1000})
+    @DisplayName("Round-trip latency with concurrent terminals")
+    void benchmarkLatency(int terminals) throws Exception {
+        SimulatedHealthNationalService backend = new SimulatedHealthNationalService(1L, 10_000);
+        try (LoopbackSnsServer server = new LoopbackSnsServer(backend)) {
+            HttpHealthNationalService sns = new HttpHealthNationalService(server.getBaseUri(),
+                    Duration.ofSeconds(5), Duration.ofSeconds(30));
+            sns.warmUp(Math.min(terminals, 256)).get(30, TimeUnit.SECONDS);
+
+            int callsPerTerminal = Math.max(20, TOTAL_CALLS / terminals);
+            ExecutorService pool = Executors.newFixedThreadPool(terminals);
+            try {
+                // Calentamiento de JIT y conexiones
+                runTerminals(pool, sns, backend, terminals, Math.max(5, callsPerTerminal / 10));
+
+                long start = System.nanoTime();
+                long[] latencies = runTerminals(pool, sns, backend, terminals, callsPerTerminal);
+                long elapsed = System.nanoTime() - start;
+
+                Arrays.sort(latencies);
+                System.out.printf("[benchmark] %4d terminales: p50 %.2f ms, p99 %.2f ms, %,.0f peticiones/s%n",
+                        terminals, percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6,
+                        latencies.length / (elapsed / 1e9));
+                assertEquals((long) terminals * callsPerTerminal, latencies.length);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private static long[] runTerminals(ExecutorService pool, HttpHealthNationalService sns,
+                                       SimulatedHealthNationalService backend,
+                                       int terminals, int callsPerTerminal) throws Exception {
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<long[]>> results = new ArrayList<>(terminals);
+        for (int t = 0; t < terminals; t++) {
+            int terminal = t;
+            results.add(pool.submit(() -> {
+                go.await();
+                long[] samples = new long[callsPerTerminal];
+                for (int i = 0; i < callsPerTerminal; i++) {
+                    HealthCardID cip = backend.getPatient((terminal * callsPerTerminal + i) % backend.getPatientCount());
+                    long begin = System.nanoTime();
+                    sns.getMedicalHistory(cip);
+                    samples[i] = System.nanoTime() - begin;
+                }
+                return samples;
+            }));
+        }
+        go.countDown();
+
+        long[] all = new long[terminals * callsPerTerminal];
+        int pos = 0;
+        for (Future<long[]> r : results) {
+            long[] samples = r.get(10, TimeUnit.MINUTES);
+            System.arraycopy(samples, 0, all, pos, samples.length);
+            pos += samples.length;
+        }
+        return all;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+}
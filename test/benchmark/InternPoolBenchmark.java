@@ -0,0 +1,92 @@
+package benchmark;
+
+import data.HealthCardID;
+import data.ProductID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Identificadores creados con new frente a los compartidos con HealthCardID.of/ProductID.of
+ * cuando unos pocos códigos se repiten mucho (pacientes habituales, medicamentos más recetados):
+ * tiempo de creación, memoria retenida por una caché grande y coste de equals.
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("InternPool Benchmark")
+public class InternPoolBenchmark {
+
+    private static final int OCCURRENCES = 1_000_000;
+    private static final int DISTINCT_PRODUCTS = 500;
+    private static final int DISTINCT_PATIENTS = 20_000;
+
+    @Test
+    @DisplayName("Creation time, retained heap and equality with and without the pool")
+    void benchmarkInterning() throws Exception {
+        Random random = new Random(42);
+        String[] products = new String[OCCURRENCES];
+        String[] patients = new String[OCCURRENCES];
+        for (int i = 0; i < OCCURRENCES; i++) {
+            // Cadenas nuevas en cada aparición, como las que llegan del SNS o de la IA
+            products[i] = String.format("%012d", 700_000_000L + random.nextInt(DISTINCT_PRODUCTS));
+            patients[i] = String.format("BENCH%011d", random.nextInt(DISTINCT_PATIENTS));
+        }
+
+        long freshNanos = Long.MAX_VALUE;
+        long pooledNanos = Long.MAX_VALUE;
+        for (int run = 0; run < 4; run++) {
+            long start = System.nanoTime();
+            create(products, patients, false);
+            freshNanos = Math.min(freshNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            create(products, patients, true);
+            pooledNanos = Math.min(pooledNanos, System.nanoTime() - start);
+        }
+
+        // Memoria retenida con los dos conjuntos vivos a la vez
+        long before = usedHeap();
+        Object[][] fresh = create(products, patients, false);
+        long freshBytes = usedHeap() - before;
+        Object[][] pooled = create(products, patients, true);
+        long pooledBytes = usedHeap() - before - freshBytes;
+
+        int expectedEqual = 0;
+        for (int i = 1; i < OCCURRENCES; i++) {
+            expectedEqual += products[i].equals(products[i - 1]) ? 1 : 0;
+        }
+
+        long start = System.nanoTime();
+        int equal = 0;
+        for (int i = 1; i < OCCURRENCES; i++) {
+            equal += pooled[0][i].equals(pooled[0][i - 1]) ? 1 : 0;
+        }
+        long equalsNanos = System.nanoTime() - start;
+
+        System.out.printf("[benchmark] %,d productos y %,d CIPs: new %.0f ms y %.1f MB retenidos, of %.0f ms y %.1f MB retenidos, equals %.1f ns%n",
+                OCCURRENCES, OCCURRENCES, freshNanos / 1e6, freshBytes / 1e6, pooledNanos / 1e6,
+                pooledBytes / 1e6, (double) equalsNanos / OCCURRENCES);
+        assertEquals(expectedEqual, equal);
+        assertEquals(fresh[1].length, pooled[1].length);
+        assertSame(pooled[1][0], HealthCardID.of(patients[0]));
+    }
+
+    private static Object[][] create(String[] products, String[] patients, boolean pooled) throws Exception {
+        Object[] productIds = new Object[products.length];
+        Object[] cips = new Object[patients.length];
+        for (int i = 0; i < products.length; i++) {
+            productIds[i] = pooled ? ProductID.of(products[i]) : new ProductID(products[i]);
+            cips[i] = pooled ? HealthCardID.of(patients[i]) : new HealthCardID(patients[i]);
+        }
+        return new Object[][]{productIds, cips};
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,49 @@
+package benchmark;
+
+import consultamedica.MedicalHistory;
+import data.HealthCardID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Coste de añadir anotaciones a una historia larga: registro por anotaciones frente a la
+ * concatenación de String que se usaba antes (copia toda la historia en cada anotación).
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("MedicalHistory Benchmark")
+public class MedicalHistoryBenchmark {
+
+    private static final String ANNOTATION = "Paciente estable, tensión arterial dentro de rango, sin cambios";
+
+    @ParameterizedTest(name = "{0} anotaciones")
+    @ValueSource(ints = {1_000, 10_000, 40_000})
+    @DisplayName("Appending annotations to a long history")
+    void benchmarkAppend(int annotations) throws Exception {
+        HealthCardID cip = new HealthCardID("1234567890ABCDEF");
+
+        long start = System.nanoTime();
+        MedicalHistory hce = new MedicalHistory(cip, 100);
+        for (int i = 0; i < annotations; i++) {
+            hce.addMedicalHistoryAnnotations(ANNOTATION);
+        }
+        String history = hce.getHistory();
+        long logNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        String concatenated = "";
+        for (int i = 0; i < annotations; i++) {
+            if (!concatenated.isEmpty()) {
+                concatenated += "\n";
+            }
+            concatenated += ANNOTATION;
+        }
+        long concatNanos = System.nanoTime() - start;
+
+        System.out.printf("[benchmark] %,d anotaciones (%,d caracteres): registro %.2f ms, concatenación %.2f ms%n",
+                annotations, history.length(), logNanos / 1e6, concatNanos / 1e6);
+        assertEquals(concatenated, history);
+    }
+}
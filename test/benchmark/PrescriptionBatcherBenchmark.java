@@ -0,0 +1,75 @@
+package benchmark;
+
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import services.PrescriptionBatcher;
+import services.PrescriptionSubmission;
+import services.doubles.HealthNationalServiceMock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Envíos por segundo al SNS llamada a llamada frente a envíos agrupados,
+ * con una latencia simulada de 5 ms por viaje de ida y vuelta.
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("PrescriptionBatcher Benchmark")
+public class PrescriptionBatcherBenchmark {
+
+    private static final long ROUND_TRIP_MILLIS = 5;
+    private static final int SUBMISSIONS = 2_000;
+    private static final int TERMINALS = 64;
+
+    @ParameterizedTest(name = "lotes de hasta {0} envíos")
+    @ValueSource(ints = {1, 16, 64})
+    @DisplayName("Submission throughput with and without batching")
+    void benchmarkSubmissionThroughput(int maxBatchSize) throws Exception {
+        HealthNationalServiceMock hns = new HealthNationalServiceMock();
+        hns.setSendLatencyMillis(ROUND_TRIP_MILLIS);
+        HealthCardID cip = new HealthCardID("1234567890ABCDEF");
+
+        ExecutorService terminals = Executors.newFixedThreadPool(TERMINALS);
+        try (PrescriptionBatcher batcher = new PrescriptionBatcher(hns, maxBatchSize, Duration.ofMillis(2))) {
+            long start = System.nanoTime();
+            List<Future<MedicalPrescription>> pending = new ArrayList<>(SUBMISSIONS);
+            for (int i = 0; i < SUBMISSIONS; i++) {
+                pending.add(terminals.submit(() -> {
+                    PrescriptionSubmission submission = new PrescriptionSubmission(cip,
+                            new MedicalHistory(cip, 100), "Hipertensión",
+                            new MedicalPrescription(cip, 100, "Hipertensión"));
+                    if (maxBatchSize == 1) {
+                        // Línea base: cada terminal espera su propio viaje al SNS
+                        return hns.sendHistoryAndPrescription(submission.getCip(),
+                                submission.getHistory(), submission.getIllness(),
+                                submission.getPrescription());
+                    }
+                    CompletableFuture<MedicalPrescription> result = batcher.submit(submission);
+                    return result.get(10, TimeUnit.SECONDS);
+                }));
+            }
+            for (Future<MedicalPrescription> f : pending) {
+                assertNotNull(f.get().getPrescCode());
+            }
+            long elapsed = System.nanoTime() - start;
+
+            double perSecond = SUBMISSIONS / (elapsed / 1e9);
+            long roundTrips = maxBatchSize == 1 ? hns.getSendCalls() : hns.getBatchCalls();
+            System.out.printf("[benchmark] lote %d, %d terminales: %,.0f envíos/s, %d viajes al SNS%n",
+                    maxBatchSize, TERMINALS, perSecond, roundTrips);
+        } finally {
+            terminals.shutdownNow();
+        }
+    }
+}
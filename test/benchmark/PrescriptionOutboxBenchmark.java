@@ -0,0 +1,91 @@
+package benchmark;
+
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import data.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import services.PrescriptionOutbox;
+import services.doubles.HealthNationalServiceMock;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencia de enqueue duradero (con fsync agrupado) a distintos ritmos de llegada.
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("PrescriptionOutbox Benchmark")
+public class PrescriptionOutboxBenchmark {
+
+    private static final int TERMINALS = 16;
+    private static final int SECONDS = 3;
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest(name = "{0} prescripciones/s")
+    @ValueSource(ints = {100, 500, 2000})
+    @DisplayName("Durable enqueue latency under load")
+    void benchmarkEnqueueLatency(int perSecond) throws Exception {
+        HealthNationalServiceMock hns = new HealthNationalServiceMock();
+        hns.setThrowConnectException(true); // todo queda en la bandeja
+        HealthCardID cip = new HealthCardID("1234567890ABCDEF");
+        MedicalHistory hce = new MedicalHistory(cip, 100);
+        hce.addMedicalHistoryAnnotations("Paciente con hipertensión controlada desde 2015");
+        MedicalPrescription presc = new MedicalPrescription(cip, 100, "Hipertensión");
+        presc.addLine(new ProductID("123456789012"),
+                new String[]{"BEFORELUNCH", "15", "1", "1", "DAY", "Con agua", ""});
+        presc.setPrescDate(new Date());
+        presc.setEndDate(new Date(System.currentTimeMillis() + 86_400_000L * 15));
+        presc.seteSign(new DigitalSignature(new byte[256]));
+
+        int total = perSecond * SECONDS;
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) * TERMINALS / perSecond;
+        ExecutorService pool = Executors.newFixedThreadPool(TERMINALS);
+        try (PrescriptionOutbox outbox = new PrescriptionOutbox(dir, hns, 1000)) {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int t = 0; t < TERMINALS; t++) {
+                int perTerminal = total / TERMINALS;
+                results.add(pool.submit(() -> {
+                    long[] latencies = new long[perTerminal];
+                    long next = System.nanoTime();
+                    for (int i = 0; i < perTerminal; i++) {
+                        long wait = next - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                        long start = System.nanoTime();
+                        outbox.enqueue(cip, hce, "Hipertensión", presc);
+                        latencies[i] = System.nanoTime() - start;
+                        next += intervalNanos;
+                    }
+                    return latencies;
+                }));
+            }
+
+            long[] all = new long[0];
+            for (Future<long[]> f : results) {
+                long[] l = f.get();
+                int offset = all.length;
+                all = Arrays.copyOf(all, offset + l.length);
+                System.arraycopy(l, 0, all, offset, l.length);
+            }
+            Arrays.sort(all);
+            System.out.printf("[benchmark] %,d presc/s: p50 %.3f ms, p99 %.3f ms, max %.3f ms (%,d envíos)%n",
+                    perSecond, all[all.length / 2] / 1e6, all[(int) (all.length * 0.99)] / 1e6,
+                    all[all.length - 1] / 1e6, all.length);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
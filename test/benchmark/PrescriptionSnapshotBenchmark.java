@@ -0,0 +1,73 @@
+package benchmark;
+
+import consultamedica.MedicalPrescription;
+import consultamedica.PrescriptionSnapshot;
+import data.HealthCardID;
+import data.ProductID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Lectura de una prescripción mientras se edita: snapshot() frente a la copia de getLines(),
+ * y coste de una edición (cambio de dosis) y de una búsqueda sobre el mapa persistente.
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("PrescriptionSnapshot Benchmark")
+public class PrescriptionSnapshotBenchmark {
+
+    private static final int OPERATIONS = 200_000;
+    private static final int RUNS = 8;
+    private static final String[] GUIDELINES = {"AFTERMEALS", "30", "1", "8", "HOUR", "", ""};
+
+    @ParameterizedTest(name = "{0} líneas")
+    @ValueSource(ints = {30, 1_000})
+    @DisplayName("snapshot, getLines copy, edit and lookup")
+    void benchmarkSnapshots(int lineCount) throws Exception {
+        MedicalPrescription presc = new MedicalPrescription(new HealthCardID("1234567890ABCDEF"), 1, "Protocolo");
+        ProductID[] products = new ProductID[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            products[i] = new ProductID(String.format("%012d", 5_000 + i));
+            presc.addLine(products[i], GUIDELINES);
+        }
+
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        long checksum = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                PrescriptionSnapshot snapshot = presc.snapshot();
+                checksum += snapshot.getLineCount();
+            }
+            best[0] = Math.min(best[0], System.nanoTime() - start);
+
+            int copies = OPERATIONS / lineCount;
+            start = System.nanoTime();
+            for (int i = 0; i < copies; i++) {
+                Map<ProductID, ?> lines = presc.getLines();
+                checksum += lines.size();
+            }
+            best[1] = Math.min(best[1], (System.nanoTime() - start) * (OPERATIONS / copies));
+
+            start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                presc.modifyDoseInLine(products[i % lineCount], 1 + (i & 3));
+            }
+            best[2] = Math.min(best[2], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                checksum += presc.containsProduct(products[i % lineCount]) ? 1 : 0;
+            }
+            best[3] = Math.min(best[3], System.nanoTime() - start);
+        }
+
+        System.out.printf("[benchmark] %,d líneas: snapshot %.0f ns, copia getLines %.0f ns, cambio de dosis %.0f ns, búsqueda %.0f ns%n",
+                lineCount, best[0] / (double) OPERATIONS, best[1] / (double) OPERATIONS,
+                best[2] / (double) OPERATIONS, best[3] / (double) OPERATIONS);
+        assertTrue(checksum > 0);
+    }
+}
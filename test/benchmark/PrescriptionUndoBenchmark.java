@@ -0,0 +1,92 @@
+package benchmark;
+
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+import data.ProductID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sesión de edición larga (cientos de cambios de dosis sobre una prescripción de 200 líneas):
+ * coste de deshacer y rehacer todo el historial y memoria retenida por edición.
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("Prescription Undo Benchmark")
+public class PrescriptionUndoBenchmark {
+
+    private static final int LINES = 200;
+    private static final int EDITS = 500;
+    private static final int SESSIONS = 200;
+    private static final String[] GUIDELINES = {"AFTERMEALS", "30", "1", "8", "HOUR", "", ""};
+
+    @Test
+    @DisplayName("undo and redo over a long edit history")
+    void benchmarkUndoRedo() throws Exception {
+        HealthCardID cip = new HealthCardID("1234567890ABCDEF");
+        ProductID[] products = new ProductID[LINES];
+        for (int i = 0; i < LINES; i++) {
+            products[i] = new ProductID(String.format("%012d", 7_000 + i));
+        }
+
+        // Memoria retenida: prescripciones con y sin historial de EDITS cambios
+        Runtime rt = Runtime.getRuntime();
+        MedicalPrescription[] plain = new MedicalPrescription[SESSIONS];
+        long base = usedMemory(rt);
+        for (int s = 0; s < SESSIONS; s++) {
+            plain[s] = session(cip, products, 0);
+        }
+        long plainBytes = usedMemory(rt) - base;
+        MedicalPrescription[] edited = new MedicalPrescription[SESSIONS];
+        base = usedMemory(rt);
+        for (int s = 0; s < SESSIONS; s++) {
+            edited[s] = session(cip, products, EDITS);
+        }
+        long editedBytes = usedMemory(rt) - base;
+
+        long bestUndo = Long.MAX_VALUE;
+        long bestRedo = Long.MAX_VALUE;
+        for (MedicalPrescription presc : edited) {
+            long start = System.nanoTime();
+            int undone = 0;
+            while (presc.undo()) {
+                undone++;
+            }
+            bestUndo = Math.min(bestUndo, (System.nanoTime() - start) / undone);
+            assertEquals(0, presc.getLineCount());
+
+            start = System.nanoTime();
+            int redone = 0;
+            while (presc.redo()) {
+                redone++;
+            }
+            bestRedo = Math.min(bestRedo, (System.nanoTime() - start) / redone);
+            assertEquals(LINES, presc.getLineCount());
+        }
+
+        System.out.printf("[benchmark] %d líneas, %d ediciones: deshacer %d ns/edición, rehacer %d ns/edición, %.0f bytes retenidos/edición%n",
+                LINES, EDITS, bestUndo, bestRedo,
+                (editedBytes - plainBytes) / (double) SESSIONS / EDITS);
+        assertEquals(SESSIONS, plain.length);
+    }
+
+    private static MedicalPrescription session(HealthCardID cip, ProductID[] products, int edits) throws Exception {
+        MedicalPrescription presc = new MedicalPrescription(cip, 1, "Protocolo");
+        for (ProductID product : products) {
+            presc.addLine(product, GUIDELINES);
+        }
+        for (int i = 0; i < edits; i++) {
+            presc.modifyDoseInLine(products[(i * 7) % products.length], 1 + (i % 4));
+        }
+        return presc;
+    }
+
+    private static long usedMemory(Runtime rt) throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
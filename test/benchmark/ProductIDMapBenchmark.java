@@ -0,0 +1,110 @@
+package benchmark;
+
+import consultamedica.MedicalPrescription;
+import data.HealthCardID;
+import data.ProductID;
+import data.ProductIDMap;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Búsquedas por ProductID en un HashMap (hash del String del código) frente a ProductIDMap
+ * (código empaquetado en un long), y el ciclo addLine / modifyDoseInLine / removeLine de
+ * una prescripción.
+ * Se ejecuta con el perfil "benchmark": mvn test -Pbenchmark
+ */
+@DisplayName("ProductIDMap Benchmark")
+public class ProductIDMapBenchmark {
+
+    private static final int LOOKUPS = 5_000_000;
+    private static final String[] GUIDELINES = {"BEFORELUNCH", "15", "1", "1", "DAY", "Con agua", ""};
+
+    @ParameterizedTest(name = "{0} productos")
+    @ValueSource(ints = {8, 1_000, 100_000})
+    @DisplayName("Lookups by product against a HashMap")
+    void benchmarkLookups(int products) throws Exception {
+        Random random = new Random(42);
+        ProductID[] ids = new ProductID[products];
+        ProductID[] probes = new ProductID[products];
+        for (int i = 0; i < products; i++) {
+            String code = String.format("%012d", random.nextLong() & 0xFFFFFFFFFL);
+            ids[i] = new ProductID(code);
+            probes[i] = new ProductID(code); // mismo código, otro objeto (como al leer de la interfaz)
+        }
+        Map<ProductID, Integer> hashMap = new HashMap<>();
+        ProductIDMap<Integer> packedMap = new ProductIDMap<>();
+        for (int i = 0; i < products; i++) {
+            hashMap.put(ids[i], i);
+            packedMap.put(ids[i], i);
+        }
+
+        long hashSum = 0;
+        long packedSum = 0;
+        for (int warm = 0; warm < 2; warm++) {
+            hashSum = 0;
+            packedSum = 0;
+            for (int i = 0; i < LOOKUPS / 10; i++) {
+                hashSum += hashMap.get(probes[i % products]);
+                packedSum += packedMap.get(probes[i % products]);
+            }
+        }
+
+        long start = System.nanoTime();
+        hashSum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            hashSum += hashMap.get(probes[i % products]);
+        }
+        long hashNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        packedSum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            packedSum += packedMap.get(probes[i % products]);
+        }
+        long packedNanos = System.nanoTime() - start;
+
+        System.out.printf("[benchmark] %,d productos: HashMap %.1f ns/búsqueda, ProductIDMap %.1f ns/búsqueda%n",
+                products, (double) hashNanos / LOOKUPS, (double) packedNanos / LOOKUPS);
+        assertEquals(hashSum, packedSum);
+    }
+
+    @ParameterizedTest(name = "{0} líneas")
+    @ValueSource(ints = {5, 50})
+    @DisplayName("addLine, modifyDoseInLine and removeLine on a prescription")
+    void benchmarkPrescriptionLines(int lines) throws Exception {
+        HealthCardID cip = new HealthCardID("1234567890ABCDEF");
+        ProductID[] ids = new ProductID[lines];
+        for (int i = 0; i < lines; i++) {
+            ids[i] = new ProductID(String.format("%012d", 100_000 + i));
+        }
+        int rounds = 200_000 / lines;
+
+        long elapsed = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                MedicalPrescription presc = new MedicalPrescription(cip, 100, "Hipertensión");
+                for (ProductID id : ids) {
+                    presc.addLine(id, GUIDELINES);
+                }
+                for (ProductID id : ids) {
+                    presc.modifyDoseInLine(id, 2);
+                }
+                for (ProductID id : ids) {
+                    presc.removeLine(id);
+                }
+                assertEquals(0, presc.getLineCount());
+            }
+            elapsed = Math.min(elapsed, System.nanoTime() - start);
+        }
+
+        System.out.printf("[benchmark] %d líneas: %.0f ns por línea (alta, cambio de dosis y baja)%n",
+                lines, (double) elapsed / ((long) rounds * lines));
+    }
+}
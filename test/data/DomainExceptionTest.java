@@ -0,0 +1,81 @@
+package data;
+
+import consultamedica.IncorrectPrescriptionLinesException;
+import consultamedica.IncorrectTakingGuidelinesException;
+import consultamedica.MedicalPrescription;
+import consultamedica.ProductNotInPrescriptionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("DomainException Tests")
+public class DomainExceptionTest {
+
+    @AfterEach
+    void restoreStackTraces() {
+        DomainException.setStackTracesEnabled(true);
+    }
+
+    @Test
+    @DisplayName("Stack traces are captured by default")
+    void testStackTracesByDefault() {
+        InvalidProductIDException e = assertThrows(InvalidProductIDException.class, () -> new ProductID("12"));
+        assertTrue(e.getStackTrace().length > 0);
+        assertEquals(DomainErrorCode.INVALID_PRODUCT_ID, e.getErrorCode());
+        assertNotSame(e, assertThrows(InvalidProductIDException.class, () -> new ProductID("12")));
+    }
+
+    @Test
+    @DisplayName("Without stack traces, fixed-message exceptions are shared and carry no trace")
+    void testStacklessSharedExceptions() {
+        DomainException.setStackTracesEnabled(false);
+
+        InvalidHealthCardIDException first = assertThrows(InvalidHealthCardIDException.class,
+                () -> new HealthCardID("corto"));
+        InvalidHealthCardIDException second = assertThrows(InvalidHealthCardIDException.class,
+                () -> new HealthCardID("otro"));
+        assertSame(first, second);
+        assertEquals(0, first.getStackTrace().length);
+        assertEquals("El código debe tener 16 caracteres", first.getMessage());
+
+        // Una instancia compartida no acumula estado de quien la captura
+        first.addSuppressed(new RuntimeException());
+        assertEquals(0, first.getSuppressed().length);
+        assertThrows(IllegalStateException.class, () -> first.initCause(new RuntimeException()));
+    }
+
+    @Test
+    @DisplayName("Non-shared exceptions still accept initCause in both modes")
+    void testInitCauseStillWorks() {
+        RuntimeException cause = new RuntimeException("causa");
+        assertSame(cause, new InvalidProductIDException("x").initCause(cause).getCause());
+
+        DomainException.setStackTracesEnabled(false);
+        InvalidProductIDException stackless = new InvalidProductIDException("x");
+        assertEquals(0, stackless.getStackTrace().length);
+        assertSame(cause, stackless.initCause(cause).getCause());
+        stackless.addSuppressed(cause);
+        assertEquals(1, stackless.getSuppressed().length);
+    }
+
+    @Test
+    @DisplayName("Without stack traces, exceptions with variable messages are new but stackless")
+    void testStacklessPrescriptionExceptions() throws Exception {
+        DomainException.setStackTracesEnabled(false);
+        MedicalPrescription presc = new MedicalPrescription(new HealthCardID("1234567890ABCDEF"), 1, "Asma");
+        ProductID product = new ProductID("123456789012");
+
+        ProductNotInPrescriptionException notIn = assertThrows(ProductNotInPrescriptionException.class,
+                () -> presc.removeLine(product));
+        assertEquals(0, notIn.getStackTrace().length);
+        assertEquals(DomainErrorCode.PRODUCT_NOT_IN_PRESCRIPTION, notIn.getErrorCode());
+
+        IncorrectTakingGuidelinesException lines = assertThrows(IncorrectTakingGuidelinesException.class,
+                () -> presc.addLines(new ProductID[]{product}, new String[][]{{"X", "1", "1", "1", "DAY", "", ""}}));
+        assertInstanceOf(IncorrectPrescriptionLinesException.class, lines);
+        assertEquals(DomainErrorCode.INCORRECT_PRESCRIPTION_LINES, lines.getErrorCode());
+        assertEquals(0, lines.getStackTrace().length);
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import services.HealthCardIDException;
 
+import java.util.BitSet;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class HealthCardIDTest {
@@ -54,4 +55,36 @@ public class HealthCardIDTest {
         HealthCardID id2 = new HealthCardID("1234567890ABCDEF");
         assertEquals(id1.hashCode(), id2.hashCode());
     }
+
+    @Test
+    @DisplayName("Validation agrees with the original regex, including non-ASCII letters")
+    void testValidationMatchesRegex() {
+        String[] codes = {"1234567890ABCDEF", "1234567890abcdeF", "1234567890ABCDE-", "1234567890ABCDEÑ",
+                "1234567890ABCDE", "1234567890ABCDE٣", "", "1234567890ABCDEFG"};
+        for (String code : codes) {
+            assertEquals(code.matches("[a-zA-Z0-9]{16}"), HealthCardID.isValid(code), code);
+        }
+        assertThrows(InvalidHealthCardIDException.class, () -> new HealthCardID("1234567890ABCDEÑ"));
+    }
+
+    @Test
+    @DisplayName("validateAll marks the valid codes of a batch")
+    void testValidateAll() {
+        BitSet valid = HealthCardID.validateAll(
+                new CharSequence[]{"1234567890ABCDEF", null, "short", new StringBuilder("FEDCBA0987654321")});
+
+        assertEquals("{0, 3}", valid.toString());
+        assertThrows(IllegalArgumentException.class, () -> HealthCardID.validateAll(null));
+    }
+
+    @Test
+    @DisplayName("of returns the shared instance and validates like the constructor")
+    void testOfInterns() throws InvalidHealthCardIDException {
+        HealthCardID first = HealthCardID.of("1234567890ABCDEF");
+
+        assertSame(first, HealthCardID.of(new String("1234567890ABCDEF")));
+        assertEquals(new HealthCardID("1234567890ABCDEF"), first);
+        assertThrows(InvalidHealthCardIDException.class, () -> HealthCardID.of(null));
+        assertThrows(InvalidHealthCardIDException.class, () -> HealthCardID.of("1234567890ABCDE-"));
+    }
 }
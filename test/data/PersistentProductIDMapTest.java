@@ -0,0 +1,93 @@
+package data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("PersistentProductIDMap Tests")
+public class PersistentProductIDMapTest {
+
+    @Test
+    @DisplayName("plus and minus return new versions and leave the previous one unchanged")
+    void testVersionsAreIndependent() throws InvalidProductIDException {
+        ProductID aspirin = new ProductID("123456789012");
+        ProductID ibuprofen = new ProductID("210987654321");
+        PersistentProductIDMap<String> empty = PersistentProductIDMap.empty();
+
+        PersistentProductIDMap<String> v1 = empty.plus(aspirin, "aspirina");
+        PersistentProductIDMap<String> v2 = v1.plus(ibuprofen, "ibuprofeno");
+        PersistentProductIDMap<String> v3 = v2.plus(aspirin, "aspirina 500").minus(ibuprofen);
+
+        assertTrue(empty.isEmpty());
+        assertEquals("aspirina", v1.get(aspirin));
+        assertNull(v1.get(ibuprofen));
+        assertEquals(2, v2.size());
+        assertEquals("aspirina", v2.get(new ProductID("123456789012")));
+        assertEquals("aspirina 500", v3.get(aspirin.getPackedCode()));
+        assertFalse(v3.containsKey(ibuprofen));
+        assertEquals(List.of(aspirin), v3.keys());
+    }
+
+    @Test
+    @DisplayName("Operations that change nothing return the same version")
+    void testNoOpReturnsSameVersion() throws InvalidProductIDException {
+        ProductID aspirin = new ProductID("123456789012");
+        String value = "aspirina";
+        PersistentProductIDMap<String> map = PersistentProductIDMap.<String>empty().plus(aspirin, value);
+
+        assertSame(map, map.plus(aspirin, value));
+        assertSame(map, map.minus(new ProductID("000000000001")));
+        assertThrows(IllegalArgumentException.class, () -> map.plus(aspirin, null));
+        assertThrows(IllegalArgumentException.class, () -> map.plus(null, value));
+    }
+
+    @Test
+    @DisplayName("Random operations match a HashMap and every old version stays intact")
+    void testRandomOperationsMatchHashMap() throws InvalidProductIDException {
+        Random random = new Random(11);
+        PersistentProductIDMap<Integer> map = PersistentProductIDMap.empty();
+        Map<ProductID, Integer> expected = new HashMap<>();
+        List<PersistentProductIDMap<Integer>> versions = new ArrayList<>();
+        List<Map<ProductID, Integer>> expectedVersions = new ArrayList<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            // Pocos códigos distintos para que haya sustituciones y borrados
+            ProductID id = ProductID.fromPackedCode(random.nextInt(3_000));
+            if (random.nextInt(3) == 0) {
+                map = map.minus(id);
+                expected.remove(id);
+            } else {
+                map = map.plus(id, i);
+                expected.put(id, i);
+            }
+            if (i % 1_000 == 0) {
+                versions.add(map);
+                expectedVersions.add(new HashMap<>(expected));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (int code = 0; code < 3_000; code++) {
+            assertEquals(expected.get(ProductID.fromPackedCode(code)), map.get(code));
+        }
+        for (int v = 0; v < versions.size(); v++) {
+            Map<ProductID, Integer> snapshot = new HashMap<>();
+            versions.get(v).forEach(snapshot::put);
+            assertEquals(expectedVersions.get(v), snapshot);
+            assertEquals(expectedVersions.get(v).size(), versions.get(v).size());
+        }
+
+        // Vaciar por completo
+        for (ProductID id : map.keys()) {
+            map = map.minus(id);
+        }
+        assertTrue(map.isEmpty());
+        assertTrue(map.values().isEmpty());
+    }
+}
@@ -0,0 +1,79 @@
+package data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ProductIDMap Tests")
+public class ProductIDMapTest {
+
+    private ProductIDMap<String> map;
+    private ProductID aspirin;
+    private ProductID ibuprofen;
+
+    @BeforeEach
+    void setUp() throws InvalidProductIDException {
+        map = new ProductIDMap<>();
+        aspirin = new ProductID("123456789012");
+        ibuprofen = new ProductID("210987654321");
+    }
+
+    @Test
+    @DisplayName("put, get and remove by product")
+    void testBasicOperations() throws InvalidProductIDException {
+        assertNull(map.put(aspirin, "aspirina"));
+        assertEquals("aspirina", map.put(aspirin, "aspirina 500"));
+        map.put(ibuprofen, "ibuprofeno");
+
+        assertEquals(2, map.size());
+        assertEquals("aspirina 500", map.get(new ProductID("123456789012")));
+        assertEquals("ibuprofeno", map.get(ibuprofen.getPackedCode()));
+        assertEquals("ibuprofeno", map.remove(ibuprofen));
+        assertNull(map.remove(ibuprofen));
+        assertFalse(map.containsKey(ibuprofen));
+        assertEquals(List.of(aspirin), map.keys());
+    }
+
+    @Test
+    @DisplayName("Random operations behave like a HashMap across resizes and removals")
+    void testAgainstHashMap() throws InvalidProductIDException {
+        Map<ProductID, Integer> expected = new HashMap<>();
+        ProductIDMap<Integer> actual = new ProductIDMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            // Códigos consecutivos y pocos distintos para forzar colisiones y borrados en grupo
+            ProductID id = ProductID.fromPackedCode(1_000_000L + random.nextInt(300));
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(id), actual.remove(id));
+            } else {
+                assertEquals(expected.put(id, i), actual.put(id, i));
+            }
+            assertEquals(expected.size(), actual.size());
+        }
+        for (Map.Entry<ProductID, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue(), actual.get(e.getKey()));
+        }
+        Map<ProductID, Integer> copied = new HashMap<>();
+        new ProductIDMap<>(actual).forEach(copied::put);
+        assertEquals(expected, copied);
+    }
+
+    @Test
+    @DisplayName("clear, capacity and null keys")
+    void testClearAndInvalidArguments() {
+        map.ensureCapacity(1_000);
+        map.put(aspirin, "aspirina");
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get(aspirin));
+        assertThrows(IllegalArgumentException.class, () -> map.put(null, "x"));
+        assertThrows(IllegalArgumentException.class, () -> new ProductIDMap<>(-1));
+    }
+}
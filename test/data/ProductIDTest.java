@@ -67,4 +67,37 @@ public class ProductIDTest {
         ProductID id2 = new ProductID("123456789012");
         assertEquals(id1.hashCode(), id2.hashCode());
     }
+
+    @Test
+    @DisplayName("The packed code round-trips with leading zeros")
+    void testPackedCode() throws InvalidProductIDException {
+        ProductID pid = new ProductID("000000012345");
+
+        assertEquals(12345L, pid.getPackedCode());
+        assertEquals(pid, ProductID.fromPackedCode(12345L));
+        assertEquals("000000012345", ProductID.fromPackedCode(12345L).getCode());
+        assertEquals(ProductID.MAX_PACKED_CODE, new ProductID("999999999999").getPackedCode());
+        assertThrows(InvalidProductIDException.class, () -> ProductID.fromPackedCode(-1));
+        assertThrows(InvalidProductIDException.class,
+                () -> ProductID.fromPackedCode(ProductID.MAX_PACKED_CODE + 1));
+        assertThrows(InvalidProductIDException.class, () -> new ProductID("12345678901٣"));
+    }
+
+    @Test
+    @DisplayName("validateAll marks the valid codes of a batch")
+    void testValidateAll() {
+        assertEquals("{0, 3}", ProductID.validateAll(
+                new CharSequence[]{"123456789012", "12345678901A", null, "000000000000"}).toString());
+        assertFalse(ProductID.isValid("1234567890123"));
+    }
+
+    @Test
+    @DisplayName("of returns the shared instance and validates like the constructor")
+    void testOfInterns() throws InvalidProductIDException {
+        ProductID first = ProductID.of("123456789012");
+
+        assertSame(first, ProductID.of(new String("123456789012")));
+        assertNotSame(first, ProductID.of("210987654321"));
+        assertThrows(InvalidProductIDException.class, () -> ProductID.of("12345"));
+    }
 }
@@ -0,0 +1,55 @@
+package data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("WeakInterner Tests")
+public class WeakInternerTest {
+
+    @Test
+    @DisplayName("Concurrent callers get a single canonical instance per code")
+    void testConcurrentIntern() throws Exception {
+        WeakInterner<Object> pool = new WeakInterner<>();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(() -> pool.intern("codigo", new Object())));
+            }
+            Object canonical = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<Object> f : results) {
+                assertSame(canonical, f.get(10, TimeUnit.SECONDS));
+            }
+            assertSame(canonical, pool.get("codigo"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Instances nobody uses are released and purged")
+    void testUnusedInstancesAreReleased() throws Exception {
+        WeakInterner<Object> pool = new WeakInterner<>();
+        Object kept = pool.intern("usado", new Object());
+        for (int i = 0; i < 1_000; i++) {
+            pool.intern("temporal" + i, new Object());
+        }
+
+        for (int attempt = 0; attempt < 50 && pool.size() > 1; attempt++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        assertEquals(1, pool.size());
+        assertSame(kept, pool.get("usado"));
+        assertNull(pool.get("temporal0"));
+    }
+}
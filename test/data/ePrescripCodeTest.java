@@ -70,4 +70,16 @@ public class ePrescripCodeTest {
         ePrescripCode epc2 = new ePrescripCode("PRESC123456");
         assertEquals(epc1.hashCode(), epc2.hashCode());
     }
+
+    @Test
+    @DisplayName("Validation agrees with the original regex")
+    void testValidationMatchesRegex() {
+        String[] codes = {"PRESC-2024-01", "PRESC123", "PRESC12", "A".repeat(20), "A".repeat(21),
+                "PRESC_123456", "PRESC 123456", "PRESCÁ23456", "--------"};
+        for (String code : codes) {
+            assertEquals(code.matches("[a-zA-Z0-9-]{8,20}"), ePrescripCode.isValid(code), code);
+        }
+        assertEquals("{0, 2}", ePrescripCode.validateAll(
+                new CharSequence[]{"PRESC-2024-01", "PRESC_1", "SNS-00000001"}).toString());
+    }
 }
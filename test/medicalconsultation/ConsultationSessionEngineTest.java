@@ -0,0 +1,325 @@
+package medicalconsultation;
+
+import consultamedica.ConsultationSessionEngine;
+import consultamedica.MedicalPrescription;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import data.*;
+import services.PrescriptionBatcher;
+import services.PrescriptionSubmission;
+import services.SubmissionResult;
+import services.doubles.*;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ConsultationSessionEngine Tests")
+public class ConsultationSessionEngineTest {
+
+    private ConsultationSessionEngine engine;
+    private HealthCardID validCIP;
+    private ProductID medicine1;
+    private String[] validGuidelines;
+    private Date futureDate;
+
+    @BeforeEach
+    void setUp() throws InvalidProductIDException, InvalidHealthCardIDException {
+        engine = new ConsultationSessionEngine(
+                new HealthNationalServiceStub(), new DecisionMakingAIStub(), 4);
+
+        validCIP = new HealthCardID("1234567890ABCDEF");
+        medicine1 = new ProductID("123456789012");
+        validGuidelines = new String[]{
+                "BEFORELUNCH", "15", "1", "1", "DAY", "Con agua", ""
+        };
+        futureDate = new Date(System.currentTimeMillis() +
+                (long) 15 * 24 * 60 * 60 * 1000);
+    }
+
+    @Nested
+    @DisplayName("Session Management")
+    class SessionManagementTests {
+
+        @Test
+        @DisplayName("openSession registers a new session and closeSession removes it")
+        void testOpenAndCloseSession() {
+            String id = engine.openSession();
+
+            assertTrue(engine.hasSession(id));
+            assertEquals(1, engine.getSessionCount());
+
+            assertTrue(engine.closeSession(id));
+            assertFalse(engine.hasSession(id));
+            assertEquals(0, engine.getSessionCount());
+            assertFalse(engine.closeSession(id));
+        }
+
+        @Test
+        @DisplayName("openSession rejects a duplicated session id")
+        void testDuplicatedSessionId() {
+            engine.openSession("consulta-1");
+
+            assertThrows(IllegalArgumentException.class, () -> {
+                engine.openSession("consulta-1");
+            });
+        }
+
+        @Test
+        @DisplayName("Shard count is rounded up to a power of two")
+        void testShardCountRounding() {
+            ConsultationSessionEngine e = new ConsultationSessionEngine(
+                    new HealthNationalServiceStub(), new DecisionMakingAIStub(), 5);
+            assertEquals(8, e.getShardCount());
+        }
+
+        @Test
+        @DisplayName("Events on an unknown session throw ProceduralException")
+        void testUnknownSession() {
+            // ProceduralException no es pública: se reconoce por su código de error
+            DomainException e = assertThrows(DomainException.class, () -> {
+                engine.initRevision("no-existe", validCIP, "Hipertensión");
+            });
+            assertEquals("ProceduralException", e.getClass().getSimpleName());
+            assertEquals(DomainErrorCode.PROCEDURE_ORDER, e.getErrorCode());
+        }
+    }
+
+    @Nested
+    @DisplayName("Per-session Flow")
+    class PerSessionFlowTests {
+
+        @Test
+        @DisplayName("Complete workflow runs inside a session")
+        void testCompleteFlowInSession() {
+            String id = engine.openSession();
+
+            assertDoesNotThrow(() -> {
+                engine.initRevision(id, validCIP, "Hipertensión");
+                engine.enterMedicalAssessmentInHistory(id, "Paciente mejora");
+                engine.initMedicalPrescriptionEdition(id);
+                engine.enterMedicineWithGuidelines(id, medicine1, validGuidelines);
+                engine.modifyDoseInLine(id, medicine1, 2.0f);
+                engine.enterTreatmentEndingDate(id, futureDate);
+                engine.finishMedicalPrescriptionEdition(id);
+                engine.stampeeSignature(id);
+
+                MedicalPrescription result = engine.sendHistoryAndPrescription(id);
+                assertNotNull(result.getPrescCode());
+            });
+        }
+
+        @Test
+        @DisplayName("Sessions keep isolated state")
+        void testSessionsAreIsolated() {
+            String first = engine.openSession();
+            String second = engine.openSession();
+
+            assertDoesNotThrow(() -> {
+                engine.initRevision(first, validCIP, "Hipertensión");
+                engine.initMedicalPrescriptionEdition(first);
+                engine.enterMedicineWithGuidelines(first, medicine1, validGuidelines);
+
+                engine.initRevision(second, validCIP, "Diabetes");
+
+                assertEquals(1, engine.getCurrentPrescription(first).getLineCount());
+                assertEquals(0, engine.getCurrentPrescription(second).getLineCount());
+            });
+
+            // La segunda sesión no ha iniciado la edición
+            assertThrows(Exception.class, () -> {
+                engine.enterMedicineWithGuidelines(second, medicine1, validGuidelines);
+            });
+        }
+
+        @Test
+        @DisplayName("Undo and redo apply to the edits of their own session")
+        void testUndoRedoPerSession() throws Exception {
+            String first = engine.openSession();
+            String second = engine.openSession();
+            for (String id : new String[]{first, second}) {
+                engine.initRevision(id, validCIP, "Hipertensión");
+                engine.initMedicalPrescriptionEdition(id);
+                engine.enterMedicineWithGuidelines(id, medicine1, validGuidelines);
+            }
+
+            assertTrue(engine.undoPrescriptionEdit(first));
+            assertEquals(0, engine.getCurrentPrescription(first).getLineCount());
+            assertEquals(1, engine.getCurrentPrescription(second).getLineCount());
+            assertFalse(engine.redoPrescriptionEdit(second));
+            assertTrue(engine.redoPrescriptionEdit(first));
+            assertEquals(1, engine.getCurrentPrescription(first).getLineCount());
+        }
+
+        @Test
+        @DisplayName("Several medicines can be entered at once in a session")
+        void testEnterMedicinesWithGuidelines() throws Exception {
+            String id = engine.openSession();
+            engine.initRevision(id, validCIP, "Hipertensión");
+            engine.initMedicalPrescriptionEdition(id);
+
+            engine.enterMedicinesWithGuidelines(id,
+                    new ProductID[]{medicine1, new ProductID("210987654321")},
+                    new String[][]{validGuidelines, validGuidelines});
+
+            assertEquals(2, engine.getCurrentPrescription(id).getLineCount());
+        }
+
+        @Test
+        @DisplayName("Concurrent sessions complete their flows independently")
+        void testConcurrentSessions() throws Exception {
+            int sessions = 200;
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<MedicalPrescription>> results = new ArrayList<>();
+                for (int i = 0; i < sessions; i++) {
+                    String id = engine.openSession();
+                    results.add(pool.submit(() -> {
+                        engine.initRevision(id, validCIP, "Hipertensión");
+                        engine.initMedicalPrescriptionEdition(id);
+                        engine.enterMedicineWithGuidelines(id, medicine1, validGuidelines);
+                        engine.enterTreatmentEndingDate(id, futureDate);
+                        engine.finishMedicalPrescriptionEdition(id);
+                        engine.stampeeSignature(id);
+                        return engine.sendHistoryAndPrescription(id);
+                    }));
+                }
+                for (Future<MedicalPrescription> result : results) {
+                    assertEquals(1, result.get(10, TimeUnit.SECONDS).getLineCount());
+                }
+                assertEquals(sessions, engine.getSessionCount());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Batched Submission")
+    class BatchedSubmissionTests {
+
+        @Test
+        @DisplayName("Signed sessions are submitted together in one batch")
+        void testSubmitSessionsInBatch() throws Exception {
+            HealthNationalServiceMock hnsMock = new HealthNationalServiceMock();
+            ConsultationSessionEngine batched = new ConsultationSessionEngine(
+                    hnsMock, new DecisionMakingAIStub(), 4);
+            try (PrescriptionBatcher batcher = new PrescriptionBatcher(hnsMock, 64, Duration.ofMillis(100))) {
+                batched.setPrescriptionBatcher(batcher);
+
+                List<String> ids = new ArrayList<>();
+                for (int i = 0; i < 5; i++) {
+                    String id = batched.openSession();
+                    batched.initRevision(id, validCIP, "Hipertensión");
+                    batched.initMedicalPrescriptionEdition(id);
+                    batched.enterMedicineWithGuidelines(id, medicine1, validGuidelines);
+                    batched.enterTreatmentEndingDate(id, futureDate);
+                    batched.finishMedicalPrescriptionEdition(id);
+                    batched.stampeeSignature(id);
+                    ids.add(id);
+                }
+
+                List<CompletableFuture<MedicalPrescription>> results = new ArrayList<>();
+                for (String id : ids) {
+                    results.add(batched.submitHistoryAndPrescription(id));
+                }
+                for (int i = 0; i < ids.size(); i++) {
+                    MedicalPrescription registered = results.get(i).get(5, TimeUnit.SECONDS);
+                    assertNotNull(registered.getPrescCode());
+                    assertSame(registered, batched.getCurrentPrescription(ids.get(i)));
+                }
+                assertEquals(1, hnsMock.getBatchCalls());
+            }
+        }
+
+        @Test
+        @DisplayName("A submission carries copies and only the sent annotations become the base")
+        void testSubmissionIsSnapshot() throws Exception {
+            try (PrescriptionBatcher batcher = new PrescriptionBatcher(
+                    new HealthNationalServiceStub(), 64, Duration.ofMillis(100))) {
+                engine.setPrescriptionBatcher(batcher);
+                String id = engine.openSession();
+                engine.initRevision(id, validCIP, "Hipertensión");
+                engine.enterMedicalAssessmentInHistory(id, "Tensión controlada");
+                engine.initMedicalPrescriptionEdition(id);
+                engine.enterMedicineWithGuidelines(id, medicine1, validGuidelines);
+                engine.enterTreatmentEndingDate(id, futureDate);
+                engine.finishMedicalPrescriptionEdition(id);
+                engine.stampeeSignature(id);
+                MedicalPrescription signed = engine.getCurrentPrescription(id);
+
+                CompletableFuture<MedicalPrescription> result = engine.submitHistoryAndPrescription(id);
+                engine.enterMedicalAssessmentInHistory(id, "Anotación durante el envío");
+                MedicalPrescription registered = result.get(5, TimeUnit.SECONDS);
+
+                assertNotSame(signed, registered);
+                assertNull(signed.getPrescCode());
+                int annotations = engine.getCurrentHistory(id).getAnnotationCount();
+                assertEquals(annotations - 1, engine.getCurrentHistory(id).getBaseAnnotationCount());
+            }
+        }
+
+        @Test
+        @DisplayName("A pending submission blocks resending and editing until it fails or completes")
+        void testPendingSubmissionIsNotResent() throws Exception {
+            AtomicInteger batchCalls = new AtomicInteger();
+            HealthNationalServiceStub sns = new HealthNationalServiceStub() {
+                @Override
+                public List<SubmissionResult> sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch)
+                        throws ConnectException {
+                    if (batchCalls.incrementAndGet() == 1) {
+                        throw new ConnectException("SNS no disponible");
+                    }
+                    return super.sendHistoriesAndPrescriptions(batch);
+                }
+            };
+            try (PrescriptionBatcher batcher = new PrescriptionBatcher(sns, 64, Duration.ofMillis(200))) {
+                engine.setPrescriptionBatcher(batcher);
+                String id = engine.openSession();
+                engine.initRevision(id, validCIP, "Hipertensión");
+                engine.initMedicalPrescriptionEdition(id);
+                engine.enterMedicineWithGuidelines(id, medicine1, validGuidelines);
+                engine.enterTreatmentEndingDate(id, futureDate);
+                engine.finishMedicalPrescriptionEdition(id);
+                engine.stampeeSignature(id);
+
+                CompletableFuture<MedicalPrescription> failed = engine.submitHistoryAndPrescription(id);
+                assertThrows(Exception.class, () -> engine.submitHistoryAndPrescription(id));
+                assertThrows(Exception.class, () -> engine.sendHistoryAndPrescription(id));
+                assertThrows(Exception.class, () -> engine.initMedicalPrescriptionEdition(id));
+                assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+
+                MedicalPrescription registered = engine.submitHistoryAndPrescription(id).get(5, TimeUnit.SECONDS);
+                assertNotNull(registered.getPrescCode());
+                assertEquals(2, batchCalls.get());
+            }
+        }
+
+        @Test
+        @DisplayName("Submitting requires the signature to be stamped")
+        void testSubmitRequiresSignature() throws Exception {
+            try (PrescriptionBatcher batcher = new PrescriptionBatcher(
+                    new HealthNationalServiceStub(), 8, Duration.ofMillis(10))) {
+                engine.setPrescriptionBatcher(batcher);
+                String id = engine.openSession();
+                engine.initRevision(id, validCIP, "Hipertensión");
+
+                assertThrows(Exception.class, () -> {
+                    engine.submitHistoryAndPrescription(id);
+                });
+            }
+        }
+    }
+}
@@ -1,16 +1,28 @@
 package medicalconsultation;
 
 import consultamedica.ConsultationTerminal;
+import consultamedica.IncorrectPrescriptionLinesException;
 import consultamedica.MedicalPrescription;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.io.TempDir;
 import data.*;
+import services.MedicalRecordCodec;
+import services.OutboxReceipt;
+import services.PrescriptionOutbox;
 import services.doubles.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Path;
 import java.util.Date;
 import java.net.ConnectException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import static org.junit.jupiter.api.Assertions.*;
 
 @DisplayName("ConsultationTerminal Tests")
@@ -89,6 +101,104 @@ public class ConsultationTerminalTest {
         }
     }
 
+    // ===================================================================
+    // ENVÍO DIFERIDO (BANDEJA DE SALIDA)
+    // ===================================================================
+
+    @Nested
+    @DisplayName("sendHistoryAndPrescription with Offline Outbox")
+    class OfflineOutboxTests {
+
+        @TempDir
+        Path outboxDir;
+
+        private void prepareSignedPrescription() throws Exception {
+            terminal.initRevision(validCIP, "Hipertensión");
+            terminal.initMedicalPrescriptionEdition();
+            terminal.enterMedicineWithGuidelines(medicine1, validGuidelines);
+            terminal.enterTreatmentEndingDate(futureDate);
+            terminal.finishMedicalPrescriptionEdition();
+            terminal.stampeeSignature();
+        }
+
+        @Test
+        @DisplayName("Signed prescription is kept in the outbox when SNS is unreachable")
+        void testSendIsDeferredWhenOffline() throws Exception {
+            terminal.setHealthNationalService(healthServiceMock);
+            try (PrescriptionOutbox outbox = new PrescriptionOutbox(outboxDir, healthServiceMock, 10)) {
+                terminal.setOutbox(outbox);
+                prepareSignedPrescription();
+                healthServiceMock.setThrowConnectException(true);
+
+                terminal.sendHistoryAndPrescription();
+
+                OutboxReceipt receipt = terminal.getLastOutboxReceipt();
+                assertNotNull(receipt);
+                assertFalse(receipt.isDelivered());
+
+                healthServiceMock.setThrowConnectException(false);
+                MedicalPrescription registered = receipt.getDelivery().get(5, TimeUnit.SECONDS);
+                assertNotNull(registered.getPrescCode());
+            }
+        }
+
+        @Test
+        @DisplayName("A submission kept in the outbox cannot be sent again")
+        void testQueuedSubmissionIsNotResent() throws Exception {
+            terminal.setHealthNationalService(healthServiceMock);
+            try (PrescriptionOutbox outbox = new PrescriptionOutbox(outboxDir, healthServiceMock, 10)) {
+                terminal.setOutbox(outbox);
+                prepareSignedPrescription();
+                healthServiceMock.setThrowConnectException(true);
+                terminal.sendHistoryAndPrescription();
+                OutboxReceipt receipt = terminal.getLastOutboxReceipt();
+
+                healthServiceMock.setThrowConnectException(false);
+                assertThrows(Exception.class, () -> terminal.sendHistoryAndPrescription());
+                receipt.getDelivery().get(5, TimeUnit.SECONDS);
+                assertEquals(1, outbox.getDeliveredCount());
+                assertEquals(0, outbox.getPendingCount());
+
+                // Una revisión nueva vuelve a permitir enviar
+                prepareSignedPrescription();
+                assertNull(terminal.getLastOutboxReceipt());
+                assertNotNull(terminal.sendHistoryAndPrescription().getPrescCode());
+            }
+        }
+
+        @Test
+        @DisplayName("A submission rejected by the outbox can be sent again")
+        void testRejectedQueuedSubmissionIsResent() throws Exception {
+            terminal.setHealthNationalService(healthServiceMock);
+            try (PrescriptionOutbox outbox = new PrescriptionOutbox(outboxDir, healthServiceMock, 10)) {
+                terminal.setOutbox(outbox);
+                prepareSignedPrescription();
+                healthServiceMock.setThrowConnectException(true);
+                terminal.sendHistoryAndPrescription();
+                OutboxReceipt receipt = terminal.getLastOutboxReceipt();
+
+                healthServiceMock.setThrowNotCompletedMedicalPrescription(true);
+                healthServiceMock.setThrowConnectException(false);
+                assertThrows(ExecutionException.class, () -> receipt.getDelivery().get(5, TimeUnit.SECONDS));
+
+                healthServiceMock.setThrowNotCompletedMedicalPrescription(false);
+                assertNotNull(terminal.sendHistoryAndPrescription().getPrescCode());
+                assertNull(terminal.getLastOutboxReceipt());
+            }
+        }
+
+        @Test
+        @DisplayName("Without outbox the ConnectException still reaches the caller")
+        void testSendFailsWithoutOutbox() throws Exception {
+            terminal.setHealthNationalService(healthServiceMock);
+            prepareSignedPrescription();
+            healthServiceMock.setThrowConnectException(true);
+
+            assertThrows(ConnectException.class, () -> terminal.sendHistoryAndPrescription());
+            assertNull(terminal.getLastOutboxReceipt());
+        }
+    }
+
     // ===================================================================
     // EXCEPCIONES EN initRevision
     // ===================================================================
@@ -131,6 +241,50 @@ public class ConsultationTerminalTest {
         }
     }
 
+    // ===================================================================
+    // DESCARGAS CONCURRENTES EN initRevision
+    // ===================================================================
+
+    @Nested
+    @DisplayName("initRevision Concurrent Downloads")
+    class InitRevisionConcurrencyTests {
+
+        @Test
+        @DisplayName("History and prescription are downloaded at the same time")
+        void testDownloadsOverlap() {
+            terminal.setHealthNationalService(healthServiceMock);
+            healthServiceMock.setLatencyMillis(300, 300);
+
+            long start = System.nanoTime();
+            assertDoesNotThrow(() -> {
+                terminal.initRevision(validCIP, "Hipertensión");
+            });
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            assertTrue(elapsedMillis < 550,
+                    "La revisión debería tardar ~max(a, b) y ha tardado " + elapsedMillis + " ms");
+            assertNotNull(terminal.getCurrentHistory());
+            assertNotNull(terminal.getCurrentPrescription());
+        }
+
+        @Test
+        @DisplayName("A failing download surfaces the original exception without waiting for the other")
+        void testFailureCancelsOtherDownload() {
+            terminal.setHealthNationalService(healthServiceMock);
+            healthServiceMock.setLatencyMillis(0, 2000);
+            healthServiceMock.setThrowConnectException(true);
+
+            long start = System.nanoTime();
+            assertThrows(ConnectException.class, () -> {
+                terminal.initRevision(validCIP, "Hipertensión");
+            });
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            assertTrue(elapsedMillis < 1000);
+            assertFalse(terminal.isRevisionInitiated());
+        }
+    }
+
     // ===================================================================
     // EXCEPCIONES EN enterMedicineWithGuidelines
     // ===================================================================
@@ -193,6 +347,104 @@ public class ConsultationTerminalTest {
         }
     }
 
+    // ===================================================================
+    // ALTA DE VARIOS MEDICAMENTOS
+    // ===================================================================
+
+    @Nested
+    @DisplayName("enterMedicinesWithGuidelines")
+    class AddMedicinesTests {
+
+        @Test
+        @DisplayName("enterMedicinesWithGuidelines requires prescription edition")
+        void testAddMedicinesRequiresEdition() {
+            terminal.setHealthNationalService(healthServiceStub);
+
+            assertThrows(Exception.class, () -> terminal.enterMedicinesWithGuidelines(
+                    new ProductID[]{medicine1}, new String[][]{validGuidelines}));
+        }
+
+        @Test
+        @DisplayName("enterMedicinesWithGuidelines adds all medicines or none")
+        void testAddMedicinesAtomically() throws Exception {
+            terminal.setHealthNationalService(healthServiceStub);
+            terminal.initRevision(validCIP, "Hipertensión");
+            terminal.initMedicalPrescriptionEdition();
+
+            String[] invalidGuidelines = {"BEFORELUNCH", "15", "1", "1", "FORTNIGHT", "", ""};
+            assertThrows(IncorrectPrescriptionLinesException.class, () -> terminal.enterMedicinesWithGuidelines(
+                    new ProductID[]{medicine1, medicine2}, new String[][]{validGuidelines, invalidGuidelines}));
+
+            terminal.enterMedicinesWithGuidelines(
+                    new ProductID[]{medicine1, medicine2}, new String[][]{validGuidelines, validGuidelines});
+            terminal.modifyDoseInLine(medicine2, 2f);
+        }
+    }
+
+    // ===================================================================
+    // DESHACER / REHACER
+    // ===================================================================
+
+    @Nested
+    @DisplayName("undo/redo of prescription edits")
+    class UndoRedoTests {
+
+        @Test
+        @DisplayName("undoPrescriptionEdit requires prescription edition")
+        void testUndoRequiresEdition() {
+            terminal.setHealthNationalService(healthServiceStub);
+
+            assertThrows(Exception.class, () -> terminal.undoPrescriptionEdit());
+            assertThrows(Exception.class, () -> terminal.redoPrescriptionEdit());
+        }
+
+        @Test
+        @DisplayName("undoPrescriptionEdit restores a removed medicine")
+        void testUndoRemovedMedicine() throws Exception {
+            terminal.setHealthNationalService(healthServiceStub);
+            terminal.initRevision(validCIP, "Hipertensión");
+            terminal.initMedicalPrescriptionEdition();
+            terminal.enterMedicineWithGuidelines(medicine1, validGuidelines);
+            terminal.removeLine(medicine1);
+
+            assertTrue(terminal.undoPrescriptionEdit());
+            terminal.modifyDoseInLine(medicine1, 2f);
+            assertTrue(terminal.undoPrescriptionEdit());
+            assertTrue(terminal.redoPrescriptionEdit());
+            assertFalse(terminal.redoPrescriptionEdit());
+        }
+
+        @Test
+        @DisplayName("Lines downloaded from the SNS cannot be undone")
+        void testDownloadedLinesAreNotUndone() throws Exception {
+            terminal.setHealthNationalService(new HealthNationalServiceStub() {
+                @Override
+                public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness) {
+                    try {
+                        MedicalPrescription presc = new MedicalPrescription(cip, 100, illness);
+                        presc.addLine(medicine1, validGuidelines);
+                        // Como la devuelve el cliente HTTP: decodificada línea a línea
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        MedicalRecordCodec.writePrescription(new DataOutputStream(bytes), presc);
+                        return MedicalRecordCodec.readPrescription(
+                                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            terminal.initRevision(validCIP, "Hipertensión");
+            terminal.initMedicalPrescriptionEdition();
+
+            assertFalse(terminal.undoPrescriptionEdit());
+            terminal.enterMedicineWithGuidelines(medicine2, validGuidelines);
+            assertTrue(terminal.undoPrescriptionEdit());
+            assertFalse(terminal.undoPrescriptionEdit());
+            assertTrue(terminal.getCurrentPrescription().containsProduct(medicine1));
+            assertFalse(terminal.getCurrentPrescription().containsProduct(medicine2));
+        }
+    }
+
     // ===================================================================
     // EXCEPCIONES EN modifyDoseInLine
     // ===================================================================
@@ -0,0 +1,83 @@
+package medicalconsultation;
+
+import consultamedica.FqUnit;
+import consultamedica.GuidelineParser;
+import consultamedica.IncorrectTakingGuidelinesException;
+import consultamedica.MedicalPrescription;
+import consultamedica.dayMoment;
+import data.HealthCardID;
+import data.ProductID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("GuidelineParser Tests")
+public class GuidelineParserTest {
+
+    @Test
+    @DisplayName("Day moments and frequency units are looked up by exact name, ignoring surrounding spaces")
+    void testEnumLookup() {
+        for (dayMoment m : dayMoment.values()) {
+            assertEquals(m, GuidelineParser.parseDayMoment(m.name()));
+        }
+        for (FqUnit u : FqUnit.values()) {
+            assertEquals(u, GuidelineParser.parseFqUnit(" " + u.name() + "\t"));
+        }
+        assertNull(GuidelineParser.parseDayMoment("beforelunch"));
+        assertNull(GuidelineParser.parseDayMoment("BEFORELUNCHX"));
+        assertNull(GuidelineParser.parseFqUnit(""));
+        assertNull(GuidelineParser.parseFqUnit(null));
+    }
+
+    @Test
+    @DisplayName("Numbers parse to the same float as Float.parseFloat")
+    void testFloatsMatchJdk() {
+        String[] inputs = {"15", " 0.5 ", "1.25", "-3", "+7", "0", ".5", "3.", "1e3", "2.5E-2",
+                "0.1", "0.3", "123456.789", "16777217", "3.4028235e38", "1e-45", "0.000001",
+                "123456789012345678901234567890", "1.00000005960464477539062500001"};
+        for (String input : inputs) {
+            assertEquals(Float.parseFloat(input.trim()), GuidelineParser.parseFloat(input), input);
+        }
+        Random random = new Random(5);
+        for (int i = 0; i < 10_000; i++) {
+            String input = random.nextInt(100_000) + "." + random.nextInt(1_000);
+            assertEquals(Float.parseFloat(input), GuidelineParser.parseFloat(input), input);
+        }
+    }
+
+    @Test
+    @DisplayName("Invalid numbers are reported as NaN without exceptions")
+    void testInvalidNumbers() {
+        for (String input : new String[]{"", " ", "abc", "1,5", "1.2.3", "1e", "e5", "-", ".", "NaN",
+                "Infinity", "1f", "0x10", "1 2"}) {
+            assertTrue(Float.isNaN(GuidelineParser.parseFloat(input)), input);
+        }
+        assertEquals(2.5f, GuidelineParser.parseFloat("x2.5x", 1, 4));
+    }
+
+    @Test
+    @DisplayName("addLine reports each invalid field with its own message")
+    void testAddLineErrors() throws Exception {
+        MedicalPrescription presc = new MedicalPrescription(new HealthCardID("1234567890ABCDEF"), 100, "Asma");
+        ProductID product = new ProductID("123456789012");
+
+        IncorrectTakingGuidelinesException e = assertThrows(IncorrectTakingGuidelinesException.class,
+                () -> presc.addLine(product, new String[]{"SOMETIMES", "15", "1", "1", "DAY", "", ""}));
+        assertTrue(e.getMessage().contains("SOMETIMES"));
+        e = assertThrows(IncorrectTakingGuidelinesException.class,
+                () -> presc.addLine(product, new String[]{"BEFORELUNCH", "quince", "1", "1", "DAY", "", ""}));
+        assertTrue(e.getMessage().contains("quince"));
+        e = assertThrows(IncorrectTakingGuidelinesException.class,
+                () -> presc.addLine(product, new String[]{"BEFORELUNCH", "15", "-1", "1", "DAY", "", ""}));
+        assertTrue(e.getMessage().startsWith("La dosis debe ser positiva"));
+        assertThrows(IncorrectTakingGuidelinesException.class,
+                () -> presc.addLine(product, new String[]{"BEFORELUNCH", "15", "1", null, "DAY", "", ""}));
+
+        presc.addLine(product, new String[]{" AFTERMEALS ", " 7.5 ", "2", "8", "HOUR", null, ""});
+        assertEquals(7.5f, presc.getLine(product).getGuidelines().getDuration());
+        assertEquals(dayMoment.AFTERMEALS, presc.getLine(product).getGuidelines().getdMoment());
+        assertEquals("", presc.getLine(product).getGuidelines().getInstructions());
+    }
+}
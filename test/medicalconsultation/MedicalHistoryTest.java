@@ -8,6 +8,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import data.HealthCardID;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 
 @DisplayName("MedicalHistory Tests")
@@ -182,5 +188,219 @@ public class MedicalHistoryTest {
             assertTrue(mh.getHistory().contains("Test"));
         }
     }
-}
 
+    @Nested
+    @DisplayName("Annotation Log Tests")
+    class AnnotationLogTests {
+
+        private MedicalHistory mh;
+
+        @BeforeEach
+        void setUp() throws IncorrectParametersException {
+            mh = new MedicalHistory(validCIP, 100);
+            mh.addMedicalHistoryAnnotations("Primera visita", new Date(1_000L));
+            mh.addMedicalHistoryAnnotations("Control de tensión", new Date(2_000L));
+            mh.addMedicalHistoryAnnotations("Ajuste de dosis", new Date(3_000L));
+        }
+
+        @Test
+        @DisplayName("Annotations keep their boundaries and dates")
+        void testBoundariesAndDates() {
+            assertEquals(3, mh.getAnnotationCount());
+            assertEquals("Control de tensión", mh.getAnnotation(1));
+            assertEquals(new Date(2_000L), mh.getAnnotationDate(1));
+            assertEquals("Primera visita\nControl de tensión\nAjuste de dosis", mh.getHistory());
+            assertEquals(mh.getHistory().length(), mh.getHistoryLength());
+        }
+
+        @Test
+        @DisplayName("CharSequence view matches the full text without building it")
+        void testHistoryView() {
+            CharSequence view = mh.getHistoryView();
+            String text = mh.getHistory();
+
+            assertEquals(text.length(), view.length());
+            for (int i = 0; i < text.length(); i++) {
+                assertEquals(text.charAt(i), view.charAt(i));
+            }
+            assertEquals(text.substring(10, 30), view.subSequence(10, 30).toString());
+            assertEquals(text, view.toString());
+        }
+
+        @Test
+        @DisplayName("View taken before an append keeps showing the old text")
+        void testViewIsSnapshot() throws IncorrectParametersException {
+            MedicalHistory fresh = new MedicalHistory(validCIP, 100);
+            fresh.addMedicalHistoryAnnotations("Uno");
+            fresh.addMedicalHistoryAnnotations("Dos");
+            CharSequence view = fresh.getHistoryView();
+
+            for (int i = 0; i < 20; i++) {
+                fresh.addMedicalHistoryAnnotations("Nota " + i);
+            }
+
+            assertEquals("Uno\nDos", view.toString());
+            assertTrue(fresh.getHistory().endsWith("Nota 19"));
+        }
+
+        @Test
+        @DisplayName("Reader streams the full text")
+        void testHistoryReader() throws IOException {
+            StringBuilder read = new StringBuilder();
+            char[] buffer = new char[5];
+            try (Reader reader = mh.openHistoryReader()) {
+                int n;
+                while ((n = reader.read(buffer, 0, buffer.length)) != -1) {
+                    read.append(buffer, 0, n);
+                }
+            }
+            assertEquals(mh.getHistory(), read.toString());
+        }
+
+        @Test
+        @DisplayName("Copies do not share later appends")
+        void testCopyIsIndependent() {
+            MedicalHistory copy = new MedicalHistory(mh);
+            copy.addMedicalHistoryAnnotations("Sólo en la copia");
+
+            assertEquals(3, mh.getAnnotationCount());
+            assertEquals(4, copy.getAnnotationCount());
+            assertFalse(mh.getHistory().contains("Sólo en la copia"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Paged History Tests")
+    class PagedHistoryTests {
+
+        private int loads;
+
+        /**
+         * Historia con las 2 últimas de 7 anotaciones cargadas; el cargador trae páginas de 2
+         */
+        private MedicalHistory paged() throws IncorrectParametersException {
+            MedicalHistory hce = new MedicalHistory(validCIP, 100);
+            hce.addMedicalHistoryAnnotations("Nota 5", new Date(5));
+            hce.addMedicalHistoryAnnotations("Nota 6", new Date(6));
+            hce.setOlderAnnotations(5, h -> {
+                loads++;
+                int end = h.getAnnotationCount() - h.getLoadedAnnotationCount();
+                int start = Math.max(0, end - 2);
+                List<String> page = new ArrayList<>();
+                long[] times = new long[end - start];
+                for (int i = start; i < end; i++) {
+                    page.add("Nota " + i);
+                    times[i - start] = i;
+                }
+                h.prependAnnotations(page, times);
+            });
+            return hce;
+        }
+
+        @Test
+        @DisplayName("Counts include older annotations that are not loaded yet")
+        void testCountsWithoutLoading() throws IncorrectParametersException {
+            MedicalHistory hce = paged();
+
+            assertEquals(7, hce.getAnnotationCount());
+            assertEquals(2, hce.getLoadedAnnotationCount());
+            assertEquals("Nota 6", hce.getAnnotation(6));
+            assertFalse(hce.isFullyLoaded());
+            assertEquals(0, loads);
+        }
+
+        @Test
+        @DisplayName("Reading an older annotation loads only the pages needed")
+        void testLazyPageLoad() throws IncorrectParametersException {
+            MedicalHistory hce = paged();
+
+            assertEquals("Nota 3", hce.getAnnotation(3));
+            assertEquals(new Date(3), hce.getAnnotationDate(3));
+            assertEquals(1, loads);
+            assertEquals(4, hce.getLoadedAnnotationCount());
+        }
+
+        @Test
+        @DisplayName("Full-text accessors load the whole history")
+        void testFullTextLoadsEverything() throws IncorrectParametersException {
+            MedicalHistory hce = paged();
+
+            assertEquals("Nota 0\nNota 1\nNota 2\nNota 3\nNota 4\nNota 5\nNota 6", hce.getHistory());
+            assertTrue(hce.isFullyLoaded());
+            assertEquals(3, loads);
+            assertEquals(hce.getHistory().length(), hce.getHistoryLength());
+        }
+
+        @Test
+        @DisplayName("New annotations are appended after the loaded tail with absolute indexes")
+        void testAppendToPagedHistory() throws IncorrectParametersException {
+            MedicalHistory hce = paged();
+            List<Integer> notified = new ArrayList<>();
+            hce.addListener((h, index) -> notified.add(index));
+
+            hce.addMedicalHistoryAnnotations("Nota 7");
+
+            assertEquals(List.of(7), notified);
+            assertEquals("Nota 7", hce.getAnnotation(7));
+            assertEquals(0, loads);
+            assertTrue(hce.getHistory().endsWith("Nota 6\nNota 7"));
+        }
+
+        @Test
+        @DisplayName("Loader failures surface as UncheckedIOException")
+        void testLoaderFailure() throws IncorrectParametersException {
+            MedicalHistory hce = new MedicalHistory(validCIP, 100);
+            hce.setOlderAnnotations(3, h -> {
+                throw new IOException("SNS no disponible");
+            });
+
+            assertThrows(UncheckedIOException.class, () -> hce.getAnnotation(0));
+            assertThrows(IndexOutOfBoundsException.class, () -> hce.getAnnotation(3));
+        }
+
+        @Test
+        @DisplayName("Prepending more annotations than missing is rejected")
+        void testPrependTooMany() throws IncorrectParametersException {
+            MedicalHistory hce = new MedicalHistory(validCIP, 100);
+            hce.setOlderAnnotations(1, h -> { });
+
+            assertThrows(IllegalArgumentException.class, () -> {
+                hce.prependAnnotations(List.of("a", "b"), new long[]{1, 2});
+            });
+            assertThrows(IllegalStateException.class, () -> hce.getAnnotation(0));
+        }
+    }
+
+    @Nested
+    @DisplayName("Synchronization Tests")
+    class SynchronizationTests {
+
+        @Test
+        @DisplayName("Annotations added after synchronizing are the new ones")
+        void testNewAnnotationsSinceSync() throws IncorrectParametersException {
+            MedicalHistory hce = new MedicalHistory(validCIP, 100);
+            hce.addMedicalHistoryAnnotations("Nota 1");
+            hce.markSynchronized();
+            hce.addMedicalHistoryAnnotations("Nota 2");
+
+            assertEquals(1, hce.getBaseAnnotationCount());
+            assertEquals(1, hce.getNewAnnotationCount());
+            assertEquals(1, new MedicalHistory(hce).getBaseAnnotationCount());
+
+            hce.markSynchronized();
+            assertEquals(0, hce.getNewAnnotationCount());
+        }
+
+        @Test
+        @DisplayName("The base version must lie inside the history")
+        void testInvalidBase() throws IncorrectParametersException {
+            MedicalHistory hce = new MedicalHistory(validCIP, 100);
+            hce.setOlderAnnotations(4, h -> { });
+
+            hce.setBaseAnnotationCount(4);
+            assertEquals(0, hce.getNewAnnotationCount());
+            assertThrows(IllegalArgumentException.class, () -> hce.setBaseAnnotationCount(5));
+            assertThrows(IllegalArgumentException.class, () -> hce.setBaseAnnotationCount(-1));
+        }
+    }
+}
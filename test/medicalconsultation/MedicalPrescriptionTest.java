@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
+import data.DigitalSignature;
 import data.HealthCardID;
 import data.ProductID;
 import data.ePrescripCode;
@@ -319,6 +320,227 @@ public class MedicalPrescriptionTest {
         }
     }
 
+    @Nested
+    @DisplayName("addLines Tests")
+    class AddLinesTests {
+
+        @Test
+        @DisplayName("addLines adds every row when all are valid")
+        void testAddLinesValid() throws Exception {
+            ProductID[] products = new ProductID[30];
+            String[][] guidelines = new String[30][];
+            for (int i = 0; i < products.length; i++) {
+                products[i] = new ProductID(String.format("%012d", i));
+                guidelines[i] = validGuidelines;
+            }
+            prescription.addLines(products, guidelines);
+
+            assertEquals(30, prescription.getLineCount());
+            assertEquals(15f, prescription.getLine(products[29]).getGuidelines().getDuration());
+        }
+
+        @Test
+        @DisplayName("addLines reports every invalid row and leaves the prescription unchanged")
+        void testAddLinesReportsAllErrors() throws Exception {
+            prescription.addLine(product1, validGuidelines);
+            ProductID product3 = new ProductID("111111111111");
+            ProductID[] products = {product2, product1, product3, null, product3};
+            String[][] guidelines = {
+                    validGuidelines,
+                    validGuidelines,
+                    {"BEFORELUNCH", "15", "0", "1", "DAY", "", ""},
+                    validGuidelines,
+                    validGuidelines
+            };
+
+            IncorrectPrescriptionLinesException e = assertThrows(IncorrectPrescriptionLinesException.class,
+                    () -> prescription.addLines(products, guidelines));
+
+            assertEquals(4, e.getErrors().size());
+            assertEquals(1, e.getErrors().get(0).getRow());
+            assertEquals(product1, e.getErrors().get(0).getProduct());
+            assertTrue(e.getErrors().get(1).getMessage().startsWith("La dosis debe ser positiva"));
+            assertNull(e.getErrors().get(2).getProduct());
+            assertEquals(4, e.getErrors().get(3).getRow());
+            assertTrue(e.getMessage().startsWith("4 líneas incorrectas"));
+            assertEquals(1, prescription.getLineCount());
+            assertFalse(prescription.containsProduct(product2));
+        }
+
+        @Test
+        @DisplayName("addLines rejects mismatched arrays")
+        void testAddLinesMismatchedArrays() {
+            assertThrows(IllegalArgumentException.class,
+                    () -> prescription.addLines(new ProductID[]{product1}, new String[0][]));
+            assertThrows(IllegalArgumentException.class,
+                    () -> prescription.addLines(null, new String[0][]));
+        }
+    }
+
+    @Nested
+    @DisplayName("snapshot Tests")
+    class SnapshotTests {
+
+        @Test
+        @DisplayName("snapshot keeps the lines it was taken with while editing continues")
+        void testSnapshotIsUnaffectedByEdits() throws Exception {
+            prescription.addLine(product1, validGuidelines);
+            PrescriptionSnapshot before = prescription.snapshot();
+
+            prescription.modifyDoseInLine(product1, 4.0f);
+            prescription.addLine(product2, validGuidelines);
+            prescription.removeLine(product1);
+
+            assertEquals(1, before.getLineCount());
+            assertEquals(1.0f, before.getLine(product1).getGuidelines().getPosology().getDose());
+            assertFalse(before.containsProduct(product2));
+            assertFalse(prescription.containsProduct(product1));
+            assertEquals(1, prescription.snapshot().getLineCount());
+        }
+
+        @Test
+        @DisplayName("snapshot hands out copies of its lines and header fields")
+        void testSnapshotCopiesOnRead() throws Exception {
+            prescription.addLine(product1, validGuidelines);
+            prescription.addLine(product2, validGuidelines);
+            Date endDate = new Date(System.currentTimeMillis() + 86_400_000L);
+            prescription.setEndDate(endDate);
+            PrescriptionSnapshot before = prescription.snapshot();
+
+            prescription.modifyDoseInLine(product1, 2.0f);
+            PrescriptionSnapshot after = prescription.snapshot();
+            before.getLine(product2).getGuidelines().getPosology().setDose(7.0f);
+            before.getAllLines().forEach(line -> line.getGuidelines().setDuration(99f));
+            before.forEachLine((prodID, line) -> line.getGuidelines().getPosology().setFreq(9f));
+
+            assertNotSame(before.getLine(product2), before.getLine(product2));
+            assertEquals(1.0f, after.getLine(product2).getGuidelines().getPosology().getDose());
+            assertEquals(1.0f, before.getLine(product1).getGuidelines().getPosology().getDose());
+            assertEquals(2.0f, after.getLine(product1).getGuidelines().getPosology().getDose());
+            assertEquals(1.0f, before.getLine(product1).getGuidelines().getPosology().getFreq());
+            assertEquals(endDate, before.getEndDate());
+            before.getEndDate().setTime(0);
+            assertEquals(endDate, before.getEndDate());
+            assertEquals(cip, after.getCip());
+            assertFalse(after.isComplete());
+        }
+
+        @Test
+        @DisplayName("Lines returned by the prescription cannot change snapshots or the undo history")
+        void testReturnedLinesAreCopies() throws Exception {
+            prescription.addLine(product1, validGuidelines);
+            PrescriptionSnapshot before = prescription.snapshot();
+            prescription.modifyDoseInLine(product1, 2.0f);
+
+            prescription.getLine(product1).getGuidelines().getPosology().setDose(8.0f);
+            prescription.getAllLines().forEach(line -> line.getGuidelines().getPosology().setDose(8.0f));
+            prescription.getLines().values().forEach(line -> line.getGuidelines().getPosology().setDose(8.0f));
+
+            assertEquals(2.0f, prescription.getLine(product1).getGuidelines().getPosology().getDose());
+            assertTrue(prescription.undo());
+            assertEquals(1.0f, prescription.getLine(product1).getGuidelines().getPosology().getDose());
+            assertTrue(prescription.redo());
+            assertEquals(2.0f, prescription.getLine(product1).getGuidelines().getPosology().getDose());
+            assertEquals(1.0f, before.getLine(product1).getGuidelines().getPosology().getDose());
+        }
+
+        @Test
+        @DisplayName("Header changes after a snapshot do not reach it")
+        void testSnapshotHeaderIsConsistent() throws Exception {
+            prescription.addLine(product1, validGuidelines);
+            Date endDate = new Date(System.currentTimeMillis() + 86_400_000L);
+            prescription.setEndDate(endDate);
+            prescription.setPrescDate(new Date());
+            prescription.setPrescCode(new ePrescripCode("SIM-0000000001"));
+            PrescriptionSnapshot unsigned = prescription.snapshot();
+
+            prescription.seteSign(new DigitalSignature(new byte[]{1, 2, 3}));
+            prescription.setMembShipNumb(200);
+            PrescriptionSnapshot signed = prescription.snapshot();
+
+            assertFalse(unsigned.isComplete());
+            assertNull(unsigned.geteSign());
+            assertEquals(12345, unsigned.getMembShipNumb());
+            assertTrue(signed.isComplete());
+            assertEquals(200, signed.getMembShipNumb());
+            assertEquals(endDate, signed.getEndDate());
+        }
+    }
+
+    @Nested
+    @DisplayName("undo/redo Tests")
+    class UndoRedoTests {
+
+        @Test
+        @DisplayName("undo reverts a dose change and redo applies it again")
+        void testUndoRedoDose() throws Exception {
+            prescription.addLine(product1, validGuidelines);
+            prescription.modifyDoseInLine(product1, 3.0f);
+
+            assertTrue(prescription.undo());
+            assertEquals(1.0f, prescription.getLine(product1).getGuidelines().getPosology().getDose());
+            assertTrue(prescription.redo());
+            assertEquals(3.0f, prescription.getLine(product1).getGuidelines().getPosology().getDose());
+        }
+
+        @Test
+        @DisplayName("undo restores a removed line and undoes additions in reverse order")
+        void testUndoRemoveAndAdd() throws Exception {
+            prescription.addLine(product1, validGuidelines);
+            prescription.addLine(product2, validGuidelines);
+            prescription.modifyDurationInLine(product2, 30f);
+            prescription.removeLine(product2);
+
+            assertTrue(prescription.undo());
+            assertEquals(30f, prescription.getLine(product2).getGuidelines().getDuration());
+            assertTrue(prescription.undo());
+            assertEquals(15f, prescription.getLine(product2).getGuidelines().getDuration());
+            assertTrue(prescription.undo());
+            assertFalse(prescription.containsProduct(product2));
+            assertTrue(prescription.undo());
+            assertEquals(0, prescription.getLineCount());
+            assertFalse(prescription.undo());
+            assertFalse(prescription.canUndo());
+            assertTrue(prescription.canRedo());
+        }
+
+        @Test
+        @DisplayName("addLines is undone and redone as a single edit")
+        void testUndoBulkAdd() throws Exception {
+            prescription.addLine(product1, validGuidelines);
+            ProductID product3 = new ProductID("111111111111");
+            prescription.addLines(new ProductID[]{product2, product3},
+                    new String[][]{validGuidelines, validGuidelines});
+
+            assertTrue(prescription.undo());
+            assertEquals(1, prescription.getLineCount());
+            assertTrue(prescription.redo());
+            assertEquals(3, prescription.getLineCount());
+            assertFalse(prescription.redo());
+        }
+
+        @Test
+        @DisplayName("A new edit discards the undone edits")
+        void testNewEditClearsRedo() throws Exception {
+            prescription.addLine(product1, validGuidelines);
+            prescription.modifyDoseInLine(product1, 2.0f);
+            prescription.undo();
+            prescription.modifyFrequencyInLine(product1, 3.0f);
+
+            assertFalse(prescription.canRedo());
+            assertFalse(prescription.redo());
+            assertEquals(1.0f, prescription.getLine(product1).getGuidelines().getPosology().getDose());
+        }
+
+        @Test
+        @DisplayName("Failed edits are not recorded")
+        void testFailedEditsNotRecorded() {
+            assertThrows(Exception.class, () -> prescription.removeLine(product1));
+            assertThrows(Exception.class, () -> prescription.addLine(product1, new String[]{"X"}));
+            assertFalse(prescription.canUndo());
+        }
+    }
+
     @Nested
     @DisplayName("Getter Tests")
     class GetterTests {
@@ -0,0 +1,91 @@
+package services;
+
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import data.HealthCardID;
+import data.InvalidHealthCardIDException;
+import services.doubles.HealthNationalServiceMock;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("AsyncHealthNationalServiceAdapter Tests")
+public class AsyncHealthNationalServiceAdapterTest {
+
+    private HealthNationalServiceMock hnsMock;
+    private AsyncHealthNationalServiceAdapter adapter;
+    private HealthCardID validCIP;
+
+    @BeforeEach
+    void setUp() throws InvalidHealthCardIDException {
+        hnsMock = new HealthNationalServiceMock();
+        adapter = new AsyncHealthNationalServiceAdapter(hnsMock, 4);
+        validCIP = new HealthCardID("1234567890ABCDEF");
+    }
+
+    @AfterEach
+    void tearDown() {
+        adapter.close();
+    }
+
+    @Test
+    @DisplayName("Futures complete with the blocking service results")
+    void testFuturesCompleteWithResults() throws Exception {
+        MedicalHistory history = adapter.getMedicalHistory(validCIP).get(5, TimeUnit.SECONDS);
+        MedicalPrescription presc = adapter.getMedicalPrescription(validCIP, "Hipertensión")
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(validCIP, history.getCip());
+        assertEquals("Hipertensión", presc.getIllness());
+    }
+
+    @Test
+    @DisplayName("Futures fail with the original checked exception")
+    void testFuturesFailWithOriginalException() {
+        hnsMock.setThrowConnectException(true);
+
+        CompletableFuture<MedicalHistory> future = adapter.getMedicalHistory(validCIP);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> {
+            future.get(5, TimeUnit.SECONDS);
+        });
+        assertInstanceOf(ConnectException.class, e.getCause());
+    }
+
+    @Test
+    @DisplayName("At most maxConcurrentCalls calls run at the same time")
+    void testConcurrencyIsBounded() throws Exception {
+        hnsMock.setLatencyMillis(100, 100);
+
+        long start = System.nanoTime();
+        List<CompletableFuture<MedicalHistory>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(adapter.getMedicalHistory(validCIP));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // 8 llamadas de 100 ms con 4 hilos: dos tandas
+        assertTrue(elapsedMillis >= 190, "Tiempo demasiado bajo: " + elapsedMillis + " ms");
+    }
+
+    @Test
+    @DisplayName("Calls after close fail with ConnectException")
+    void testCallsAfterClose() {
+        adapter.close();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> {
+            adapter.getMedicalHistory(validCIP).get(5, TimeUnit.SECONDS);
+        });
+        assertInstanceOf(ConnectException.class, e.getCause());
+    }
+}
@@ -0,0 +1,225 @@
+package services;
+
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import data.*;
+import services.doubles.HealthNationalServiceMock;
+import services.doubles.HealthNationalServiceStub;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("CachingHealthNationalService Tests")
+public class CachingHealthNationalServiceTest {
+
+    private HealthNationalServiceMock hnsMock;
+    private AtomicLong clock;
+    private CachingHealthNationalService cache;
+    private HealthCardID validCIP;
+    private HealthCardID otherCIP;
+
+    @BeforeEach
+    void setUp() throws InvalidHealthCardIDException {
+        hnsMock = new HealthNationalServiceMock();
+        clock = new AtomicLong();
+        cache = new CachingHealthNationalService(hnsMock, 2, Duration.ofMinutes(10), clock::get);
+        validCIP = new HealthCardID("1234567890ABCDEF");
+        otherCIP = new HealthCardID("FEDCBA0987654321");
+    }
+
+    @Nested
+    @DisplayName("Read-through Caching")
+    class ReadThroughTests {
+
+        @Test
+        @DisplayName("Repeated history reads hit the cache")
+        void testHistoryIsCached() throws Exception {
+            cache.getMedicalHistory(validCIP);
+            cache.getMedicalHistory(validCIP);
+
+            assertEquals(1, hnsMock.getHistoryCalls());
+            assertEquals(1, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+        }
+
+        @Test
+        @DisplayName("Prescriptions are cached per cip and illness")
+        void testPrescriptionKeyIncludesIllness() throws Exception {
+            cache.getMedicalPrescription(validCIP, "Hipertensión");
+            cache.getMedicalPrescription(validCIP, "Diabetes");
+            cache.getMedicalPrescription(validCIP, "Hipertensión");
+
+            assertEquals(2, hnsMock.getPrescriptionCalls());
+        }
+
+        @Test
+        @DisplayName("Edits on a returned object do not leak into the cache")
+        void testReturnedObjectsAreCopies() throws Exception {
+            MedicalHistory first = cache.getMedicalHistory(validCIP);
+            first.addMedicalHistoryAnnotations("Anotación sin enviar");
+
+            MedicalHistory second = cache.getMedicalHistory(validCIP);
+            assertEquals("", second.getHistory());
+            assertNotSame(first, second);
+        }
+
+        @Test
+        @DisplayName("Compressed cached histories are restored intact")
+        void testCompressedHistories() throws Exception {
+            cache.setHistoryCompressor(new HistoryCompressor(
+                    HistoryDictionary.train(List.of("control de tensión arterial"), 1024)));
+            MedicalHistory first = cache.getMedicalHistory(validCIP);
+            first.addMedicalHistoryAnnotations("Anotación sin enviar");
+
+            assertEquals("", cache.getMedicalHistory(validCIP).getHistory());
+            assertEquals(1, hnsMock.getHistoryCalls());
+        }
+
+        @Test
+        @DisplayName("A history that cannot be compressed is not cached and later reads still cache")
+        void testCompressionFailure() throws Exception {
+            AtomicInteger compressions = new AtomicInteger();
+            cache.setHistoryCompressor(new HistoryCompressor(
+                    HistoryDictionary.train(List.of("control de tensión arterial"), 1024)) {
+                @Override
+                public CompressedHistory compress(MedicalHistory hce) {
+                    if (compressions.incrementAndGet() == 1) {
+                        throw new IllegalStateException("Fallo al comprimir");
+                    }
+                    return super.compress(hce);
+                }
+            });
+
+            assertThrows(IllegalStateException.class, () -> cache.getMedicalHistory(validCIP));
+            cache.getMedicalHistory(validCIP);
+            cache.getMedicalHistory(validCIP);
+
+            assertEquals(2, hnsMock.getHistoryCalls());
+        }
+    }
+
+    @Nested
+    @DisplayName("Eviction and Expiration")
+    class EvictionTests {
+
+        @Test
+        @DisplayName("Least recently used entry is evicted when full")
+        void testLruEviction() throws Exception {
+            HealthCardID thirdCIP = new HealthCardID("AAAAAAAAAAAAAAAA");
+
+            cache.getMedicalHistory(validCIP);
+            cache.getMedicalHistory(otherCIP);
+            cache.getMedicalHistory(validCIP);   // validCIP pasa a ser el más reciente
+            cache.getMedicalHistory(thirdCIP);   // expulsa otherCIP
+
+            assertEquals(1, cache.getEvictionCount());
+            cache.getMedicalHistory(validCIP);
+            assertEquals(3, hnsMock.getHistoryCalls());
+            cache.getMedicalHistory(otherCIP);
+            assertEquals(4, hnsMock.getHistoryCalls());
+        }
+
+        @Test
+        @DisplayName("Entries expire after the TTL")
+        void testTtlExpiration() throws Exception {
+            cache.getMedicalHistory(validCIP);
+            clock.addAndGet(Duration.ofMinutes(11).toNanos());
+            cache.getMedicalHistory(validCIP);
+
+            assertEquals(2, hnsMock.getHistoryCalls());
+            assertEquals(1, cache.getExpirationCount());
+        }
+    }
+
+    @Nested
+    @DisplayName("Invalidation")
+    class InvalidationTests {
+
+        @Test
+        @DisplayName("Successful send invalidates only that patient's entries")
+        void testSendInvalidatesPatient() throws Exception {
+            cache.getMedicalHistory(validCIP);
+            cache.getMedicalPrescription(validCIP, "Hipertensión");
+            cache.getMedicalHistory(otherCIP);
+
+            MedicalHistory hce = new MedicalHistory(validCIP, 100);
+            MedicalPrescription presc = new MedicalPrescription(validCIP, 100, "Hipertensión");
+            presc.setEndDate(new Date());
+            cache.sendHistoryAndPrescription(validCIP, hce, "Hipertensión", presc);
+
+            cache.getMedicalHistory(validCIP);
+            cache.getMedicalPrescription(validCIP, "Hipertensión");
+            cache.getMedicalHistory(otherCIP);
+
+            assertEquals(3, hnsMock.getHistoryCalls());
+            assertEquals(2, hnsMock.getPrescriptionCalls());
+        }
+
+        @Test
+        @DisplayName("Failed send keeps the cached entries")
+        void testFailedSendKeepsEntries() throws Exception {
+            cache.getMedicalHistory(validCIP);
+            hnsMock.setThrowConnectException(true);
+
+            assertThrows(Exception.class, () -> {
+                cache.sendHistoryAndPrescription(validCIP, new MedicalHistory(validCIP, 100),
+                        "Hipertensión", new MedicalPrescription(validCIP, 100, "Hipertensión"));
+            });
+
+            hnsMock.setThrowConnectException(false);
+            cache.getMedicalHistory(validCIP);
+            assertEquals(1, hnsMock.getHistoryCalls());
+        }
+
+        @Test
+        @DisplayName("A download overtaken by an invalidation is not cached")
+        void testStaleDownloadIsDiscarded() throws Exception {
+            AtomicInteger calls = new AtomicInteger();
+            CachingHealthNationalService[] racing = new CachingHealthNationalService[1];
+            HealthNationalService sendDuringDownload = new HealthNationalServiceStub() {
+                @Override
+                public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+                        throws ConnectException, IncorrectParametersException {
+                    MedicalPrescription downloaded = super.getMedicalPrescription(cip, illness);
+                    if (calls.incrementAndGet() == 1) {
+                        // Un envío del mismo paciente termina mientras se descarga la versión antigua
+                        racing[0].invalidate(cip);
+                    }
+                    return downloaded;
+                }
+            };
+            racing[0] = new CachingHealthNationalService(sendDuringDownload, 2, Duration.ofMinutes(10), clock::get);
+
+            assertNotNull(racing[0].getMedicalPrescription(validCIP, "Hipertensión"));
+            assertEquals(0, racing[0].getSize());
+
+            racing[0].getMedicalPrescription(validCIP, "Hipertensión");
+            racing[0].getMedicalPrescription(validCIP, "Hipertensión");
+            assertEquals(2, calls.get());
+        }
+
+        @Test
+        @DisplayName("Evicted entries do not survive in the patient index")
+        void testEvictedEntriesAreUnindexed() throws Exception {
+            cache.getMedicalPrescription(validCIP, "Hipertensión");
+            cache.getMedicalPrescription(validCIP, "Diabetes");
+            cache.getMedicalPrescription(otherCIP, "Asma");
+
+            cache.invalidate(validCIP);
+
+            assertEquals(1, cache.getSize());
+            cache.getMedicalPrescription(otherCIP, "Asma");
+            assertEquals(3, hnsMock.getPrescriptionCalls());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package services;
+
+import consultamedica.MedicalHistory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import data.HealthCardID;
+import data.InvalidHealthCardIDException;
+import services.doubles.HealthNationalServiceMock;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("CoalescingHealthNationalService Tests")
+public class CoalescingHealthNationalServiceTest {
+
+    private static final int CALLERS = 32;
+
+    private HealthNationalServiceMock hnsMock;
+    private CoalescingHealthNationalService coalescing;
+    private HealthCardID validCIP;
+    private ExecutorService pool;
+
+    @BeforeEach
+    void setUp() throws InvalidHealthCardIDException {
+        hnsMock = new HealthNationalServiceMock();
+        coalescing = new CoalescingHealthNationalService(hnsMock);
+        validCIP = new HealthCardID("1234567890ABCDEF");
+        pool = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private <T> List<Future<T>> runConcurrently(java.util.concurrent.Callable<T> call) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return call.call();
+            }));
+        }
+        start.countDown();
+        return results;
+    }
+
+    @Test
+    @DisplayName("N concurrent history requests produce exactly one downstream call")
+    void testConcurrentHistoryRequestsAreCoalesced() throws Exception {
+        hnsMock.setLatencyMillis(300, 0);
+
+        List<Future<MedicalHistory>> results = runConcurrently(() -> coalescing.getMedicalHistory(validCIP));
+
+        IdentityHashMap<MedicalHistory, Boolean> distinct = new IdentityHashMap<>();
+        for (Future<MedicalHistory> result : results) {
+            MedicalHistory history = result.get(5, TimeUnit.SECONDS);
+            assertEquals(validCIP, history.getCip());
+            distinct.put(history, Boolean.TRUE);
+        }
+        assertEquals(1, hnsMock.getHistoryCalls());
+        // Cada llamante recibe su propia instancia
+        assertEquals(CALLERS, distinct.size());
+    }
+
+    @Test
+    @DisplayName("N concurrent prescription requests produce exactly one downstream call")
+    void testConcurrentPrescriptionRequestsAreCoalesced() throws Exception {
+        hnsMock.setLatencyMillis(0, 300);
+
+        for (Future<?> result : runConcurrently(
+                () -> coalescing.getMedicalPrescription(validCIP, "Hipertensión"))) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(1, hnsMock.getPrescriptionCalls());
+    }
+
+    @Test
+    @DisplayName("The exception of the shared call reaches every caller")
+    void testExceptionIsShared() throws Exception {
+        hnsMock.setLatencyMillis(300, 0);
+        hnsMock.setThrowConnectException(true);
+
+        for (Future<MedicalHistory> result : runConcurrently(() -> coalescing.getMedicalHistory(validCIP))) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> {
+                result.get(5, TimeUnit.SECONDS);
+            });
+            assertInstanceOf(ConnectException.class, e.getCause());
+        }
+        assertEquals(1, hnsMock.getHistoryCalls());
+    }
+
+    @Test
+    @DisplayName("Sequential requests are not coalesced")
+    void testSequentialRequestsAreNotCoalesced() throws Exception {
+        coalescing.getMedicalHistory(validCIP);
+        coalescing.getMedicalHistory(validCIP);
+
+        assertEquals(2, hnsMock.getHistoryCalls());
+    }
+}
@@ -0,0 +1,107 @@
+package services;
+
+import consultamedica.MedicalHistory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import data.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("HistoryCompressor Tests")
+public class HistoryCompressorTest {
+
+    private static final List<String> CORPUS = List.of(
+            "Paciente refiere dolor de cabeza desde hace tres días",
+            "Control de tensión arterial, sin cambios en el tratamiento",
+            "Paciente refiere mejoría, control de tensión arterial estable",
+            "Revisión analítica normal, sin cambios en el tratamiento",
+            "Paciente refiere dolor de espalda, se pauta ibuprofeno");
+
+    private HealthCardID validCIP;
+    private HistoryCompressor compressor;
+
+    @BeforeEach
+    void setUp() throws InvalidHealthCardIDException {
+        validCIP = new HealthCardID("1234567890ABCDEF");
+        compressor = new HistoryCompressor(HistoryDictionary.train(CORPUS, 4096));
+    }
+
+    @Test
+    @DisplayName("Training keeps the phrases repeated across the corpus")
+    void testTrainedDictionary() {
+        String dict = new String(compressor.getDictionary().getBytes(), StandardCharsets.UTF_8);
+
+        assertTrue(dict.contains("Paciente refiere"));
+        assertTrue(dict.contains("tensión arterial"));
+        assertFalse(dict.contains("ibuprofeno"));
+        assertTrue(HistoryDictionary.train(CORPUS, 20).size() <= 20);
+    }
+
+    @Test
+    @DisplayName("A compressed history is restored with its annotations, dates and base version")
+    void testRoundTrip() throws Exception {
+        MedicalHistory hce = new MedicalHistory(validCIP, 100);
+        for (int i = 0; i < CORPUS.size(); i++) {
+            hce.addMedicalHistoryAnnotations(CORPUS.get(i), new Date(1000L * i));
+        }
+        hce.addMedicalHistoryAnnotations("Ñandú: niño con fiebre 38,5 ºC ✓", new Date(9000));
+        hce.markSynchronized();
+        hce.setNewDoctor(200);
+
+        CompressedHistory compressed = compressor.compress(hce);
+        MedicalHistory restored = compressor.decompress(compressed);
+
+        assertEquals(hce.getHistory(), restored.getHistory());
+        assertEquals(hce.getAnnotationCount(), restored.getAnnotationCount());
+        assertEquals(new Date(9000), restored.getAnnotationDate(5));
+        assertEquals(200, restored.getMembShipNumb());
+        assertEquals(6, restored.getBaseAnnotationCount());
+    }
+
+    @Test
+    @DisplayName("The shared dictionary shrinks short histories further than plain deflate")
+    void testDictionaryImprovesRatio() throws Exception {
+        MedicalHistory hce = new MedicalHistory(validCIP, 100);
+        hce.addMedicalHistoryAnnotations("Paciente refiere mejoría, control de tensión arterial estable");
+
+        int withDictionary = compressor.compress(hce).getCompressedSize();
+        int plain = new HistoryCompressor(new HistoryDictionary(new byte[0])).compress(hce).getCompressedSize();
+
+        assertTrue(withDictionary < plain, withDictionary + " >= " + plain);
+    }
+
+    @Test
+    @DisplayName("Histories compressed before retraining still decompress")
+    void testRetrain() throws Exception {
+        MedicalHistory hce = new MedicalHistory(validCIP, 100);
+        hce.addMedicalHistoryAnnotations(CORPUS.get(0));
+        CompressedHistory before = compressor.compress(hce);
+
+        List<String> corpus = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            corpus.add("Vacunación de la gripe sin incidencias");
+        }
+        HistoryDictionary retrained = compressor.retrain(corpus, 1024);
+
+        assertNotEquals(before.getDictionaryId(), retrained.getId());
+        assertEquals(CORPUS.get(0), compressor.decompress(before).getHistory());
+        assertEquals(retrained.getId(), compressor.compress(hce).getDictionaryId());
+    }
+
+    @Test
+    @DisplayName("Empty histories and invalid arguments")
+    void testEdgeCases() throws Exception {
+        MedicalHistory empty = new MedicalHistory(validCIP, 100);
+
+        assertEquals("", compressor.decompress(compressor.compress(empty)).getHistory());
+        assertThrows(IllegalArgumentException.class, () -> compressor.compress(null));
+        assertThrows(IllegalArgumentException.class, () -> HistoryDictionary.train(CORPUS, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new HistoryDictionary(new byte[HistoryDictionary.MAX_SIZE + 1]));
+    }
+}
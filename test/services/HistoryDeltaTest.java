@@ -0,0 +1,258 @@
+package services;
+
+import consultamedica.ConsultationTerminal;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.ProductID;
+import services.doubles.DecisionMakingAIStub;
+import services.simulation.SimulatedHealthNationalService;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("HistoryDelta Tests")
+public class HistoryDeltaTest {
+
+    private SimulatedHealthNationalService sns;
+    private HealthCardID cip;
+    private String illness;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        sns = new SimulatedHealthNationalService(23L, 50);
+        cip = sns.getPatient(7);
+        illness = sns.getIllnesses(cip).get(0);
+    }
+
+    @Test
+    @DisplayName("Only annotations added after synchronizing are part of the delta")
+    void testDeltaOfHistory() throws Exception {
+        MedicalHistory hce = sns.getMedicalHistory(cip);
+        int base = hce.getAnnotationCount();
+        hce.markSynchronized();
+        hce.addMedicalHistoryAnnotations("Nota nueva", new Date(1000));
+        hce.setNewDoctor(4242);
+
+        HistoryDelta delta = HistoryDelta.of(hce);
+
+        assertEquals(base, delta.getBaseCount());
+        assertEquals(List.of("Nota nueva"), delta.getAnnotations());
+        assertArrayEquals(new long[]{1000}, delta.getTimes());
+        assertEquals(4242, delta.getMembShipNumb());
+    }
+
+    @Test
+    @DisplayName("A received delta keeps its base version without the older text")
+    void testToHistory() throws Exception {
+        HistoryDelta delta = new HistoryDelta(cip, 3, 100, List.of("a", "b"), new long[]{1, 2});
+
+        MedicalHistory hce = delta.toHistory();
+
+        assertEquals(5, hce.getAnnotationCount());
+        assertEquals(3, hce.getBaseAnnotationCount());
+        assertEquals("b", hce.getAnnotation(4));
+        assertThrows(UncheckedIOException.class, () -> hce.getAnnotation(0));
+        assertEquals(List.of("a", "b"), HistoryDelta.of(hce).getAnnotations());
+    }
+
+    @Test
+    @DisplayName("The simulated SNS appends the delta to its own history")
+    void testDeltaAppliedBySns() throws Exception {
+        MedicalHistory hce = sns.getMedicalHistory(cip);
+        String before = hce.getHistory();
+        hce.markSynchronized();
+        hce.addMedicalHistoryAnnotations("Revisión por delta");
+
+        sns.sendHistoryDeltaAndPrescription(cip, hce, illness, completedPrescription());
+
+        assertEquals(before + "\nRevisión por delta", sns.getMedicalHistory(cip).getHistory());
+    }
+
+    @Test
+    @DisplayName("A delta built on an outdated history is rejected")
+    void testConflict() throws Exception {
+        MedicalHistory stale = sns.getMedicalHistory(cip);
+        stale.markSynchronized();
+        MedicalHistory other = sns.getMedicalHistory(cip);
+        other.addMedicalHistoryAnnotations("Otra consulta");
+        sns.sendHistoryAndPrescription(cip, other, illness, completedPrescription());
+        String current = sns.getMedicalHistory(cip).getHistory();
+
+        stale.addMedicalHistoryAnnotations("Consulta desfasada");
+
+        assertThrows(HistoryConflictException.class,
+                () -> sns.sendHistoryDeltaAndPrescription(cip, stale, illness, completedPrescription()));
+        assertEquals(current, sns.getMedicalHistory(cip).getHistory());
+    }
+
+    @Test
+    @DisplayName("The terminal rebases its annotations when another consultation sent first")
+    void testTerminalRebasesOnConflict() throws Exception {
+        ConsultationTerminal first = openTerminal();
+        ConsultationTerminal second = openTerminal();
+        first.enterMedicalAssessmentInHistory("Primera consulta");
+        second.enterMedicalAssessmentInHistory("Segunda consulta");
+
+        send(first);
+        send(second);
+
+        String history = sns.getMedicalHistory(cip).getHistory();
+        assertTrue(history.endsWith("Primera consulta\nSegunda consulta"));
+        assertEquals(0, second.getCurrentHistory().getNewAnnotationCount());
+    }
+
+    @Test
+    @DisplayName("The terminal reports a persistent conflict instead of sending the full history")
+    void testTerminalSurfacesPersistentConflict() throws Exception {
+        int[] fullSends = new int[1];
+        sns = new SimulatedHealthNationalService(23L, 50) {
+            @Override
+            public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                                  String illness, MedicalPrescription mPresc) {
+                fullSends[0]++;
+                throw new IllegalStateException("No debe enviarse la historia completa");
+            }
+
+            @Override
+            public MedicalPrescription sendHistoryDeltaAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                                        String illness, MedicalPrescription mPresc)
+                    throws HistoryConflictException {
+                throw new HistoryConflictException("Otra consulta ha cambiado la historia");
+            }
+        };
+        String before = sns.getMedicalHistory(cip).getHistory();
+        ConsultationTerminal terminal = openTerminal();
+        terminal.enterMedicalAssessmentInHistory("Consulta en conflicto");
+
+        assertThrows(HistoryConflictException.class, () -> send(terminal));
+
+        assertEquals(0, fullSends[0]);
+        assertEquals(before, sns.getMedicalHistory(cip).getHistory());
+        assertEquals(1, terminal.getCurrentHistory().getNewAnnotationCount());
+    }
+
+    @Test
+    @DisplayName("Batched submissions are sent as deltas and rejected when outdated")
+    void testBatchSendsDeltas() throws Exception {
+        MedicalHistory stale = sns.getMedicalHistory(cip);
+        stale.markSynchronized();
+        stale.addMedicalHistoryAnnotations("Consulta desfasada");
+        MedicalHistory current = sns.getMedicalHistory(cip);
+        current.markSynchronized();
+        current.addMedicalHistoryAnnotations("Consulta al día");
+
+        List<SubmissionResult> results = sns.sendHistoriesAndPrescriptions(List.of(
+                new PrescriptionSubmission(cip, current, illness, completedPrescription()),
+                new PrescriptionSubmission(cip, stale, illness, completedPrescription())));
+
+        assertTrue(results.get(0).isRegistered());
+        assertInstanceOf(HistoryConflictException.class, results.get(1).getError());
+        String history = sns.getMedicalHistory(cip).getHistory();
+        assertTrue(history.endsWith("Consulta al día"));
+        assertFalse(history.contains("Consulta desfasada"));
+    }
+
+    @Test
+    @DisplayName("The batcher rebases a conflicting submission and resends it")
+    void testBatcherRebasesOnConflict() throws Exception {
+        MedicalHistory stale = sns.getMedicalHistory(cip);
+        stale.markSynchronized();
+        stale.addMedicalHistoryAnnotations("Consulta desfasada");
+        MedicalHistory current = sns.getMedicalHistory(cip);
+        current.markSynchronized();
+        current.addMedicalHistoryAnnotations("Consulta al día");
+
+        try (PrescriptionBatcher batcher = new PrescriptionBatcher(sns, 2, Duration.ofSeconds(5))) {
+            CompletableFuture<MedicalPrescription> first = batcher.submit(
+                    new PrescriptionSubmission(cip, current, illness, completedPrescription()));
+            CompletableFuture<MedicalPrescription> second = batcher.submit(
+                    new PrescriptionSubmission(cip, stale, illness, completedPrescription()));
+
+            assertNotNull(first.get(5, TimeUnit.SECONDS).getPrescCode());
+            assertNotNull(second.get(5, TimeUnit.SECONDS).getPrescCode());
+        }
+        assertTrue(sns.getMedicalHistory(cip).getHistory().endsWith("Consulta al día\nConsulta desfasada"));
+    }
+
+    @Test
+    @DisplayName("The outbox rebases a queued delta when another consultation sent first")
+    void testOutboxRebasesOnConflict(@TempDir Path dir) throws Exception {
+        MedicalHistory stale = sns.getMedicalHistory(cip);
+        stale.markSynchronized();
+        stale.addMedicalHistoryAnnotations("Consulta encolada");
+        MedicalHistory other = sns.getMedicalHistory(cip);
+        other.markSynchronized();
+        other.addMedicalHistoryAnnotations("Otra consulta");
+        sns.sendHistoryDeltaAndPrescription(cip, other, illness, completedPrescription());
+
+        try (PrescriptionOutbox outbox = new PrescriptionOutbox(dir, sns, 10)) {
+            OutboxReceipt receipt = outbox.enqueue(cip, stale, illness, completedPrescription());
+            assertNotNull(receipt.getDelivery().get(5, TimeUnit.SECONDS).getPrescCode());
+        }
+        assertTrue(sns.getMedicalHistory(cip).getHistory().endsWith("Otra consulta\nConsulta encolada"));
+    }
+
+    @Test
+    @DisplayName("The outbox rejects a delta that keeps conflicting after a bounded number of rebases")
+    void testOutboxSurfacesPersistentConflict(@TempDir Path dir) throws Exception {
+        int[] deltaSends = new int[1];
+        sns = new SimulatedHealthNationalService(23L, 50) {
+            @Override
+            public MedicalPrescription sendHistoryDeltaAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                                        String illness, MedicalPrescription mPresc)
+                    throws HistoryConflictException {
+                deltaSends[0]++;
+                throw new HistoryConflictException("Otra consulta ha cambiado la historia");
+            }
+        };
+        MedicalHistory hce = sns.getMedicalHistory(cip);
+        hce.markSynchronized();
+        hce.addMedicalHistoryAnnotations("Consulta en conflicto");
+
+        try (PrescriptionOutbox outbox = new PrescriptionOutbox(dir, sns, 10)) {
+            OutboxReceipt receipt = outbox.enqueue(cip, hce, illness, completedPrescription());
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> receipt.getDelivery().get(5, TimeUnit.SECONDS));
+            assertInstanceOf(HistoryConflictException.class, e.getCause());
+        }
+        assertEquals(DeltaRebaser.MAX_DELTA_ATTEMPTS, deltaSends[0]);
+    }
+
+    private ConsultationTerminal openTerminal() throws Exception {
+        ConsultationTerminal terminal = new ConsultationTerminal();
+        terminal.setHealthNationalService(sns);
+        terminal.setDecisionMakingAI(new DecisionMakingAIStub());
+        terminal.initRevision(cip, illness);
+        return terminal;
+    }
+
+    private static void send(ConsultationTerminal terminal) throws Exception {
+        terminal.initMedicalPrescriptionEdition();
+        terminal.enterMedicineWithGuidelines(new ProductID("999999999999"),
+                new String[]{"BEFORELUNCH", "15", "1", "1", "DAY", "Con agua", ""});
+        terminal.enterTreatmentEndingDate(new Date(System.currentTimeMillis() + 15L * 24 * 60 * 60 * 1000));
+        terminal.finishMedicalPrescriptionEdition();
+        terminal.stampeeSignature();
+        terminal.sendHistoryAndPrescription();
+    }
+
+    private MedicalPrescription completedPrescription() throws Exception {
+        MedicalPrescription presc = sns.getMedicalPrescription(cip, illness);
+        presc.setEndDate(new Date(System.currentTimeMillis() + 15L * 24 * 60 * 60 * 1000));
+        presc.seteSign(new DigitalSignature(new byte[]{1, 2, 3}));
+        return presc;
+    }
+}
@@ -0,0 +1,130 @@
+package services;
+
+import consultamedica.MedicalHistory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import data.*;
+
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("HistoryIndex Tests")
+public class HistoryIndexTest {
+
+    private HistoryIndex index;
+    private HealthCardID validCIP;
+    private HealthCardID otherCIP;
+
+    @BeforeEach
+    void setUp() throws InvalidHealthCardIDException {
+        index = new HistoryIndex();
+        validCIP = new HealthCardID("1234567890ABCDEF");
+        otherCIP = new HealthCardID("FEDCBA0987654321");
+    }
+
+    @Test
+    @DisplayName("Annotations added to a listened history are indexed")
+    void testIndexedThroughListener() throws Exception {
+        MedicalHistory hce = new MedicalHistory(validCIP, 100);
+        hce.addListener(index);
+
+        hce.addMedicalHistoryAnnotations("Paciente con hipertensión");
+        hce.addMedicalHistoryAnnotations("Alergia a la penicilina");
+
+        assertEquals(List.of(new HistoryHit(validCIP, 1)), index.searchTerm("penicilina"));
+        assertEquals(2, index.getDocumentCount());
+    }
+
+    @Test
+    @DisplayName("Terms match regardless of case and accents")
+    void testCaseAndAccentFolding() {
+        index.add(validCIP, 0, "Tensión arterial ELEVADA");
+
+        assertEquals(1, index.searchTerm("tension").size());
+        assertEquals(1, index.searchTerm("Elevada").size());
+        assertTrue(index.searchTerm("tens").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Term queries return every matching annotation across patients in order")
+    void testTermAcrossPatients() {
+        index.add(validCIP, 0, "Alergia a penicilina");
+        index.add(otherCIP, 0, "Sin alergias conocidas");
+        index.add(otherCIP, 1, "Reacción a penicilina, posible alergia");
+
+        assertEquals(List.of(new HistoryHit(validCIP, 0), new HistoryHit(otherCIP, 1)),
+                index.searchTerm("penicilina"));
+        assertEquals(List.of(new HistoryHit(otherCIP, 1)), index.searchTerm(otherCIP, "penicilina"));
+        assertTrue(index.searchTerm("ibuprofeno").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Phrase queries require consecutive terms in the same annotation")
+    void testPhraseQuery() {
+        index.add(validCIP, 0, "Alergia a la penicilina");
+        index.add(validCIP, 1, "La penicilina no produce alergia");
+        index.add(otherCIP, 0, "alergia, a la PENICILINA; confirmada");
+
+        assertEquals(List.of(new HistoryHit(validCIP, 0), new HistoryHit(otherCIP, 0)),
+                index.searchPhrase("alergia a la penicilina"));
+        assertEquals(List.of(new HistoryHit(validCIP, 1)), index.searchPhrase("no produce"));
+        assertTrue(index.searchPhrase("penicilina alergia").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Phrases with repeated terms are matched at the right positions")
+    void testPhraseWithRepeatedTerms() {
+        index.add(validCIP, 0, "dolor de cabeza y dolor de espalda");
+
+        assertEquals(1, index.searchPhrase("dolor de espalda").size());
+        assertTrue(index.searchPhrase("cabeza de dolor").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Postings of many documents survive varint encoding")
+    void testLargePostings() {
+        for (int i = 0; i < 5_000; i++) {
+            index.add(i % 2 == 0 ? validCIP : otherCIP, i / 2,
+                    i % 1000 == 999 ? "control rutinario metformina" : "control rutinario");
+        }
+
+        assertEquals(5_000, index.searchTerm("control").size());
+        List<HistoryHit> hits = index.searchPhrase("rutinario metformina");
+        assertEquals(5, hits.size());
+        assertEquals(new HistoryHit(otherCIP, 499), hits.get(0));
+        assertEquals(3, index.getTermCount());
+    }
+
+    @Test
+    @DisplayName("addHistory indexes an existing history and unknown patients yield no hits")
+    void testAddHistoryAndUnknownPatient() throws Exception {
+        MedicalHistory hce = new MedicalHistory(validCIP, 100);
+        hce.addMedicalHistoryAnnotations("Diabetes tipo 2");
+        index.addHistory(hce);
+
+        assertEquals(1, index.searchPhrase(validCIP, "tipo 2").size());
+        assertTrue(index.searchTerm(otherCIP, "diabetes").isEmpty());
+        assertTrue(index.searchPhrase("  ,; ").isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> index.searchTerm(null));
+    }
+
+    @Test
+    @DisplayName("Indexing a history again only adds the annotations not yet indexed")
+    void testReindexingDoesNotDuplicateHits() throws Exception {
+        MedicalHistory hce = new MedicalHistory(validCIP, 100);
+        hce.addListener(index);
+        hce.addMedicalHistoryAnnotations("Diabetes tipo 2");
+        index.addHistory(hce);
+        index.add(validCIP, 0, "Diabetes tipo 2");
+
+        MedicalHistory downloaded = new MedicalHistory(validCIP, 100);
+        downloaded.addMedicalHistoryAnnotations("Diabetes tipo 2");
+        downloaded.addMedicalHistoryAnnotations("Control de diabetes");
+        index.addHistory(downloaded);
+
+        assertEquals(List.of(new HistoryHit(validCIP, 0), new HistoryHit(validCIP, 1)),
+                index.searchTerm("diabetes"));
+        assertEquals(2, index.getDocumentCount());
+    }
+}
@@ -0,0 +1,353 @@
+package services;
+
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.io.TempDir;
+import data.*;
+import services.doubles.HealthNationalServiceStub;
+
+import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("MappedHistoryStore Tests")
+public class MappedHistoryStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private HealthCardID validCIP;
+    private HealthCardID otherCIP;
+
+    @BeforeEach
+    void setUp() throws InvalidHealthCardIDException {
+        validCIP = new HealthCardID("1234567890ABCDEF");
+        otherCIP = new HealthCardID("FEDCBA0987654321");
+    }
+
+    @Nested
+    @DisplayName("Store")
+    class StoreTests {
+
+        @Test
+        @DisplayName("Appends to an opened history are written through and survive a restart")
+        void testWriteThroughSurvivesRestart() throws Exception {
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                MedicalHistory hce = store.open(validCIP, 100);
+                hce.addMedicalHistoryAnnotations("Paciente con hipertensión", new Date(1_000L));
+                hce.addMedicalHistoryAnnotations("Control de tensión", new Date(2_000L));
+                hce.setNewDoctor(200);
+                assertEquals(2, store.getAnnotationCount(validCIP));
+            }
+
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                MedicalHistory hce = store.load(validCIP);
+
+                assertNotNull(hce);
+                assertEquals(200, hce.getMembShipNumb());
+                assertEquals("Paciente con hipertensión\nControl de tensión", hce.getHistory());
+                assertEquals(new Date(2_000L), hce.getAnnotationDate(1));
+            }
+        }
+
+        @Test
+        @DisplayName("Loaded annotations are views over the mapped segment")
+        void testLoadIsZeroCopy() throws Exception {
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                store.open(validCIP, 100).addMedicalHistoryAnnotations("Alergia a penicilina", new Date());
+
+                CharSequence view = store.load(validCIP).getAnnotationView(0);
+
+                assertTrue(view instanceof CharBuffer);
+                assertTrue(((CharBuffer) view).isDirect());
+                assertEquals("Alergia a penicilina", view.toString());
+            }
+        }
+
+        @Test
+        @DisplayName("Loaded histories do not write to the store")
+        void testLoadedHistoryIsDetached() throws Exception {
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                store.open(validCIP, 100).addMedicalHistoryAnnotations("Primera", new Date());
+
+                store.load(validCIP).addMedicalHistoryAnnotations("Local", new Date());
+
+                assertEquals(1, store.getAnnotationCount(validCIP));
+            }
+        }
+
+        @Test
+        @DisplayName("save appends only the new annotations of a grown history")
+        void testSaveAppendsTail() throws Exception {
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                MedicalHistory hce = new MedicalHistory(validCIP, 100);
+                hce.addMedicalHistoryAnnotations("Primera", new Date(1_000L));
+                store.save(hce);
+                long used = store.getUsedBytes();
+
+                hce.addMedicalHistoryAnnotations("Segunda", new Date(2_000L));
+                store.save(hce);
+
+                assertEquals(2, store.getAnnotationCount(validCIP));
+                assertEquals(used + 56, store.getUsedBytes());
+                assertEquals("Primera\nSegunda", store.load(validCIP).getHistory());
+            }
+        }
+
+        @Test
+        @DisplayName("save replaces a stored history that is not a prefix of the new one")
+        void testSaveReplacesDivergedHistory() throws Exception {
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                MedicalHistory first = new MedicalHistory(validCIP, 100);
+                first.addMedicalHistoryAnnotations("Antigua", new Date(1_000L));
+                store.save(first);
+
+                MedicalHistory replaced = new MedicalHistory(validCIP, 300);
+                replaced.addMedicalHistoryAnnotations("Nueva", new Date(5_000L));
+                store.save(replaced);
+            }
+
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                MedicalHistory hce = store.load(validCIP);
+                assertEquals("Nueva", hce.getHistory());
+                assertEquals(300, hce.getMembShipNumb());
+            }
+        }
+
+        @Test
+        @DisplayName("Records roll over to new segments and keep per-patient order")
+        void testSegmentRollover() throws Exception {
+            String text = "x".repeat(500);
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                MedicalHistory a = store.open(validCIP, 100);
+                MedicalHistory b = store.open(otherCIP, 100);
+                for (int i = 0; i < 10; i++) {
+                    a.addMedicalHistoryAnnotations(text + i, new Date());
+                    b.addMedicalHistoryAnnotations("b" + i, new Date());
+                }
+                assertTrue(store.getSegmentCount() > 1);
+            }
+
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                assertEquals(2, store.getPatientCount());
+                MedicalHistory a = store.load(validCIP);
+                assertEquals(10, a.getAnnotationCount());
+                assertEquals(text + 9, a.getAnnotation(9));
+                assertEquals("b3", store.load(otherCIP).getAnnotation(3));
+            }
+        }
+
+        @Test
+        @DisplayName("A torn record at the end is discarded on recovery and overwritten")
+        void testTornRecordIsDiscarded() throws Exception {
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                MedicalHistory hce = store.open(validCIP, 100);
+                hce.addMedicalHistoryAnnotations("Completa", new Date());
+                hce.addMedicalHistoryAnnotations("Cortada", new Date());
+            }
+            // Se corrompe el texto de la última anotación (el CRC deja de cuadrar)
+            try (FileChannel ch = FileChannel.open(dir.resolve("history-00000.seg"),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer b = ByteBuffer.allocate(2);
+                ch.read(b, 136);
+                b.put(0, (byte) (b.get(0) ^ 0x7F));
+                ch.write(b.flip(), 136);
+            }
+
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                assertEquals(1, store.getAnnotationCount(validCIP));
+                store.open(validCIP, 100).addMedicalHistoryAnnotations("Otra", new Date());
+            }
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                assertEquals("Completa\nOtra", store.load(validCIP).getHistory());
+            }
+        }
+
+        @Test
+        @DisplayName("Annotations larger than a segment are rejected")
+        void testAnnotationTooLarge() throws Exception {
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                MedicalHistory hce = store.open(validCIP, 100);
+
+                assertThrows(IllegalArgumentException.class, () -> {
+                    hce.addMedicalHistoryAnnotations("x".repeat(4096), new Date());
+                });
+            }
+        }
+
+        @Test
+        @DisplayName("Invalid segment sizes are rejected")
+        void testInvalidSegmentSize() {
+            assertThrows(IllegalArgumentException.class, () -> new MappedHistoryStore(dir, 100));
+            assertThrows(IllegalArgumentException.class, () -> new MappedHistoryStore(dir, 4100));
+        }
+    }
+
+    /**
+     * SNS con una sola historia, que otros terminales pueden ampliar, y que cuenta
+     * las descargas completas y las de páginas
+     */
+    private static final class HistorySns extends HealthNationalServiceStub {
+        final MedicalHistory history;
+        final AtomicInteger fullCalls = new AtomicInteger();
+        final AtomicInteger pageCalls = new AtomicInteger();
+        volatile boolean down;
+
+        HistorySns(HealthCardID cip) throws IncorrectParametersException {
+            history = new MedicalHistory(cip, 100);
+        }
+
+        @Override
+        public synchronized MedicalHistory getMedicalHistory(HealthCardID cip) throws ConnectException {
+            fullCalls.incrementAndGet();
+            checkUp();
+            return new MedicalHistory(history);
+        }
+
+        @Override
+        public synchronized HistoryPage getMedicalHistoryPage(HealthCardID cip, int before, int pageSize)
+                throws ConnectException {
+            pageCalls.incrementAndGet();
+            checkUp();
+            return HistoryPage.of(history, before, pageSize);
+        }
+
+        @Override
+        public synchronized MedicalPrescription sendHistoryAndPrescription(
+                HealthCardID cip, MedicalHistory hce, String illness, MedicalPrescription mPresc)
+                throws ConnectException, InvalidePrescripCodeException {
+            checkUp();
+            for (int i = history.getAnnotationCount(); i < hce.getAnnotationCount(); i++) {
+                history.addMedicalHistoryAnnotations(hce.getAnnotation(i), hce.getAnnotationDate(i));
+            }
+            return super.sendHistoryAndPrescription(cip, hce, illness, mPresc);
+        }
+
+        synchronized void addFromOtherTerminal(String annot) {
+            history.addMedicalHistoryAnnotations(annot);
+        }
+
+        private void checkUp() throws ConnectException {
+            if (down) {
+                throw new ConnectException("Network connection failed");
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("StoredHistoryHealthNationalService")
+    class DecoratorTests {
+
+        @Test
+        @DisplayName("Histories are downloaded once and served from the store after a restart")
+        void testServedFromStoreAfterRestart() throws Exception {
+            HistorySns sns = new HistorySns(validCIP);
+            sns.addFromOtherTerminal("Paciente con hipertensión");
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                StoredHistoryHealthNationalService hns = new StoredHistoryHealthNationalService(sns, store);
+                hns.getMedicalHistory(validCIP);
+                assertEquals(1, sns.fullCalls.get());
+            }
+
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                StoredHistoryHealthNationalService hns = new StoredHistoryHealthNationalService(sns, store);
+                MedicalHistory hce = hns.getMedicalHistory(validCIP);
+
+                assertEquals(validCIP, hce.getCip());
+                assertEquals("Paciente con hipertensión", hce.getHistory());
+                assertEquals(1, sns.fullCalls.get());
+                assertEquals(1, sns.pageCalls.get());
+                assertEquals(1, hns.getStoreHitCount());
+                assertEquals(hce.getAnnotationCount(), hce.getBaseAnnotationCount());
+            }
+        }
+
+        @Test
+        @DisplayName("Annotations added by another terminal are fetched as a tail and stored")
+        void testStoredHistoryIsRefreshed() throws Exception {
+            HistorySns sns = new HistorySns(validCIP);
+            sns.addFromOtherTerminal("Primera consulta");
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                StoredHistoryHealthNationalService hns = new StoredHistoryHealthNationalService(sns, store);
+                hns.getMedicalHistory(validCIP);
+                sns.addFromOtherTerminal("Consulta en otro centro");
+
+                MedicalHistory hce = hns.getMedicalHistory(validCIP);
+
+                assertEquals(2, hce.getAnnotationCount());
+                assertEquals("Consulta en otro centro", hce.getAnnotation(1));
+                assertEquals(2, hce.getBaseAnnotationCount());
+                assertEquals(1, sns.fullCalls.get());
+                assertEquals(2, store.getAnnotationCount(validCIP));
+            }
+        }
+
+        @Test
+        @DisplayName("More new annotations than a page, or a diverged history, force a full download")
+        void testLargeTailForcesDownload() throws Exception {
+            HistorySns sns = new HistorySns(validCIP);
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                StoredHistoryHealthNationalService hns = new StoredHistoryHealthNationalService(sns, store);
+                hns.setRefreshPageSize(2);
+                hns.getMedicalHistory(validCIP);
+                for (int i = 0; i < 3; i++) {
+                    sns.addFromOtherTerminal("Control " + i);
+                }
+
+                assertEquals(3, hns.getMedicalHistory(validCIP).getAnnotationCount());
+                assertEquals(2, sns.fullCalls.get());
+                assertEquals(3, store.getAnnotationCount(validCIP));
+            }
+        }
+
+        @Test
+        @DisplayName("Without the SNS the stored copy is still served")
+        void testOfflineServesStoredCopy() throws Exception {
+            HistorySns sns = new HistorySns(validCIP);
+            sns.addFromOtherTerminal("Paciente con hipertensión");
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                StoredHistoryHealthNationalService hns = new StoredHistoryHealthNationalService(sns, store);
+                hns.getMedicalHistory(validCIP);
+                sns.down = true;
+
+                assertEquals("Paciente con hipertensión", hns.getMedicalHistory(validCIP).getHistory());
+                assertEquals(1, hns.getOfflineHitCount());
+            }
+        }
+
+        @Test
+        @DisplayName("A successful send stores the new annotations")
+        void testSendStoresHistory() throws Exception {
+            HistorySns sns = new HistorySns(validCIP);
+            try (MappedHistoryStore store = new MappedHistoryStore(dir, 4096)) {
+                StoredHistoryHealthNationalService hns = new StoredHistoryHealthNationalService(sns, store);
+                MedicalHistory hce = hns.getMedicalHistory(validCIP);
+                hce.addMedicalHistoryAnnotations("Paciente estable");
+
+                MedicalPrescription presc = new MedicalPrescription(validCIP, 100, "Hipertensión");
+                presc.addLine(new ProductID("123456789012"),
+                        new String[]{"BEFORELUNCH", "15", "1", "1", "DAY", "Con agua", ""});
+                presc.setPrescDate(new Date());
+                presc.setEndDate(new Date(System.currentTimeMillis() + 86_400_000L * 15));
+                presc.seteSign(new DigitalSignature(new byte[]{1, 2, 3}));
+                hns.sendHistoryAndPrescription(validCIP, hce, "Hipertensión", presc);
+
+                assertEquals(1, store.getAnnotationCount(validCIP));
+                assertEquals("Paciente estable", hns.getMedicalHistory(validCIP).getHistory());
+                assertEquals(1, sns.fullCalls.get());
+                assertEquals(0, hns.getStoreFailureCount());
+            }
+        }
+    }
+}
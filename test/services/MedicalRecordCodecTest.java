@@ -0,0 +1,143 @@
+package services;
+
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import consultamedica.MedicalPrescriptionLine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import data.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("MedicalRecordCodec Tests")
+public class MedicalRecordCodecTest {
+
+    private HealthCardID validCIP;
+    private ProductID medicine1;
+
+    @BeforeEach
+    void setUp() throws InvalidHealthCardIDException, InvalidProductIDException {
+        validCIP = new HealthCardID("1234567890ABCDEF");
+        medicine1 = new ProductID("123456789012");
+    }
+
+    @Test
+    @DisplayName("History round-trips through the codec")
+    void testHistoryRoundTrip() throws Exception {
+        MedicalHistory hce = new MedicalHistory(validCIP, 100);
+        hce.addMedicalHistoryAnnotations("Alergia a la penicilina");
+        hce.addMedicalHistoryAnnotations("Hipertensión controlada");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MedicalRecordCodec.writeHistory(new DataOutputStream(bytes), hce);
+        MedicalHistory decoded = MedicalRecordCodec.readHistory(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(validCIP, decoded.getCip());
+        assertEquals(100, decoded.getMembShipNumb());
+        assertEquals(hce.getHistory(), decoded.getHistory());
+        assertEquals(2, decoded.getAnnotationCount());
+        assertEquals(hce.getAnnotationDate(1), decoded.getAnnotationDate(1));
+    }
+
+    @Test
+    @DisplayName("The base version of a history survives the codec")
+    void testHistoryBaseRoundTrip() throws Exception {
+        MedicalHistory hce = new MedicalHistory(validCIP, 100);
+        hce.addMedicalHistoryAnnotations("Alergia a la penicilina");
+        hce.markSynchronized();
+        hce.addMedicalHistoryAnnotations("Hipertensión controlada");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MedicalRecordCodec.writeHistory(new DataOutputStream(bytes), hce);
+        MedicalHistory decoded = MedicalRecordCodec.readHistory(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(1, decoded.getBaseAnnotationCount());
+        assertEquals(List.of("Hipertensión controlada"), HistoryDelta.of(decoded).getAnnotations());
+    }
+
+    @Test
+    @DisplayName("A paged history is written without loading its older annotations")
+    void testLoadedHistoryRoundTrip() throws Exception {
+        MedicalHistory hce = new MedicalHistory(validCIP, 100);
+        hce.setOlderAnnotations(5, h -> {
+            throw new IOException("SNS no disponible");
+        });
+        hce.addMedicalHistoryAnnotations("Última página");
+        hce.markSynchronized();
+        hce.addMedicalHistoryAnnotations("Consulta sin conexión");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MedicalRecordCodec.writeLoadedHistory(new DataOutputStream(bytes), hce);
+        MedicalHistory decoded = MedicalRecordCodec.readHistory(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(7, decoded.getAnnotationCount());
+        assertEquals(2, decoded.getLoadedAnnotationCount());
+        assertEquals(6, decoded.getBaseAnnotationCount());
+        HistoryDelta delta = HistoryDelta.of(decoded);
+        assertEquals(6, delta.getBaseCount());
+        assertEquals(List.of("Consulta sin conexión"), delta.getAnnotations());
+    }
+
+    @Test
+    @DisplayName("Histories in an unknown format are rejected")
+    void testUnknownHistoryFormat() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        MedicalRecordCodec.writeString(out, validCIP.getPersonalID());
+        out.writeInt(100);
+        MedicalRecordCodec.writeString(out, "Alergia a la penicilina\nHipertensión controlada");
+
+        assertThrows(IOException.class, () -> MedicalRecordCodec.readHistory(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    @DisplayName("Signed prescription round-trips through the codec")
+    void testPrescriptionRoundTrip() throws Exception {
+        MedicalPrescription presc = new MedicalPrescription(validCIP, 100, "Hipertensión");
+        presc.addLine(medicine1, new String[]{"BEFORELUNCH", "15", "1.5", "8", "HOUR", "Con agua", ""});
+        presc.setPrescCode(new ePrescripCode("TRAT-12345"));
+        presc.setPrescDate(new Date(1_000_000L));
+        presc.setEndDate(new Date(2_000_000L));
+        presc.seteSign(new DigitalSignature(new byte[]{1, 2, 3}));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MedicalRecordCodec.writePrescription(new DataOutputStream(bytes), presc);
+        MedicalPrescription decoded = MedicalRecordCodec.readPrescription(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals("Hipertensión", decoded.getIllness());
+        assertEquals(presc.getPrescCode(), decoded.getPrescCode());
+        assertEquals(presc.getPrescDate(), decoded.getPrescDate());
+        assertEquals(presc.getEndDate(), decoded.getEndDate());
+        assertEquals(presc.geteSign(), decoded.geteSign());
+
+        MedicalPrescriptionLine line = decoded.getLine(medicine1);
+        assertEquals(1.5f, line.getGuidelines().getPosology().getDose());
+        assertEquals(8f, line.getGuidelines().getPosology().getFreq());
+        assertEquals("Con agua", line.getGuidelines().getInstructions());
+    }
+
+    @Test
+    @DisplayName("Truncated input is reported as IOException")
+    void testTruncatedInput() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MedicalRecordCodec.writeHistory(new DataOutputStream(bytes), new MedicalHistory(validCIP, 100));
+        byte[] truncated = java.util.Arrays.copyOf(bytes.toByteArray(), 10);
+
+        assertThrows(IOException.class, () -> {
+            MedicalRecordCodec.readHistory(new DataInputStream(new ByteArrayInputStream(truncated)));
+        });
+    }
+}
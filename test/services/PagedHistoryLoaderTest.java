@@ -0,0 +1,104 @@
+package services;
+
+import consultamedica.ConsultationTerminal;
+import consultamedica.MedicalHistory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import data.HealthCardID;
+import services.doubles.DecisionMakingAIStub;
+import services.doubles.HealthNationalServiceMock;
+import services.simulation.SimulatedHealthNationalService;
+import services.simulation.SnsOperation;
+
+import java.io.UncheckedIOException;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("PagedHistoryLoader Tests")
+public class PagedHistoryLoaderTest {
+
+    private SimulatedHealthNationalService sns;
+    private HealthCardID cip;
+
+    @BeforeEach
+    void setUp() {
+        sns = new SimulatedHealthNationalService(11L, 100);
+        cip = sns.getPatient(3);
+    }
+
+    @Test
+    @DisplayName("Opening a history downloads only the newest page")
+    void testOpenLoadsNewestPage() throws Exception {
+        MedicalHistory full = sns.getMedicalHistory(cip);
+
+        MedicalHistory paged = PagedHistoryLoader.open(sns, cip, 4);
+
+        assertEquals(full.getAnnotationCount(), paged.getAnnotationCount());
+        assertEquals(4, paged.getLoadedAnnotationCount());
+        assertEquals(full.getAnnotation(full.getAnnotationCount() - 1),
+                paged.getAnnotation(paged.getAnnotationCount() - 1));
+        assertEquals(full.getMembShipNumb(), paged.getMembShipNumb());
+    }
+
+    @Test
+    @DisplayName("Older pages are fetched on demand until the full history is available")
+    void testOlderPagesOnDemand() throws Exception {
+        MedicalHistory full = sns.getMedicalHistory(cip);
+        long callsBefore = sns.getCallCount(SnsOperation.GET_HISTORY);
+
+        MedicalHistory paged = PagedHistoryLoader.open(sns, cip, 4);
+        assertEquals(full.getHistory(), paged.getHistory());
+
+        int pages = (full.getAnnotationCount() + 3) / 4;
+        assertEquals(pages, sns.getCallCount(SnsOperation.GET_HISTORY) - callsBefore);
+        assertTrue(paged.isFullyLoaded());
+    }
+
+    @Test
+    @DisplayName("Decorators serve pages from their cached full history")
+    void testCachingDecoratorSlicesCachedHistory() throws Exception {
+        CachingHealthNationalService caching = new CachingHealthNationalService(sns, 16,
+                java.time.Duration.ofMinutes(1));
+        caching.getMedicalHistory(cip);
+        long callsBefore = sns.getCallCount(SnsOperation.GET_HISTORY);
+
+        MedicalHistory paged = PagedHistoryLoader.open(caching, cip, 2);
+
+        assertEquals(sns.getMedicalHistory(cip).getHistory(), paged.getHistory());
+        assertEquals(callsBefore + 1, sns.getCallCount(SnsOperation.GET_HISTORY));
+    }
+
+    @Test
+    @DisplayName("A failing SNS surfaces when older annotations are read")
+    void testOlderPageFailure() throws Exception {
+        HealthNationalServiceMock hnsMock = new HealthNationalServiceMock();
+        MedicalHistory hce = PagedHistoryLoader.open(hnsMock, cip, 4);
+        hce.setOlderAnnotations(2, new PagedHistoryLoader(hnsMock, 4));
+        hnsMock.setThrowConnectException(true);
+
+        assertThrows(UncheckedIOException.class, () -> hce.getAnnotation(0));
+    }
+
+    @Test
+    @DisplayName("The terminal opens revisions with a paged history")
+    void testTerminalUsesPagedHistory() throws Exception {
+        ConsultationTerminal terminal = new ConsultationTerminal();
+        terminal.setHealthNationalService(sns);
+        terminal.setDecisionMakingAI(new DecisionMakingAIStub());
+        terminal.setHistoryPageSize(3);
+
+        terminal.initRevision(cip, sns.getIllnesses(cip).get(0));
+
+        assertEquals(3, terminal.getCurrentHistory().getLoadedAnnotationCount());
+        assertEquals(sns.getMedicalHistory(cip).getAnnotationCount(),
+                terminal.getCurrentHistory().getAnnotationCount());
+    }
+
+    @Test
+    @DisplayName("Invalid page sizes are rejected")
+    void testInvalidPageSize() {
+        assertThrows(IllegalArgumentException.class, () -> new PagedHistoryLoader(sns, 0));
+        assertThrows(IllegalArgumentException.class, () -> sns.getMedicalHistoryPage(cip, -1, 4));
+        assertThrows(IllegalArgumentException.class, () -> new ConsultationTerminal().setHistoryPageSize(-1));
+    }
+}
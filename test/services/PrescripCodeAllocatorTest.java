@@ -0,0 +1,274 @@
+package services;
+
+import consultamedica.MedicalPrescription;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import data.HealthCardID;
+import data.ePrescripCode;
+import services.doubles.HealthNationalServiceStub;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("PrescripCodeAllocator Tests")
+public class PrescripCodeAllocatorTest {
+
+    /**
+     * SNS que concede bloques de códigos y registra las prescripciones con el código que traen
+     */
+    private static final class LeasingSns extends HealthNationalServiceStub {
+        private final AtomicLong nextNumber = new AtomicLong();
+        private final AtomicInteger leaseCalls = new AtomicInteger();
+        private final AtomicInteger registerCalls = new AtomicInteger();
+        private final AtomicInteger pendingFailures = new AtomicInteger();
+        private volatile boolean throwConnectException;
+
+        @Override
+        public PrescripCodeLease leasePrescripCodes(int count) throws ConnectException {
+            leaseCalls.incrementAndGet();
+            if (throwConnectException || pendingFailures.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0) {
+                throw new ConnectException("Network connection failed");
+            }
+            return new PrescripCodeLease("LEASE", nextNumber.getAndAdd(count), count);
+        }
+
+        @Override
+        public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc) {
+            registerCalls.incrementAndGet();
+            return ePresc;
+        }
+
+        void setThrowConnectException(boolean value) {
+            throwConnectException = value;
+        }
+
+        void setFailNextCalls(int count) {
+            pendingFailures.set(count);
+        }
+
+        int getLeaseCalls() {
+            return leaseCalls.get();
+        }
+
+        int getRegisterCalls() {
+            return registerCalls.get();
+        }
+    }
+
+    private LeasingSns sns;
+    private ExecutorService pool;
+
+    @BeforeEach
+    void setUp() {
+        sns = new LeasingSns();
+        pool = Executors.newFixedThreadPool(16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Nested
+    @DisplayName("Code Leases")
+    class LeaseTests {
+
+        @Test
+        @DisplayName("Codes are prefix, hyphen and a zero-padded number")
+        void testCodeFormat() throws Exception {
+            PrescripCodeLease lease = new PrescripCodeLease("LEASE", 42, 10);
+
+            assertEquals("LEASE-0000000042", lease.codeAt(0).getCode());
+            assertEquals("LEASE-0000000051", lease.codeAt(9).getCode());
+            assertThrows(IndexOutOfBoundsException.class, () -> lease.codeAt(10));
+        }
+
+        @Test
+        @DisplayName("Invalid prefixes and ranges are rejected")
+        void testInvalidLease() {
+            assertThrows(IllegalArgumentException.class, () -> new PrescripCodeLease("", 0, 10));
+            assertThrows(IllegalArgumentException.class, () -> new PrescripCodeLease("PREFIJO123", 0, 10));
+            assertThrows(IllegalArgumentException.class, () -> new PrescripCodeLease("A-B", 0, 10));
+            assertThrows(IllegalArgumentException.class, () -> new PrescripCodeLease("A", -1, 10));
+            assertThrows(IllegalArgumentException.class,
+                    () -> new PrescripCodeLease("A", PrescripCodeLease.MAX_NUMBER, 2));
+        }
+    }
+
+    @Nested
+    @DisplayName("Allocation")
+    class AllocationTests {
+
+        @Test
+        @DisplayName("Codes are handed out locally until the lease runs out")
+        void testLocalAllocation() throws Exception {
+            PrescripCodeAllocator allocator = new PrescripCodeAllocator(sns, 100, 0);
+
+            Set<ePrescripCode> codes = new HashSet<>();
+            for (int i = 0; i < 100; i++) {
+                codes.add(allocator.nextCode());
+            }
+
+            assertEquals(100, codes.size());
+            assertEquals(1, sns.getLeaseCalls());
+
+            allocator.nextCode();
+            assertEquals(2, sns.getLeaseCalls());
+        }
+
+        @Test
+        @DisplayName("The next lease is requested before the current one is exhausted")
+        void testRefillAhead() throws Exception {
+            PrescripCodeAllocator allocator = new PrescripCodeAllocator(sns, 10, 3);
+            allocator.setLeaseExecutor(Runnable::run);
+
+            for (int i = 0; i < 7; i++) {
+                allocator.nextCode();
+            }
+            assertEquals(1, sns.getLeaseCalls());
+
+            allocator.nextCode();
+            assertEquals(2, sns.getLeaseCalls());
+
+            // El bloque reservado de antemano se usa sin otra llamada
+            for (int i = 0; i < 3; i++) {
+                allocator.nextCode();
+            }
+            assertEquals(2, sns.getLeaseCalls());
+            assertEquals(2, allocator.getLeaseCount());
+        }
+
+        @Test
+        @DisplayName("Concurrent callers never receive the same code")
+        void testNoDuplicatesAcrossThreads() throws Exception {
+            PrescripCodeAllocator allocator = new PrescripCodeAllocator(sns, 64);
+            int threads = 16;
+            int perThread = 2_000;
+            CountDownLatch start = new CountDownLatch(1);
+
+            List<Future<List<ePrescripCode>>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    List<ePrescripCode> codes = new ArrayList<>(perThread);
+                    for (int i = 0; i < perThread; i++) {
+                        codes.add(allocator.nextCode());
+                    }
+                    return codes;
+                }));
+            }
+            start.countDown();
+
+            Set<ePrescripCode> all = new HashSet<>();
+            for (Future<List<ePrescripCode>> r : results) {
+                all.addAll(r.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(threads * perThread, all.size());
+            assertEquals(threads * perThread, allocator.getIssuedCount());
+        }
+
+        @Test
+        @DisplayName("A restarted allocator does not repeat codes")
+        void testNoDuplicatesAcrossRestarts() throws Exception {
+            Set<ePrescripCode> codes = new HashSet<>();
+            PrescripCodeAllocator first = new PrescripCodeAllocator(sns, 50);
+            for (int i = 0; i < 30; i++) {
+                codes.add(first.nextCode());
+            }
+
+            PrescripCodeAllocator restarted = new PrescripCodeAllocator(sns, 50);
+            for (int i = 0; i < 30; i++) {
+                assertTrue(codes.add(restarted.nextCode()));
+            }
+        }
+
+        @Test
+        @DisplayName("A failed lease surfaces as ConnectException")
+        void testLeaseFailure() {
+            sns.setThrowConnectException(true);
+            PrescripCodeAllocator allocator = new PrescripCodeAllocator(sns, 10);
+
+            assertThrows(ConnectException.class, allocator::nextCode);
+        }
+
+        @Test
+        @DisplayName("A failed prefetch is retried when the lease runs out")
+        void testFailedPrefetchIsRetried() throws Exception {
+            PrescripCodeAllocator allocator = new PrescripCodeAllocator(sns, 4, 2);
+            allocator.setLeaseExecutor(Runnable::run);
+
+            allocator.nextCode();
+            sns.setFailNextCalls(1);
+            allocator.nextCode();
+            allocator.nextCode();
+            allocator.nextCode();
+
+            assertNotNull(allocator.nextCode());
+            assertEquals(3, sns.getLeaseCalls());
+        }
+    }
+
+    @Test
+    @DisplayName("generateTreatmCodeAndRegister registers each prescription with a leased code")
+    void testCodeLeasingService() throws Exception {
+        CodeLeasingHealthNationalService service = new CodeLeasingHealthNationalService(sns, 1000);
+        HealthCardID cip = new HealthCardID("1234567890ABCDEF");
+
+        Set<ePrescripCode> codes = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            MedicalPrescription presc = new MedicalPrescription(cip, 100, "Hipertensión");
+            codes.add(service.generateTreatmCodeAndRegister(presc).getPrescCode());
+        }
+
+        assertEquals(100, codes.size());
+        assertTrue(codes.stream().allMatch(code -> code.getCode().startsWith("LEASE-")));
+        assertEquals(1, sns.getLeaseCalls());
+        assertEquals(100, sns.getRegisterCalls());
+    }
+
+    @Test
+    @DisplayName("A prescription keeps its leased code when it is sent again")
+    void testLeasedCodeIsKept() throws Exception {
+        CodeLeasingHealthNationalService service = new CodeLeasingHealthNationalService(sns, 10);
+        HealthCardID cip = new HealthCardID("1234567890ABCDEF");
+        MedicalPrescription presc = new MedicalPrescription(cip, 100, "Hipertensión");
+        presc.setPrescCode(new ePrescripCode("TRAT-12345"));
+
+        ePrescripCode leased = service.generateTreatmCodeAndRegister(presc).getPrescCode();
+        MedicalPrescription resent = new MedicalPrescription(presc);
+
+        assertTrue(leased.getCode().startsWith("LEASE-"));
+        assertEquals(leased, service.generateTreatmCodeAndRegister(resent).getPrescCode());
+        assertEquals(1, service.getAllocator().getIssuedCount());
+        assertTrue(new PrescripCodeLease("LEASE", 0, 10).contains(leased));
+        assertFalse(new PrescripCodeLease("LEASE", 1, 10).contains(leased));
+    }
+
+    @Test
+    @DisplayName("Without code leases the SNS keeps generating the codes")
+    void testSnsWithoutLeases() throws Exception {
+        CodeLeasingHealthNationalService service =
+                new CodeLeasingHealthNationalService(new HealthNationalServiceStub(), 10);
+        HealthCardID cip = new HealthCardID("1234567890ABCDEF");
+
+        for (int i = 0; i < 2; i++) {
+            MedicalPrescription presc = new MedicalPrescription(cip, 100, "Hipertensión");
+            assertTrue(service.generateTreatmCodeAndRegister(presc).getPrescCode().getCode().startsWith("CODE"));
+        }
+        assertEquals(0, service.getAllocator().getLeaseCount());
+    }
+}
@@ -0,0 +1,163 @@
+package services;
+
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import data.HealthCardID;
+import services.doubles.HealthNationalServiceMock;
+import services.doubles.HealthNationalServiceStub;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("PrescriptionBatcher Tests")
+public class PrescriptionBatcherTest {
+
+    private HealthNationalServiceMock hnsMock;
+    private PrescriptionBatcher batcher;
+    private HealthCardID validCIP;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        hnsMock = new HealthNationalServiceMock();
+        validCIP = new HealthCardID("1234567890ABCDEF");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
+
+    private PrescriptionSubmission submission() throws Exception {
+        return new PrescriptionSubmission(validCIP, new MedicalHistory(validCIP, 100),
+                "Hipertensión", new MedicalPrescription(validCIP, 100, "Hipertensión"));
+    }
+
+    @Test
+    @DisplayName("Submissions arriving together are sent in a single batch")
+    void testSubmissionsShareBatch() throws Exception {
+        batcher = new PrescriptionBatcher(hnsMock, 16, Duration.ofMillis(200));
+
+        List<CompletableFuture<MedicalPrescription>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(batcher.submit(submission()));
+        }
+        for (CompletableFuture<MedicalPrescription> r : results) {
+            assertNotNull(r.get(5, TimeUnit.SECONDS).getPrescCode());
+        }
+
+        assertEquals(1, hnsMock.getBatchCalls());
+        assertEquals(0, hnsMock.getSendCalls());
+        assertEquals(10, batcher.getSubmissionCount());
+    }
+
+    @Test
+    @DisplayName("A batch is closed when it reaches the maximum size")
+    void testMaxBatchSize() throws Exception {
+        batcher = new PrescriptionBatcher(hnsMock, 4, Duration.ofSeconds(5));
+
+        List<CompletableFuture<MedicalPrescription>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(batcher.submit(submission()));
+        }
+        for (CompletableFuture<MedicalPrescription> r : results) {
+            r.get(2, TimeUnit.SECONDS);
+        }
+
+        assertEquals(2, batcher.getBatchCount());
+    }
+
+    @Test
+    @DisplayName("A lone submission is sent once the maximum delay expires")
+    void testMaxDelay() throws Exception {
+        batcher = new PrescriptionBatcher(hnsMock, 100, Duration.ofMillis(20));
+
+        MedicalPrescription registered = batcher.submit(submission()).get(2, TimeUnit.SECONDS);
+
+        assertNotNull(registered.getPrescCode());
+        assertEquals(1, batcher.getBatchCount());
+    }
+
+    @Test
+    @DisplayName("A business error only fails its own submission")
+    void testPerSubmissionError() throws Exception {
+        hnsMock.setThrowNotCompletedMedicalPrescription(true);
+        batcher = new PrescriptionBatcher(hnsMock, 16, Duration.ofMillis(50));
+
+        CompletableFuture<MedicalPrescription> result = batcher.submit(submission());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> {
+            result.get(2, TimeUnit.SECONDS);
+        });
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+    }
+
+    @Test
+    @DisplayName("A connection failure fails every submission of the batch")
+    void testConnectionFailureFailsBatch() throws Exception {
+        hnsMock.setThrowConnectException(true);
+        batcher = new PrescriptionBatcher(hnsMock, 16, Duration.ofMillis(50));
+
+        CompletableFuture<MedicalPrescription> first = batcher.submit(submission());
+        CompletableFuture<MedicalPrescription> second = batcher.submit(submission());
+
+        for (CompletableFuture<MedicalPrescription> r : List.of(first, second)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> {
+                r.get(2, TimeUnit.SECONDS);
+            });
+            assertInstanceOf(ConnectException.class, e.getCause());
+        }
+    }
+
+    @Test
+    @DisplayName("Services without native batching fall back to one call per submission")
+    void testDefaultBatchFallsBackToSingleCalls() throws Exception {
+        batcher = new PrescriptionBatcher(new HealthNationalServiceStub(), 16, Duration.ofMillis(50));
+
+        CompletableFuture<MedicalPrescription> first = batcher.submit(submission());
+        CompletableFuture<MedicalPrescription> second = batcher.submit(submission());
+
+        assertNotNull(first.get(2, TimeUnit.SECONDS).getPrescCode());
+        assertNotNull(second.get(2, TimeUnit.SECONDS).getPrescCode());
+    }
+
+    @Test
+    @DisplayName("close sends pending submissions and rejects new ones")
+    void testClose() throws Exception {
+        batcher = new PrescriptionBatcher(hnsMock, 100, Duration.ofSeconds(10));
+
+        CompletableFuture<MedicalPrescription> pending = batcher.submit(submission());
+        batcher.close();
+
+        assertTrue(pending.isDone());
+        assertNotNull(pending.get().getPrescCode());
+
+        CompletableFuture<MedicalPrescription> rejected = batcher.submit(submission());
+        assertTrue(rejected.isCompletedExceptionally());
+    }
+
+    @Test
+    @DisplayName("Constructor rejects invalid parameters")
+    void testInvalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new PrescriptionBatcher(null, 10, Duration.ofMillis(10));
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            new PrescriptionBatcher(hnsMock, 0, Duration.ofMillis(10));
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            new PrescriptionBatcher(hnsMock, 10, null);
+        });
+    }
+}
@@ -0,0 +1,241 @@
+package services;
+
+import consultamedica.ConsultationTerminal;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import data.*;
+import services.doubles.DecisionMakingAIStub;
+import services.doubles.HealthNationalServiceMock;
+import services.simulation.LatencyDistribution;
+import services.simulation.OperationProfile;
+import services.simulation.SimulatedHealthNationalService;
+import services.simulation.SnsOperation;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("PrescriptionOutbox Tests")
+public class PrescriptionOutboxTest {
+
+    @TempDir
+    Path dir;
+
+    private HealthNationalServiceMock hnsMock;
+    private HealthCardID validCIP;
+
+    @BeforeEach
+    void setUp() throws InvalidHealthCardIDException {
+        hnsMock = new HealthNationalServiceMock();
+        validCIP = new HealthCardID("1234567890ABCDEF");
+    }
+
+    private MedicalPrescription signedPrescription(String illness) throws Exception {
+        MedicalPrescription presc = new MedicalPrescription(validCIP, 100, illness);
+        presc.addLine(new ProductID("123456789012"),
+                new String[]{"BEFORELUNCH", "15", "1", "1", "DAY", "Con agua", ""});
+        presc.setPrescDate(new Date());
+        presc.setEndDate(new Date(System.currentTimeMillis() + 86_400_000L * 15));
+        presc.seteSign(new DigitalSignature(new byte[]{1, 2, 3}));
+        return presc;
+    }
+
+    @Test
+    @DisplayName("Enqueued submissions are delivered once SNS is reachable")
+    void testDeliveryAfterOutage() throws Exception {
+        hnsMock.setThrowConnectException(true);
+        try (PrescriptionOutbox outbox = new PrescriptionOutbox(dir, hnsMock, 10)) {
+            OutboxReceipt receipt = outbox.enqueue(validCIP, new MedicalHistory(validCIP, 100),
+                    "Hipertensión", signedPrescription("Hipertensión"));
+
+            assertEquals("PROV-000000000000", receipt.getProvisionalId());
+            Thread.sleep(50);
+            assertFalse(receipt.isDelivered());
+            assertEquals(1, outbox.getPendingCount());
+
+            hnsMock.setThrowConnectException(false);
+            MedicalPrescription registered = receipt.getDelivery().get(5, TimeUnit.SECONDS);
+
+            assertNotNull(registered.getPrescCode());
+            assertEquals(0, outbox.getPendingCount());
+            assertEquals(1, outbox.getDeliveredCount());
+        }
+    }
+
+    @Test
+    @DisplayName("Submissions are delivered in enqueue order")
+    void testDeliveryOrder() throws Exception {
+        hnsMock.setThrowConnectException(true);
+        try (PrescriptionOutbox outbox = new PrescriptionOutbox(dir, hnsMock, 10)) {
+            List<OutboxReceipt> receipts = new ArrayList<>();
+            for (String illness : new String[]{"Asma", "Diabetes", "Hipertensión"}) {
+                receipts.add(outbox.enqueue(validCIP, new MedicalHistory(validCIP, 100),
+                        illness, signedPrescription(illness)));
+            }
+            hnsMock.setThrowConnectException(false);
+
+            List<String> order = new ArrayList<>();
+            for (OutboxReceipt receipt : receipts) {
+                order.add(receipt.getDelivery().get(5, TimeUnit.SECONDS).getIllness());
+            }
+            assertEquals(List.of("Asma", "Diabetes", "Hipertensión"), order);
+            assertTrue(receipts.get(0).getSequence() < receipts.get(2).getSequence());
+        }
+    }
+
+    @Test
+    @DisplayName("Pending submissions survive a restart")
+    void testRecoveryAfterRestart() throws Exception {
+        hnsMock.setThrowConnectException(true);
+        try (PrescriptionOutbox outbox = new PrescriptionOutbox(dir, hnsMock, 10)) {
+            outbox.enqueue(validCIP, new MedicalHistory(validCIP, 100),
+                    "Hipertensión", signedPrescription("Hipertensión"));
+        }
+
+        hnsMock.reset(); // SNS disponible y contadores a cero
+        try (PrescriptionOutbox reopened = new PrescriptionOutbox(dir, hnsMock, 10)) {
+            assertEquals(1, reopened.getPendingReceipts().size());
+            OutboxReceipt recovered = reopened.getPendingReceipts().iterator().next();
+            assertEquals("Hipertensión", recovered.getIllness());
+            recovered.getDelivery().get(5, TimeUnit.SECONDS);
+
+            // Las secuencias siguen creciendo tras el reinicio
+            OutboxReceipt next = reopened.enqueue(validCIP, new MedicalHistory(validCIP, 100),
+                    "Asma", signedPrescription("Asma"));
+            assertTrue(next.getSequence() > recovered.getSequence());
+            next.getDelivery().get(5, TimeUnit.SECONDS);
+        }
+
+        // Lo ya entregado no se vuelve a enviar
+        try (PrescriptionOutbox again = new PrescriptionOutbox(dir, hnsMock, 10)) {
+            assertEquals(0, again.getPendingCount());
+        }
+        assertEquals(2, hnsMock.getSendCalls());
+    }
+
+    @Test
+    @DisplayName("A torn record at the end of the log is discarded on recovery")
+    void testTornTailIsDiscarded() throws Exception {
+        hnsMock.setThrowConnectException(true);
+        try (PrescriptionOutbox outbox = new PrescriptionOutbox(dir, hnsMock, 10)) {
+            outbox.enqueue(validCIP, new MedicalHistory(validCIP, 100),
+                    "Hipertensión", signedPrescription("Hipertensión"));
+        }
+        try (FileChannel log = FileChannel.open(dir.resolve(PrescriptionOutbox.LOG_FILE),
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            log.write(ByteBuffer.wrap(new byte[]{0, 0, 1, 0, 7, 7}));
+        }
+
+        try (PrescriptionOutbox reopened = new PrescriptionOutbox(dir, hnsMock, 10)) {
+            assertEquals(1, reopened.getPendingCount());
+        }
+    }
+
+    @Test
+    @DisplayName("A paged history is queued with the SNS down and delivered as a delta")
+    void testPagedHistoryQueuedOffline() throws Exception {
+        SimulatedHealthNationalService sns = new SimulatedHealthNationalService(5L, 50);
+        HealthCardID cip = sns.getPatient(4);
+        String illness = sns.getIllnesses(cip).get(0);
+        int annotationsBefore = sns.getMedicalHistory(cip).getAnnotationCount();
+
+        ConsultationTerminal terminal = new ConsultationTerminal();
+        terminal.setHealthNationalService(sns);
+        terminal.setDecisionMakingAI(new DecisionMakingAIStub());
+        terminal.setHistoryPageSize(2);
+        try (PrescriptionOutbox outbox = new PrescriptionOutbox(dir, sns, 10)) {
+            terminal.setOutbox(outbox);
+            terminal.initRevision(cip, illness);
+            terminal.enterMedicalAssessmentInHistory("Consulta sin conexión");
+            terminal.initMedicalPrescriptionEdition();
+            terminal.enterMedicineWithGuidelines(new ProductID("123456789012"),
+                    new String[]{"BEFORELUNCH", "15", "1", "1", "DAY", "Con agua", ""});
+            terminal.enterTreatmentEndingDate(new Date(System.currentTimeMillis() + 86_400_000L * 15));
+            terminal.finishMedicalPrescriptionEdition();
+            terminal.stampeeSignature();
+
+            OperationProfile down = new OperationProfile(LatencyDistribution.none(), 1.0, 0);
+            sns.setProfile(SnsOperation.GET_HISTORY, down);
+            sns.setProfile(SnsOperation.SEND, down);
+            terminal.sendHistoryAndPrescription();
+            OutboxReceipt receipt = terminal.getLastOutboxReceipt();
+            assertNotNull(receipt);
+            assertFalse(terminal.getCurrentHistory().isFullyLoaded());
+
+            OperationProfile up = new OperationProfile(LatencyDistribution.none(), 0, 0);
+            sns.setProfile(SnsOperation.GET_HISTORY, up);
+            sns.setProfile(SnsOperation.SEND, up);
+            assertNotNull(receipt.getDelivery().get(5, TimeUnit.SECONDS).getPrescCode());
+
+            MedicalHistory registered = sns.getMedicalHistory(cip);
+            assertEquals(annotationsBefore + 1, registered.getAnnotationCount());
+            assertEquals("Consulta sin conexión", registered.getAnnotation(annotationsBefore));
+        }
+    }
+
+    @Test
+    @DisplayName("A failed acknowledgement does not deliver the submission again")
+    void testAckFailureDoesNotRedeliver() throws Exception {
+        try (FailingAckOutbox outbox = new FailingAckOutbox(dir, hnsMock)) {
+            outbox.ackFailures = 1;
+            OutboxReceipt first = outbox.enqueue(validCIP, new MedicalHistory(validCIP, 100),
+                    "Asma", signedPrescription("Asma"));
+            first.getDelivery().get(5, TimeUnit.SECONDS);
+            OutboxReceipt second = outbox.enqueue(validCIP, new MedicalHistory(validCIP, 100),
+                    "Diabetes", signedPrescription("Diabetes"));
+            second.getDelivery().get(5, TimeUnit.SECONDS);
+
+            assertEquals(0, outbox.ackFailures);
+            assertEquals(2, hnsMock.getSendCalls());
+            assertEquals(2, outbox.getDeliveredCount());
+        }
+        try (PrescriptionOutbox reopened = new PrescriptionOutbox(dir, hnsMock, 10)) {
+            assertEquals(0, reopened.getPendingCount());
+        }
+    }
+
+    @Test
+    @DisplayName("Business rejections complete the receipt exceptionally and are not retried")
+    void testRejectedSubmission() throws Exception {
+        hnsMock.setThrowNotCompletedMedicalPrescription(true);
+        try (PrescriptionOutbox outbox = new PrescriptionOutbox(dir, hnsMock, 10)) {
+            OutboxReceipt receipt = outbox.enqueue(validCIP, new MedicalHistory(validCIP, 100),
+                    "Hipertensión", signedPrescription("Hipertensión"));
+
+            assertThrows(Exception.class, () -> receipt.getDelivery().get(5, TimeUnit.SECONDS));
+            assertEquals(1, outbox.getRejectedCount());
+            assertEquals(1, hnsMock.getSendCalls());
+        }
+    }
+
+    /**
+     * Bandeja cuya confirmación falla las veces indicadas
+     */
+    private static final class FailingAckOutbox extends PrescriptionOutbox {
+        volatile int ackFailures;
+
+        FailingAckOutbox(Path directory, HealthNationalService hns) throws IOException {
+            super(directory, hns, 10);
+        }
+
+        @Override
+        void writeAck(long sequence) throws IOException {
+            if (ackFailures > 0) {
+                ackFailures--;
+                throw new IOException("Disco lleno");
+            }
+            super.writeAck(sequence);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package services;
+
+import consultamedica.IncorrectParametersException;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import data.*;
+import services.doubles.HealthNationalServiceMock;
+import services.doubles.HealthNationalServiceStub;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ResilientHealthNationalService Tests")
+public class ResilientHealthNationalServiceTest {
+
+    private HealthNationalServiceMock hnsMock;
+    private AtomicLong clock;
+    private ResilientHealthNationalService resilient;
+    private HealthCardID validCIP;
+
+    @BeforeEach
+    void setUp() throws InvalidHealthCardIDException {
+        hnsMock = new HealthNationalServiceMock();
+        clock = new AtomicLong();
+        resilient = new ResilientHealthNationalService(hnsMock, clock::get);
+        resilient.setBackoff(Duration.ofMillis(1), Duration.ofMillis(5));
+        validCIP = new HealthCardID("1234567890ABCDEF");
+    }
+
+    @Nested
+    @DisplayName("Retries")
+    class RetryTests {
+
+        @Test
+        @DisplayName("Reads are retried after transient ConnectExceptions")
+        void testReadIsRetried() throws Exception {
+            hnsMock.setFailNextCalls(2);
+
+            MedicalHistory history = resilient.getMedicalHistory(validCIP);
+
+            assertNotNull(history);
+            assertEquals(3, hnsMock.getHistoryCalls());
+            assertEquals(2, resilient.getRetryCount());
+        }
+
+        @Test
+        @DisplayName("ConnectException is rethrown when attempts are exhausted")
+        void testAttemptsExhausted() {
+            hnsMock.setFailNextCalls(5);
+
+            assertThrows(ConnectException.class, () -> {
+                resilient.getMedicalPrescription(validCIP, "Hipertensión");
+            });
+            assertEquals(3, hnsMock.getPrescriptionCalls());
+        }
+
+        @Test
+        @DisplayName("Submissions are not retried")
+        void testSendIsNotRetried() {
+            hnsMock.setFailNextCalls(1);
+
+            assertThrows(ConnectException.class, () -> {
+                resilient.sendHistoryAndPrescription(validCIP, new MedicalHistory(validCIP, 100),
+                        "Hipertensión", new MedicalPrescription(validCIP, 100, "Hipertensión"));
+            });
+            assertEquals(1, hnsMock.getSendCalls());
+        }
+    }
+
+    @Nested
+    @DisplayName("Circuit Breaker")
+    class CircuitBreakerTests {
+
+        @Test
+        @DisplayName("Circuit opens after consecutive failures and fails fast")
+        void testCircuitOpens() {
+            resilient.setMaxAttempts(1);
+            resilient.setCircuitBreaker(3, Duration.ofSeconds(10));
+            hnsMock.setThrowConnectException(true);
+
+            for (int i = 0; i < 3; i++) {
+                assertThrows(ConnectException.class, () -> resilient.getMedicalHistory(validCIP));
+            }
+            assertTrue(resilient.isCircuitOpen());
+
+            assertThrows(ConnectException.class, () -> resilient.getMedicalHistory(validCIP));
+            assertEquals(3, hnsMock.getHistoryCalls());
+            assertEquals(1, resilient.getRejectedCallCount());
+        }
+
+        @Test
+        @DisplayName("Circuit closes again after a successful trial call")
+        void testCircuitRecovers() throws Exception {
+            resilient.setMaxAttempts(1);
+            resilient.setCircuitBreaker(1, Duration.ofSeconds(10));
+            hnsMock.setThrowConnectException(true);
+            assertThrows(ConnectException.class, () -> resilient.getMedicalHistory(validCIP));
+            assertTrue(resilient.isCircuitOpen());
+
+            hnsMock.setThrowConnectException(false);
+            clock.addAndGet(Duration.ofSeconds(11).toNanos());
+
+            assertNotNull(resilient.getMedicalHistory(validCIP));
+            assertFalse(resilient.isCircuitOpen());
+        }
+
+        @Test
+        @DisplayName("Business errors do not open the circuit")
+        void testBusinessErrorsDoNotCount() {
+            resilient.setCircuitBreaker(1, Duration.ofSeconds(10));
+            hnsMock.setThrowHealthCardIDException(true);
+
+            assertThrows(IllegalArgumentException.class, () -> resilient.getMedicalHistory(validCIP));
+            assertFalse(resilient.isCircuitOpen());
+            assertEquals(1, hnsMock.getHistoryCalls());
+        }
+
+        @Test
+        @DisplayName("Unexpected runtime failures count as failures")
+        void testRuntimeFailuresCount() {
+            HealthNationalService truncating = new HealthNationalServiceStub() {
+                @Override
+                public MedicalHistory getMedicalHistory(HealthCardID cip) {
+                    throw new UncheckedIOException(new IOException("Respuesta cortada"));
+                }
+            };
+            ResilientHealthNationalService broken = new ResilientHealthNationalService(truncating, clock::get);
+            broken.setMaxAttempts(1);
+            broken.setCircuitBreaker(1, Duration.ofSeconds(10));
+
+            assertThrows(UncheckedIOException.class, () -> broken.getMedicalHistory(validCIP));
+            assertTrue(broken.isCircuitOpen());
+        }
+
+        @Test
+        @DisplayName("An Error during the half-open trial does not block later trials")
+        void testErrorReleasesTrial() throws Exception {
+            AtomicInteger calls = new AtomicInteger();
+            HealthNationalService flakyService = new HealthNationalServiceStub() {
+                @Override
+                public MedicalHistory getMedicalHistory(HealthCardID cip)
+                        throws ConnectException, IncorrectParametersException {
+                    switch (calls.incrementAndGet()) {
+                        case 1:
+                            throw new ConnectException("Network connection failed");
+                        case 2:
+                            throw new AssertionError("Fallo durante la llamada de prueba");
+                        default:
+                            return super.getMedicalHistory(cip);
+                    }
+                }
+            };
+            ResilientHealthNationalService flaky = new ResilientHealthNationalService(flakyService, clock::get);
+            flaky.setMaxAttempts(1);
+            flaky.setCircuitBreaker(1, Duration.ofSeconds(10));
+
+            assertThrows(ConnectException.class, () -> flaky.getMedicalHistory(validCIP));
+            clock.addAndGet(Duration.ofSeconds(11).toNanos());
+            assertThrows(AssertionError.class, () -> flaky.getMedicalHistory(validCIP));
+            assertTrue(flaky.isCircuitOpen());
+
+            clock.addAndGet(Duration.ofSeconds(11).toNanos());
+            assertNotNull(flaky.getMedicalHistory(validCIP));
+            assertFalse(flaky.isCircuitOpen());
+            assertEquals(3, calls.get());
+        }
+    }
+
+    @Nested
+    @DisplayName("Hedged Requests")
+    class HedgingTests {
+
+        @Test
+        @DisplayName("A slow history read is hedged and the fast answer wins")
+        void testSlowReadIsHedged() throws Exception {
+            AtomicInteger calls = new AtomicInteger();
+            HealthNationalService slowFirstCall = new HealthNationalServiceStub() {
+                @Override
+                public MedicalHistory getMedicalHistory(HealthCardID cip)
+                        throws ConnectException, IncorrectParametersException {
+                    if (calls.incrementAndGet() == 1) {
+                        try {
+                            Thread.sleep(2000);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return super.getMedicalHistory(cip);
+                }
+            };
+            ResilientHealthNationalService hedged = new ResilientHealthNationalService(slowFirstCall);
+            hedged.setHedgeDelay(Duration.ofMillis(50));
+
+            long start = System.nanoTime();
+            assertNotNull(hedged.getMedicalHistory(validCIP));
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            assertTrue(elapsedMillis < 1000, "La petición duplicada debería ganar: " + elapsedMillis + " ms");
+            assertEquals(1, hedged.getHedgedRequestCount());
+        }
+
+        @Test
+        @DisplayName("An interrupted hedged read fails without retrying and keeps the interrupt")
+        void testInterruptedReadIsNotRetried() {
+            HealthNationalService slow = new HealthNationalServiceStub() {
+                @Override
+                public MedicalHistory getMedicalHistory(HealthCardID cip)
+                        throws ConnectException, IncorrectParametersException {
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return super.getMedicalHistory(cip);
+                }
+            };
+            ResilientHealthNationalService hedged = new ResilientHealthNationalService(slow);
+            hedged.setHedgeDelay(Duration.ofSeconds(1));
+
+            Thread.currentThread().interrupt();
+            assertThrows(ConnectException.class, () -> hedged.getMedicalHistory(validCIP));
+
+            assertTrue(Thread.interrupted());
+            assertEquals(0, hedged.getRetryCount());
+            assertEquals(0, hedged.getHedgedRequestCount());
+            assertFalse(hedged.isCircuitOpen());
+        }
+
+        @Test
+        @DisplayName("Fast history reads are not hedged")
+        void testFastReadIsNotHedged() throws Exception {
+            resilient.setHedgeDelay(Duration.ofSeconds(1));
+
+            assertNotNull(resilient.getMedicalHistory(validCIP));
+            assertEquals(0, resilient.getHedgedRequestCount());
+            assertEquals(1, hnsMock.getHistoryCalls());
+        }
+    }
+}
@@ -8,18 +8,38 @@ import services.HealthNationalService;
 import data.HealthCardID;
 import data.ePrescripCode;
 import services.NotCompletedMedicalPrescription;
+import services.PrescriptionSubmission;
+import services.SubmissionResult;
 
 import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Mock para HealthNationalService - configurable para lanzar excepciones
  */
 public class HealthNationalServiceMock implements HealthNationalService {
 
+    // Códigos únicos aunque se registren varios en el mismo milisegundo
+    private static final AtomicLong NEXT_CODE = new AtomicLong();
+
     private boolean throwConnectException = false;
     private boolean throwHealthCardIDException = false;
     private boolean throwAnyCurrentPrescriptionException = false;
     private boolean throwNotCompletedMedicalPrescription = false;
+    private long historyLatencyMillis = 0;
+    private long prescriptionLatencyMillis = 0;
+    private long sendLatencyMillis = 0;
+
+    private final AtomicInteger pendingFailures = new AtomicInteger();
+
+    // Contadores de llamadas recibidas
+    private final AtomicInteger historyCalls = new AtomicInteger();
+    private final AtomicInteger prescriptionCalls = new AtomicInteger();
+    private final AtomicInteger sendCalls = new AtomicInteger();
+    private final AtomicInteger batchCalls = new AtomicInteger();
 
     // Configuradores
     public void setThrowConnectException(boolean value) {
@@ -38,18 +58,63 @@ public class HealthNationalServiceMock implements HealthNationalService {
         this.throwNotCompletedMedicalPrescription = value;
     }
 
+    public void setLatencyMillis(long historyLatency, long prescriptionLatency) {
+        this.historyLatencyMillis = historyLatency;
+        this.prescriptionLatencyMillis = prescriptionLatency;
+    }
+
+    /**
+     * Latencia de ida y vuelta de cada envío (individual o lote completo)
+     */
+    public void setSendLatencyMillis(long sendLatency) {
+        this.sendLatencyMillis = sendLatency;
+    }
+
+    /**
+     * Las próximas n llamadas fallan con ConnectException (simula una caída transitoria)
+     */
+    public void setFailNextCalls(int n) {
+        this.pendingFailures.set(n);
+    }
+
+    public int getHistoryCalls() {
+        return historyCalls.get();
+    }
+
+    public int getPrescriptionCalls() {
+        return prescriptionCalls.get();
+    }
+
+    public int getSendCalls() {
+        return sendCalls.get();
+    }
+
+    public int getBatchCalls() {
+        return batchCalls.get();
+    }
+
     public void reset() {
         this.throwConnectException = false;
         this.throwHealthCardIDException = false;
         this.throwAnyCurrentPrescriptionException = false;
         this.throwNotCompletedMedicalPrescription = false;
+        this.historyLatencyMillis = 0;
+        this.prescriptionLatencyMillis = 0;
+        this.sendLatencyMillis = 0;
+        this.historyCalls.set(0);
+        this.prescriptionCalls.set(0);
+        this.sendCalls.set(0);
+        this.batchCalls.set(0);
+        this.pendingFailures.set(0);
     }
 
     @Override
     public MedicalHistory getMedicalHistory(HealthCardID cip)
             throws ConnectException, IncorrectParametersException {
 
-        if (throwConnectException) {
+        historyCalls.incrementAndGet();
+        simulateLatency(historyLatencyMillis);
+        if (throwConnectException || consumeFailure()) {
             throw new ConnectException("Network connection failed");
         }
         if (throwHealthCardIDException) {
@@ -64,7 +129,9 @@ public class HealthNationalServiceMock implements HealthNationalService {
             HealthCardID cip, String illness)
             throws ConnectException, IncorrectParametersException {
 
-        if (throwConnectException) {
+        prescriptionCalls.incrementAndGet();
+        simulateLatency(prescriptionLatencyMillis);
+        if (throwConnectException || consumeFailure()) {
             throw new ConnectException("Network connection failed");
         }
         if (throwHealthCardIDException) {
@@ -78,15 +145,56 @@ public class HealthNationalServiceMock implements HealthNationalService {
     }
 
 
+    /**
+     * El doble no versiona las historias: acepta cualquier delta como un envío completo
+     */
+    @Override
+    public MedicalPrescription sendHistoryDeltaAndPrescription(
+            HealthCardID cip, MedicalHistory hce, String illness,
+            MedicalPrescription mPresc)
+            throws ConnectException, InvalidePrescripCodeException {
+        return sendHistoryAndPrescription(cip, hce, illness, mPresc);
+    }
+
     @Override
     public MedicalPrescription sendHistoryAndPrescription(
             HealthCardID cip, MedicalHistory hce, String illness,
             MedicalPrescription mPresc)
             throws ConnectException, InvalidePrescripCodeException {
 
-        if (throwConnectException) {
+        sendCalls.incrementAndGet();
+        simulateLatency(sendLatencyMillis);
+        if (throwConnectException || consumeFailure()) {
+            throw new ConnectException("Network connection failed");
+        }
+        return register(mPresc);
+    }
+
+    /**
+     * Lote nativo: un único viaje de ida y vuelta para todos los envíos
+     */
+    @Override
+    public List<SubmissionResult> sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch)
+            throws ConnectException {
+
+        batchCalls.incrementAndGet();
+        simulateLatency(sendLatencyMillis);
+        if (throwConnectException || consumeFailure()) {
             throw new ConnectException("Network connection failed");
         }
+
+        List<SubmissionResult> results = new ArrayList<>(batch.size());
+        for (PrescriptionSubmission submission : batch) {
+            try {
+                results.add(SubmissionResult.registered(register(submission.getPrescription())));
+            } catch (InvalidePrescripCodeException | RuntimeException e) {
+                results.add(SubmissionResult.failed(e));
+            }
+        }
+        return results;
+    }
+
+    private MedicalPrescription register(MedicalPrescription mPresc) throws InvalidePrescripCodeException {
         if (throwHealthCardIDException) {
             throw new IllegalArgumentException("Health Card ID not registered in SNS");
         }
@@ -97,7 +205,7 @@ public class HealthNationalServiceMock implements HealthNationalService {
             throw new IllegalArgumentException("Medical prescription is not completed");
         }
 
-        mPresc.setPrescCode(new ePrescripCode("TRAT" + System.currentTimeMillis()));
+        mPresc.setPrescCode(new ePrescripCode(String.format("TRAT%010d", NEXT_CODE.getAndIncrement())));
         return mPresc;
     }
 
@@ -105,12 +213,27 @@ public class HealthNationalServiceMock implements HealthNationalService {
     public MedicalPrescription generateTreatmCodeAndRegister(
             MedicalPrescription ePresc) throws ConnectException, InvalidePrescripCodeException {
 
-        if (throwConnectException) {
+        if (throwConnectException || consumeFailure()) {
             throw new ConnectException("Network connection failed");
         }
 
-        ePresc.setPrescCode(new ePrescripCode("CODE" + System.currentTimeMillis()));
+        ePresc.setPrescCode(new ePrescripCode(String.format("CODE%010d", NEXT_CODE.getAndIncrement())));
         return ePresc;
     }
-}
 
+    private boolean consumeFailure() {
+        return pendingFailures.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0;
+    }
+
+    private static void simulateLatency(long millis) throws ConnectException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectException("Request interrupted");
+        }
+    }
+}
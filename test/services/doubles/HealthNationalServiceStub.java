@@ -8,6 +8,7 @@ import consultamedica.MedicalPrescription;
 import data.HealthCardID;
 import data.ePrescripCode;
 import java.net.ConnectException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Stub para HealthNationalService - simula comportamiento exitoso
@@ -15,6 +16,9 @@ import java.net.ConnectException;
  */
 public class HealthNationalServiceStub implements HealthNationalService {
 
+    // Códigos únicos aunque se registren varios en el mismo milisegundo
+    private static final AtomicLong NEXT_CODE = new AtomicLong();
+
     @Override
     public MedicalHistory getMedicalHistory(HealthCardID cip)
             throws ConnectException, IncorrectParametersException {
@@ -37,6 +41,17 @@ public class HealthNationalServiceStub implements HealthNationalService {
         return new MedicalPrescription(cip, 100, illness);
     }
 
+    /**
+     * El doble no versiona las historias: acepta cualquier delta como un envío completo
+     */
+    @Override
+    public MedicalPrescription sendHistoryDeltaAndPrescription(
+            HealthCardID cip, MedicalHistory hce, String illness,
+            MedicalPrescription mPresc)
+            throws ConnectException, InvalidePrescripCodeException {
+        return sendHistoryAndPrescription(cip, hce, illness, mPresc);
+    }
+
     @Override
     public MedicalPrescription sendHistoryAndPrescription(
             HealthCardID cip, MedicalHistory hce, String illness,
@@ -46,7 +61,7 @@ public class HealthNationalServiceStub implements HealthNationalService {
             throw new IllegalArgumentException("Prescription cannot be null");
         }
         // Simula asignación de código de tratamiento
-        mPresc.setPrescCode(new ePrescripCode("TRAT" + System.currentTimeMillis()));
+        mPresc.setPrescCode(new ePrescripCode(String.format("TRAT%010d", NEXT_CODE.getAndIncrement())));
         return mPresc;
     }
 
@@ -57,7 +72,7 @@ public class HealthNationalServiceStub implements HealthNationalService {
         if (ePresc == null) {
             throw new IllegalArgumentException("ePrescription cannot be null");
         }
-        ePresc.setPrescCode(new ePrescripCode("CODE" + System.currentTimeMillis()));
+        ePresc.setPrescCode(new ePrescripCode(String.format("CODE%010d", NEXT_CODE.getAndIncrement())));
         return ePresc;
     }
 }
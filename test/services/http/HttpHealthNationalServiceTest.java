@@ -0,0 +1,290 @@
+package services.http;
+
+import consultamedica.ConsultationTerminal;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.ProductID;
+import services.AmbiguousResultException;
+import services.AnyCurrentPrescriptionException;
+import services.HealthCardIDException;
+import services.HistoryConflictException;
+import services.HistoryPage;
+import services.PagedHistoryLoader;
+import services.PrescripCodeLease;
+import services.PrescriptionSubmission;
+import services.SubmissionResult;
+import services.doubles.DecisionMakingAIStub;
+import services.simulation.LatencyDistribution;
+import services.simulation.OperationProfile;
+import services.simulation.SimulatedHealthNationalService;
+import services.simulation.SnsOperation;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("HttpHealthNationalService Tests")
+public class HttpHealthNationalServiceTest {
+
+    private SimulatedHealthNationalService backend;
+    private LoopbackSnsServer server;
+    private HttpHealthNationalService sns;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        backend = new SimulatedHealthNationalService(7L, 500);
+        server = new LoopbackSnsServer(backend);
+        sns = new HttpHealthNationalService(server.getBaseUri());
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Nested
+    @DisplayName("Reads")
+    class ReadTests {
+
+        @Test
+        @DisplayName("History and prescription are decoded from the server response")
+        void testReadsMatchBackend() throws Exception {
+            HealthCardID cip = backend.getPatient(5);
+            String illness = backend.getIllnesses(cip).get(0);
+
+            MedicalHistory history = sns.getMedicalHistory(cip);
+            MedicalPrescription presc = sns.getMedicalPrescription(cip, illness);
+
+            assertEquals(backend.getMedicalHistory(cip).getHistory(), history.getHistory());
+            assertEquals(backend.getMedicalHistory(cip).getMembShipNumb(), history.getMembShipNumb());
+            assertEquals(illness, presc.getIllness());
+            assertEquals(backend.getMedicalPrescription(cip, illness).getLineCount(), presc.getLineCount());
+        }
+
+        @Test
+        @DisplayName("History pages carry only the requested annotations")
+        void testHistoryPage() throws Exception {
+            HealthCardID cip = backend.getPatient(5);
+            MedicalHistory full = backend.getMedicalHistory(cip);
+
+            HistoryPage page = sns.getMedicalHistoryPage(cip, Integer.MAX_VALUE, 3);
+
+            assertEquals(full.getAnnotationCount(), page.getTotalCount());
+            assertEquals(full.getAnnotationCount() - 3, page.getFirstIndex());
+            assertEquals(List.of(full.getAnnotation(page.getFirstIndex()),
+                    full.getAnnotation(page.getFirstIndex() + 1),
+                    full.getAnnotation(page.getFirstIndex() + 2)), page.getAnnotations());
+            assertEquals(full.getHistory(), PagedHistoryLoader.open(sns, cip, 4).getHistory());
+        }
+
+        @Test
+        @DisplayName("Business errors keep their exception type across the wire")
+        void testBusinessErrors() throws Exception {
+            HealthCardID stranger = new HealthCardID("ZZZZZZZZ99999999");
+            HealthCardID cip = backend.getPatient(0);
+
+            assertThrows(HealthCardIDException.class, () -> sns.getMedicalHistory(stranger));
+            assertThrows(AnyCurrentPrescriptionException.class,
+                    () -> sns.getMedicalPrescription(cip, "Enfermedad desconocida"));
+        }
+
+        @Test
+        @DisplayName("Concurrent terminals share the client")
+        void testConcurrentReads() throws Exception {
+            ExecutorService pool = Executors.newFixedThreadPool(16);
+            try {
+                List<Future<MedicalHistory>> results = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    HealthCardID cip = backend.getPatient(i);
+                    results.add(pool.submit(() -> sns.getMedicalHistory(cip)));
+                }
+                for (int i = 0; i < results.size(); i++) {
+                    assertEquals(backend.getPatient(i), results.get(i).get(10, TimeUnit.SECONDS).getCip());
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Submissions")
+    class SubmissionTests {
+
+        @Test
+        @DisplayName("A full consultation runs over HTTP")
+        void testConsultationOverHttp() throws Exception {
+            HealthCardID cip = backend.getPatient(9);
+            String illness = backend.getIllnesses(cip).get(0);
+            ProductID medicine = new ProductID("999999999999");
+
+            ConsultationTerminal terminal = new ConsultationTerminal();
+            terminal.setHealthNationalService(sns);
+            terminal.setDecisionMakingAI(new DecisionMakingAIStub());
+            terminal.initRevision(cip, illness);
+            terminal.enterMedicalAssessmentInHistory("Consulta por HTTP");
+            terminal.initMedicalPrescriptionEdition();
+            terminal.enterMedicineWithGuidelines(medicine,
+                    new String[]{"BEFORELUNCH", "15", "1", "1", "DAY", "Con agua", ""});
+            terminal.enterTreatmentEndingDate(new Date(System.currentTimeMillis() + 15L * 24 * 60 * 60 * 1000));
+            terminal.finishMedicalPrescriptionEdition();
+            terminal.stampeeSignature();
+            MedicalPrescription registered = terminal.sendHistoryAndPrescription();
+
+            assertNotNull(registered.getPrescCode());
+            assertTrue(backend.getMedicalPrescription(cip, illness).containsProduct(medicine));
+            assertTrue(backend.getMedicalHistory(cip).getHistory().endsWith("Consulta por HTTP"));
+        }
+
+        @Test
+        @DisplayName("Outdated history deltas are rejected with a conflict")
+        void testDeltaConflict() throws Exception {
+            HealthCardID cip = backend.getPatient(2);
+            String illness = backend.getIllnesses(cip).get(0);
+            MedicalHistory hce = sns.getMedicalHistory(cip);
+            hce.setBaseAnnotationCount(hce.getAnnotationCount() - 1);
+            hce.addMedicalHistoryAnnotations("Consulta desfasada");
+            String before = backend.getMedicalHistory(cip).getHistory();
+
+            assertThrows(HistoryConflictException.class, () -> sns.sendHistoryDeltaAndPrescription(
+                    cip, hce, illness, sns.getMedicalPrescription(cip, illness)));
+            assertEquals(before, backend.getMedicalHistory(cip).getHistory());
+        }
+
+        @Test
+        @DisplayName("A batch returns one result per submission")
+        void testBatch() throws Exception {
+            HealthCardID cip = backend.getPatient(1);
+            String illness = backend.getIllnesses(cip).get(0);
+            PrescriptionSubmission incomplete = new PrescriptionSubmission(cip,
+                    sns.getMedicalHistory(cip), illness, sns.getMedicalPrescription(cip, illness));
+
+            List<SubmissionResult> results = sns.sendHistoriesAndPrescriptions(List.of(incomplete));
+
+            assertEquals(1, results.size());
+            assertFalse(results.get(0).isRegistered());
+        }
+
+        @Test
+        @DisplayName("Batched histories travel as deltas")
+        void testBatchSendsDeltas() throws Exception {
+            HealthCardID cip = backend.getPatient(3);
+            String illness = backend.getIllnesses(cip).get(0);
+            MedicalHistory hce = sns.getMedicalHistory(cip);
+            hce.markSynchronized();
+            hce.addMedicalHistoryAnnotations("Consulta en lote");
+            MedicalPrescription presc = sns.getMedicalPrescription(cip, illness);
+            presc.setEndDate(new Date(System.currentTimeMillis() + 15L * 24 * 60 * 60 * 1000));
+            presc.seteSign(new DigitalSignature(new byte[]{1, 2, 3}));
+            MedicalHistory other = backend.getMedicalHistory(cip);
+            other.markSynchronized();
+            other.addMedicalHistoryAnnotations("Consulta de otro terminal");
+            backend.sendHistoryDeltaAndPrescription(cip, other, illness, new MedicalPrescription(presc));
+
+            List<SubmissionResult> results = sns.sendHistoriesAndPrescriptions(
+                    List.of(new PrescriptionSubmission(cip, hce, illness, presc)));
+
+            assertInstanceOf(HistoryConflictException.class, results.get(0).getError());
+            assertTrue(backend.getMedicalHistory(cip).getHistory().endsWith("Consulta de otro terminal"));
+        }
+
+        @Test
+        @DisplayName("Codes and code leases come from the server")
+        void testCodes() throws Exception {
+            HealthCardID cip = backend.getPatient(2);
+            MedicalPrescription presc = new MedicalPrescription(cip, 100, "Asma");
+
+            assertSame(presc, sns.generateTreatmCodeAndRegister(presc));
+            assertNotNull(presc.getPrescCode());
+
+            PrescripCodeLease lease = sns.leasePrescripCodes(50);
+            assertEquals(50, lease.getCount());
+        }
+    }
+
+    @Nested
+    @DisplayName("Connection Handling")
+    class ConnectionTests {
+
+        @Test
+        @DisplayName("warmUp opens connections before the first consultation")
+        void testWarmUp() throws Exception {
+            assertEquals(4, sns.warmUp(4).get(5, TimeUnit.SECONDS));
+            assertTrue(server.getRequestCount() >= 4);
+        }
+
+        @Test
+        @DisplayName("Backend connection failures surface as ConnectException")
+        void testBackendUnavailable() {
+            backend.setProfile(SnsOperation.GET_HISTORY,
+                    new OperationProfile(LatencyDistribution.none(), 1.0, 0));
+
+            assertThrows(ConnectException.class, () -> sns.getMedicalHistory(backend.getPatient(0)));
+        }
+
+        @Test
+        @DisplayName("An unreachable server surfaces as ConnectException")
+        void testServerDown() {
+            URI base = server.getBaseUri();
+            server.close();
+            HttpHealthNationalService down = new HttpHealthNationalService(base,
+                    Duration.ofMillis(500), Duration.ofSeconds(1));
+
+            assertThrows(ConnectException.class, () -> down.getMedicalHistory(backend.getPatient(0)));
+        }
+
+        @Test
+        @DisplayName("Slow responses time out as ConnectException")
+        void testRequestTimeout() {
+            backend.setProfile(SnsOperation.GET_HISTORY,
+                    new OperationProfile(LatencyDistribution.fixed(Duration.ofSeconds(2)), 0, 0));
+            HttpHealthNationalService impatient = new HttpHealthNationalService(server.getBaseUri(),
+                    Duration.ofSeconds(1), Duration.ofMillis(200));
+
+            assertThrows(ConnectException.class, () -> impatient.getMedicalHistory(backend.getPatient(0)));
+        }
+
+        @Test
+        @DisplayName("A submission that times out after being sent has an ambiguous result")
+        void testSubmissionTimeoutIsAmbiguous() throws Exception {
+            backend.setProfile(SnsOperation.GENERATE_CODE,
+                    new OperationProfile(LatencyDistribution.fixed(Duration.ofSeconds(2)), 0, 0));
+            HttpHealthNationalService impatient = new HttpHealthNationalService(server.getBaseUri(),
+                    Duration.ofSeconds(1), Duration.ofMillis(200));
+            MedicalPrescription presc = new MedicalPrescription(backend.getPatient(0), 100, "Asma");
+
+            assertThrows(AmbiguousResultException.class, () -> impatient.generateTreatmCodeAndRegister(presc));
+        }
+
+        @Test
+        @DisplayName("Submissions that never reach the SNS surface as ConnectException")
+        void testUnsentSubmissionIsUnavailable() throws Exception {
+            MedicalPrescription presc = new MedicalPrescription(backend.getPatient(0), 100, "Asma");
+            backend.setProfile(SnsOperation.GENERATE_CODE,
+                    new OperationProfile(LatencyDistribution.none(), 1.0, 0));
+
+            assertThrows(ConnectException.class, () -> sns.generateTreatmCodeAndRegister(presc));
+
+            URI base = server.getBaseUri();
+            server.close();
+            HttpHealthNationalService down = new HttpHealthNationalService(base,
+                    Duration.ofMillis(500), Duration.ofSeconds(1));
+            assertThrows(ConnectException.class, () -> down.generateTreatmCodeAndRegister(presc));
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package services.simulation;
+
+import consultamedica.ConsultationTerminal;
+import consultamedica.MedicalHistory;
+import consultamedica.MedicalPrescription;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import data.HealthCardID;
+import data.ProductID;
+import services.CodeLeasingHealthNationalService;
+import services.HealthCardIDException;
+import services.PrescripCodeLease;
+import services.doubles.DecisionMakingAIStub;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SimulatedHealthNationalService Tests")
+public class SimulatedHealthNationalServiceTest {
+
+    private SimulatedHealthNationalService sns;
+
+    @BeforeEach
+    void setUp() {
+        sns = new SimulatedHealthNationalService(42L, 1_000);
+    }
+
+    @Nested
+    @DisplayName("Synthetic Population")
+    class PopulationTests {
+
+        @Test
+        @DisplayName("The same seed always builds the same population")
+        void testDeterministicPopulation() throws Exception {
+            SimulatedHealthNationalService other = new SimulatedHealthNationalService(42L, 1_000);
+
+            for (int i = 0; i < 50; i++) {
+                HealthCardID cip = sns.getPatient(i);
+                assertEquals(cip, other.getPatient(i));
+                assertEquals(sns.getMedicalHistory(cip).getHistory(),
+                        other.getMedicalHistory(cip).getHistory());
+                assertEquals(sns.getIllnesses(cip), other.getIllnesses(cip));
+            }
+        }
+
+        @Test
+        @DisplayName("Every patient has a history and at least one active prescription")
+        void testPatientsHaveRecords() throws Exception {
+            HealthCardID cip = sns.getPatient(7);
+
+            assertFalse(sns.getMedicalHistory(cip).getHistory().isEmpty());
+            List<String> illnesses = sns.getIllnesses(cip);
+            assertFalse(illnesses.isEmpty());
+            assertTrue(sns.getMedicalPrescription(cip, illnesses.get(0)).getLineCount() > 0);
+        }
+
+        @Test
+        @DisplayName("Unknown patients and illnesses raise the SNS business exceptions")
+        void testUnknownPatient() throws Exception {
+            HealthCardID stranger = new HealthCardID("ZZZZZZZZ99999999");
+
+            assertThrows(HealthCardIDException.class, () -> sns.getMedicalHistory(stranger));
+            assertThrows(Exception.class, () -> sns.getMedicalPrescription(sns.getPatient(0), "Gripe"));
+        }
+
+        @Test
+        @DisplayName("Returned records are copies of the stored ones")
+        void testReadsReturnCopies() throws Exception {
+            HealthCardID cip = sns.getPatient(3);
+            MedicalHistory history = sns.getMedicalHistory(cip);
+            String original = history.getHistory();
+
+            history.addMedicalHistoryAnnotations("Anotación local");
+
+            assertEquals(original, sns.getMedicalHistory(cip).getHistory());
+        }
+    }
+
+    @Nested
+    @DisplayName("Consultation Against the Simulation")
+    class ConsultationTests {
+
+        @Test
+        @DisplayName("A sent prescription gets a unique code and is returned by later reads")
+        void testSendStoresPrescription() throws Exception {
+            HealthCardID cip = sns.getPatient(11);
+            String illness = sns.getIllnesses(cip).get(0);
+
+            ConsultationTerminal terminal = new ConsultationTerminal();
+            terminal.setHealthNationalService(sns);
+            terminal.setDecisionMakingAI(new DecisionMakingAIStub());
+            terminal.initRevision(cip, illness);
+            terminal.enterMedicalAssessmentInHistory("Revisión simulada");
+            terminal.initMedicalPrescriptionEdition();
+            terminal.enterMedicineWithGuidelines(new ProductID("999999999999"),
+                    new String[]{"BEFORELUNCH", "15", "1", "1", "DAY", "Con agua", ""});
+            terminal.enterTreatmentEndingDate(new Date(System.currentTimeMillis() + 15L * 24 * 60 * 60 * 1000));
+            terminal.finishMedicalPrescriptionEdition();
+            terminal.stampeeSignature();
+            MedicalPrescription sent = terminal.sendHistoryAndPrescription();
+
+            assertNotNull(sent.getPrescCode());
+            assertTrue(sns.getMedicalHistory(cip).getHistory().endsWith("Revisión simulada"));
+            assertTrue(sns.getMedicalPrescription(cip, illness).containsProduct(new ProductID("999999999999")));
+        }
+
+        @Test
+        @DisplayName("A prescription sent with a leased code keeps that code")
+        void testLeasedCodeIsKept() throws Exception {
+            HealthCardID cip = sns.getPatient(13);
+            String illness = sns.getIllnesses(cip).get(0);
+
+            ConsultationTerminal terminal = new ConsultationTerminal();
+            terminal.setHealthNationalService(new CodeLeasingHealthNationalService(sns, 10));
+            terminal.setDecisionMakingAI(new DecisionMakingAIStub());
+            terminal.initRevision(cip, illness);
+            terminal.initMedicalPrescriptionEdition();
+            terminal.enterMedicineWithGuidelines(new ProductID("999999999999"),
+                    new String[]{"BEFORELUNCH", "15", "1", "1", "DAY", "Con agua", ""});
+            terminal.enterTreatmentEndingDate(new Date(System.currentTimeMillis() + 15L * 24 * 60 * 60 * 1000));
+            terminal.finishMedicalPrescriptionEdition();
+            terminal.stampeeSignature();
+            MedicalPrescription sent = terminal.sendHistoryAndPrescription();
+
+            assertEquals("SIM-0000000000", sent.getPrescCode().getCode());
+            assertEquals(sent.getPrescCode(), sns.getMedicalPrescription(cip, illness).getPrescCode());
+            assertEquals(1, sns.getCallCount(SnsOperation.LEASE_CODES));
+        }
+
+        @Test
+        @DisplayName("A leased code is accepted only once")
+        void testLeasedCodeIsUsedOnce() throws Exception {
+            HealthCardID cip = sns.getPatient(14);
+            PrescripCodeLease lease = sns.leasePrescripCodes(1);
+            MedicalPrescription first = new MedicalPrescription(cip, 100, "Hipertensión");
+            MedicalPrescription second = new MedicalPrescription(cip, 100, "Hipertensión");
+            first.setPrescCode(lease.codeAt(0));
+            second.setPrescCode(lease.codeAt(0));
+
+            assertEquals(lease.codeAt(0), sns.generateTreatmCodeAndRegister(first).getPrescCode());
+            assertNotEquals(lease.codeAt(0), sns.generateTreatmCodeAndRegister(second).getPrescCode());
+        }
+
+        @Test
+        @DisplayName("Incomplete prescriptions are rejected")
+        void testIncompletePrescription() throws Exception {
+            HealthCardID cip = sns.getPatient(12);
+            String illness = sns.getIllnesses(cip).get(0);
+            MedicalPrescription presc = sns.getMedicalPrescription(cip, illness);
+
+            assertThrows(Exception.class, () -> {
+                sns.sendHistoryAndPrescription(cip, sns.getMedicalHistory(cip), illness, presc);
+            });
+        }
+    }
+
+    @Nested
+    @DisplayName("Operation Profiles")
+    class ProfileTests {
+
+        @Test
+        @DisplayName("Configured latency delays every call")
+        void testFixedLatency() throws Exception {
+            sns.setProfile(SnsOperation.GET_HISTORY,
+                    new OperationProfile(LatencyDistribution.fixed(Duration.ofMillis(20)), 0, 0));
+
+            long start = System.nanoTime();
+            sns.getMedicalHistory(sns.getPatient(0));
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            assertTrue(elapsedMillis >= 20, "latencia: " + elapsedMillis + " ms");
+        }
+
+        @Test
+        @DisplayName("Error rate injects connection failures")
+        void testErrorRate() throws Exception {
+            HealthCardID cip = sns.getPatient(0);
+            sns.setProfile(SnsOperation.GET_HISTORY, new OperationProfile(LatencyDistribution.none(), 1.0, 0));
+
+            assertThrows(ConnectException.class, () -> sns.getMedicalHistory(cip));
+            assertEquals(1, sns.getInjectedFailureCount(SnsOperation.GET_HISTORY));
+
+            sns.setProfile(SnsOperation.GET_HISTORY, OperationProfile.instant());
+            assertDoesNotThrow(() -> sns.getMedicalHistory(cip));
+        }
+
+        @Test
+        @DisplayName("Throughput cap spaces out calls")
+        void testThroughputCap() throws Exception {
+            HealthCardID cip = sns.getPatient(0);
+            sns.setProfile(SnsOperation.GET_HISTORY, new OperationProfile(LatencyDistribution.none(), 0, 100));
+
+            long start = System.nanoTime();
+            for (int i = 0; i < 11; i++) {
+                sns.getMedicalHistory(cip);
+            }
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            assertTrue(elapsedMillis >= 90, "duración: " + elapsedMillis + " ms");
+            assertEquals(11, sns.getCallCount(SnsOperation.GET_HISTORY));
+        }
+
+        @Test
+        @DisplayName("Log-normal latency matches its median and 99th percentile")
+        void testLogNormalDistribution() {
+            LatencyDistribution d = LatencyDistribution.logNormal(Duration.ofMillis(10), Duration.ofMillis(50));
+            SplittableRandom r = new SplittableRandom(1);
+            long[] samples = new long[20_000];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = d.sampleNanos(r);
+            }
+            Arrays.sort(samples);
+
+            assertEquals(10e6, samples[samples.length / 2], 1e6);
+            assertEquals(50e6, samples[(int) (samples.length * 0.99)], 8e6);
+        }
+
+        @Test
+        @DisplayName("Invalid profiles are rejected")
+        void testInvalidProfile() {
+            assertThrows(IllegalArgumentException.class,
+                    () -> new OperationProfile(LatencyDistribution.none(), 1.5, 0));
+            assertThrows(IllegalArgumentException.class,
+                    () -> new OperationProfile(LatencyDistribution.none(), 0, -1));
+            assertThrows(IllegalArgumentException.class,
+                    () -> LatencyDistribution.logNormal(Duration.ofMillis(10), Duration.ofMillis(5)));
+        }
+    }
+}